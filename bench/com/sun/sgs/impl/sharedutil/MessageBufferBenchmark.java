@@ -0,0 +1,255 @@
+package com.sun.sgs.impl.sharedutil;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Puts and gets of {@link MessageBuffer} against the byte at a time
+ * implementation it replaced, kept here as {@link BytewiseMessageBuffer}. The
+ * <code>fields</code> benchmarks write or read a byte, a short, an int, a
+ * long and a byte array of <code>size</code> bytes, the others only the byte
+ * array. The byte buffer ones copy a direct buffer, which the bytewise
+ * implementation has to go through a temporary array for.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageBufferBenchmark {
+
+   @Param( { "8", "64", "256" })
+   int size;
+
+   private byte[] bytes;
+
+   private ByteBuffer direct;
+
+   private MessageBuffer bulkOut;
+
+   private MessageBuffer bulkIn;
+
+   private BytewiseMessageBuffer bytewiseOut;
+
+   private BytewiseMessageBuffer bytewiseIn;
+
+   @Setup(Level.Trial)
+   public void setUp() {
+      bytes = new byte[size];
+      new Random(42).nextBytes(bytes);
+      direct = ByteBuffer.allocateDirect(size);
+      direct.put(bytes).flip();
+
+      int capacity = 15 + size;
+      bulkOut = new MessageBuffer(capacity);
+      bytewiseOut = new BytewiseMessageBuffer(capacity);
+
+      MessageBuffer message = new MessageBuffer(capacity);
+      message.putByte(1).putShort(2).putInt(3).putLong(4).putBytes(bytes);
+      bulkIn = new MessageBuffer(message.getBuffer().clone());
+      bytewiseIn = new BytewiseMessageBuffer(message.getBuffer().clone());
+   }
+
+   @Benchmark
+   public MessageBuffer putFieldsBulk() {
+      bulkOut.rewind();
+      return bulkOut.putByte(1).putShort(2).putInt(3).putLong(4).putBytes(
+            bytes);
+   }
+
+   @Benchmark
+   public BytewiseMessageBuffer putFieldsBytewise() {
+      bytewiseOut.rewind();
+      return bytewiseOut.putByte(1).putShort(2).putInt(3).putLong(4)
+            .putBytes(bytes);
+   }
+
+   @Benchmark
+   public long getFieldsBulk() {
+      bulkIn.rewind();
+      return bulkIn.getByte() + bulkIn.getShort() + bulkIn.getInt()
+            + bulkIn.getLong() + bulkIn.getBytes(size).length;
+   }
+
+   @Benchmark
+   public long getFieldsBytewise() {
+      bytewiseIn.rewind();
+      return bytewiseIn.getByte() + bytewiseIn.getShort()
+            + bytewiseIn.getInt() + bytewiseIn.getLong()
+            + bytewiseIn.getBytes(size).length;
+   }
+
+   @Benchmark
+   public MessageBuffer putBytesBulk() {
+      bulkOut.rewind();
+      return bulkOut.putBytes(bytes);
+   }
+
+   @Benchmark
+   public BytewiseMessageBuffer putBytesBytewise() {
+      bytewiseOut.rewind();
+      return bytewiseOut.putBytes(bytes);
+   }
+
+   @Benchmark
+   public MessageBuffer putByteBufferBulk() {
+      bulkOut.rewind();
+      direct.rewind();
+      return bulkOut.putBytes(direct);
+   }
+
+   @Benchmark
+   public BytewiseMessageBuffer putByteBufferBytewise() {
+      bytewiseOut.rewind();
+      direct.rewind();
+      byte[] copy = new byte[direct.remaining()];
+      direct.get(copy);
+      return bytewiseOut.putBytes(copy);
+   }
+
+   /**
+    * The puts and gets of {@link MessageBuffer} before the bulk operations,
+    * one bounds check and limit update per byte
+    */
+   static class BytewiseMessageBuffer {
+
+      private final byte[] buf;
+
+      private final int capacity;
+
+      private int pos = 0;
+
+      private int limit;
+
+      BytewiseMessageBuffer(int capacity) {
+         this(new byte[capacity]);
+         this.limit = 1;
+      }
+
+      BytewiseMessageBuffer(byte[] buf) {
+         this.buf = buf;
+         this.capacity = buf.length;
+         this.limit = buf.length;
+      }
+
+      void rewind() {
+         pos = 0;
+      }
+
+      BytewiseMessageBuffer putByte(int b) {
+         if (pos == capacity) {
+            throw new IndexOutOfBoundsException();
+         }
+         buf[pos++] = (byte) b;
+         limit = (pos == capacity ? pos : pos + 1);
+         return this;
+      }
+
+      BytewiseMessageBuffer putBytes(byte[] bytes) {
+         if (pos + bytes.length > capacity) {
+            throw new IndexOutOfBoundsException();
+         }
+         for (byte b : bytes) {
+            putByte(b);
+         }
+         return this;
+      }
+
+      BytewiseMessageBuffer putShort(int v) {
+         if (pos + 2 > capacity) {
+            throw new IndexOutOfBoundsException();
+         }
+         putByte((v >>> 8) & 0xFF);
+         putByte((v >>> 0) & 0xFF);
+         return this;
+      }
+
+      BytewiseMessageBuffer putInt(int v) {
+         if (pos + 4 > capacity) {
+            throw new IndexOutOfBoundsException();
+         }
+         putByte((v >>> 24) & 0xff);
+         putByte((v >>> 16) & 0xff);
+         putByte((v >>> 8) & 0xff);
+         putByte((v >>> 0) & 0xff);
+         return this;
+      }
+
+      BytewiseMessageBuffer putLong(long v) {
+         if (pos + 8 > capacity) {
+            throw new IndexOutOfBoundsException();
+         }
+         putByte((byte) (v >>> 56));
+         putByte((byte) (v >>> 48));
+         putByte((byte) (v >>> 40));
+         putByte((byte) (v >>> 32));
+         putByte((byte) (v >>> 24));
+         putByte((byte) (v >>> 16));
+         putByte((byte) (v >>> 8));
+         putByte((byte) (v >>> 0));
+         return this;
+      }
+
+      byte getByte() {
+         if (pos == limit) {
+            throw new IndexOutOfBoundsException();
+         }
+         return buf[pos++];
+      }
+
+      byte[] getBytes(int size) {
+         if (pos + size > limit) {
+            throw new IndexOutOfBoundsException();
+         }
+         byte[] bytes = new byte[size];
+         for (int i = 0; i < size; i++) {
+            bytes[i] = getByte();
+         }
+         return bytes;
+      }
+
+      short getShort() {
+         if (pos + 2 > limit) {
+            throw new IndexOutOfBoundsException();
+         }
+         return (short) ((getByte() << 8) + (getByte() & 255));
+      }
+
+      int getInt() {
+         if (pos + 4 > limit) {
+            throw new IndexOutOfBoundsException();
+         }
+         return ((getByte() & 255) << 24) + ((getByte() & 255) << 16)
+               + ((getByte() & 255) << 8) + ((getByte() & 255) << 0);
+      }
+
+      long getLong() {
+         if (pos + 8 > limit) {
+            throw new IndexOutOfBoundsException();
+         }
+         return ((long) (getByte() & 255) << 56)
+               + ((long) (getByte() & 255) << 48)
+               + ((long) (getByte() & 255) << 40)
+               + ((long) (getByte() & 255) << 32)
+               + ((long) (getByte() & 255) << 24)
+               + ((long) (getByte() & 255) << 16)
+               + ((long) (getByte() & 255) << 8)
+               + ((long) (getByte() & 255) << 0);
+      }
+   }
+}
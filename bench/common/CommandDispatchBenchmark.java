@@ -0,0 +1,164 @@
+package common;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import common.Commands.Command;
+
+/**
+ * Dispatch of a message through a {@link CommandTable} against the decoding
+ * and the if/else chain it replaced in <code>Player.receivedMessage</code>:
+ * the command boxed and looked up in a <code>HashMap</code>, then compared
+ * with every command up to its own. The messages are a random mix of the five
+ * moves, the bulk of the traffic of a game, which come last in the chain. The
+ * handlers only count the messages, so the difference is the dispatch itself.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandDispatchBenchmark {
+
+   private static final Command[] MOVES = { Command.MOVE_LEFT,
+         Command.MOVE_RIGHT, Command.MOVE_DOWN, Command.MOVE_ALL_WAY_DOWN,
+         Command.ROTATE };
+
+   private static final int MESSAGES = 1024;
+
+   private static final Map<Integer, Command> ordinalToEnum = new HashMap<Integer, Command>();
+
+   static {
+      for (Command cmd : Command.values()) {
+         ordinalToEnum.put(cmd.ordinal(), cmd);
+      }
+   }
+
+   private final CommandTable<Counter> table = new CommandTable<Counter>();
+
+   private final Counter counter = new Counter();
+
+   private ByteBuffer[] messages = new ByteBuffer[MESSAGES];
+
+   private int next;
+
+   @Setup(Level.Trial)
+   public void setUp() {
+      Command[] handled = { Command.PING, Command.CREATE_ROOM,
+            Command.ROOM_JOINED, Command.JOIN_ROOM, Command.ABANDON,
+            Command.REQUEST_LOBBY_DATA, Command.GAME_START,
+            Command.MOVE_LEFT, Command.MOVE_RIGHT, Command.MOVE_DOWN,
+            Command.MOVE_ALL_WAY_DOWN, Command.ROTATE };
+      for (final Command cmd : handled) {
+         table.register(cmd, new CommandHandler<Counter>() {
+            public void handle(Counter context, ByteBuffer buf) {
+               context.count(cmd);
+            }
+         });
+      }
+
+      Random random = new Random(42);
+      for (int i = 0; i < MESSAGES; i++) {
+         messages[i] = ByteBuffer.allocate(4);
+         messages[i].putInt(
+               Commands.encode(MOVES[random.nextInt(MOVES.length)])).flip();
+      }
+   }
+
+   private ByteBuffer nextMessage() {
+      ByteBuffer buf = messages[next];
+      next = (next + 1) & (MESSAGES - 1);
+      buf.rewind();
+      return buf;
+   }
+
+   @Benchmark
+   public boolean table() {
+      return table.dispatch(counter, nextMessage());
+   }
+
+   @Benchmark
+   public boolean chain() {
+      return dispatchChain(counter, nextMessage());
+   }
+
+   /**
+    * The dispatch of <code>Player.receivedMessage</code> before the
+    * {@link CommandTable}
+    */
+   static boolean dispatchChain(Counter counter, ByteBuffer buf) {
+      Command cmd = ordinalToEnum.get(buf.getInt());
+      if (cmd == null) {
+         throw new IllegalArgumentException("Unknown encoding of command");
+      }
+
+      if (cmd == Command.PING) {
+         counter.count(cmd);
+      }
+      else if (cmd == Command.CREATE_ROOM) {
+         counter.count(cmd);
+      }
+      else if (cmd == Command.ROOM_JOINED) {
+         counter.count(cmd);
+      }
+      else if (cmd == Command.JOIN_ROOM) {
+         counter.count(cmd);
+      }
+      else if (cmd == Command.ABANDON) {
+         counter.count(cmd);
+      }
+      else if (cmd == Command.REQUEST_LOBBY_DATA) {
+         counter.count(cmd);
+      }
+      else if (cmd == Command.GAME_START) {
+         counter.count(cmd);
+      }
+      else if (cmd == Command.MOVE_LEFT) {
+         counter.count(cmd);
+      }
+      else if (cmd == Command.MOVE_RIGHT) {
+         counter.count(cmd);
+      }
+      else if (cmd == Command.MOVE_DOWN) {
+         counter.count(cmd);
+      }
+      else if (cmd == Command.MOVE_ALL_WAY_DOWN) {
+         counter.count(cmd);
+      }
+      else if (cmd == Command.ROTATE) {
+         counter.count(cmd);
+      }
+      else {
+         return false;
+      }
+      return true;
+   }
+
+   /**
+    * Counts the messages of each command
+    */
+   static class Counter {
+
+      final int[] counts = new int[Command.values().length];
+
+      void count(Command cmd) {
+         counts[cmd.ordinal()]++;
+      }
+   }
+}
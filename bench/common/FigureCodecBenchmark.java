@@ -0,0 +1,120 @@
+package common;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Encoding and decoding of a list of <code>figures</code> figures with the
+ * packed encoding of {@link Codec} against the five ints of protocol version
+ * 1, kept here as {@link #putIntFigureInfos} and {@link #getIntFigureInfos}.
+ * The encoded sizes of both are printed when the trial starts: 3 against 20
+ * bytes a figure, plus the 4 bytes of the count, so 28 against 164 bytes for
+ * the figures of a full room.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FigureCodecBenchmark {
+
+   /** encoded size of a FigureInfo in protocol version 1 */
+   static final int INT_FIGURE_SIZE = 20;
+
+   @Param( { "1", "8" })
+   int figures;
+
+   private List<FigureInfo> list = new ArrayList<FigureInfo>();
+
+   private ByteBuffer packedOut, intsOut, packedIn, intsIn;
+
+   @Setup(Level.Trial)
+   public void setUp() {
+      for (int i = 0; i < figures; i++) {
+         list.add(new FigureInfo(1 + i % 7, 2 + i * 4, 3 - i, i % 4, Palette
+               .getColor(i % Palette.size()), i));
+      }
+
+      packedOut = ByteBuffer.allocate(Codec.sizeOfFigureInfos(list));
+      intsOut = ByteBuffer.allocate(sizeOfIntFigureInfos(list));
+
+      Codec.putFigureInfos(packedOut, list);
+      packedIn = ByteBuffer.wrap(packedOut.array().clone());
+      putIntFigureInfos(intsOut, list);
+      intsIn = ByteBuffer.wrap(intsOut.array().clone());
+
+      System.out.println(figures + " figures: packed " + packedIn.capacity()
+            + " bytes, ints " + intsIn.capacity() + " bytes");
+   }
+
+   @Benchmark
+   public ByteBuffer encodePacked() {
+      packedOut.clear();
+      Codec.putFigureInfos(packedOut, list);
+      return packedOut;
+   }
+
+   @Benchmark
+   public ByteBuffer encodeInts() {
+      intsOut.clear();
+      putIntFigureInfos(intsOut, list);
+      return intsOut;
+   }
+
+   @Benchmark
+   public void decodePacked(Blackhole bh) {
+      packedIn.clear();
+      bh.consume(Codec.getFigureInfos(packedIn));
+   }
+
+   @Benchmark
+   public void decodeInts(Blackhole bh) {
+      intsIn.clear();
+      bh.consume(getIntFigureInfos(intsIn));
+   }
+
+   static int sizeOfIntFigureInfos(List<FigureInfo> figures) {
+      return 4 + INT_FIGURE_SIZE * figures.size();
+   }
+
+   /**
+    * The figure encoding of protocol version 1
+    */
+   static void putIntFigureInfos(ByteBuffer buf, List<FigureInfo> figures) {
+      buf.putInt(figures.size());
+      for (FigureInfo figure : figures) {
+         buf.putInt(figure.getType());
+         buf.putInt(figure.getX());
+         buf.putInt(figure.getY());
+         buf.putInt(figure.getRotation());
+         buf.putInt(figure.getColor());
+      }
+   }
+
+   static List<FigureInfo> getIntFigureInfos(ByteBuffer buf) {
+      int count = buf.getInt();
+      List<FigureInfo> ret = new ArrayList<FigureInfo>(count);
+      for (int i = 0; i < count; i++) {
+         ret.add(new FigureInfo(buf.getInt(), buf.getInt(), buf.getInt(), buf
+               .getInt(), buf.getInt()));
+      }
+      return ret;
+   }
+}
@@ -0,0 +1,104 @@
+package server;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+
+import com.sun.sgs.app.ChannelManager;
+import com.sun.sgs.app.DataManager;
+import com.sun.sgs.app.ManagedObject;
+import com.sun.sgs.app.ManagedReference;
+import com.sun.sgs.app.TaskManager;
+import com.sun.sgs.internal.InternalContext;
+import com.sun.sgs.internal.ManagerLocator;
+
+/**
+ * The smallest AppContext the engine needs outside of a server: a data
+ * manager whose references point straight at the objects. There are no
+ * transactions, bindings, channels or tasks, so only code that creates and
+ * follows references (figures and boards) can run on it.
+ */
+public final class BenchContext implements ManagerLocator {
+
+   private static final BenchContext INSTANCE = new BenchContext();
+
+   private final DataManager dataManager = new DirectDataManager();
+
+   private BenchContext() {
+   }
+
+   /**
+    * Makes <code>AppContext</code> use the bench managers
+    */
+   public static void install() {
+      InternalContext.setManagerLocator(INSTANCE);
+   }
+
+   public DataManager getDataManager() {
+      return dataManager;
+   }
+
+   public ChannelManager getChannelManager() {
+      throw new UnsupportedOperationException("no channels in benchmarks");
+   }
+
+   public TaskManager getTaskManager() {
+      throw new UnsupportedOperationException("no tasks in benchmarks");
+   }
+
+   public <T> T getManager(Class<T> type) {
+      throw new UnsupportedOperationException("no managers in benchmarks");
+   }
+
+   private static class DirectDataManager implements DataManager {
+
+      public <T> ManagedReference<T> createReference(T object) {
+         return new DirectReference<T>(object);
+      }
+
+      public void markForUpdate(Object object) {
+      }
+
+      public ManagedObject getBinding(String name) {
+         throw new UnsupportedOperationException(name);
+      }
+
+      public void setBinding(String name, Object object) {
+         throw new UnsupportedOperationException(name);
+      }
+
+      public void removeBinding(String name) {
+         throw new UnsupportedOperationException(name);
+      }
+
+      public String nextBoundName(String name) {
+         throw new UnsupportedOperationException(name);
+      }
+
+      public void removeObject(Object object) {
+      }
+   }
+
+   private static class DirectReference<T> implements ManagedReference<T>,
+         Serializable {
+
+      private static final long serialVersionUID = 1L;
+
+      private final T object;
+
+      DirectReference(T object) {
+         this.object = object;
+      }
+
+      public T get() {
+         return object;
+      }
+
+      public T getForUpdate() {
+         return object;
+      }
+
+      public BigInteger getId() {
+         return BigInteger.valueOf(System.identityHashCode(object));
+      }
+   }
+}
@@ -0,0 +1,45 @@
+package server;
+
+import java.util.Random;
+
+/**
+ * Boards filled the same way on every run, so results can be compared across
+ * builds
+ */
+final class Boards {
+
+   static final int HEIGHT = 20;
+
+   private Boards() {
+   }
+
+   /**
+    * Returns a board whose <code>rows</code> lowest rows are fixed with one
+    * random hole each
+    */
+   static SquareBoard sparse(int width, int rows, long seed) {
+      Random random = new Random(seed);
+      SquareBoard board = new SquareBoard(width, HEIGHT);
+      for (int y = HEIGHT - rows; y < HEIGHT; y++) {
+         int hole = random.nextInt(width);
+         for (int x = 0; x < width; x++) {
+            if (x != hole) {
+               board.setSquareColor(x, y, SquareBoard.FIXED);
+            }
+         }
+      }
+      return board;
+   }
+
+   /**
+    * Fills the <code>rows</code> lowest rows of <code>board</code> completely,
+    * leaving the rows above as they are
+    */
+   static void fillRows(SquareBoard board, int rows) {
+      for (int y = HEIGHT - rows; y < HEIGHT; y++) {
+         for (int x = 0; x < board.getBoardWidth(); x++) {
+            board.setSquareColor(x, y, SquareBoard.FIXED);
+         }
+      }
+   }
+}
@@ -0,0 +1,357 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import common.BufferPool;
+import common.Codec;
+import common.Commands;
+import common.Delta;
+import common.FigureInfo;
+import common.LobbyDelta;
+import common.Palette;
+import common.PlayerCursor;
+import common.PlayerInfo;
+import common.RoomFilter;
+import common.RoomInfo;
+
+/**
+ * Encoding of every message built by {@link Protocol}, and decoding of the
+ * same messages the way the client reads them. The game messages use a full
+ * room of 8 players, the lobby data 32 players and 8 rooms, the lobby delta a
+ * busy window of 8 players coming and going and 8 rooms changing. The plain
+ * encodings keep their buffers, so they allocate one each time; the
+ * encodeAndRelease ones give it back to the {@link BufferPool}, as the server
+ * does once a message is sent.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProtocolBenchmark {
+
+   private static final int PLAYERS = 8;
+
+   private String name = "player7";
+
+   private PlayerInfo player;
+
+   private List<PlayerInfo> players = new ArrayList<PlayerInfo>();
+
+   private List<FigureInfo> figures = new ArrayList<FigureInfo>();
+
+   private List<Integer> slots = new ArrayList<Integer>();
+
+   private List<String> lobbyPlayers = new ArrayList<String>();
+
+   private LobbyDelta lobbyChanges = new LobbyDelta();
+
+   private List<byte[]> encodedRooms = new ArrayList<byte[]>();
+
+   private ByteBuffer gameStart, newFigure, lobbyData, roomsPage, lobbyDelta,
+         roomCreated, roomJoined, roomJoinedPlayers, roomLeft, delta, drop,
+         gravity, figureSync, gameOver;
+
+   @Setup(Level.Trial)
+   public void setUp() {
+      player = new PlayerInfo(name, Palette.getColor(7));
+      for (int i = 0; i < PLAYERS; i++) {
+         players.add(new PlayerInfo("player" + i, Palette.getColor(i)));
+         figures.add(new FigureInfo(1 + i % 7, 2 + i * 4, 3, i % 4, Palette
+               .getColor(i), i));
+         slots.add(i);
+      }
+
+      for (int i = 0; i < 4 * PLAYERS; i++) {
+         lobbyPlayers.add("player" + i);
+      }
+      for (int i = 0; i < PLAYERS; i++) {
+         RoomInfo room = new RoomInfo(i, PLAYERS, i % 2 == 0);
+         room.setPlayers(new ArrayList<PlayerInfo>(players.subList(0,
+               1 + i)));
+
+         ByteBuffer encoded = ByteBuffer.allocate(Codec.sizeOf(room));
+         Codec.putRoomInfo(encoded, room);
+         encodedRooms.add(encoded.array());
+      }
+
+      for (int i = 0; i < PLAYERS; i++) {
+         lobbyChanges.enteredLobby("player" + (PLAYERS + i));
+         lobbyChanges.leftLobby("player" + (2 * PLAYERS + i));
+         if (i % 2 == 0) {
+            lobbyChanges.roomCreated(i, PLAYERS);
+         }
+         lobbyChanges.joinedRoom(i, players.get(i));
+         if (i % 4 == 3) {
+            lobbyChanges.roomStarted(i);
+         }
+      }
+
+      gameStart = encodeGameStart();
+      newFigure = encodeNewFigure();
+      lobbyData = encodeLobbyData();
+      roomsPage = encodeRoomsPage();
+      lobbyDelta = encodeLobbyDelta();
+      roomCreated = encodeRoomCreated();
+      roomJoined = encodeRoomJoined();
+      roomJoinedPlayers = encodeRoomJoinedPlayers();
+      roomLeft = encodeRoomLeft();
+      delta = encodeDelta();
+      drop = encodeDrop();
+      gravity = encodeGravity();
+      figureSync = encodeFigureSync();
+      gameOver = encodeGameOver();
+   }
+
+   // /////////////////////
+   // Encoding
+   // /////////////////////
+   @Benchmark
+   public ByteBuffer encodeGameStart() {
+      return Protocol.gameStart(8 + (PLAYERS - 1) * 4, figures);
+   }
+
+   @Benchmark
+   public ByteBuffer encodeNewFigure() {
+      return Protocol.newFigure(figures.get(0), figures.get(1));
+   }
+
+   @Benchmark
+   public ByteBuffer encodeLobbyData() {
+      return Protocol.lobbyData(lobbyPlayers, PlayerCursor.NO_MORE_PLAYERS,
+            encodedRooms, RoomFilter.NO_MORE_ROOMS);
+   }
+
+   @Benchmark
+   public ByteBuffer encodeRoomsPage() {
+      return Protocol.roomsPage(encodedRooms, 42);
+   }
+
+   @Benchmark
+   public ByteBuffer encodeLobbyDelta() {
+      return Protocol.lobbyDelta(lobbyChanges);
+   }
+
+   @Benchmark
+   public ByteBuffer encodeRoomCreated() {
+      return Protocol.roomCreated(42, PLAYERS, player);
+   }
+
+   @Benchmark
+   public ByteBuffer encodeRoomJoined() {
+      return Protocol.roomJoined(42, player.getColor(), name);
+   }
+
+   @Benchmark
+   public ByteBuffer encodeRoomJoinedPlayers() {
+      return Protocol.roomJoined(42, player.getColor(), players);
+   }
+
+   @Benchmark
+   public ByteBuffer encodeRoomLeft() {
+      return Protocol.roomLeft(player, figures.get(7));
+   }
+
+   @Benchmark
+   public ByteBuffer encodeRoomFull() {
+      return Protocol.roomFull(42);
+   }
+
+   @Benchmark
+   public ByteBuffer encodeDelta() {
+      return Protocol.delta(17, Delta.ROTATE, 5);
+   }
+
+   @Benchmark
+   public ByteBuffer encodeDrop() {
+      return Protocol.drop(17, 5, 12);
+   }
+
+   @Benchmark
+   public ByteBuffer encodeGravity() {
+      return Protocol.gravity(17, slots);
+   }
+
+   @Benchmark
+   public ByteBuffer encodeFigureSync() {
+      return Protocol.figureSync(17, figures);
+   }
+
+   @Benchmark
+   public ByteBuffer encodeGameOver() {
+      return Protocol.gameOver();
+   }
+
+   @Benchmark
+   public ByteBuffer encodeGameOwner() {
+      return Protocol.gameOwner();
+   }
+
+   // /////////////////////
+   // Encoding with the buffer given back, as the server sends
+   // /////////////////////
+   @Benchmark
+   public int encodeAndReleaseDelta() {
+      return release(Protocol.delta(17, Delta.ROTATE, 5));
+   }
+
+   @Benchmark
+   public int encodeAndReleaseGravity() {
+      return release(Protocol.gravity(17, slots));
+   }
+
+   @Benchmark
+   public int encodeAndReleaseNewFigure() {
+      return release(Protocol.newFigure(figures.get(0), figures.get(1)));
+   }
+
+   private static int release(ByteBuffer message) {
+      int size = message.remaining();
+      BufferPool.release(message);
+      return size;
+   }
+
+   // /////////////////////
+   // Decoding
+   // /////////////////////
+
+   /**
+    * Returns a view of an encoded message positioned after its command, as
+    * handed to the client handlers
+    */
+   private static ByteBuffer body(ByteBuffer message) {
+      ByteBuffer buf = message.duplicate();
+      Commands.decode(buf.getInt());
+      return buf;
+   }
+
+   private static String getString(ByteBuffer buf) {
+      byte[] bytes = new byte[buf.remaining()];
+      buf.get(bytes);
+      return new String(bytes);
+   }
+
+   @Benchmark
+   public List<FigureInfo> decodeGameStart() {
+      ByteBuffer buf = body(gameStart);
+      buf.getInt();
+      return Codec.getFigureInfos(buf);
+   }
+
+   @Benchmark
+   public void decodeNewFigure(Blackhole bh) {
+      ByteBuffer buf = body(newFigure);
+      bh.consume(Codec.getFigureInfo(buf));
+      bh.consume(Codec.getFigureInfo(buf));
+   }
+
+   @Benchmark
+   public void decodeLobbyData(Blackhole bh) {
+      ByteBuffer buf = body(lobbyData);
+      buf.get();
+      bh.consume(Codec.getPlayerNames(buf));
+      bh.consume(Codec.getPlayerCursor(buf));
+      bh.consume(Codec.getRoomInfos(buf));
+      bh.consume(buf.getLong());
+   }
+
+   @Benchmark
+   public void decodeRoomsPage(Blackhole bh) {
+      ByteBuffer buf = body(roomsPage);
+      bh.consume(Codec.getRoomInfos(buf));
+      bh.consume(buf.getLong());
+   }
+
+   @Benchmark
+   public LobbyDelta decodeLobbyDelta() {
+      return Codec.getLobbyDelta(body(lobbyDelta));
+   }
+
+   @Benchmark
+   public PlayerInfo decodeRoomCreated() {
+      ByteBuffer buf = body(roomCreated);
+      buf.getLong();
+      buf.getInt();
+      int color = buf.getInt();
+      return new PlayerInfo(getString(buf), color);
+   }
+
+   @Benchmark
+   public PlayerInfo decodeRoomJoined() {
+      ByteBuffer buf = body(roomJoined);
+      buf.getLong();
+      int color = buf.getInt();
+      return new PlayerInfo(getString(buf), color);
+   }
+
+   @Benchmark
+   public List<PlayerInfo> decodeRoomJoinedPlayers() {
+      ByteBuffer buf = body(roomJoinedPlayers);
+      buf.getLong();
+      buf.getInt();
+      return Codec.getPlayerInfos(buf);
+   }
+
+   @Benchmark
+   public void decodeRoomLeft(Blackhole bh) {
+      ByteBuffer buf = body(roomLeft);
+      bh.consume(Codec.getPlayerInfo(buf));
+      bh.consume(Codec.getFigureInfo(buf));
+   }
+
+   @Benchmark
+   public int decodeDelta() {
+      ByteBuffer buf = body(delta);
+      buf.get();
+      byte delta = buf.get();
+      return Delta.getOp(delta) << 3 | Delta.getSlot(delta);
+   }
+
+   @Benchmark
+   public int decodeDrop() {
+      ByteBuffer buf = body(drop);
+      buf.get();
+      byte delta = buf.get();
+      return Delta.getSlot(delta) << 8 | (buf.get() & 0xFF);
+   }
+
+   @Benchmark
+   public int[] decodeGravity() {
+      ByteBuffer buf = body(gravity);
+      buf.get();
+      int[] slots = new int[buf.get() & 0xFF];
+      for (int i = 0; i < slots.length; i++) {
+         slots[i] = buf.get();
+      }
+      return slots;
+   }
+
+   @Benchmark
+   public List<FigureInfo> decodeFigureSync() {
+      ByteBuffer buf = body(figureSync);
+      buf.get();
+      return Codec.getFigureInfos(buf);
+   }
+
+   @Benchmark
+   public ByteBuffer decodeGameOver() {
+      return body(gameOver);
+   }
+}
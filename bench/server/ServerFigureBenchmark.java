@@ -0,0 +1,97 @@
+package server;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Move validation and hard drops of a {@link ServerFigure} of every type,
+ * above a stack of 8 rows with one hole each.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ServerFigureBenchmark {
+
+   private static final int TYPES = 7;
+
+   @Param( { "8", "12", "16", "20", "24", "28", "32", "36" })
+   int width;
+
+   /** one board per figure type, so the figures don't collide */
+   private SquareBoard[] boards = new SquareBoard[TYPES];
+
+   private ServerFigure[] figures = new ServerFigure[TYPES];
+
+   private int next;
+
+   @Setup(Level.Trial)
+   public void setUp() {
+      BenchContext.install();
+
+      for (int i = 0; i < TYPES; i++) {
+         boards[i] = Boards.sparse(width, 8, 42 + i);
+         figures[i] = new ServerFigure(i + 1);
+         figures[i].attach(boards[i], width / 2);
+         // leave room to move in every direction
+         figures[i].moveDown();
+         figures[i].moveDown();
+      }
+   }
+
+   /**
+    * The four checks made for the player moves
+    */
+   @Benchmark
+   public int validateMoves() {
+      ServerFigure figure = figures[next++ % TYPES];
+
+      int valid = 0;
+      if (figure.canMoveLeft()) {
+         valid |= 1;
+      }
+      if (figure.canMoveRight()) {
+         valid |= 2;
+      }
+      if (figure.canMoveDown()) {
+         valid |= 4;
+      }
+      if (figure.canRotate()) {
+         valid |= 8;
+      }
+      return valid;
+   }
+
+   @Benchmark
+   public int dropDistance() {
+      return figures[next++ % TYPES].getDropDistance();
+   }
+
+   /**
+    * A figure taken off the board, entering it again and hard dropped. The
+    * dropped figure is taken off by the next call on its board.
+    */
+   @Benchmark
+   public int attachAndDrop() {
+      int i = next++ % TYPES;
+      ServerFigure figure = figures[i];
+
+      figure.clear();
+      figure.attach(boards[i], width / 2);
+      return figure.drop();
+   }
+}
@@ -0,0 +1,119 @@
+package server;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Collision checks, drop distances and line clearing of {@link SquareBoard}
+ * on the board widths of 1 to 8 players.
+ * 
+ * A <code>full</code> board has its 16 lowest rows completely filled, a
+ * <code>sparse</code> one has a hole in each of those rows except every
+ * fourth, so clearing has to merge the rows left around the removed ones.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SquareBoardBenchmark {
+
+   private static final int STACK = 16;
+
+   /** number of precomputed positions, a power of 2 */
+   private static final int POSITIONS = 256;
+
+   @Param( { "8", "12", "16", "20", "24", "28", "32", "36" })
+   int width;
+
+   @Param( { "full", "sparse" })
+   String fill;
+
+   private SquareBoard stack;
+
+   private FigureShape[] shapes = new FigureShape[POSITIONS];
+
+   private int[] xs = new int[POSITIONS];
+
+   private int[] ys = new int[POSITIONS];
+
+   private int next;
+
+   @Setup(Level.Trial)
+   public void setUp() {
+      stack = newBoard(width, fill);
+
+      // random shapes inside the board, on the rows just above the stack
+      Random random = new Random(42);
+      for (int i = 0; i < POSITIONS; i++) {
+         FigureShape shape = FigureShape.get(1 + random.nextInt(7), random
+               .nextInt(4));
+         shapes[i] = shape;
+         xs[i] = random.nextInt(width - shape.getMaxX() + shape.getMinX())
+               - shape.getMinX();
+         ys[i] = Boards.HEIGHT - STACK - 4 + random.nextInt(4);
+      }
+   }
+
+   static SquareBoard newBoard(int width, String fill) {
+      if (fill.equals("full")) {
+         SquareBoard board = new SquareBoard(width, Boards.HEIGHT);
+         Boards.fillRows(board, STACK);
+         return board;
+      }
+      else {
+         SquareBoard board = Boards.sparse(width, STACK, 42);
+         for (int y = Boards.HEIGHT - STACK; y < Boards.HEIGHT; y += 4) {
+            for (int x = 0; x < width; x++) {
+               board.setSquareColor(x, y, SquareBoard.FIXED);
+            }
+         }
+         return board;
+      }
+   }
+
+   /**
+    * A board rebuilt before every call, since clearing lines changes it
+    */
+   @State(Scope.Thread)
+   public static class Clearing {
+
+      SquareBoard board;
+
+      @Setup(Level.Invocation)
+      public void setUp(SquareBoardBenchmark bench) {
+         board = newBoard(bench.width, bench.fill);
+      }
+   }
+
+   @Benchmark
+   public boolean canPlace() {
+      int i = next++ & (POSITIONS - 1);
+      return stack.canPlace(shapes[i], xs[i], ys[i], null, 0, 0);
+   }
+
+   @Benchmark
+   public int dropDistance() {
+      int i = next++ & (POSITIONS - 1);
+      return stack.getDropDistance(shapes[i], xs[i], 0);
+   }
+
+   @Benchmark
+   public int removeFullLines(Clearing clearing) {
+      return clearing.board.removeFullLines();
+   }
+}
@@ -1,22 +1,28 @@
 package client;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.net.PasswordAuthentication;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 
 import com.sun.sgs.client.ClientChannel;
 import com.sun.sgs.client.ClientChannelListener;
 import com.sun.sgs.client.simple.SimpleClient;
 import com.sun.sgs.client.simple.SimpleClientListener;
+import common.BufferPool;
+import common.Codec;
+import common.CommandHandler;
+import common.CommandTable;
 import common.Commands;
+import common.Delta;
 import common.FigureInfo;
-import common.LobbyData;
+import common.PlayerCursor;
 import common.PlayerInfo;
+import common.RoomFilter;
+import common.RoomInfo;
 import common.Commands.Command;
 
 public class ConnectionHandler implements SimpleClientListener,
@@ -41,6 +47,9 @@ public class ConnectionHandler implements SimpleClientListener,
    // the current Channel I'm into (lobby or game)
    private ClientChannel channel;
 
+   // sequence number expected on the next room delta, -1 if unknown
+   private int expectedSeq;
+
    public ConnectionHandler() {
       client = new SimpleClient(this);
    }
@@ -72,6 +81,7 @@ public class ConnectionHandler implements SimpleClientListener,
       this.loginHandler = null;
       this.lobbyHandler = null;
       this.gameHandler = gameHandler;
+      this.expectedSeq = -1;
    }
 
    /**
@@ -121,38 +131,8 @@ public class ConnectionHandler implements SimpleClientListener,
    }
 
    @Override
-   @SuppressWarnings("unchecked")
    public void receivedMessage(ByteBuffer buf) {
-      int encodedCmd = buf.getInt();
-      Command cmd = Commands.decode(encodedCmd);
-
-      if (cmd == Command.LOBBY_DATA) {
-         try {
-            LobbyData data = (LobbyData) getObject(buf);
-            lobbyHandler.setLobbyData(data.getPlayers(), data.getRooms());
-         }
-         catch (IOException e) {
-            log(e.getMessage());
-         }
-      }
-      else if (cmd == Command.ROOM_JOINED) {
-         // I've successfully joined a room
-         long id = buf.getLong();
-         int color = buf.getInt();
-         Collection<PlayerInfo> currentPlayers = new ArrayList<PlayerInfo>();
-         try {
-            currentPlayers = (Collection<PlayerInfo>) getObject(buf);
-         }
-         catch (IOException e) {
-            log(e.getMessage());
-         }
-
-         // FIXME exception if double-joined
-         lobbyHandler.roomJoined(id, color, currentPlayers);
-      }
-      else if (cmd == Command.GAME_OWNER) {
-         gameHandler.setGameOwner();
-      }
+      SESSION_COMMANDS.dispatch(this, buf);
    }
 
    @Override
@@ -183,60 +163,6 @@ public class ConnectionHandler implements SimpleClientListener,
       }
    }
 
-   /**
-    * Retrieves a serialized object from the given buffer.
-    * 
-    * @param data
-    *           the encoded object to retrieve
-    */
-   private static Object getObject(ByteBuffer data) throws IOException {
-      try {
-         byte[] bytes = new byte[data.remaining()];
-         data.get(bytes);
-
-         ByteArrayInputStream bin = new ByteArrayInputStream(bytes);
-         ObjectInputStream ois = new ObjectInputStream(bin);
-         return ois.readObject();
-      }
-      catch (ClassNotFoundException cnfe) {
-         throw new IOException(cnfe.getMessage());
-      }
-   }
-
-   /**
-    * Retrieves a serialized object from the given buffer. The first int is the
-    * length of the object
-    * 
-    * @param data
-    *           the encoded object to retrieve
-    */
-   private static Object getPrefixedObject(ByteBuffer data) throws IOException {
-      try {
-         int length = data.getInt();
-         byte[] bytes = new byte[length];
-         data.get(bytes);
-
-         ByteArrayInputStream bin = new ByteArrayInputStream(bytes);
-         ObjectInputStream ois = new ObjectInputStream(bin);
-         return ois.readObject();
-      }
-      catch (ClassNotFoundException cnfe) {
-         throw new IOException(cnfe.getMessage());
-      }
-   }
-
-   /**
-    * Retrieves a FigureInfo object from the given buffer.
-    */
-   private static FigureInfo getFigureInfo(ByteBuffer data) throws IOException {
-      int type = data.getInt();
-      int x = data.getInt();
-      int y = data.getInt();
-      int rotation = data.getInt();
-      int color = data.getInt();
-      return new FigureInfo(type, x, y, rotation, color);
-   }
-
    // //////////////////////
    // ClientChannelListener
    // //////////////////////
@@ -250,149 +176,296 @@ public class ConnectionHandler implements SimpleClientListener,
    }
 
    @Override
-   @SuppressWarnings("unchecked")
    public void receivedMessage(ClientChannel ch, ByteBuffer buf) {
-      int encodedCmd = buf.getInt();
-      Command cmd = Commands.decode(encodedCmd);
-
-      // COMMON MESSAGES
-      if (cmd == Command.CHAT) {
-         getBaseHandler().incomingChat(getString(buf));
+      if (ch.getName().equals("lobbyChannel")) {
+         LOBBY_COMMANDS.dispatch(this, buf);
       }
+      else if (ch.getName().startsWith("room")) {
+         ROOM_COMMANDS.dispatch(this, buf);
+      }
+   }
 
-      // LOBBY MESSAGES
-      if (ch.getName().equals("lobbyChannel") && lobbyHandler != null) {
-         if (cmd == Command.USER_JOINED) {
-            lobbyHandler.addPlayer(getString(buf));
-         }
-         else if (cmd == Command.USER_LEFT) {
-            lobbyHandler.removePlayer(getString(buf));
+   // //////////////////////
+   // Command handlers
+   // //////////////////////
+
+   /** messages sent to this client only */
+   private static final CommandTable<ConnectionHandler> SESSION_COMMANDS = new CommandTable<ConnectionHandler>();
+
+   /** messages sent to the lobby channel */
+   private static final CommandTable<ConnectionHandler> LOBBY_COMMANDS = new CommandTable<ConnectionHandler>();
+
+   /** messages sent to a room channel */
+   private static final CommandTable<ConnectionHandler> ROOM_COMMANDS = new CommandTable<ConnectionHandler>();
+
+   static {
+      SESSION_COMMANDS.register(Command.LOBBY_DATA,
+            new CommandHandler<ConnectionHandler>() {
+               @Override
+               public void handle(ConnectionHandler handler, ByteBuffer buf) {
+                  int version = buf.get();
+                  if (version != Codec.VERSION) {
+                     handler.log("server speaks protocol version " + version
+                           + ", expected " + Codec.VERSION);
+                  }
+                  else {
+                     Set<String> players = Codec.getPlayerNames(buf);
+                     PlayerCursor nextPlayers = Codec.getPlayerCursor(buf);
+                     List<RoomInfo> rooms = Codec.getRoomInfos(buf);
+                     long nextCursor = buf.getLong();
+
+                     handler.lobbyHandler.setLobbyData(players, nextPlayers);
+                     handler.lobbyHandler.roomsPage(rooms, nextCursor);
+                  }
+               }
+            });
+
+      SESSION_COMMANDS.register(Command.PLAYERS_PAGE,
+            new CommandHandler<ConnectionHandler>() {
+               @Override
+               public void handle(ConnectionHandler handler, ByteBuffer buf) {
+                  Set<String> players = Codec.getPlayerNames(buf);
+                  PlayerCursor nextCursor = Codec.getPlayerCursor(buf);
+
+                  handler.lobbyHandler.playersPage(players, nextCursor);
+               }
+            });
+
+      SESSION_COMMANDS.register(Command.ROOMS_PAGE,
+            new CommandHandler<ConnectionHandler>() {
+               @Override
+               public void handle(ConnectionHandler handler, ByteBuffer buf) {
+                  List<RoomInfo> rooms = Codec.getRoomInfos(buf);
+                  long nextCursor = buf.getLong();
+
+                  handler.lobbyHandler.roomsPage(rooms, nextCursor);
+               }
+            });
+
+      SESSION_COMMANDS.register(Command.ROOM_JOINED,
+            new CommandHandler<ConnectionHandler>() {
+               @Override
+               public void handle(ConnectionHandler handler, ByteBuffer buf) {
+                  // I've successfully joined a room
+                  long id = buf.getLong();
+                  int color = buf.getInt();
+                  Collection<PlayerInfo> currentPlayers = Codec
+                        .getPlayerInfos(buf);
+
+                  // FIXME exception if double-joined
+                  handler.lobbyHandler.roomJoined(id, color, currentPlayers);
+               }
+            });
+
+      SESSION_COMMANDS.register(Command.GAME_OWNER,
+            new CommandHandler<ConnectionHandler>() {
+               @Override
+               public void handle(ConnectionHandler handler, ByteBuffer buf) {
+                  handler.gameHandler.setGameOwner();
+               }
+            });
+
+      // COMMON MESSAGES
+      CommandHandler<ConnectionHandler> chat = new CommandHandler<ConnectionHandler>() {
+         @Override
+         public void handle(ConnectionHandler handler, ByteBuffer buf) {
+            handler.getBaseHandler().incomingChat(handler.getString(buf));
          }
-         else if (cmd == Command.ROOM_CREATED) {
+      };
+      LOBBY_COMMANDS.register(Command.CHAT, chat);
+      ROOM_COMMANDS.register(Command.CHAT, chat);
+
+      // MIXED MESSAGES
+      CommandHandler<ConnectionHandler> roomJoined = new CommandHandler<ConnectionHandler>() {
+         @Override
+         public void handle(ConnectionHandler handler, ByteBuffer buf) {
+            // a user joined a room
+            // we could be in the lobby or in the game
             long id = buf.getLong();
-            int maxPlayers = buf.getInt();
             int color = buf.getInt();
-            String name = getString(buf);
+            String name = handler.getString(buf);
+            PlayerInfo player = new PlayerInfo(name, color);
 
-            lobbyHandler.roomCreated(id, maxPlayers,
-                  new PlayerInfo(name, color));
-         }
-         else if (cmd == Command.ROOM_DROPPED) {
-            long id = buf.getLong();
-            lobbyHandler.roomDropped(id);
-         }
-         else if (cmd == Command.ROOM_FULL) {
-            long id = buf.getLong();
-            lobbyHandler.roomFull(id);
+            if (handler.lobbyHandler != null) {
+               handler.lobbyHandler.roomJoined(id, player);
+            }
+            if (handler.gameHandler != null) {
+               handler.gameHandler.roomJoined(player);
+            }
          }
-         else if (cmd == Command.GAME_START) {
+      };
+      LOBBY_COMMANDS.register(Command.ROOM_JOINED, roomJoined);
+      ROOM_COMMANDS.register(Command.ROOM_JOINED, roomJoined);
+
+      // the creator of a room is told directly, the rest of the lobby
+      // through the next lobby delta
+      LobbyCommand roomCreated = new LobbyCommand() {
+         @Override
+         void handle(LobbyHandler lobby, ConnectionHandler handler,
+               ByteBuffer buf) {
             long id = buf.getLong();
-            lobbyHandler.gameStarted(id);
+            int maxPlayers = buf.getInt();
+            int color = buf.getInt();
+            String name = handler.getString(buf);
+
+            lobby.roomCreated(id, maxPlayers, new PlayerInfo(name, color));
          }
-      }
+      };
+      SESSION_COMMANDS.register(Command.ROOM_CREATED, roomCreated);
+      LOBBY_COMMANDS.register(Command.ROOM_CREATED, roomCreated);
 
-      // MIXED MESSAGES
-      if (cmd == Command.ROOM_JOINED) {
-         // a user joined a room
-         // we could be in the lobby or in the game
-         long id = buf.getLong();
-         int color = buf.getInt();
-         String name = getString(buf);
-         PlayerInfo player = new PlayerInfo(name, color);
-
-         if (lobbyHandler != null) {
-            lobbyHandler.roomJoined(id, player);
+      // LOBBY MESSAGES
+      LOBBY_COMMANDS.register(Command.LOBBY_DELTA, new LobbyCommand() {
+         @Override
+         void handle(LobbyHandler lobby, ConnectionHandler handler,
+               ByteBuffer buf) {
+            lobby.lobbyDelta(Codec.getLobbyDelta(buf));
          }
-         if (gameHandler != null) {
-            gameHandler.roomJoined(player);
+      });
+
+      LOBBY_COMMANDS.register(Command.ROOM_FULL, new LobbyCommand() {
+         @Override
+         void handle(LobbyHandler lobby, ConnectionHandler handler,
+               ByteBuffer buf) {
+            long id = buf.getLong();
+            lobby.roomFull(id);
          }
-      }
+      });
 
       // GAME MESSAGES
-      if (ch.getName().startsWith("room") && gameHandler != null) {
-         if (cmd == Command.GAME_START) {
+      ROOM_COMMANDS.register(Command.GAME_START, new GameCommand() {
+         @Override
+         void handle(GameHandler game, ConnectionHandler handler,
+               ByteBuffer buf) {
             // game on!
-            try {
-               int boardWidth = buf.getInt();
-               Collection<FigureInfo> figures = (Collection<FigureInfo>) getObject(buf);
-               gameHandler.gameStart(boardWidth, figures);
-            }
-            catch (IOException e) {
-               log(e.getMessage());
-            }
-
+            int boardWidth = buf.getInt();
+            Collection<FigureInfo> figures = Codec.getFigureInfos(buf);
+            game.gameStart(boardWidth, figures);
          }
-         else if (cmd == Command.ROOM_LEFT) {
-            try {
-               PlayerInfo player = (PlayerInfo) getPrefixedObject(buf);
-               FigureInfo figure = getFigureInfo(buf);
-               gameHandler.roomLeft(player, figure);
-            }
-            catch (IOException e) {
-               log(e.getMessage());
-            }
+      });
+
+      ROOM_COMMANDS.register(Command.ROOM_LEFT, new GameCommand() {
+         @Override
+         void handle(GameHandler game, ConnectionHandler handler,
+               ByteBuffer buf) {
+            PlayerInfo player = Codec.getPlayerInfo(buf);
+            FigureInfo figure = Codec.getFigureInfo(buf);
+            game.roomLeft(player, figure);
          }
-         else if (cmd == Command.NEW_FIGURE) {
-            try {
-               FigureInfo oldF = getFigureInfo(buf);
-               FigureInfo newF = getFigureInfo(buf);
-               gameHandler.newFigure(oldF, newF);
-            }
-            catch (IOException e) {
-               log(e.getMessage());
-            }
+      });
+
+      ROOM_COMMANDS.register(Command.NEW_FIGURE, new GameCommand() {
+         @Override
+         void handle(GameHandler game, ConnectionHandler handler,
+               ByteBuffer buf) {
+            FigureInfo oldF = Codec.getFigureInfo(buf);
+            FigureInfo newF = Codec.getFigureInfo(buf);
+            game.newFigure(oldF, newF);
          }
-         else if (cmd == Command.MOVE_LEFT) {
-            try {
-               FigureInfo figure = getFigureInfo(buf);
-               gameHandler.moveLeft(figure);
+      });
+
+      ROOM_COMMANDS.register(Command.DELTA, new GameCommand() {
+         @Override
+         void handle(GameHandler game, ConnectionHandler handler,
+               ByteBuffer buf) {
+            handler.checkSeq(buf.get());
+            byte delta = buf.get();
+            int op = Delta.getOp(delta);
+            int slot = Delta.getSlot(delta);
+
+            if (op == Delta.LEFT) {
+               game.moveLeft(slot);
             }
-            catch (IOException e) {
-               log(e.getMessage());
+            else if (op == Delta.RIGHT) {
+               game.moveRight(slot);
             }
-         }
-         else if (cmd == Command.MOVE_RIGHT) {
-            try {
-               FigureInfo figure = getFigureInfo(buf);
-               gameHandler.moveRight(figure);
+            else if (op == Delta.DOWN) {
+               game.moveDown(slot);
             }
-            catch (IOException e) {
-               log(e.getMessage());
+            else if (op == Delta.ROTATE) {
+               game.rotate(slot);
             }
-         }
-         else if (cmd == Command.MOVE_DOWN) {
-            try {
-               FigureInfo figure = getFigureInfo(buf);
-               gameHandler.moveDown(figure);
+            else if (op == Delta.DROP) {
+               game.moveAllWayDown(slot, buf.get() & 0xFF);
             }
-            catch (IOException e) {
-               log(e.getMessage());
+         }
+      });
+
+      ROOM_COMMANDS.register(Command.GRAVITY, new GameCommand() {
+         @Override
+         void handle(GameHandler game, ConnectionHandler handler,
+               ByteBuffer buf) {
+            handler.checkSeq(buf.get());
+            int[] slots = new int[buf.get() & 0xFF];
+            for (int i = 0; i < slots.length; i++) {
+               slots[i] = buf.get();
             }
+            game.gravity(slots);
+         }
+      });
+
+      ROOM_COMMANDS.register(Command.FIGURE_SYNC, new GameCommand() {
+         @Override
+         void handle(GameHandler game, ConnectionHandler handler,
+               ByteBuffer buf) {
+            handler.checkSeq(buf.get());
+            game.syncFigures(Codec.getFigureInfos(buf));
          }
-         else if (cmd == Command.MOVE_ALL_WAY_DOWN) {
-            try {
-               FigureInfo current = getFigureInfo(buf);
-               FigureInfo newPos = getFigureInfo(buf);
+      });
 
-               gameHandler.moveAllWayDown(current, newPos);
-            }
-            catch (IOException e) {
-               log(e.getMessage());
-            }
+      ROOM_COMMANDS.register(Command.GAME_OVER, new GameCommand() {
+         @Override
+         void handle(GameHandler game, ConnectionHandler handler,
+               ByteBuffer buf) {
+            game.gameOver();
          }
-         else if (cmd == Command.ROTATE) {
-            try {
-               FigureInfo figure = getFigureInfo(buf);
-               gameHandler.rotate(figure);
-            }
-            catch (IOException e) {
-               log(e.getMessage());
-            }
+      });
+   }
+
+   /**
+    * A lobby channel message, ignored if the client is not in the lobby
+    */
+   private static abstract class LobbyCommand implements
+         CommandHandler<ConnectionHandler> {
+
+      @Override
+      public void handle(ConnectionHandler handler, ByteBuffer buf) {
+         if (handler.lobbyHandler != null) {
+            handle(handler.lobbyHandler, handler, buf);
          }
-         else if (cmd == Command.GAME_OVER) {
-            gameHandler.gameOver();
+      }
+
+      abstract void handle(LobbyHandler lobby, ConnectionHandler handler,
+            ByteBuffer buf);
+   }
+
+   /**
+    * A room channel message, ignored if the client is not in a game
+    */
+   private static abstract class GameCommand implements
+         CommandHandler<ConnectionHandler> {
+
+      @Override
+      public void handle(ConnectionHandler handler, ByteBuffer buf) {
+         if (handler.gameHandler != null) {
+            handle(handler.gameHandler, handler, buf);
          }
       }
+
+      abstract void handle(GameHandler game, ConnectionHandler handler,
+            ByteBuffer buf);
+   }
+
+   /**
+    * Checks the sequence number of a room delta. A gap means the local figures
+    * drifted, they will be fixed by the next figure sync
+    */
+   private void checkSeq(byte seq) {
+      int actual = seq & 0xFF;
+      if (expectedSeq >= 0 && actual != expectedSeq) {
+         log("expected delta " + expectedSeq + ", got " + actual);
+      }
+      expectedSeq = Delta.next(actual);
    }
 
    private String getString(ByteBuffer buf) {
@@ -404,6 +477,8 @@ public class ConnectionHandler implements SimpleClientListener,
    //
    // Send Methods
    // 
+   // the messages are built in buffers of the BufferPool, given back once
+   // the client has copied them
    private void send(ByteBuffer buff) {
       buff.rewind();
       try {
@@ -413,6 +488,7 @@ public class ConnectionHandler implements SimpleClientListener,
       catch (IOException e) {
          log(e.getMessage());
       }
+      BufferPool.release(buff);
    }
 
    private void channelSend(ByteBuffer buff) {
@@ -429,10 +505,11 @@ public class ConnectionHandler implements SimpleClientListener,
       else {
          log("trying to channelSend on a null channel");
       }
+      BufferPool.release(buff);
    }
 
    public void sendCreateRoom(int maxPlayers) {
-      ByteBuffer buff = ByteBuffer.allocate(8);
+      ByteBuffer buff = BufferPool.acquire(8);
       buff.putInt(Commands.encode(Command.CREATE_ROOM));
       buff.putInt(maxPlayers);
 
@@ -440,7 +517,7 @@ public class ConnectionHandler implements SimpleClientListener,
    }
 
    public void sendRoomJoined(long id) {
-      ByteBuffer buff = ByteBuffer.allocate(12);
+      ByteBuffer buff = BufferPool.acquire(12);
       buff.putInt(Commands.encode(Command.ROOM_JOINED));
       buff.putLong(id);
 
@@ -448,7 +525,7 @@ public class ConnectionHandler implements SimpleClientListener,
    }
 
    public void sendChat(String msg) {
-      ByteBuffer buff = ByteBuffer.allocate(4 + msg.length());
+      ByteBuffer buff = BufferPool.acquire(4 + msg.length());
       buff.putInt(Commands.encode(Command.CHAT));
       buff.put(msg.getBytes());
 
@@ -456,21 +533,56 @@ public class ConnectionHandler implements SimpleClientListener,
    }
 
    public void sendAbandon() {
-      ByteBuffer buff = ByteBuffer.allocate(4);
+      ByteBuffer buff = BufferPool.acquire(4);
       buff.putInt(Commands.encode(Command.ABANDON));
 
       send(buff);
    }
 
    public void sendRequestLobbyData() {
-      ByteBuffer buff = ByteBuffer.allocate(4);
+      ByteBuffer buff = BufferPool.acquire(4);
       buff.putInt(Commands.encode(Command.REQUEST_LOBBY_DATA));
 
       send(buff);
    }
 
+   /**
+    * Requests a page of the players
+    * 
+    * @param cursor
+    *           the cursor received with the previous page
+    */
+   public void sendRequestPlayers(PlayerCursor cursor) {
+      ByteBuffer buff = BufferPool.acquire(4 + Codec.sizeOf(cursor));
+      buff.putInt(Commands.encode(Command.REQUEST_PLAYERS));
+      Codec.putPlayerCursor(buff, cursor);
+
+      send(buff);
+   }
+
+   /**
+    * Requests a page of the rooms
+    * 
+    * @param filter
+    *           the {@link RoomFilter} flags
+    * @param cursor
+    *           {@link RoomFilter#FIRST_PAGE}, or the cursor received with the
+    *           previous page
+    * @param pageSize
+    *           the rooms wanted
+    */
+   public void sendRequestRooms(int filter, long cursor, int pageSize) {
+      ByteBuffer buff = BufferPool.acquire(20);
+      buff.putInt(Commands.encode(Command.REQUEST_ROOMS));
+      buff.putInt(filter);
+      buff.putLong(cursor);
+      buff.putInt(pageSize);
+
+      send(buff);
+   }
+
    public void sendJoinRoom(ClientRoom r) {
-      ByteBuffer buff = ByteBuffer.allocate(12);
+      ByteBuffer buff = BufferPool.acquire(12);
       buff.putInt(Commands.encode(Command.JOIN_ROOM));
       buff.putLong(r.getId());
 
@@ -478,42 +590,42 @@ public class ConnectionHandler implements SimpleClientListener,
    }
 
    public void sendGameStart() {
-      ByteBuffer buff = ByteBuffer.allocate(4);
+      ByteBuffer buff = BufferPool.acquire(4);
       buff.putInt(Commands.encode(Command.GAME_START));
 
       send(buff);
    }
 
    public void sendMoveLeft() {
-      ByteBuffer buff = ByteBuffer.allocate(4);
+      ByteBuffer buff = BufferPool.acquire(4);
       buff.putInt(Commands.encode(Command.MOVE_LEFT));
 
       send(buff);
    }
 
    public void sendMoveRight() {
-      ByteBuffer buff = ByteBuffer.allocate(4);
+      ByteBuffer buff = BufferPool.acquire(4);
       buff.putInt(Commands.encode(Command.MOVE_RIGHT));
 
       send(buff);
    }
 
    public void sendMoveDown() {
-      ByteBuffer buff = ByteBuffer.allocate(4);
+      ByteBuffer buff = BufferPool.acquire(4);
       buff.putInt(Commands.encode(Command.MOVE_DOWN));
 
       send(buff);
    }
 
    public void sendMoveAllWayDown() {
-      ByteBuffer buff = ByteBuffer.allocate(4);
+      ByteBuffer buff = BufferPool.acquire(4);
       buff.putInt(Commands.encode(Command.MOVE_ALL_WAY_DOWN));
 
       send(buff);
    }
 
    public void sendRotate() {
-      ByteBuffer buff = ByteBuffer.allocate(4);
+      ByteBuffer buff = BufferPool.acquire(4);
       buff.putInt(Commands.encode(Command.ROTATE));
 
       send(buff);
@@ -522,7 +634,7 @@ public class ConnectionHandler implements SimpleClientListener,
    public void sendPingMessage() {
       // send ping only if we haven't send anything for a while
       if (System.currentTimeMillis() - msgTimeStamp > PING_TIMEOUT) {
-         ByteBuffer buff = ByteBuffer.allocate(4);
+         ByteBuffer buff = BufferPool.acquire(4);
          buff.putInt(Commands.encode(Command.PING));
          send(buff);
       }
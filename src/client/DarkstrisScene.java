@@ -18,6 +18,7 @@ import pulpcore.sprite.FilledSprite;
 import pulpcore.sprite.Label;
 import pulpcore.sprite.Sprite;
 
+import common.Delta;
 import common.FigureInfo;
 import common.PlayerInfo;
 
@@ -57,6 +58,9 @@ public class DarkstrisScene extends PingScene implements GameHandler,
 
    private BoardSprite board;
 
+   /** the current figure of each room slot (null if the slot has none) */
+   private Figure[] figures = new Figure[Delta.MAX_SLOTS];
+
    /**
     * The game level. The level will be increased for every 20 lines removed
     * from the square board.
@@ -69,16 +73,6 @@ public class DarkstrisScene extends PingScene implements GameHandler,
     */
    private int score = 0;
 
-   /**
-    * Time passed since last tick
-    */
-   private int currentTime;
-
-   /**
-    * Length of current tick, it gets shorter on harder levels
-    */
-   private int currentTick;
-
    /** Timers to delay the button presses */
    private int delayLeft, delayRight, delayDown;
 
@@ -125,8 +119,6 @@ public class DarkstrisScene extends PingScene implements GameHandler,
       this.delayRight = 0;
       this.delayDown = 0;
 
-      this.currentTick = 1000;
-
       this.playerLabels = new ArrayList<Label>();
 
       // initialize player label locations
@@ -200,13 +192,6 @@ public class DarkstrisScene extends PingScene implements GameHandler,
       }
 
       if (inGame) {
-         this.currentTime += elapsedTime;
-
-         if (currentTime >= currentTick) {
-            handleTimer();
-            currentTime = 0;
-         }
-
          // update key delays
          if (delayLeft > 0) {
             delayLeft -= elapsedTime;
@@ -299,12 +284,11 @@ public class DarkstrisScene extends PingScene implements GameHandler,
    }
 
    /**
-    * Handles a level modification event. This will modify the level label and
-    * adjust the thread speed.
+    * Handles a level modification event. This will modify the level label (the
+    * speed is adjusted by the server gravity).
     */
    private void handleLevelModification() {
       levelLabel.setText("Level: " + level);
-      currentTick *= 0.8;
    }
 
    /**
@@ -314,18 +298,6 @@ public class DarkstrisScene extends PingScene implements GameHandler,
       scoreLabel.setText("Score: " + score);
    }
 
-   /**
-    * Handles a timer event. This will normally move the figure down one step,
-    * but when a figure has landed or isn't ready other events will be launched.
-    * This method is synchronized to avoid race conditions with other
-    * asynchronous events (keyboard and mouse).
-    */
-   private void handleTimer() {
-      if (inGame) {
-         connection.sendMoveDown();
-      }
-   }
-
    public void log(final String str) {
       invokeLater(new Runnable() {
          @Override
@@ -370,6 +342,7 @@ public class DarkstrisScene extends PingScene implements GameHandler,
                Figure fig = new Figure(figInfo);
                fig.attach(board, figInfo.getX(), figInfo.getY());
                fig.clear();
+               figures[figInfo.getSlot()] = null;
             }
          }
       });
@@ -398,8 +371,7 @@ public class DarkstrisScene extends PingScene implements GameHandler,
 
             // set up figures
             for (FigureInfo figInfo : figures) {
-               Figure fig = new Figure(figInfo);
-               fig.attach(board, figInfo.getX(), figInfo.getY());
+               setFigure(figInfo);
             }
          }
       });
@@ -457,7 +429,10 @@ public class DarkstrisScene extends PingScene implements GameHandler,
    public void newFigure(final FigureInfo oldFigure, final FigureInfo newFigure) {
       invokeLater(new Runnable() {
          public void run() {
-            // fix oldFigure
+            // fix oldFigure, where the server fixed it
+            if (figures[oldFigure.getSlot()] != null) {
+               figures[oldFigure.getSlot()].clear();
+            }
             Figure oldFig = new Figure(oldFigure);
             oldFig.attach(board, oldFigure.getX(), oldFigure.getY());
             oldFig.fix();
@@ -490,66 +465,107 @@ public class DarkstrisScene extends PingScene implements GameHandler,
 
             handleScoreModification();
 
-            Figure fig = new Figure(newFigure);
-            fig.attach(board, newFigure.getX(), newFigure.getY());
+            setFigure(newFigure);
          }
       });
    }
 
    @Override
-   public void moveDown(final FigureInfo figInfo) {
+   public void moveDown(final int slot) {
       invokeLater(new Runnable() {
          public void run() {
-            Figure fig = new Figure(figInfo);
-            fig.attach(board, figInfo.getX(), figInfo.getY());
-            fig.moveDown();
+            if (figures[slot] != null) {
+               figures[slot].moveDown();
+            }
          }
       });
    }
 
-   public void moveAllWayDown(final FigureInfo figInfo, final FigureInfo newPos) {
+   @Override
+   public void gravity(final int[] slots) {
       invokeLater(new Runnable() {
          public void run() {
-            Figure fig = new Figure(figInfo);
-            fig.attach(board, figInfo.getX(), figInfo.getY());
-            fig.moveTo(newPos);
+            for (int slot : slots) {
+               if (figures[slot] != null) {
+                  figures[slot].moveDown();
+               }
+            }
+         }
+      });
+   }
+
+   public void moveAllWayDown(final int slot, final int rows) {
+      invokeLater(new Runnable() {
+         public void run() {
+            if (figures[slot] != null) {
+               figures[slot].drop(rows);
+            }
          }
       });
    }
 
    @Override
-   public void moveLeft(final FigureInfo figInfo) {
+   public void moveLeft(final int slot) {
       invokeLater(new Runnable() {
          public void run() {
-            Figure fig = new Figure(figInfo);
-            fig.attach(board, figInfo.getX(), figInfo.getY());
-            fig.moveLeft();
+            if (figures[slot] != null) {
+               figures[slot].moveLeft();
+            }
          }
       });
    }
 
    @Override
-   public void moveRight(final FigureInfo figInfo) {
+   public void moveRight(final int slot) {
       invokeLater(new Runnable() {
          public void run() {
-            Figure fig = new Figure(figInfo);
-            fig.attach(board, figInfo.getX(), figInfo.getY());
-            fig.moveRight();
+            if (figures[slot] != null) {
+               figures[slot].moveRight();
+            }
          }
       });
    }
 
    @Override
-   public void rotate(final FigureInfo figInfo) {
+   public void rotate(final int slot) {
       invokeLater(new Runnable() {
          public void run() {
-            Figure fig = new Figure(figInfo);
-            fig.attach(board, figInfo.getX(), figInfo.getY());
-            fig.rotateClockwise();
+            if (figures[slot] != null) {
+               figures[slot].rotateClockwise();
+            }
          }
       });
    }
 
+   @Override
+   public void syncFigures(final Collection<FigureInfo> infos) {
+      invokeLater(new Runnable() {
+         public void run() {
+            // clear all the figures first, they could overlap the new
+            // position of another one
+            for (int slot = 0; slot < figures.length; slot++) {
+               if (figures[slot] != null) {
+                  figures[slot].clear();
+                  figures[slot] = null;
+               }
+            }
+
+            for (FigureInfo figInfo : infos) {
+               setFigure(figInfo);
+            }
+         }
+      });
+   }
+
+   /**
+    * Attaches a figure to the board, as the current figure of its slot
+    */
+   private void setFigure(FigureInfo figInfo) {
+      Figure fig = new Figure(figInfo);
+      fig.attach(board, figInfo.getX(), figInfo.getY());
+      figures[figInfo.getSlot()] = fig;
+   }
+
    @Override
    public void setGameOwner() {
       invokeLater(new Runnable() {
@@ -375,6 +375,19 @@ public class Figure {
       return false;
    }
 
+   /**
+    * Moves the figure down the given number of rows, as computed by the server
+    * for a hard drop.
+    * 
+    * @param rows
+    *           the number of rows to move
+    */
+   public void drop(int rows) {
+      clear();
+      yPos += rows;
+      paint(color);
+   }
+
    public void moveTo(FigureInfo newPos) {
       clear();
 
@@ -23,37 +23,59 @@ public interface GameHandler extends BaseHandler {
    /**
     * Figure was moved left
     * 
-    * @param figure
+    * @param slot
+    *           the slot of the figure
     */
-   void moveLeft(FigureInfo figure);
+   void moveLeft(int slot);
 
    /**
     * Figure was moved right
     * 
-    * @param figure
+    * @param slot
+    *           the slot of the figure
     */
-   void moveRight(FigureInfo figure);
+   void moveRight(int slot);
 
    /**
     * Figure was moved down
     * 
-    * @param figure
+    * @param slot
+    *           the slot of the figure
+    */
+   void moveDown(int slot);
+
+   /**
+    * Figures were moved down by the server gravity
+    * 
+    * @param slots
+    *           the slots of the figures, in the order they moved
     */
-   void moveDown(FigureInfo figure);
+   void gravity(int[] slots);
 
    /**
     * Figure was moved all way down
     * 
-    * @param figure
+    * @param slot
+    *           the slot of the figure
+    * @param rows
+    *           the number of rows it fell
     */
-   void moveAllWayDown(FigureInfo figure, FigureInfo newPos);
+   void moveAllWayDown(int slot, int rows);
 
    /**
     * Figure was rotated
     * 
-    * @param figure
+    * @param slot
+    *           the slot of the figure
+    */
+   void rotate(int slot);
+
+   /**
+    * Full state of the figures, replacing the current ones
+    * 
+    * @param figures
     */
-   void rotate(FigureInfo figure);
+   void syncFigures(Collection<FigureInfo> figures);
 
    /**
     * A new figure was added to the board
@@ -1,14 +1,49 @@
 package client;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
+import common.LobbyDelta;
+import common.PlayerCursor;
 import common.PlayerInfo;
 import common.RoomInfo;
 
 public interface LobbyHandler extends BaseHandler {
 
-   void setLobbyData(Set<String> players, Set<RoomInfo> rooms);
+   /**
+    * The first page of the players in the lobby, received on entering it.
+    * The first page of the open rooms follows.
+    * 
+    * @param players
+    * @param nextCursor
+    *           the cursor to request the next page with, or
+    *           {@link PlayerCursor#NO_MORE_PLAYERS} if this was the
+    *           last
+    */
+   void setLobbyData(Set<String> players, PlayerCursor nextCursor);
+
+   /**
+    * A further page of the players, in the order of
+    * {@link PlayerCursor}
+    * 
+    * @param players
+    * @param nextCursor
+    *           the cursor to request the next page with, or
+    *           {@link PlayerCursor#NO_MORE_PLAYERS} if this was the
+    *           last
+    */
+   void playersPage(Set<String> players, PlayerCursor nextCursor);
+
+   /**
+    * A page of the rooms, in the order of {@link common.RoomFilter}
+    * 
+    * @param rooms
+    * @param nextCursor
+    *           the cursor to request the next page with, or
+    *           {@link common.RoomFilter#NO_MORE_ROOMS} if this was the last
+    */
+   void roomsPage(List<RoomInfo> rooms, long nextCursor);
 
    /**
     * Add player to lobby
@@ -37,4 +72,12 @@ public interface LobbyHandler extends BaseHandler {
    void roomDropped(long id);
 
    void roomFull(long id);
+
+   /**
+    * The changes to the lobby over the last window, in place of the
+    * individual user and room messages
+    * 
+    * @param delta
+    */
+   void lobbyDelta(LobbyDelta delta);
 }
@@ -5,6 +5,7 @@ import static pulpcore.image.Colors.rgb;
 
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 import pulpcore.CoreSystem;
@@ -21,7 +22,10 @@ import pulpcore.sprite.Slider;
 import pulpcore.sprite.Sprite;
 import pulpcore.sprite.TextField;
 
+import common.LobbyDelta;
+import common.PlayerCursor;
 import common.PlayerInfo;
+import common.RoomFilter;
 import common.RoomInfo;
 
 public class LobbyScene extends PingScene implements Serializable, LobbyHandler {
@@ -48,6 +52,18 @@ public class LobbyScene extends PingScene implements Serializable, LobbyHandler
 
    private ConnectionHandler connection;
 
+   /** cursor of the next page of rooms */
+   private long roomsCursor = RoomFilter.NO_MORE_ROOMS;
+
+   /** a page of rooms was requested and hasn't arrived yet */
+   private boolean roomsRequested;
+
+   /** cursor of the next page of players */
+   private PlayerCursor playersCursor = PlayerCursor.NO_MORE_PLAYERS;
+
+   /** a page of players was requested and hasn't arrived yet */
+   private boolean playersRequested;
+
    public LobbyScene(String userName, ConnectionHandler connection) {
       super(connection);
 
@@ -129,6 +145,21 @@ public class LobbyScene extends PingScene implements Serializable, LobbyHandler
 
             connection.sendCreateRoom(maxPlayers.value.getAsInt());
          }
+
+         // fetch the next page of rooms when the list is scrolled down
+         if (!roomsRequested && roomsCursor != RoomFilter.NO_MORE_ROOMS
+               && rooms.isNearEnd()) {
+            roomsRequested = true;
+            connection.sendRequestRooms(RoomFilter.OPEN, roomsCursor,
+                  RoomFilter.PAGE_SIZE);
+         }
+
+         // and the next page of players the same way
+         if (!playersRequested && !playersCursor.isLast()
+               && players.isNearEnd()) {
+            playersRequested = true;
+            connection.sendRequestPlayers(playersCursor);
+         }
       }
    }
 
@@ -209,7 +240,7 @@ public class LobbyScene extends PingScene implements Serializable, LobbyHandler
             }
             else {
                // add the created room
-               rooms.addItem(room);
+               rooms.addRoom(room);
 
                // remove the user from the lobby list
                players.removePlayer(player.getName());
@@ -285,16 +316,85 @@ public class LobbyScene extends PingScene implements Serializable, LobbyHandler
    }
 
    @Override
-   public void setLobbyData(Set<String> players, Set<RoomInfo> roomInfos) {
-      for (String str : players) {
-         addPlayer(str);
-      }
-
-      for (RoomInfo ri : roomInfos) {
-         rooms.addItem(new ClientRoom(ri));
-      }
+   public void setLobbyData(Set<String> players, PlayerCursor nextCursor) {
+      playersPage(players, nextCursor);
 
       // game on
       setPaused(false);
    }
+
+   @Override
+   public void playersPage(final Set<String> names,
+         final PlayerCursor nextCursor) {
+      invokeLater(new Runnable() {
+         public void run() {
+            for (String name : names) {
+               players.addPlayer(name);
+               rooms.removePlayer(name);
+            }
+
+            playersCursor = nextCursor;
+            playersRequested = false;
+         }
+      });
+   }
+
+   @Override
+   public void roomsPage(final List<RoomInfo> roomInfos,
+         final long nextCursor) {
+      invokeLater(new Runnable() {
+         public void run() {
+            for (RoomInfo ri : roomInfos) {
+               rooms.addRoom(new ClientRoom(ri));
+            }
+
+            roomsCursor = nextCursor;
+            roomsRequested = false;
+         }
+      });
+   }
+
+   /**
+    * Applies the lobby changes of the last window. Each player shows up at
+    * most once, with the last thing he did.
+    */
+   @Override
+   public void lobbyDelta(final LobbyDelta delta) {
+      invokeLater(new Runnable() {
+         public void run() {
+            for (LobbyDelta.RoomChange change : delta.getRooms()) {
+               if (change.is(LobbyDelta.DROPPED)) {
+                  rooms.dropRoom(change.getId());
+                  continue;
+               }
+               else if (change.is(LobbyDelta.CREATED)) {
+                  ClientRoom room = new ClientRoom(change.getId());
+                  room.setMaxPlayers(change.getMaxPlayers());
+                  rooms.addRoom(room);
+               }
+
+               ClientRoom room = new ClientRoom(change.getId());
+               for (PlayerInfo player : change.getJoined()) {
+                  players.removePlayer(player.getName());
+                  rooms.removePlayer(player.getName());
+                  rooms.addPlayer(room, player);
+               }
+
+               if (change.is(LobbyDelta.STARTED)) {
+                  rooms.gameStarted(room);
+               }
+            }
+
+            for (String name : delta.getLeft()) {
+               players.removePlayer(name);
+               rooms.removePlayer(name);
+            }
+
+            for (String name : delta.getEntered()) {
+               players.addPlayer(name);
+               rooms.removePlayer(name);
+            }
+         }
+      });
+   }
 }
\ No newline at end of file
@@ -6,6 +6,9 @@ public class PlayersBox extends LabelScrollable {
 
    public PlayersBox(int x, int y, int w, int h, CoreFont font) {
       super(x, y, w, h, font);
+
+      // players are fetched in pages as the list is scrolled down
+      followEnd = false;
    }
 
    public void addPlayer(String who) {
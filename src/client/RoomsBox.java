@@ -22,6 +22,20 @@ public class RoomsBox extends ButtonScrollable<ClientRoom> {
       CoreImage img = CoreImage.load("imgs/btn-closed-room.png");
       closed = new CoreImage[] { img, img, img };
       open = CoreImage.load("imgs/btn-open-room.png").split(3);
+
+      // rooms are fetched in pages as the list is scrolled down
+      followEnd = false;
+   }
+
+   /**
+    * Adds the room, unless it's already listed
+    * 
+    * @param room
+    */
+   public void addRoom(ClientRoom room) {
+      if (!contains(room)) {
+         addItem(room);
+      }
    }
 
    @Override
@@ -11,6 +11,9 @@ public abstract class Scrollable<T extends Comparable< ? super T>> extends
 
    protected int maxLines = 150;
 
+   /** scroll to the end on every refresh, to show the last lines added */
+   protected boolean followEnd = true;
+
    private boolean needsRefresh;
 
    protected List<T> objects;
@@ -44,7 +47,9 @@ public abstract class Scrollable<T extends Comparable< ? super T>> extends
 
       createContent(objects);
 
-      scrollEnd();
+      if (followEnd) {
+         scrollEnd();
+      }
 
       // if (startTop && numLines * getLineSpacing() < height.getAsInt()) {
       // y.set(0);
@@ -122,4 +127,13 @@ public abstract class Scrollable<T extends Comparable< ? super T>> extends
    public int getAvailableSpace() {
       return availableSpace;
    }
+
+   /**
+    * @return true if the list is scrolled down to its last line, or if it
+    *         doesn't fill its height
+    */
+   public boolean isNearEnd() {
+      return scrollY.getAsInt() + height.getAsInt() >= getContentHeight()
+            - getLineSpacing();
+   }
 }
\ No newline at end of file
@@ -65,11 +65,16 @@ public interface ClientChannelListener {
     * If the message originated from a client, the server-side application may
     * have altered the {@code message} (for application-specific reasons) from
     * the original message sent.
+    * <p>
+    * The {@code message} may be a view on the buffer the client reads into: it
+    * is only valid until this method returns, and must be copied if it is
+    * needed after that.
     * 
     * @param channel
     *           a client channel
     * @param message
-    *           a message
+    *           a read-only buffer containing the message between its position
+    *           and limit
     */
    void receivedMessage(ClientChannel channel, ByteBuffer message);
 
@@ -75,9 +75,13 @@ public interface ServerSessionListener {
 
    /**
     * Notifies this listener that the specified message was sent by the server.
+    * The {@code message} may be a view on the buffer the client reads into: it
+    * is only valid until this method returns, and must be copied if it is
+    * needed after that.
     * 
     * @param message
-    *           a read-only {@link ByteBuffer} containing the message
+    *           a read-only {@link ByteBuffer} containing the message between
+    *           its position and limit
     */
    void receivedMessage(ByteBuffer message);
 
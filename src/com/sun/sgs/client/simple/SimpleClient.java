@@ -110,6 +110,15 @@ public class SimpleClient implements ServerSession {
    @SuppressWarnings("unused")
    private byte[] reconnectKey;
 
+   /** The lock for {@link #sendBuffer}. */
+   private final Object sendLock = new Object();
+
+   /**
+    * The buffer the outgoing messages are put together in. The connection
+    * copies a message before {@code sendMessage} returns, so it is reused.
+    */
+   private ByteBuffer sendBuffer = ByteBuffer.allocate(64);
+
    /** The map of channels this client is a member of, keyed by channel ID */
    private final ConcurrentHashMap<BigInteger, SimpleClientChannel> channels = new ConcurrentHashMap<BigInteger, SimpleClientChannel>();
 
@@ -269,9 +278,29 @@ public class SimpleClient implements ServerSession {
     */
    public void send(ByteBuffer message) throws IOException {
       checkConnected();
-      ByteBuffer msg = ByteBuffer.allocate(1 + message.remaining());
-      msg.put(SimpleSgsProtocol.SESSION_MESSAGE).put(message).flip();
-      sendRaw(msg);
+      synchronized (sendLock) {
+         ByteBuffer msg = getSendBuffer(1 + message.remaining());
+         msg.put(SimpleSgsProtocol.SESSION_MESSAGE).put(message).flip();
+         sendRaw(msg);
+      }
+   }
+
+   /**
+    * Returns the send buffer, cleared and large enough for a message of the
+    * given size. The caller must hold {@code sendLock} until the message is
+    * sent.
+    * 
+    * @param size
+    *           the size of the message
+    * @return the send buffer
+    */
+   private ByteBuffer getSendBuffer(int size) {
+      if (sendBuffer.capacity() < size) {
+         sendBuffer = ByteBuffer.allocate(Math.max(size,
+               2 * sendBuffer.capacity()));
+      }
+      sendBuffer.clear();
+      return sendBuffer;
    }
 
    /**
@@ -336,6 +365,16 @@ public class SimpleClient implements ServerSession {
        */
       private volatile boolean redirect = false;
 
+      /**
+       * The ID, as sent by the server, of the channel that received the last
+       * channel message, so that the following messages of that channel are
+       * matched without decoding their ID.
+       */
+      private byte[] lastChannelId = null;
+
+      /** The channel that received the last channel message. */
+      private SimpleClientChannel lastChannel = null;
+
       /* -- Implement ClientConnectionListener -- */
       /**
        * {@inheritDoc}
@@ -415,6 +454,8 @@ public class SimpleClient implements ServerSession {
             }
          }
          channels.clear();
+         lastChannel = null;
+         lastChannelId = null;
 
          // TBI implement graceful disconnect.
          // For now, look at the boolean we set when expecting
@@ -429,17 +470,15 @@ public class SimpleClient implements ServerSession {
       /**
        * {@inheritDoc}
        */
-      public void receivedMessage(byte[] message) {
+      public void receivedMessage(ByteBuffer message) {
          try {
-            MessageBuffer msg = new MessageBuffer(message);
-
             if (logger.isLoggable(Level.FINER)) {
                String logMessage = String.format("Message length:%d",
-                     message.length);
+                     message.remaining());
                logger.log(Level.FINER, logMessage);
             }
 
-            handleApplicationMessage(msg);
+            handleApplicationMessage(message);
 
          }
          catch (IOException e) {
@@ -458,55 +497,57 @@ public class SimpleClient implements ServerSession {
       }
 
       /**
-       * Processes an application message.
+       * Processes an application message. The session and channel messages
+       * are handed to the listeners without copying them; the other messages
+       * are rare, and are copied to a {@link MessageBuffer} to be decoded.
        * 
-       * @param msg
-       *           the message to process
+       * @param message
+       *           the message to process, only valid for this call
        * @throws IOException
        *            if an IO problem occurs
        */
-      private void handleApplicationMessage(MessageBuffer msg)
+      private void handleApplicationMessage(ByteBuffer message)
             throws IOException {
-         byte command = msg.getByte();
+         byte command = message.get();
          switch (command) {
          case SimpleSgsProtocol.LOGIN_SUCCESS:
-            handleLoginSuccess(msg);
+            handleLoginSuccess(copy(message));
             break;
 
          case SimpleSgsProtocol.LOGIN_FAILURE:
-            handleLoginFailure(msg);
+            handleLoginFailure(copy(message));
             break;
 
          case SimpleSgsProtocol.LOGIN_REDIRECT:
-            handleLoginRedirect(msg);
+            handleLoginRedirect(copy(message));
             break;
 
          case SimpleSgsProtocol.SESSION_MESSAGE:
-            handleSessionMessage(msg);
+            handleSessionMessage(message);
             break;
 
          case SimpleSgsProtocol.RECONNECT_SUCCESS:
-            handleReconnectSuccess(msg);
+            handleReconnectSuccess(copy(message));
             break;
 
          case SimpleSgsProtocol.RECONNECT_FAILURE:
-            handleReconnectFailure(msg);
+            handleReconnectFailure(copy(message));
             break;
 
          case SimpleSgsProtocol.LOGOUT_SUCCESS:
-            handleLogoutSuccess(msg);
+            handleLogoutSuccess(copy(message));
             break;
 
          case SimpleSgsProtocol.CHANNEL_JOIN:
-            handleChannelJoin(msg);
+            handleChannelJoin(copy(message));
             break;
 
          case SimpleSgsProtocol.CHANNEL_LEAVE:
-            handleChannelLeave(msg);
+            handleChannelLeave(copy(message));
             break;
 
          case SimpleSgsProtocol.CHANNEL_MESSAGE:
-            handleChannelMessage(msg);
+            handleChannelMessage(message);
             break;
 
          default:
@@ -515,6 +556,19 @@ public class SimpleClient implements ServerSession {
          }
       }
 
+      /**
+       * Copies the rest of a message to a {@code MessageBuffer}
+       * 
+       * @param message
+       *           the message, only valid for the current call
+       * @return a buffer with the bytes from the position of the message
+       */
+      private MessageBuffer copy(ByteBuffer message) {
+         byte[] bytes = new byte[message.remaining()];
+         message.get(bytes);
+         return new MessageBuffer(bytes);
+      }
+
       /**
        * Process a login success message
        * 
@@ -600,18 +654,14 @@ public class SimpleClient implements ServerSession {
       /**
        * Process a session message
        * 
-       * @param msg
-       *           the message to process
-       * @throws IOException
-       *            if an IO problem occurs
+       * @param message
+       *           the message to process, positioned on the payload
        */
-      private void handleSessionMessage(MessageBuffer msg) {
+      private void handleSessionMessage(ByteBuffer message) {
          logger.log(Level.FINEST, "Direct receive");
          checkLoggedIn();
-         byte[] msgBytes = msg.getBytes(msg.limit() - msg.position());
-         ByteBuffer buf = ByteBuffer.wrap(msgBytes);
          try {
-            clientListener.receivedMessage(buf.asReadOnlyBuffer());
+            clientListener.receivedMessage(message);
          }
          catch (RuntimeException e) {
             if (logger.isLoggable(Level.WARNING)) {
@@ -723,6 +773,10 @@ public class SimpleClient implements ServerSession {
          byte[] channelIdBytes = msg.getBytes(msg.limit() - msg.position());
          BigInteger channelId = new BigInteger(1, channelIdBytes);
          SimpleClientChannel channel = channels.remove(channelId);
+         if (channel == lastChannel) {
+            lastChannel = null;
+            lastChannelId = null;
+         }
          if (channel != null) {
             channel.left();
          }
@@ -735,24 +789,58 @@ public class SimpleClient implements ServerSession {
       /**
        * Process a channel message message
        * 
-       * @param msg
-       *           the message to process
-       * @throws IOException
-       *            if an IO problem occurs
+       * @param message
+       *           the message to process, positioned on the channel ID
        */
-      private void handleChannelMessage(MessageBuffer msg) {
+      private void handleChannelMessage(ByteBuffer message) {
          logger.log(Level.FINEST, "Channel recv");
          checkLoggedIn();
-         BigInteger channelId = new BigInteger(1, msg.getBytes(msg.getShort()));
+         SimpleClientChannel channel = findChannel(message, message.getShort());
+         if (channel != null) {
+            channel.receivedMessage(message);
+         }
+      }
+
+      /**
+       * Reads the ID of a channel message and returns its channel. A message
+       * of the same channel as the last one is matched on the bytes of its
+       * ID, other ones are looked up by their decoded ID.
+       * 
+       * @param message
+       *           the message, positioned on the channel ID, and advanced past
+       *           it
+       * @param idLength
+       *           the length of the channel ID
+       * @return the channel, or {@code null} if the client is not a member
+       */
+      private SimpleClientChannel findChannel(ByteBuffer message, int idLength) {
+         int start = message.position();
+         message.position(start + idLength);
+
+         if (lastChannel != null && lastChannelId.length == idLength) {
+            int i = 0;
+            while (i < idLength && lastChannelId[i] == message.get(start + i)) {
+               i++;
+            }
+            if (i == idLength) {
+               return lastChannel;
+            }
+         }
+
+         byte[] idBytes = new byte[idLength];
+         for (int i = 0; i < idLength; i++) {
+            idBytes[i] = message.get(start + i);
+         }
+         BigInteger channelId = new BigInteger(1, idBytes);
          SimpleClientChannel channel = channels.get(channelId);
          if (channel == null) {
             logger.log(Level.WARNING,
                   "Ignore message on channel {0}: not a member", channelId);
-            return;
+            return null;
          }
-         byte[] msgBytes = msg.getBytes(msg.limit() - msg.position());
-         ByteBuffer buf = ByteBuffer.wrap(msgBytes);
-         channel.receivedMessage(buf.asReadOnlyBuffer());
+         lastChannelId = idBytes;
+         lastChannel = channel;
+         return channel;
       }
 
       /**
@@ -795,6 +883,9 @@ public class SimpleClient implements ServerSession {
 
       private final BigInteger channelId;
 
+      /** The channel ID as sent in the messages to the server. */
+      private final byte[] idBytes;
+
       /**
        * The listener for this channel if the client is a member, or null if the
        * client is no longer a member of this channel.
@@ -806,6 +897,7 @@ public class SimpleClient implements ServerSession {
       SimpleClientChannel(String name, BigInteger id) {
          this.channelName = name;
          this.channelId = id;
+         this.idBytes = id.toByteArray();
       }
 
       // Implement ClientChannel
@@ -825,12 +917,13 @@ public class SimpleClient implements ServerSession {
             throw new IllegalStateException("Cannot send on unjoined channel "
                   + channelName);
          }
-         byte[] idBytes = channelId.toByteArray();
-         ByteBuffer msg = ByteBuffer.allocate(3 + idBytes.length
-               + message.remaining());
-         msg.put(SimpleSgsProtocol.CHANNEL_MESSAGE).putShort(
-               (short) idBytes.length).put(idBytes).put(message).flip();
-         sendRaw(msg);
+         synchronized (sendLock) {
+            ByteBuffer msg = getSendBuffer(3 + idBytes.length
+                  + message.remaining());
+            msg.put(SimpleSgsProtocol.CHANNEL_MESSAGE).putShort(
+                  (short) idBytes.length).put(idBytes).put(message).flip();
+            sendRaw(msg);
+         }
       }
 
       // Implementation details
@@ -43,8 +43,8 @@ public interface ClientConnection {
    /**
     * Asynchronously sends data to the server.
     * <p>
-    * The specified byte buffer must not be modified after invoking this method;
-    * otherwise this method may have unpredictable results.
+    * The message is copied before this method returns: the specified byte
+    * buffer may be reused once it has returned.
     * 
     * @param message
     *           the message data to send
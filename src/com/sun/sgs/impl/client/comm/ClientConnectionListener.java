@@ -32,6 +32,8 @@
 
 package com.sun.sgs.impl.client.comm;
 
+import java.nio.ByteBuffer;
+
 import com.sun.sgs.client.ServerSessionListener;
 
 /**
@@ -50,11 +52,14 @@ public interface ClientConnectionListener {
 
    /**
     * Notifies this listener that protocol data has arrived from the server.
+    * The {@code message} is only valid until this method returns, and must be
+    * copied if it is needed after that.
     * 
     * @param message
-    *           protocol-specific message data
+    *           a read-only buffer containing protocol-specific message data
+    *           between its position and limit
     */
-   void receivedMessage(byte[] message);
+   void receivedMessage(ByteBuffer message);
 
    /**
     * Notifies this listener that a new session has successfully logged in.
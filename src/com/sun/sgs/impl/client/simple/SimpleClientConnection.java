@@ -100,9 +100,7 @@ class SimpleClientConnection implements ClientConnection, ConnectionListener {
                .format(message));
       }
       try {
-         byte[] bytes = new byte[message.remaining()];
-         message.get(bytes);
-         myHandle.sendBytes(bytes);
+         myHandle.sendBytes(message);
       }
       catch (IOException e) {
          logger.logThrow(Level.FINE, e, "Send failed:");
@@ -160,7 +158,7 @@ class SimpleClientConnection implements ClientConnection, ConnectionListener {
     * This implementation forwards the message to the associated
     * {@code ClientConnectionListener}.
     */
-   public void bytesReceived(Connection conn, byte[] message) {
+   public void bytesReceived(Connection conn, ByteBuffer message) {
       if (logger.isLoggable(Level.FINEST)) {
          logger.log(Level.FINEST, "recv on {0}: {1}", conn, HexDumper.format(
                message, 0x50));
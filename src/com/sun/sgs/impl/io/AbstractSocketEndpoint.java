@@ -34,13 +34,51 @@ package com.sun.sgs.impl.io;
 
 import java.net.SocketAddress;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.mina.common.ByteBuffer;
+import org.apache.mina.common.ExecutorThreadModel;
 import org.apache.mina.common.SimpleByteBufferAllocator;
+import org.apache.mina.common.ThreadModel;
 
+/**
+ * The common part of the socket endpoints. The endpoints that aren't given an
+ * {@link Executor} and a number of processors take them from these system
+ * properties:
+ * <ul>
+ * <li>{@value #PROCESSORS_PROPERTY}: the number of MINA
+ * {@code SocketIOProcessors}, each one a selector thread serving its share of
+ * the connections. Defaults to the number of available cores.</li>
+ * <li>{@value #EXECUTOR_PROPERTY}: how the threads of the processors and of
+ * the connector or acceptor are run: {@code cached} (the default) uses a
+ * cached pool of daemon threads shared by the acceptors, and a cached pool of
+ * its own for each connector; {@code fixed} gives each connector and
+ * acceptor a pool of one thread per processor plus one, shut down with the
+ * connector or acceptor; {@code dedicated} starts a new daemon thread each
+ * time a processor gets connections again.</li>
+ * <li>{@value #THREAD_MODEL_PROPERTY}: where the events of the connections
+ * are handled: {@code manual} on the processor thread that read them,
+ * {@code pooled} on a shared pool of daemon threads, in order for each
+ * connection. Defaults to {@code manual} for connectors and to the MINA
+ * default, a pool, for acceptors.</li>
+ * </ul>
+ */
 abstract class AbstractSocketEndpoint {
 
+   /** The System property for the number of processors. */
+   public static final String PROCESSORS_PROPERTY = "com.sun.sgs.impl.io.processors";
+
+   /** The System property for the executor of the IO threads. */
+   public static final String EXECUTOR_PROPERTY = "com.sun.sgs.impl.io.executor";
+
+   /** The System property for the thread model of the connection events. */
+   public static final String THREAD_MODEL_PROPERTY = "com.sun.sgs.impl.io.threadModel";
+
    /** The socket address this endpoint encapsulates. */
    protected final SocketAddress address;
 
@@ -57,6 +95,10 @@ abstract class AbstractSocketEndpoint {
    private static final Executor defaultExecutor = Executors
          .newCachedThreadPool(new DaemonThreadFactory());
 
+   /** The thread model handling the events on a pool of daemon threads. */
+   private static final ThreadModel pooledThreadModel = ExecutorThreadModel
+         .getInstance(AbstractSocketEndpoint.class.getName());
+
    // Set default MINA ByteBuffer policies
    static {
       // Don't use timed-expiration buffer pools; just allocate new ones
@@ -64,13 +106,16 @@ abstract class AbstractSocketEndpoint {
 
       // Use heap buffers instead of direct buffers
       ByteBuffer.setUseDirectBuffers(false);
+
+      ((ExecutorThreadModel) pooledThreadModel).setExecutor(Executors
+            .newCachedThreadPool(new DaemonThreadFactory()));
    }
 
    /**
     * Constructs an {@code AbstractSocketEndpoint} with the given
     * {@link TransportType}. This is the simplest way to create an
-    * {@code AbstractSocketEndpoint}. The returned endpoint will use a cached
-    * pool of daemon threads as necessary for processing events.
+    * {@code AbstractSocketEndpoint}. The returned endpoint will use the
+    * number of processors and the executor given by the system properties.
     * 
     * @param address
     *           the socket address to encapsulate
@@ -78,7 +123,8 @@ abstract class AbstractSocketEndpoint {
     *           the type of transport
     */
    protected AbstractSocketEndpoint(SocketAddress address, TransportType type) {
-      this(address, type, defaultExecutor, 1);
+      this(address, type, createExecutor(getDefaultProcessors()),
+            getDefaultProcessors());
    }
 
    /**
@@ -156,9 +202,128 @@ abstract class AbstractSocketEndpoint {
       return numProcessors;
    }
 
+   /**
+    * Returns a pool of its own for a new connector or acceptor of this
+    * endpoint, if the endpoint has a {@code fixed} executor. The connector or
+    * acceptor shuts the pool down once it is done with it, so the pools don't
+    * outlive the connections.
+    * 
+    * @return a new pool, or {@code null} if the connector or acceptor runs on
+    *         the executor of this endpoint
+    */
+   protected ExecutorService newOwnExecutor() {
+      if (executor instanceof FixedPool) {
+         return new FixedPool(((FixedPool) executor).getCorePoolSize());
+      }
+      return null;
+   }
+
+   /**
+    * Returns whether this endpoint uses the cached pool of daemon threads
+    * shared by the endpoints.
+    * 
+    * @return {@code true} if the executor of this endpoint is the shared one
+    */
+   protected boolean usesDefaultExecutor() {
+      return executor == defaultExecutor;
+   }
+
+   /**
+    * Returns the number of processors given by the
+    * {@value #PROCESSORS_PROPERTY} property, or else the number of available
+    * cores.
+    * 
+    * @return the number of processors of the endpoints
+    * @throws IllegalArgumentException
+    *            if the property isn't a number greater than 0
+    */
+   protected static int getDefaultProcessors() {
+      String value = System.getProperty(PROCESSORS_PROPERTY);
+      if (value == null) {
+         return Runtime.getRuntime().availableProcessors();
+      }
+      int numProcessors = Integer.parseInt(value.trim());
+      if (numProcessors <= 0) {
+         throw new IllegalArgumentException(PROCESSORS_PROPERTY
+               + " must be >= 1: " + numProcessors);
+      }
+      return numProcessors;
+   }
+
+   /**
+    * Returns the executor of an endpoint with the given number of processors,
+    * as given by the {@value #EXECUTOR_PROPERTY} property.
+    * 
+    * @param numProcessors
+    *           the number of processors of the endpoint
+    * @return the executor of the endpoint
+    * @throws IllegalArgumentException
+    *            if the property isn't one of {@code cached}, {@code fixed} or
+    *            {@code dedicated}
+    */
+   protected static Executor createExecutor(int numProcessors) {
+      String value = System.getProperty(EXECUTOR_PROPERTY, "cached").trim();
+      if (value.equals("cached")) {
+         return defaultExecutor;
+      }
+      else if (value.equals("fixed")) {
+         // the processors and the thread of the connector or acceptor; each
+         // of them gets a copy, this one never starts a thread
+         return new FixedPool(numProcessors + 1);
+      }
+      else if (value.equals("dedicated")) {
+         final ThreadFactory threadFactory = new DaemonThreadFactory();
+         return new Executor() {
+            public void execute(Runnable command) {
+               threadFactory.newThread(command).start();
+            }
+         };
+      }
+      throw new IllegalArgumentException("unknown " + EXECUTOR_PROPERTY
+            + ": " + value);
+   }
+
+   /**
+    * Returns the thread model given by the {@value #THREAD_MODEL_PROPERTY}
+    * property.
+    * 
+    * @param defaultModel
+    *           the thread model if the property isn't set
+    * @return the thread model of the connections of this endpoint
+    * @throws IllegalArgumentException
+    *            if the property isn't one of {@code manual} or {@code pooled}
+    */
+   protected ThreadModel getThreadModel(ThreadModel defaultModel) {
+      String value = System.getProperty(THREAD_MODEL_PROPERTY);
+      if (value == null) {
+         return defaultModel;
+      }
+      value = value.trim();
+      if (value.equals("manual")) {
+         return ThreadModel.MANUAL;
+      }
+      else if (value.equals("pooled")) {
+         return pooledThreadModel;
+      }
+      throw new IllegalArgumentException("unknown " + THREAD_MODEL_PROPERTY
+            + ": " + value);
+   }
+
    /** {@inheritDoc} */
    @Override
    public String toString() {
       return getClass().getName() + "[" + getAddress() + "]";
    }
+
+   /**
+    * The {@code fixed} executor: a pool of daemon threads, all kept until it
+    * is shut down.
+    */
+   private static final class FixedPool extends ThreadPoolExecutor {
+
+      FixedPool(int numThreads) {
+         super(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+               new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory());
+      }
+   }
 }
@@ -32,6 +32,7 @@
 
 package com.sun.sgs.impl.io;
 
+import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -51,11 +52,23 @@ import com.sun.sgs.impl.sharedutil.LoggerWrapper;
  * partial message until the rest of the message is received, even if the
  * message spans multiple calls to {@code filterReceive}.
  * <p>
+ * Complete messages are not copied: the listener gets a read-only view on the
+ * received data, positioned on the message, which is only valid for the
+ * duration of the call. Only the bytes of a message that spans reads are
+ * copied, into a buffer of this filter.
+ * <p>
  * The {@code filterReceive} portion of this filter is not thread-safe since it
  * retains state information about partial messages. For this reason, each
  * source of data should have its own instance, and {@code filterReceive} should
- * be called by only one thread at a time. {@code filterSend}, however, is
- * thread-safe.
+ * be called by only one thread at a time. {@code filterSend} and
+ * {@code filterSent}, however, are thread-safe.
+ * <p>
+ * On sending, the filter keeps a single write in progress: the messages sent
+ * while a write is in progress are framed into one buffer, which is written
+ * as soon as that write completes. A burst of small messages thus takes a few
+ * socket writes rather than one each. At most {@link #MAX_QUEUED_BYTES} are
+ * queued that way: past it, the send fails, rather than letting a slow peer
+ * grow the queue without bound.
  */
 class CompleteMessageFilter {
 
@@ -66,12 +79,21 @@ class CompleteMessageFilter {
    /** The default recv processing buffer size. */
    private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
 
-   /** The largest we expect the recv processing buffer size to get. */
-   private static final int MAX_BUFFER_SIZE = 512 * 1024;
+   /** The most bytes queued while a write is in progress. */
+   static final int MAX_QUEUED_BYTES = 256 * 1024;
 
-   /** The data being processed, or a partial message awaiting more data. */
+   /** The partial message awaiting more data, if any. */
    private final ByteBuffer msgBuf;
 
+   /** The lock for the send state. */
+   private final Object sendLock = new Object();
+
+   /** Whether a buffer passed to the listener is still being written. */
+   private boolean writing = false;
+
+   /** The frames waiting for the write in progress, or {@code null}. */
+   private ByteBuffer sendBuf = null;
+
    /**
     * Default constructor.
     */
@@ -95,61 +117,116 @@ class CompleteMessageFilter {
       logger
             .log(Level.FINEST, "processing {0,number,#} bytes", buf.remaining());
 
-      // Append the new data to the buffer
-      msgBuf.expand(buf.remaining());
-      msgBuf.put(buf);
-      msgBuf.flip();
+      java.nio.ByteBuffer data = buf.buf().asReadOnlyBuffer();
 
-      processReceiveBuffer(listener);
-   }
+      // Finish the partial message of the previous reads first
+      if (msgBuf.position() > 0) {
+         if (!completePartialMessage(data)) {
+            logPartialMessage();
+            return;
+         }
+         msgBuf.flip();
+         dispatchMessages(listener, msgBuf.buf().asReadOnlyBuffer());
+         msgBuf.clear();
+      }
 
-   private void processReceiveBuffer(FilterListener listener) {
+      // The complete messages are dispatched straight from the data
+      dispatchMessages(listener, data);
 
-      if (msgBuf.remaining() > MAX_BUFFER_SIZE) {
-         logger.log(Level.WARNING,
-               "Recv filter buffer is larger than expected: {0,number,#}",
-               msgBuf.remaining());
+      // Keep the start of the next message
+      if (data.hasRemaining()) {
+         append(data, data.remaining());
       }
+      logPartialMessage();
+   }
 
-      // Process complete messages, if any
-      while (msgBuf.hasRemaining()) {
-         if (msgBuf.remaining() < 2) {
-            break;
+   /**
+    * Appends to the partial message the bytes it misses, as far as
+    * {@code data} has them.
+    * 
+    * @param data
+    *           the received data, advanced by the bytes taken
+    * @return {@code true} if the message is now complete
+    */
+   private boolean completePartialMessage(java.nio.ByteBuffer data) {
+      if (msgBuf.position() < 2) {
+         append(data, 2 - msgBuf.position());
+         if (msgBuf.position() < 2) {
+            return false;
          }
+      }
 
-         if (!msgBuf.prefixedDataAvailable(2)) {
-            break;
-         }
+      int size = 2 + (msgBuf.getShort(0) & 0xFFFF);
+      append(data, size - msgBuf.position());
+      return msgBuf.position() == size;
+   }
+
+   /**
+    * Copies up to {@code count} bytes of {@code data} to the partial message.
+    * 
+    * @param data
+    *           the received data, advanced by the bytes copied
+    * @param count
+    *           the number of bytes wanted
+    */
+   private void append(java.nio.ByteBuffer data, int count) {
+      count = Math.min(count, data.remaining());
+      int limit = data.limit();
+      data.limit(data.position() + count);
+      msgBuf.expand(count);
+      msgBuf.put(data);
+      data.limit(limit);
+   }
 
-         int msgLen = msgBuf.getShort() & 0xFFFF;
+   /**
+    * Dispatches the complete messages at the start of {@code data}. Each one is
+    * delivered as {@code data} itself, with its position and limit set on the
+    * message; {@code data} is left at the first incomplete message.
+    * 
+    * @param listener
+    *           the {@code FilterListener} to receive complete messages
+    * @param data
+    *           a read-only view on the data
+    */
+   private void dispatchMessages(FilterListener listener,
+         java.nio.ByteBuffer data) {
 
-         // Get a read-only buffer view on the complete message
-         ByteBuffer completeMessage = msgBuf.slice().asReadOnlyBuffer().limit(
-               msgLen);
+      // Process complete messages, if any
+      while (data.remaining() >= 2) {
+         int start = data.position();
+         int msgLen = data.getShort(start) & 0xFFFF;
+         int end = start + 2 + msgLen;
+         if (end > data.limit()) {
+            break;
+         }
 
-         // Advance the underlying message buffer
-         msgBuf.skip(msgLen);
+         int limit = data.limit();
+         data.limit(end);
+         data.position(start + 2);
 
          logger.log(Level.FINER,
                "dispatching complete message of size {0,number,#}", msgLen);
 
          try {
-            listener.filteredMessageReceived(completeMessage);
+            listener.filteredMessageReceived(data);
          }
          catch (RuntimeException e) {
             logger.logThrow(Level.WARNING, e,
                   "Exception in message disptach; dropping message");
 
             logger.logThrow(Level.FINE, e,
-                  "Exception in message disptach; dropping message {0}",
-                  completeMessage);
+                  "Exception in message disptach; dropping message {0}", data);
 
             // ignore exception; continue processing the buffer
          }
-      }
 
-      msgBuf.compact();
+         // Advance to the next message, whatever the listener read
+         data.limit(limit);
+         data.position(end);
+      }
+   }
 
+   private void logPartialMessage() {
       if (logger.isLoggable(Level.FINEST)) {
          logger.log(Level.FINEST, "partial message {0,number,#} bytes", msgBuf
                .position());
@@ -157,23 +234,116 @@ class CompleteMessageFilter {
    }
 
    /**
-    * Prepends the length of the given byte array as a 2-byte {@code short} in
+    * Prepends the length of the given message as a 2-byte {@code short} in
     * network byte-order, and passes the result to the {@linkplain
     * FilterListener#sendUnfiltered sendUnfiltered} method of the given
     * {@code listener}.
+    * <p>
+    * If a write is in progress, the message is appended to the frames waiting
+    * for it, and goes out with them in a single write when the listener calls
+    * {@link #filterSent filterSent}. The length and the message are copied
+    * into the same buffer, so each write is a single buffer however many
+    * frames it carries.
     * 
     * @param listener
     *           the {@code FilterListener} on which to send the data
     * @param message
-    *           the data to filter and forward to the listener
+    *           the data to filter and forward to the listener, between its
+    *           position and limit; it is not retained after this call
+    * @throws IOException
+    *            if more than {@link #MAX_QUEUED_BYTES} would be waiting for
+    *            the write in progress
+    */
+   void filterSend(FilterListener listener, java.nio.ByteBuffer message)
+         throws IOException {
+      int length = message.remaining();
+      ByteBuffer frames;
+      synchronized (sendLock) {
+         if (writing && sendBuf != null
+               && sendBuf.position() + length + 2 > MAX_QUEUED_BYTES) {
+            throw new IOException("send queue full: " + sendBuf.position()
+                  + " bytes waiting for the write in progress");
+         }
+         if (sendBuf == null) {
+            sendBuf = ByteBuffer.allocate(length + 2, false);
+            sendBuf.setAutoExpand(true);
+         }
+         sendBuf.putShort((short) length);
+         sendBuf.put(message);
+
+         if (writing) {
+            return;
+         }
+         writing = true;
+         frames = sendBuf;
+         sendBuf = null;
+      }
+      frames.flip();
+      send(listener, frames);
+   }
+
+   /**
+    * Notifies this filter that the last buffer passed to
+    * {@link FilterListener#sendUnfiltered sendUnfiltered} has been written,
+    * or has failed to be. The frames queued in the meantime, if any, are
+    * passed to the listener as a single buffer.
+    * 
+    * @param listener
+    *           the {@code FilterListener} on which to send the data
+    */
+   void filterSent(FilterListener listener) {
+      ByteBuffer frames;
+      synchronized (sendLock) {
+         if (sendBuf == null) {
+            writing = false;
+            return;
+         }
+         frames = sendBuf;
+         sendBuf = null;
+      }
+
+      if (logger.isLoggable(Level.FINEST)) {
+         logger.log(Level.FINEST, "sending {0,number,#} queued bytes", frames
+               .position());
+      }
+
+      frames.flip();
+      try {
+         send(listener, frames);
+      }
+      catch (RuntimeException e) {
+         // called back by the write that completed, nobody to tell
+         logger.logThrow(Level.WARNING, e, "Exception sending queued frames");
+      }
+   }
+
+   /**
+    * Passes the frames to the listener. If the listener throws, no write is
+    * in progress anymore, so the frames queued in the meantime are dropped
+    * and the sends start over; otherwise the listener calls
+    * {@link #filterSent filterSent} when the write completes or fails.
+    * 
+    * @param listener
+    *           the {@code FilterListener} on which to send the data
+    * @param frames
+    *           the frames to write
+    * @throws RuntimeException
+    *            if the listener throws
     */
-   void filterSend(FilterListener listener, byte[] message) {
-      ByteBuffer buffer = ByteBuffer.allocate(message.length + 2, false);
-      buffer.putShort((short) message.length);
-      buffer.put(message);
-      buffer.flip();
-      // Don't worry about the listener throwing an exception, since
-      // this method has no other side effects.
-      listener.sendUnfiltered(buffer);
+   private void send(FilterListener listener, ByteBuffer frames) {
+      try {
+         listener.sendUnfiltered(frames);
+      }
+      catch (RuntimeException e) {
+         synchronized (sendLock) {
+            if (sendBuf != null) {
+               logger.log(Level.FINE, "dropping {0,number,#} queued bytes",
+                     sendBuf.position());
+            }
+            writing = false;
+            sendBuf = null;
+         }
+         throw e;
+      }
    }
 }
@@ -41,17 +41,22 @@ import org.apache.mina.common.ByteBuffer;
 interface FilterListener {
    /**
     * Notifies this listener that a complete, filtered message has been received
-    * and should be dispatched to the final recipient.
+    * and should be dispatched to the final recipient. The buffer is a view on
+    * the received data, which is only valid until this method returns.
     * 
     * @param buf
-    *           a {@code MINA ByteBuffer} containing the complete message
+    *           a read-only buffer containing the complete message between its
+    *           position and limit
     */
-   void filteredMessageReceived(ByteBuffer buf);
+   void filteredMessageReceived(java.nio.ByteBuffer buf);
 
    /**
     * Notifies this listener that an outbound message has been filtered
     * (prepending the message length) and should be sent "raw" on the underlying
-    * transport.
+    * transport. The buffer may hold several messages. Once it is written, or
+    * has failed to be, the listener must call
+    * {@link CompleteMessageFilter#filterSent filterSent}, which passes on the
+    * messages filtered in the meantime.
     * 
     * @param buf
     *           a {@code MINA ByteBuffer} containing the message to send
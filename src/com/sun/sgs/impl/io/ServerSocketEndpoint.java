@@ -34,6 +34,7 @@ package com.sun.sgs.impl.io;
 
 import java.net.SocketAddress;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -65,13 +66,17 @@ public class ServerSocketEndpoint extends AbstractSocketEndpoint implements
    /**
     * Constructs a {@code ServerSocketEndpoint} with the given
     * {@link TransportType}. This is the simplest way to create a
-    * {@code ServerSocketEndpoint}. The returned endpoint will use new daemon
-    * threads as necessary for processing events.
+    * {@code ServerSocketEndpoint}. The returned endpoint will use the number
+    * of processors and the executor given by the system properties of
+    * {@link AbstractSocketEndpoint}.
     * 
     * @param address
     *           the socket address to encapsulate
     * @param type
     *           the type of transport
+    * 
+    * @throws IllegalArgumentException
+    *            if the system properties aren't valid
     */
    public ServerSocketEndpoint(SocketAddress address, TransportType type) {
       super(address, type);
@@ -87,10 +92,14 @@ public class ServerSocketEndpoint extends AbstractSocketEndpoint implements
     *           the type of transport
     * @param executor
     *           an {@code Executor} specifying the threading policy
+    * 
+    * @throws IllegalArgumentException
+    *            if the {@value #PROCESSORS_PROPERTY} property isn't a number
+    *            greater than 0
     */
    public ServerSocketEndpoint(SocketAddress address, TransportType type,
          Executor executor) {
-      this(address, type, executor, 1);
+      this(address, type, executor, getDefaultProcessors());
    }
 
    /**
@@ -128,12 +137,15 @@ public class ServerSocketEndpoint extends AbstractSocketEndpoint implements
     */
    public Acceptor<SocketAddress> createAcceptor() {
       IoAcceptor minaAcceptor;
+      ExecutorService ownExecutor = newOwnExecutor();
+      Executor ioExecutor = ownExecutor != null ? ownExecutor : executor;
 
       if (transportType.equals(TransportType.RELIABLE)) {
          org.apache.mina.transport.socket.nio.SocketAcceptor minaSocketAcceptor = new org.apache.mina.transport.socket.nio.SocketAcceptor(
-               numProcessors, executor);
+               numProcessors, ioExecutor);
 
          IoServiceConfig ioConfig = minaSocketAcceptor.getDefaultConfig();
+         ioConfig.setThreadModel(getThreadModel(ioConfig.getThreadModel()));
 
          /**
           * Note: I assume that this object will always be of type
@@ -159,9 +171,10 @@ public class ServerSocketEndpoint extends AbstractSocketEndpoint implements
          minaAcceptor = minaSocketAcceptor;
       }
       else {
-         minaAcceptor = new DatagramAcceptor(executor);
+         minaAcceptor = new DatagramAcceptor(ioExecutor);
       }
-      SocketAcceptor acceptor = new SocketAcceptor(this, minaAcceptor);
+      SocketAcceptor acceptor = new SocketAcceptor(this, minaAcceptor,
+            ownExecutor);
       logger.log(Level.FINE, "returning {0}", acceptor);
       return acceptor;
    }
@@ -35,6 +35,7 @@ package com.sun.sgs.impl.io;
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -67,6 +68,9 @@ class SocketAcceptor implements Acceptor<SocketAddress> {
    /** The endpoint on which to listen. */
    private final ServerSocketEndpoint endpoint;
 
+   /** The executor of this acceptor alone, or {@code null}. */
+   private final ExecutorService ownExecutor;
+
    /** Whether this acceptor has been shutdown. */
    private volatile boolean shutdown = false;
 
@@ -78,10 +82,15 @@ class SocketAcceptor implements Acceptor<SocketAddress> {
     * @param acceptor
     *           the MINA {@code IoAcceptor} to use for the underlying IO
     *           processing
+    * @param ownExecutor
+    *           the executor created for this acceptor alone, shut down with
+    *           it, or {@code null} if it runs on the executor of the endpoint
     */
-   SocketAcceptor(ServerSocketEndpoint endpoint, IoAcceptor acceptor) {
+   SocketAcceptor(ServerSocketEndpoint endpoint, IoAcceptor acceptor,
+         ExecutorService ownExecutor) {
       this.endpoint = endpoint;
       this.acceptor = acceptor;
+      this.ownExecutor = ownExecutor;
    }
 
    /**
@@ -134,6 +143,10 @@ class SocketAcceptor implements Acceptor<SocketAddress> {
          // only allow one? -JM
          shutdown = true;
          acceptor.unbindAll();
+         // the connections were closed by the unbind
+         if (ownExecutor != null) {
+            ownExecutor.shutdown();
+         }
       }
    }
 
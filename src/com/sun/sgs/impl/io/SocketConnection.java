@@ -37,6 +37,8 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.mina.common.ByteBuffer;
+import org.apache.mina.common.IoFuture;
+import org.apache.mina.common.IoFutureListener;
 import org.apache.mina.common.IoSession;
 import org.apache.mina.common.TransportType;
 import org.apache.mina.transport.socket.nio.SocketSessionConfig;
@@ -65,6 +67,16 @@ public class SocketConnection implements Connection, FilterListener {
    /** The {@link IoSession} for this {@code Connection}. */
    private final IoSession session;
 
+   /**
+    * Tells the filter when a write completes. MINA completes the future of a
+    * write that fails, or that is still queued when the session closes, too.
+    */
+   private final IoFutureListener writeListener = new IoFutureListener() {
+      public void operationComplete(IoFuture future) {
+         filter.filterSent(SocketConnection.this);
+      }
+   };
+
    /**
     * Construct a new SocketConnection with the given listener, filter, and
     * session.
@@ -96,7 +108,7 @@ public class SocketConnection implements Connection, FilterListener {
     * {@inheritDoc}
     * <p>
     * This implementation prepends the length of the given byte array as a
-    * 4-byte {@code int} in network byte-order, and sends it out on the
+    * 2-byte {@code short} in network byte-order, and sends it out on the
     * underlying MINA {@code IoSession}.
     * 
     * @param message
@@ -105,6 +117,24 @@ public class SocketConnection implements Connection, FilterListener {
     *            if the session is not connected
     */
    public void sendBytes(byte[] message) throws IOException {
+      sendBytes(java.nio.ByteBuffer.wrap(message));
+   }
+
+   /**
+    * {@inheritDoc}
+    * <p>
+    * This implementation prepends the length of the given message as a 2-byte
+    * {@code short} in network byte-order, and sends it out on the underlying
+    * MINA {@code IoSession}. The messages sent while a write is in progress
+    * go out together, in the next write.
+    * 
+    * @param message
+    *           the data to send
+    * @throws IOException
+    *            if the session is not connected, or if too many bytes are
+    *            waiting for the write in progress
+    */
+   public void sendBytes(java.nio.ByteBuffer message) throws IOException {
       if (!session.isConnected()) {
          IOException ioe = new IOException(
                "SocketConnection.close: session not connected");
@@ -137,26 +167,25 @@ public class SocketConnection implements Connection, FilterListener {
 
    /**
     * Dispatches a complete message to this connection's
-    * {@code ConnectionListener}.
+    * {@code ConnectionListener}, without copying it.
     * 
     * @param buf
-    *           a {@code MINA ByteBuffer} containing the message to dispatch
+    *           a read-only buffer containing the message to dispatch
     */
-   public void filteredMessageReceived(ByteBuffer buf) {
-      byte[] message = new byte[buf.remaining()];
-      buf.get(message);
-      listener.bytesReceived(this, message);
+   public void filteredMessageReceived(java.nio.ByteBuffer buf) {
+      listener.bytesReceived(this, buf);
    }
 
    /**
-    * Sends the given MINA buffer out on the associated {@code IoSession}.
+    * Sends the given MINA buffer out on the associated {@code IoSession}, and
+    * notifies the filter when the write completes.
     * 
     * @param buf
     *           the {@code MINA ByteBuffer} to send
     */
    public void sendUnfiltered(ByteBuffer buf) {
       logger.log(Level.FINEST, "message = {0}", buf);
-      session.write(buf);
+      session.write(buf).addListener(writeListener);
    }
 
    // specific to SocketConnection
@@ -34,10 +34,13 @@ package com.sun.sgs.impl.io;
 
 import java.io.IOException;
 import java.net.SocketAddress;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.mina.common.ConnectFuture;
+import org.apache.mina.common.IoFuture;
+import org.apache.mina.common.IoFutureListener;
 import org.apache.mina.common.IoConnector;
 import org.apache.mina.common.IoSession;
 import org.apache.mina.common.RuntimeIOException;
@@ -67,6 +70,9 @@ class SocketConnector implements Connector<SocketAddress> {
 
    private final SocketEndpoint endpoint;
 
+   /** The executor of this connector alone, or {@code null}. */
+   private final ExecutorService ownExecutor;
+
    private ConnectFuture connectFuture;
 
    /**
@@ -80,10 +86,16 @@ class SocketConnector implements Connector<SocketAddress> {
     * @param connector
     *           the {@link IoConnector MINA IoConnector} to use for establishing
     *           the connection
+    * @param ownExecutor
+    *           the executor created for this connector alone, shut down once
+    *           its connection is closed or failed, or {@code null} if it runs
+    *           on the executor of the endpoint
     */
-   SocketConnector(SocketEndpoint endpoint, IoConnector connector) {
+   SocketConnector(SocketEndpoint endpoint, IoConnector connector,
+         ExecutorService ownExecutor) {
       this.connector = connector;
       this.endpoint = endpoint;
+      this.ownExecutor = ownExecutor;
    }
 
    /**
@@ -100,11 +112,21 @@ class SocketConnector implements Connector<SocketAddress> {
             logger.logThrow(Level.FINE, e, e.getMessage());
             throw e;
          }
-         connListener = new ConnectorConnListner(listener);
+         connListener = new ConnectorConnListner(listener, ownExecutor);
       }
       logger.log(Level.FINE, "connecting to {0}", endpoint);
       ConnectFuture future = connector.connect(endpoint.getAddress(),
             connListener);
+      if (ownExecutor != null) {
+         future.addListener(new IoFutureListener() {
+            public void operationComplete(IoFuture done) {
+               // a connected one is shut down once it is closed
+               if (!((ConnectFuture) done).isConnected()) {
+                  ownExecutor.shutdown();
+               }
+            }
+         });
+      }
       synchronized (this) {
          connectFuture = future;
       }
@@ -177,6 +199,9 @@ class SocketConnector implements Connector<SocketAddress> {
       /** The requested ConnectionListener for the connected session. */
       private final ConnectionListener listener;
 
+      /** The executor of the connector alone, or {@code null}. */
+      private final ExecutorService ownExecutor;
+
       /** Whether this connector has been cancelled. */
       private boolean cancelled = false;
 
@@ -190,9 +215,14 @@ class SocketConnector implements Connector<SocketAddress> {
        * 
        * @param listener
        *           the ConnectionListener for the completed connection
+       * @param ownExecutor
+       *           the executor of the connector alone, shut down once the
+       *           connection is closed, or {@code null}
        */
-      ConnectorConnListner(ConnectionListener listener) {
+      ConnectorConnListner(ConnectionListener listener,
+            ExecutorService ownExecutor) {
          this.listener = listener;
+         this.ownExecutor = ownExecutor;
       }
 
       /**
@@ -245,6 +275,26 @@ class SocketConnector implements Connector<SocketAddress> {
                session);
          session.setAttachment(connection);
       }
+
+      /**
+       * {@inheritDoc}
+       * <p>
+       * The connection is the only one of the connector, so the executor of
+       * the connector is shut down.
+       */
+      @Override
+      public void sessionClosed(IoSession session) throws Exception {
+         try {
+            if (session.getAttachment() != null) {
+               super.sessionClosed(session);
+            }
+         }
+         finally {
+            if (ownExecutor != null) {
+               ownExecutor.shutdown();
+            }
+         }
+      }
    }
 
    /**
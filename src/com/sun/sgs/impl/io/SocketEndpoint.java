@@ -34,6 +34,7 @@ package com.sun.sgs.impl.io;
 
 import java.net.SocketAddress;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -59,12 +60,16 @@ public class SocketEndpoint extends AbstractSocketEndpoint implements
    /**
     * Constructs a {@code SocketEndpoint} with the given {@link TransportType}.
     * This is the simplest way to create a {@code SocketEndpoint}. The returned
-    * endpoint will use new daemon threads as necessary for processing events.
+    * endpoint will use the number of processors and the executor given by the
+    * system properties of {@link AbstractSocketEndpoint}.
     * 
     * @param address
     *           the socket address to encapsulate
     * @param type
     *           the type of transport
+    * 
+    * @throws IllegalArgumentException
+    *            if the system properties aren't valid
     */
    public SocketEndpoint(SocketAddress address, TransportType type) {
       super(address, type);
@@ -80,10 +85,14 @@ public class SocketEndpoint extends AbstractSocketEndpoint implements
     *           the type of transport
     * @param executor
     *           an {@code Executor} specifying the threading policy
+    * 
+    * @throws IllegalArgumentException
+    *            if the {@value #PROCESSORS_PROPERTY} property isn't a number
+    *            greater than 0
     */
    public SocketEndpoint(SocketAddress address, TransportType type,
          Executor executor) {
-      this(address, type, executor, 1);
+      this(address, type, executor, getDefaultProcessors());
    }
 
    /**
@@ -120,22 +129,29 @@ public class SocketEndpoint extends AbstractSocketEndpoint implements
     */
    public Connector<SocketAddress> createConnector() {
       IoConnector minaConnector;
+      ExecutorService ownExecutor = newOwnExecutor();
       if (transportType.equals(TransportType.RELIABLE)) {
          // XXX changed from original SGS client to prevent SecurityException
          // from arising and to allow users to reconnect to the game
-         // see issue #8 (https://sgs-java-client.dev.java.net/issues/show_bug.cgi?id=8)
+         // see issue #8 (https://sgs-java-client.dev.java.net/issues/show_bug.cgi?id=8):
+         // the shared executor of the endpoints is replaced by a pool of its own
+         if (ownExecutor == null && usesDefaultExecutor()) {
+            ownExecutor = Executors.newCachedThreadPool();
+         }
          minaConnector = new org.apache.mina.transport.socket.nio.SocketConnector(
-               numProcessors, Executors.newCachedThreadPool());
+               numProcessors, ownExecutor != null ? ownExecutor : executor);
 
          SocketConnectorConfig cfg = new SocketConnectorConfig();
-         cfg.setThreadModel(ThreadModel.MANUAL);
+         cfg.setThreadModel(getThreadModel(ThreadModel.MANUAL));
          ((org.apache.mina.transport.socket.nio.SocketConnector) minaConnector)
                .setDefaultConfig(cfg);
       }
       else {
-         minaConnector = new DatagramConnector(executor);
+         minaConnector = new DatagramConnector(ownExecutor != null ? ownExecutor
+               : executor);
       }
-      SocketConnector connector = new SocketConnector(this, minaConnector);
+      SocketConnector connector = new SocketConnector(this, minaConnector,
+            ownExecutor);
       logger.log(Level.FINE, "returning {0}", connector);
       return connector;
    }
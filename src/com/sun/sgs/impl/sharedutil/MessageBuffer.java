@@ -33,6 +33,7 @@
 package com.sun.sgs.impl.sharedutil;
 
 import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
 
 /**
  * A buffer for composing/decomposing messages.
@@ -40,6 +41,11 @@ import java.io.UTFDataFormatException;
  * <p>
  * Strings are encoded in modified UTF-8 format as described in
  * {@link java.io.DataInput}.
+ * 
+ * <p>
+ * Multi-byte values are checked against the capacity or limit once and then
+ * read or written directly in the backing array; byte arrays are copied in
+ * bulk.
  */
 public class MessageBuffer {
 
@@ -163,7 +169,7 @@ public class MessageBuffer {
          throw new IndexOutOfBoundsException();
       }
       buf[pos++] = (byte) b;
-      limit = (pos == capacity ? pos : pos + 1);
+      updateLimit();
       return this;
    }
 
@@ -203,9 +209,32 @@ public class MessageBuffer {
       if (pos + bytes.length > capacity) {
          throw new IndexOutOfBoundsException();
       }
-      for (byte b : bytes) {
-         putByte(b);
+      System.arraycopy(bytes, 0, buf, pos, bytes.length);
+      pos += bytes.length;
+      updateLimit();
+      return this;
+   }
+
+   /**
+    * Puts the remaining bytes of the specified byte buffer in this buffer,
+    * starting at this buffer's current position. The byte buffer may be a
+    * direct one. The position of the byte buffer is advanced to its limit, and
+    * this buffer's position and limit by the number of bytes copied.
+    * 
+    * @param bytes
+    *           a byte buffer
+    * @return this buffer
+    * @throws IndexOutOfBoundsException
+    *            if adding the bytes to this buffer would overflow the buffer
+    */
+   public MessageBuffer putBytes(ByteBuffer bytes) {
+      int size = bytes.remaining();
+      if (pos + size > capacity) {
+         throw new IndexOutOfBoundsException();
       }
+      bytes.get(buf, pos, size);
+      pos += size;
+      updateLimit();
       return this;
    }
 
@@ -224,8 +253,9 @@ public class MessageBuffer {
       if (pos + 2 > capacity) {
          throw new IndexOutOfBoundsException();
       }
-      putByte((v >>> 8) & 0xFF);
-      putByte((v >>> 0) & 0xFF);
+      putShortAt(pos, v);
+      pos += 2;
+      updateLimit();
       return this;
    }
 
@@ -244,8 +274,9 @@ public class MessageBuffer {
       if (pos + 2 > capacity) {
          throw new IndexOutOfBoundsException();
       }
-      putByte((v >>> 8) & 0xFF);
-      putByte((v >>> 0) & 0xFF);
+      putShortAt(pos, v);
+      pos += 2;
+      updateLimit();
       return this;
    }
 
@@ -264,10 +295,9 @@ public class MessageBuffer {
       if (pos + 4 > capacity) {
          throw new IndexOutOfBoundsException();
       }
-      putByte((v >>> 24) & 0xff);
-      putByte((v >>> 16) & 0xff);
-      putByte((v >>> 8) & 0xff);
-      putByte((v >>> 0) & 0xff);
+      putIntAt(pos, v);
+      pos += 4;
+      updateLimit();
       return this;
    }
 
@@ -286,14 +316,10 @@ public class MessageBuffer {
       if (pos + 8 > capacity) {
          throw new IndexOutOfBoundsException();
       }
-      putByte((byte) (v >>> 56));
-      putByte((byte) (v >>> 48));
-      putByte((byte) (v >>> 40));
-      putByte((byte) (v >>> 32));
-      putByte((byte) (v >>> 24));
-      putByte((byte) (v >>> 16));
-      putByte((byte) (v >>> 8));
-      putByte((byte) (v >>> 0));
+      putIntAt(pos, (int) (v >>> 32));
+      putIntAt(pos + 4, (int) v);
+      pos += 8;
+      updateLimit();
       return this;
    }
 
@@ -357,7 +383,7 @@ public class MessageBuffer {
       /*
        * Adjust limit, because we didn't use putByte.
        */
-      limit = (pos == capacity ? pos : pos + 1);
+      updateLimit();
 
       return this;
    }
@@ -417,9 +443,8 @@ public class MessageBuffer {
       }
 
       byte[] bytes = new byte[size];
-      for (int i = 0; i < size; i++) {
-         bytes[i] = getByte();
-      }
+      System.arraycopy(buf, pos, bytes, 0, size);
+      pos += size;
       return bytes;
    }
 
@@ -437,7 +462,9 @@ public class MessageBuffer {
          throw new IndexOutOfBoundsException();
       }
 
-      return (short) ((getByte() << 8) + (getByte() & 255));
+      short v = (short) getUnsignedShortAt(pos);
+      pos += 2;
+      return v;
    }
 
    /**
@@ -455,7 +482,9 @@ public class MessageBuffer {
          throw new IndexOutOfBoundsException();
       }
 
-      return ((getByte() & 255) << 8) + ((getByte() & 255) << 0);
+      int v = getUnsignedShortAt(pos);
+      pos += 2;
+      return v;
    }
 
    /**
@@ -472,8 +501,9 @@ public class MessageBuffer {
          throw new IndexOutOfBoundsException();
       }
 
-      return ((getByte() & 255) << 24) + ((getByte() & 255) << 16)
-            + ((getByte() & 255) << 8) + ((getByte() & 255) << 0);
+      int v = getIntAt(pos);
+      pos += 4;
+      return v;
    }
 
    /**
@@ -490,13 +520,10 @@ public class MessageBuffer {
          throw new IndexOutOfBoundsException();
       }
 
-      return ((long) (getByte() & 255) << 56)
-            + ((long) (getByte() & 255) << 48)
-            + ((long) (getByte() & 255) << 40)
-            + ((long) (getByte() & 255) << 32)
-            + ((long) (getByte() & 255) << 24)
-            + ((long) (getByte() & 255) << 16)
-            + ((long) (getByte() & 255) << 8) + ((long) (getByte() & 255) << 0);
+      long v = ((long) getIntAt(pos) << 32)
+            + (getIntAt(pos + 4) & 0xFFFFFFFFL);
+      pos += 8;
+      return v;
    }
 
    /**
@@ -513,7 +540,9 @@ public class MessageBuffer {
          throw new IndexOutOfBoundsException();
       }
 
-      return (char) ((getByte() << 8) + (getByte() & 255));
+      char v = (char) getUnsignedShortAt(pos);
+      pos += 2;
+      return v;
    }
 
    /**
@@ -640,4 +669,49 @@ public class MessageBuffer {
       return buf;
    }
 
+   /**
+    * Sets the limit after a put: one past the position, so that the next byte
+    * can be read back, unless the buffer is full.
+    */
+   private void updateLimit() {
+      limit = (pos == capacity ? pos : pos + 1);
+   }
+
+   /**
+    * Writes two bytes (high byte first) at the specified index, which the
+    * caller has checked against the capacity.
+    */
+   private void putShortAt(int i, int v) {
+      buf[i] = (byte) (v >>> 8);
+      buf[i + 1] = (byte) v;
+   }
+
+   /**
+    * Writes four bytes (high byte first) at the specified index, which the
+    * caller has checked against the capacity.
+    */
+   private void putIntAt(int i, int v) {
+      buf[i] = (byte) (v >>> 24);
+      buf[i + 1] = (byte) (v >>> 16);
+      buf[i + 2] = (byte) (v >>> 8);
+      buf[i + 3] = (byte) v;
+   }
+
+   /**
+    * Reads two bytes (high byte first) at the specified index, which the
+    * caller has checked against the limit.
+    */
+   private int getUnsignedShortAt(int i) {
+      return ((buf[i] & 255) << 8) | (buf[i + 1] & 255);
+   }
+
+   /**
+    * Reads four bytes (high byte first) at the specified index, which the
+    * caller has checked against the limit.
+    */
+   private int getIntAt(int i) {
+      return ((buf[i] & 255) << 24) | ((buf[i + 1] & 255) << 16)
+            | ((buf[i + 2] & 255) << 8) | (buf[i + 3] & 255);
+   }
+
 }
@@ -33,6 +33,7 @@
 package com.sun.sgs.io;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Represents a connection for data communication, independent of the QoS
@@ -57,6 +58,19 @@ public interface Connection {
     */
    void sendBytes(byte[] message) throws IOException;
 
+   /**
+    * Asynchronously sends the data between the position and the limit of the
+    * given buffer on this connection. The buffer is not retained: it may be
+    * reused once this method returns.
+    * 
+    * @param message
+    *           the message data to send
+    * 
+    * @throws IOException
+    *            if there was a synchronous problem sending the message
+    */
+   void sendBytes(ByteBuffer message) throws IOException;
+
    /**
     * Asynchronously closes this connection, freeing any resources in use. The
     * connection should not be considered closed until
@@ -32,6 +32,8 @@
 
 package com.sun.sgs.io;
 
+import java.nio.ByteBuffer;
+
 /**
  * Receives asynchronous notification of events from an associated
  * {@link Connection}. The {@code connected} method is invoked when the
@@ -66,13 +68,18 @@ public interface ConnectionListener {
     * {@code message} is not guaranteed to be a single, whole message; this
     * method is responsible for message reassembly unless the connection itself
     * guarantees that only complete messages are delivered.
+    * <p>
+    * The {@code message} may be a view on the buffer the connection reads
+    * into: it is only valid until this method returns, and must be copied if
+    * it is needed after that.
     * 
     * @param conn
     *           the {@code Connection} on which the message arrived
     * @param message
-    *           the received message bytes
+    *           a read-only buffer containing the received message bytes
+    *           between its position and limit
     */
-   void bytesReceived(Connection conn, byte[] message);
+   void bytesReceived(Connection conn, ByteBuffer message);
 
    /**
     * Notifies this listener that a network exception has occurred on the
@@ -0,0 +1,109 @@
+package common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A per-thread pool of the small heap buffers messages are built in. The
+ * buffers come in size classes of 16, 32, 64, 128 and 256 bytes: a message
+ * gets a buffer of the smallest class that fits it, with its limit set to the
+ * size of the message. Larger messages get a buffer of their own.
+ * <p>
+ * Once the message has been sent, its buffer is given back with
+ * {@link #release(ByteBuffer)}, and must not be used anymore: the next message
+ * built on the same thread may get it. The sends of the server and of the
+ * client copy the message, so a buffer can be released as soon as the send
+ * returns. A buffer that isn't released is simply left to the garbage
+ * collector.
+ * <p>
+ * No reference to a pooled buffer may be kept past the send call, not even
+ * by the code that built the message: once released, it holds the next
+ * message built on the thread. The received messages follow the same rule
+ * from the other side: the <code>SimpleClient</code> listeners, and the
+ * command handlers behind them, get a view of the receive buffer that is
+ * only valid until the callback returns. A handler that needs a message
+ * later copies it, and never releases it to this pool.
+ */
+public final class BufferPool {
+
+   /** the size of the smallest class is 1 << MIN_SHIFT */
+   private static final int MIN_SHIFT = 4;
+
+   private static final int CLASSES = 5;
+
+   /** the size of the largest class */
+   public static final int MAX_SIZE = 1 << (MIN_SHIFT + CLASSES - 1);
+
+   /** the buffers kept per class and thread */
+   private static final int DEPTH = 16;
+
+   private static final ThreadLocal<BufferPool> POOLS = new ThreadLocal<BufferPool>() {
+      @Override
+      protected BufferPool initialValue() {
+         return new BufferPool();
+      }
+   };
+
+   /** the free buffers of each class, a stack of count[c] buffers */
+   private final ByteBuffer[][] free = new ByteBuffer[CLASSES][DEPTH];
+
+   private final int[] count = new int[CLASSES];
+
+   private BufferPool() {
+   }
+
+   /**
+    * Returns a buffer for a message of <code>size</code> bytes, positioned at
+    * 0 with its limit at <code>size</code>
+    */
+   public static ByteBuffer acquire(int size) {
+      if (size > MAX_SIZE) {
+         return ByteBuffer.allocate(size);
+      }
+
+      int c = sizeClass(size);
+      BufferPool pool = POOLS.get();
+      ByteBuffer buff;
+      if (pool.count[c] > 0) {
+         int top = --pool.count[c];
+         buff = pool.free[c][top];
+         pool.free[c][top] = null;
+         buff.clear();
+      }
+      else {
+         buff = ByteBuffer.allocate(1 << (MIN_SHIFT + c));
+      }
+      buff.limit(size);
+
+      return buff;
+   }
+
+   /**
+    * Gives back the buffer of a sent message to the pool of the current thread.
+    * Buffers of no size class, or when the pool of their class is full, are
+    * left to the garbage collector. A buffer must be released only once.
+    */
+   public static void release(ByteBuffer buff) {
+      int capacity = buff.capacity();
+      if (capacity > MAX_SIZE || capacity < 1 << MIN_SHIFT
+            || Integer.bitCount(capacity) != 1 || buff.isReadOnly()
+            || buff.isDirect()) {
+         return;
+      }
+
+      int c = sizeClass(capacity);
+      BufferPool pool = POOLS.get();
+      if (pool.count[c] < DEPTH) {
+         pool.free[c][pool.count[c]++] = buff;
+      }
+   }
+
+   /**
+    * Returns the smallest class of at least <code>size</code> bytes
+    */
+   private static int sizeClass(int size) {
+      if (size <= 1 << MIN_SHIFT) {
+         return 0;
+      }
+      return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+   }
+}
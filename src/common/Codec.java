@@ -0,0 +1,386 @@
+package common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Binary encoding of the info objects sent between server and client. Every
+ * type has a <code>sizeOf</code> method (so messages can be allocated with
+ * the exact size), a <code>put</code> method and a <code>get</code> method.
+ * 
+ * Strings are encoded as an unsigned short length followed by their UTF-8
+ * bytes, collections as an int count followed by their elements.
+ * 
+ * The encoding of figures depends on the protocol {@link #VERSION}: version 1
+ * writes five ints, version 2 packs a figure into {@link #FIGURE_SIZE} bytes
+ * and version 3 adds the slot of the figure to the packed form, so moves can
+ * be sent as deltas (see {@link Delta}).
+ * 
+ * Version 4 no longer lists every room in the lobby data: it carries the
+ * first page of the open rooms and the cursor of the next page, the other
+ * pages are requested apart (see {@link RoomFilter}). Version 5 pages the
+ * players the same way (see {@link PlayerCursor}).
+ */
+public final class Codec {
+
+   private static final Charset UTF8 = Charset.forName("UTF-8");
+
+   /** first protocol version with packed figures */
+   public static final int PACKED_FIGURES = 2;
+
+   /** first protocol version with figure slots and delta moves */
+   public static final int DELTA_MOVES = 3;
+
+   /** first protocol version with paged room listings */
+   public static final int PAGED_ROOMS = 4;
+
+   /** first protocol version with paged player listings */
+   public static final int PAGED_PLAYERS = 5;
+
+   /**
+    * The protocol version spoken by this build, sent at the start of the lobby
+    * data so a client can detect a server that speaks another one
+    */
+   public static final int VERSION = PAGED_PLAYERS;
+
+   /** encoded size of a FigureInfo */
+   public static final int FIGURE_SIZE = VERSION >= PACKED_FIGURES ? 3 : 20;
+
+   /** figure type written in place of a missing (null) figure */
+   private static final int NO_FIGURE = 0;
+
+   private Codec() {
+   }
+
+   // /////////////////////
+   // String
+   // /////////////////////
+   public static int sizeOf(String str) {
+      return 2 + str.getBytes(UTF8).length;
+   }
+
+   public static void putString(ByteBuffer buf, String str) {
+      byte[] bytes = str.getBytes(UTF8);
+      if (bytes.length > 0xFFFF) {
+         throw new IllegalArgumentException("string too long: "
+               + bytes.length);
+      }
+      buf.putShort((short) bytes.length);
+      buf.put(bytes);
+   }
+
+   public static String getString(ByteBuffer buf) {
+      byte[] bytes = new byte[buf.getShort() & 0xFFFF];
+      buf.get(bytes);
+      return new String(bytes, UTF8);
+   }
+
+   // /////////////////////
+   // PlayerInfo
+   // /////////////////////
+   public static int sizeOf(PlayerInfo player) {
+      return sizeOf(player.getName()) + 4;
+   }
+
+   public static void putPlayerInfo(ByteBuffer buf, PlayerInfo player) {
+      putString(buf, player.getName());
+      buf.putInt(player.getColor());
+   }
+
+   public static PlayerInfo getPlayerInfo(ByteBuffer buf) {
+      String name = getString(buf);
+      int color = buf.getInt();
+      return new PlayerInfo(name, color);
+   }
+
+   public static int sizeOfPlayerInfos(Collection<PlayerInfo> players) {
+      int size = 4;
+      for (PlayerInfo player : players) {
+         size += sizeOf(player);
+      }
+      return size;
+   }
+
+   public static void putPlayerInfos(ByteBuffer buf,
+         Collection<PlayerInfo> players) {
+      buf.putInt(players.size());
+      for (PlayerInfo player : players) {
+         putPlayerInfo(buf, player);
+      }
+   }
+
+   public static List<PlayerInfo> getPlayerInfos(ByteBuffer buf) {
+      int count = buf.getInt();
+      List<PlayerInfo> ret = new ArrayList<PlayerInfo>(count);
+      for (int i = 0; i < count; i++) {
+         ret.add(getPlayerInfo(buf));
+      }
+      return ret;
+   }
+
+   // /////////////////////
+   // RoomInfo
+   // /////////////////////
+   public static int sizeOf(RoomInfo room) {
+      // id, maxPlayers, started
+      return 8 + 4 + 1 + sizeOfPlayerInfos(room.getPlayers());
+   }
+
+   public static void putRoomInfo(ByteBuffer buf, RoomInfo room) {
+      buf.putLong(room.getId());
+      buf.putInt(room.getMaxPlayers());
+      buf.put((byte) (room.isStarted() ? 1 : 0));
+      putPlayerInfos(buf, room.getPlayers());
+   }
+
+   public static RoomInfo getRoomInfo(ByteBuffer buf) {
+      long id = buf.getLong();
+      int maxPlayers = buf.getInt();
+      boolean started = buf.get() != 0;
+
+      RoomInfo room = new RoomInfo(id, maxPlayers, started);
+      room.setPlayers(getPlayerInfos(buf));
+      return room;
+   }
+
+   public static List<RoomInfo> getRoomInfos(ByteBuffer buf) {
+      int count = buf.getInt();
+      List<RoomInfo> ret = new ArrayList<RoomInfo>(count);
+      for (int i = 0; i < count; i++) {
+         ret.add(getRoomInfo(buf));
+      }
+      return ret;
+   }
+
+   // /////////////////////
+   // LobbyData
+   // /////////////////////
+   public static int sizeOfNames(Collection<String> names) {
+      int size = 4;
+      for (String name : names) {
+         size += sizeOf(name);
+      }
+      return size;
+   }
+
+   public static void putNames(ByteBuffer buf, Collection<String> names) {
+      buf.putInt(names.size());
+      for (String name : names) {
+         putString(buf, name);
+      }
+   }
+
+   public static Set<String> getPlayerNames(ByteBuffer buf) {
+      int numPlayers = buf.getInt();
+      Set<String> players = new LinkedHashSet<String>();
+      for (int i = 0; i < numPlayers; i++) {
+         players.add(getString(buf));
+      }
+      return players;
+   }
+
+   public static int sizeOf(PlayerCursor cursor) {
+      return 4 + sizeOf(cursor.getAfter());
+   }
+
+   public static void putPlayerCursor(ByteBuffer buf, PlayerCursor cursor) {
+      buf.putInt(cursor.getShard());
+      putString(buf, cursor.getAfter());
+   }
+
+   public static PlayerCursor getPlayerCursor(ByteBuffer buf) {
+      int shard = buf.getInt();
+      String after = getString(buf);
+      return shard < 0 ? PlayerCursor.NO_MORE_PLAYERS : new PlayerCursor(
+            shard, after);
+   }
+
+   // /////////////////////
+   // LobbyDelta
+   // /////////////////////
+   public static int sizeOf(LobbyDelta delta) {
+      int size = sizeOfNames(delta.getEntered())
+            + sizeOfNames(delta.getLeft()) + 4;
+      for (LobbyDelta.RoomChange room : delta.getRooms()) {
+         size += sizeOf(room);
+      }
+      return size;
+   }
+
+   public static int sizeOf(LobbyDelta.RoomChange room) {
+      // id, flags, maxPlayers
+      return 8 + 1 + (room.is(LobbyDelta.CREATED) ? 4 : 0)
+            + sizeOfPlayerInfos(room.getJoined());
+   }
+
+   /**
+    * Writes the players that entered the lobby, the players that left it,
+    * and the changed rooms: id, flags, maximum players (only for created
+    * rooms) and the players that joined
+    */
+   public static void putLobbyDelta(ByteBuffer buf, LobbyDelta delta) {
+      putNames(buf, delta.getEntered());
+      putNames(buf, delta.getLeft());
+
+      List<LobbyDelta.RoomChange> rooms = delta.getRooms();
+      buf.putInt(rooms.size());
+      for (LobbyDelta.RoomChange room : rooms) {
+         buf.putLong(room.getId());
+         buf.put((byte) room.getFlags());
+         if (room.is(LobbyDelta.CREATED)) {
+            buf.putInt(room.getMaxPlayers());
+         }
+         putPlayerInfos(buf, room.getJoined());
+      }
+   }
+
+   public static LobbyDelta getLobbyDelta(ByteBuffer buf) {
+      LobbyDelta delta = new LobbyDelta();
+      for (String player : getPlayerNames(buf)) {
+         delta.enteredLobby(player);
+      }
+      for (String player : getPlayerNames(buf)) {
+         delta.leftLobby(player);
+      }
+
+      int numRooms = buf.getInt();
+      for (int i = 0; i < numRooms; i++) {
+         LobbyDelta.RoomChange room = new LobbyDelta.RoomChange(buf.getLong());
+         room.setFlags(buf.get());
+         if (room.is(LobbyDelta.CREATED)) {
+            room.setMaxPlayers(buf.getInt());
+         }
+         room.getJoined().addAll(getPlayerInfos(buf));
+         delta.add(room);
+      }
+      return delta;
+   }
+
+   // /////////////////////
+   // FigureInfo
+   // /////////////////////
+
+   /**
+    * Writes a figure, or an empty figure if <code>figure</code> is null
+    */
+   public static void putFigureInfo(ByteBuffer buf, FigureInfo figure) {
+      if (VERSION >= PACKED_FIGURES) {
+         putPackedFigureInfo(buf, figure);
+      }
+      else if (figure == null) {
+         buf.putInt(NO_FIGURE);
+         buf.putInt(0);
+         buf.putInt(0);
+         buf.putInt(0);
+         buf.putInt(0);
+      }
+      else {
+         buf.putInt(figure.getType());
+         buf.putInt(figure.getX());
+         buf.putInt(figure.getY());
+         buf.putInt(figure.getRotation());
+         buf.putInt(figure.getColor());
+      }
+   }
+
+   /**
+    * Reads a figure
+    * 
+    * @return the figure, or null if an empty figure was written
+    */
+   public static FigureInfo getFigureInfo(ByteBuffer buf) {
+      if (VERSION >= PACKED_FIGURES) {
+         return getPackedFigureInfo(buf);
+      }
+
+      int type = buf.getInt();
+      int x = buf.getInt();
+      int y = buf.getInt();
+      int rotation = buf.getInt();
+      int color = buf.getInt();
+
+      if (type == NO_FIGURE) {
+         return null;
+      }
+      return new FigureInfo(type, x, y, rotation, color);
+   }
+
+   /**
+    * Writes a figure in 3 bytes: type (3 bits), rotation (2 bits), x (6 bits),
+    * y (6 bits, signed), the palette index of the color (3 bits) and the slot
+    * (3 bits), from the most significant bit down. The lowest bit is unused.
+    * 
+    * @throws IllegalArgumentException
+    *            if a field doesn't fit
+    */
+   private static void putPackedFigureInfo(ByteBuffer buf, FigureInfo figure) {
+      int packed = 0;
+
+      if (figure != null) {
+         int type = figure.getType();
+         int rotation = figure.getRotation();
+         int x = figure.getX();
+         int y = figure.getY();
+         int slot = figure.getSlot();
+
+         if (type < 1 || type > 7 || rotation < 0 || rotation > 3 || x < 0
+               || x > 63 || y < -32 || y > 31 || slot < 0 || slot > 7) {
+            throw new IllegalArgumentException("figure doesn't fit: type "
+                  + type + ", rotation " + rotation + ", (" + x + ", " + y
+                  + "), slot " + slot);
+         }
+
+         packed = type << 21 | rotation << 19 | x << 13 | (y & 0x3F) << 7
+               | Palette.indexOf(figure.getColor()) << 4 | slot << 1;
+      }
+
+      buf.put((byte) (packed >>> 16));
+      buf.put((byte) (packed >>> 8));
+      buf.put((byte) packed);
+   }
+
+   private static FigureInfo getPackedFigureInfo(ByteBuffer buf) {
+      int packed = (buf.get() & 0xFF) << 16 | (buf.get() & 0xFF) << 8
+            | (buf.get() & 0xFF);
+
+      int type = packed >>> 21;
+      if (type == NO_FIGURE) {
+         return null;
+      }
+
+      int rotation = (packed >>> 19) & 0x3;
+      int x = (packed >>> 13) & 0x3F;
+      // sign-extend the 6 bits of y
+      int y = (packed << 19) >> 26;
+      int color = Palette.getColor((packed >>> 4) & 0x7);
+      int slot = (packed >>> 1) & 0x7;
+
+      return new FigureInfo(type, x, y, rotation, color, slot);
+   }
+
+   public static int sizeOfFigureInfos(Collection<FigureInfo> figures) {
+      return 4 + FIGURE_SIZE * figures.size();
+   }
+
+   public static void putFigureInfos(ByteBuffer buf,
+         Collection<FigureInfo> figures) {
+      buf.putInt(figures.size());
+      for (FigureInfo figure : figures) {
+         putFigureInfo(buf, figure);
+      }
+   }
+
+   public static List<FigureInfo> getFigureInfos(ByteBuffer buf) {
+      int count = buf.getInt();
+      List<FigureInfo> ret = new ArrayList<FigureInfo>(count);
+      for (int i = 0; i < count; i++) {
+         ret.add(getFigureInfo(buf));
+      }
+      return ret;
+   }
+}
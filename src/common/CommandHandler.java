@@ -0,0 +1,20 @@
+package common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Handles the messages of one command, registered in a {@link CommandTable}.
+ * 
+ * @param <T>
+ *           the object the messages are received by
+ */
+public interface CommandHandler<T> {
+
+   /**
+    * @param context
+    *           the object the message was received by
+    * @param buf
+    *           the message, positioned after the command
+    */
+   void handle(T context, ByteBuffer buf);
+}
@@ -0,0 +1,67 @@
+package common;
+
+import java.nio.ByteBuffer;
+
+import common.Commands.Command;
+
+/**
+ * Dispatches incoming messages to the handler registered for their command.
+ * Handlers are kept in an array indexed by the command encoding, so a message
+ * costs one array lookup and one call, whatever the number of commands.
+ * 
+ * @param <T>
+ *           the object the messages are received by
+ */
+public final class CommandTable<T> {
+
+   private final CommandHandler<T>[] handlers = newHandlers(Command
+         .values().length);
+
+   /**
+    * Java can't create an array of a generic type, so the handlers are kept in
+    * an array of wildcard handlers. Only handlers of <code>T</code> are ever
+    * stored in it, which makes the cast safe.
+    */
+   @SuppressWarnings("unchecked")
+   private static <T> CommandHandler<T>[] newHandlers(int length) {
+      return (CommandHandler<T>[]) new CommandHandler<?>[length];
+   }
+
+   public void register(Command cmd, CommandHandler<T> handler) {
+      handlers[Commands.encode(cmd)] = handler;
+   }
+
+   /**
+    * Reads the command at the current position of <code>buf</code> and calls
+    * its handler with the rest of the message. The messages in a BATCH are
+    * dispatched one by one, in the order they were sent.
+    * 
+    * @return false if there is no handler for the command
+    * @throws IllegalArgumentException
+    *            if the command is unknown
+    */
+   public boolean dispatch(T context, ByteBuffer buf) {
+      Command cmd = Commands.decode(buf.getInt());
+
+      if (cmd == Command.BATCH) {
+         // each message is dispatched in place, by narrowing the limit
+         int limit = buf.limit();
+         while (buf.position() < limit) {
+            int length = buf.getShort() & 0xFFFF;
+            int end = buf.position() + length;
+            buf.limit(end);
+            dispatch(context, buf);
+            buf.limit(limit);
+            buf.position(end);
+         }
+         return true;
+      }
+
+      CommandHandler<T> handler = handlers[cmd.ordinal()];
+      if (handler == null) {
+         return false;
+      }
+      handler.handle(context, buf);
+      return true;
+   }
+}
@@ -1,29 +1,21 @@
 package common;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public final class Commands {
 
-   private static final Map<Integer, Commands.Command> ordinalToEnum = new HashMap<Integer, Commands.Command>();
-
-   static {
-      for (Commands.Command cmd : Commands.Command.values()) {
-         ordinalToEnum.put(cmd.ordinal(), cmd);
-      }
-   }
+   /** the commands, indexed by their encoding */
+   private static final Commands.Command[] ordinalToEnum = Commands.Command
+         .values();
 
    public static int encode(Commands.Command cmd) {
       return cmd.ordinal();
    }
 
    public static Commands.Command decode(int encodedType) {
-      Command cmd = ordinalToEnum.get(encodedType);
-      if (cmd == null) {
+      if (encodedType < 0 || encodedType >= ordinalToEnum.length) {
          throw new IllegalArgumentException("Unknown encoding of command: "
                + encodedType);
       }
-      return cmd;
+      return ordinalToEnum[encodedType];
    }
 
    private Commands() {
@@ -32,9 +24,9 @@ public final class Commands {
    public static enum Command {
       /** Chat message */
       CHAT,
-      /** User joined the lobby */
+      /** User joined the lobby, no longer sent: see LOBBY_DELTA */
       USER_JOINED,
-      /** User left the lobby */
+      /** User left the lobby, no longer sent: see LOBBY_DELTA */
       USER_LEFT,
       /** Lobby data: current players and rooms */
       LOBBY_DATA,
@@ -48,7 +40,10 @@ public final class Commands {
       ROOM_FULL,
       /** User has left a room */
       ROOM_LEFT,
-      /** Room was dropped (no players left in room) */
+      /**
+       * Room was dropped (no players left in room), no longer sent: see
+       * LOBBY_DELTA
+       */
       ROOM_DROPPED,
       /** User abandoned the game */
       ABANDON,
@@ -75,6 +70,24 @@ public final class Commands {
       /** Change game owner (when game creator leaves the room) */
       GAME_OWNER,
       /** PING! */
-      PING
+      PING,
+      /** Figures moved down by the server gravity tick */
+      GRAVITY,
+      /** A figure move, as a delta of the figure in a slot */
+      DELTA,
+      /** Full state of the figures of a room */
+      FIGURE_SYNC,
+      /** Several messages sent as one, each preceded by its length */
+      BATCH,
+      /** User requests a page of the rooms, see RoomFilter */
+      REQUEST_ROOMS,
+      /** A page of the rooms and the cursor of the next one */
+      ROOMS_PAGE,
+      /** The lobby changes of the last time window, coalesced */
+      LOBBY_DELTA,
+      /** User requests a page of the players, see PlayerCursor */
+      REQUEST_PLAYERS,
+      /** A page of the players and the cursor of the next one */
+      PLAYERS_PAGE
    }
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+package common;
+
+/**
+ * Figure moves sent as deltas. The clients already know every figure of the
+ * room (by the slot of its player), so a move is sent as a sequence number
+ * and a single byte holding the operation and the slot:
+ * <code>op << 3 | slot</code>. Hard drops add one byte with the number of
+ * rows.
+ */
+public final class Delta {
+
+   public static final int LEFT = 0;
+
+   public static final int RIGHT = 1;
+
+   public static final int DOWN = 2;
+
+   public static final int ROTATE = 3;
+
+   public static final int DROP = 4;
+
+   /** the maximum number of slots of a room */
+   public static final int MAX_SLOTS = 8;
+
+   private Delta() {
+   }
+
+   public static byte encode(int op, int slot) {
+      return (byte) (op << 3 | slot);
+   }
+
+   public static int getOp(byte delta) {
+      return (delta >> 3) & 0x1F;
+   }
+
+   public static int getSlot(byte delta) {
+      return delta & 0x7;
+   }
+
+   /**
+    * @return the sequence number following <code>seq</code>
+    */
+   public static int next(int seq) {
+      return (seq + 1) & 0xFF;
+   }
+}
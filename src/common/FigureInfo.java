@@ -8,12 +8,20 @@ public class FigureInfo implements Serializable {
 
    private int type, x, y, rot, color;
 
+   /** the room slot of the player handling the figure */
+   private int slot;
+
    public FigureInfo(int type, int x, int y, int rotation, int color) {
+      this(type, x, y, rotation, color, 0);
+   }
+
+   public FigureInfo(int type, int x, int y, int rotation, int color, int slot) {
       this.type = type;
       this.x = x;
       this.y = y;
       this.rot = rotation;
       this.color = color;
+      this.slot = slot;
    }
 
    public int getType() {
@@ -35,4 +43,8 @@ public class FigureInfo implements Serializable {
    public int getColor() {
       return color;
    }
+
+   public int getSlot() {
+      return slot;
+   }
 }
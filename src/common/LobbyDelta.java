@@ -0,0 +1,283 @@
+package common;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The changes of the lobby over a time window, coalesced: every player only
+ * appears once, where the last event of the window left him (in the lobby,
+ * gone, or in a room), and every room once, with all its changes. The joins
+ * of a dropped room are discarded, and a room created and dropped within the
+ * window doesn't appear at all.
+ */
+public class LobbyDelta implements Serializable {
+
+   private static final long serialVersionUID = 3187355087021839218L;
+
+   /** the room was created */
+   public static final int CREATED = 1;
+
+   /** the game of the room started */
+   public static final int STARTED = 2;
+
+   /** the room was dropped */
+   public static final int DROPPED = 4;
+
+   /**
+    * The changes of a room: its flags and the players that joined it
+    */
+   public static class RoomChange implements Serializable {
+
+      private static final long serialVersionUID = -1851758812442049402L;
+
+      private long id;
+
+      private int flags;
+
+      private int maxPlayers;
+
+      private List<PlayerInfo> joined = new ArrayList<PlayerInfo>(1);
+
+      public RoomChange(long id) {
+         this.id = id;
+      }
+
+      public long getId() {
+         return id;
+      }
+
+      public int getFlags() {
+         return flags;
+      }
+
+      public void setFlags(int flags) {
+         this.flags = flags;
+      }
+
+      public boolean is(int flag) {
+         return (flags & flag) != 0;
+      }
+
+      /**
+       * @return the maximum number of players, only set if the room was
+       *         created
+       */
+      public int getMaxPlayers() {
+         return maxPlayers;
+      }
+
+      public void setMaxPlayers(int maxPlayers) {
+         this.maxPlayers = maxPlayers;
+      }
+
+      public List<PlayerInfo> getJoined() {
+         return joined;
+      }
+
+      private boolean isEmpty() {
+         return flags == 0 && joined.isEmpty();
+      }
+   }
+
+   private Set<String> entered = new LinkedHashSet<String>();
+
+   private Set<String> left = new LinkedHashSet<String>();
+
+   private Map<Long, RoomChange> rooms = new LinkedHashMap<Long, RoomChange>();
+
+   /**
+    * @return true if no event was recorded
+    */
+   public boolean isEmpty() {
+      return entered.isEmpty() && left.isEmpty() && rooms.isEmpty();
+   }
+
+   /**
+    * @return true if there are changes to publish, the events recorded might
+    *         cancel each other
+    */
+   public boolean hasChanges() {
+      return !entered.isEmpty() || !left.isEmpty() || !getRooms().isEmpty();
+   }
+
+   /**
+    * @return the players that are now in the lobby
+    */
+   public Set<String> getEntered() {
+      return entered;
+   }
+
+   /**
+    * @return the players that are now gone
+    */
+   public Set<String> getLeft() {
+      return left;
+   }
+
+   /**
+    * @return the changed rooms, except the ones created and dropped within
+    *         the window
+    */
+   public List<RoomChange> getRooms() {
+      List<RoomChange> ret = new ArrayList<RoomChange>(rooms.size());
+      for (RoomChange room : rooms.values()) {
+         if (!room.is(CREATED) || !room.is(DROPPED)) {
+            ret.add(room);
+         }
+      }
+      return ret;
+   }
+
+   // /////////////////////
+   // Events
+   // /////////////////////
+   public void enteredLobby(String player) {
+      forget(player);
+      entered.add(player);
+   }
+
+   public void leftLobby(String player) {
+      forget(player);
+      left.add(player);
+   }
+
+   public void joinedRoom(long id, PlayerInfo player) {
+      forget(player.getName());
+      getRoom(id).joined.add(player);
+   }
+
+   public void roomCreated(long id, int maxPlayers) {
+      RoomChange room = getRoom(id);
+      room.flags |= CREATED;
+      room.maxPlayers = maxPlayers;
+   }
+
+   public void roomStarted(long id) {
+      getRoom(id).flags |= STARTED;
+   }
+
+   public void roomDropped(long id) {
+      RoomChange room = getRoom(id);
+      room.flags |= DROPPED;
+      room.joined.clear();
+   }
+
+   /**
+    * Adds the changes of another delta of the same window. Each player must
+    * only have events in one of them.
+    */
+   public void addAll(LobbyDelta other) {
+      entered.addAll(other.entered);
+      left.addAll(other.left);
+      for (RoomChange change : other.rooms.values()) {
+         RoomChange room = getRoom(change.id);
+         room.flags |= change.flags;
+         if (change.is(CREATED)) {
+            room.maxPlayers = change.maxPlayers;
+         }
+
+         // the joins of a dropped room don't matter any more
+         if (room.is(DROPPED)) {
+            room.joined.clear();
+         }
+         else {
+            room.joined.addAll(change.joined);
+         }
+      }
+   }
+
+   /**
+    * Splits the changes into deltas encoded in at most <code>maxSize</code>
+    * bytes each, see {@link Codec#sizeOf(LobbyDelta)}. Since every player and
+    * every room only appears once, the deltas can be applied one after the
+    * other. A player or a room too big for a delta of its own still gets one.
+    * 
+    * @return the deltas, in the order of the changes, none if there are no
+    *         changes
+    */
+   public List<LobbyDelta> split(int maxSize) {
+      List<LobbyDelta> parts = new ArrayList<LobbyDelta>(1);
+      LobbyDelta part = new LobbyDelta();
+      int empty = Codec.sizeOf(part), size = empty;
+
+      for (String player : entered) {
+         int playerSize = Codec.sizeOf(player);
+         if (size + playerSize > maxSize && size > empty) {
+            parts.add(part);
+            part = new LobbyDelta();
+            size = empty;
+         }
+         part.entered.add(player);
+         size += playerSize;
+      }
+      for (String player : left) {
+         int playerSize = Codec.sizeOf(player);
+         if (size + playerSize > maxSize && size > empty) {
+            parts.add(part);
+            part = new LobbyDelta();
+            size = empty;
+         }
+         part.left.add(player);
+         size += playerSize;
+      }
+      for (RoomChange room : getRooms()) {
+         int roomSize = Codec.sizeOf(room);
+         if (size + roomSize > maxSize && size > empty) {
+            parts.add(part);
+            part = new LobbyDelta();
+            size = empty;
+         }
+         part.rooms.put(room.id, room);
+         size += roomSize;
+      }
+
+      if (size > empty) {
+         parts.add(part);
+      }
+      return parts;
+   }
+
+   /**
+    * Adds a decoded room change
+    */
+   void add(RoomChange room) {
+      rooms.put(room.getId(), room);
+   }
+
+   private RoomChange getRoom(long id) {
+      RoomChange room = rooms.get(id);
+      if (room == null) {
+         room = new RoomChange(id);
+         rooms.put(id, room);
+      }
+      return room;
+   }
+
+   /**
+    * Removes the previous events of a player, the new one replaces them
+    */
+   private void forget(String player) {
+      entered.remove(player);
+      left.remove(player);
+
+      Iterator<RoomChange> it = rooms.values().iterator();
+      while (it.hasNext()) {
+         RoomChange room = it.next();
+         Iterator<PlayerInfo> joined = room.joined.iterator();
+         while (joined.hasNext()) {
+            if (joined.next().getName().equals(player)) {
+               joined.remove();
+            }
+         }
+         if (room.isEmpty()) {
+            it.remove();
+         }
+      }
+   }
+}
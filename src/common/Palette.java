@@ -0,0 +1,53 @@
+package common;
+
+/**
+ * The colors assigned to the players of a room (and to their figures). Since
+ * there are only 8 of them, a color is sent on the wire as its index in the
+ * palette.
+ */
+public final class Palette {
+
+   /** Available colors */
+   private static final int[] COLORS = { 0xFFFF0000, // Colors.RED
+         0xFF00FF00, // Colors.GREEN
+         0xFFFFC800, // Colors.ORANGE
+         0xFF0000FF,// Colors.BLUE
+         0xFFFFFF00,// Colors.YELLOW
+         0xFFA200FF,// Colors.PURPLE
+         0xFFFFFFFF,// Colors.WHITE
+         0xFFFF00FF // Colors.MAGENTA
+   };
+
+   private Palette() {
+   }
+
+   /**
+    * @return the number of colors in the palette
+    */
+   public static int size() {
+      return COLORS.length;
+   }
+
+   /**
+    * @return the color at the given index
+    */
+   public static int getColor(int index) {
+      return COLORS[index];
+   }
+
+   /**
+    * @return the index of the color in the palette
+    * 
+    * @throws IllegalArgumentException
+    *            if the color is not in the palette
+    */
+   public static int indexOf(int color) {
+      for (int i = 0; i < COLORS.length; i++) {
+         if (COLORS[i] == color) {
+            return i;
+         }
+      }
+      throw new IllegalArgumentException("Color not in palette: "
+            + Integer.toHexString(color));
+   }
+}
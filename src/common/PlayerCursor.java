@@ -0,0 +1,54 @@
+package common;
+
+import java.io.Serializable;
+
+/**
+ * A position in the paged player listing of the lobby. The players are listed
+ * shard by shard, and by name within a shard, so a cursor is the shard the
+ * next page starts in and the last name listed before it. Unlike a position
+ * in the list, it stays right while players come and go.
+ */
+public final class PlayerCursor implements Serializable {
+
+   private static final long serialVersionUID = -6354981377145108203L;
+
+   /** players per page */
+   public static final int PAGE_SIZE = 50;
+
+   /** cursor that asks for the first page */
+   public static final PlayerCursor FIRST_PAGE = new PlayerCursor(0, "");
+
+   /** cursor returned with the last page */
+   public static final PlayerCursor NO_MORE_PLAYERS = new PlayerCursor(-1, "");
+
+   private final int shard;
+
+   private final String after;
+
+   /**
+    * @param shard
+    *           the shard the page starts in
+    * @param after
+    *           the name the page starts after, empty for the start of the
+    *           shard
+    */
+   public PlayerCursor(int shard, String after) {
+      this.shard = shard;
+      this.after = after;
+   }
+
+   public int getShard() {
+      return shard;
+   }
+
+   public String getAfter() {
+      return after;
+   }
+
+   /**
+    * @return true if this cursor was returned with the last page
+    */
+   public boolean isLast() {
+      return shard < 0;
+   }
+}
@@ -0,0 +1,34 @@
+package common;
+
+/**
+ * The filters and cursors of the paged room listing of the lobby. A page
+ * lists the rooms in the order: not started before started, then fewest free
+ * places first (nearly full rooms on top), then by id. A cursor is an opaque
+ * position in that order, returned with every page to fetch the next one.
+ */
+public final class RoomFilter {
+
+   /** only the rooms whose game hasn't started */
+   public static final int NOT_STARTED = 1;
+
+   /** only the rooms with free places */
+   public static final int NOT_FULL = 2;
+
+   /** the rooms that can be joined */
+   public static final int OPEN = NOT_STARTED | NOT_FULL;
+
+   /** cursor that asks for the first page */
+   public static final long FIRST_PAGE = -1;
+
+   /** cursor returned with the last page */
+   public static final long NO_MORE_ROOMS = Long.MAX_VALUE;
+
+   /** rooms per page asked by the client */
+   public static final int PAGE_SIZE = 20;
+
+   /** maximum rooms per page, larger requests are cut down */
+   public static final int MAX_PAGE_SIZE = 50;
+
+   private RoomFilter() {
+   }
+}
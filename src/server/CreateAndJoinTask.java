@@ -3,7 +3,6 @@ package server;
 import java.io.Serializable;
 
 import com.sun.sgs.app.AppContext;
-import com.sun.sgs.app.Channel;
 import com.sun.sgs.app.DataManager;
 import com.sun.sgs.app.ManagedReference;
 import com.sun.sgs.app.Task;
@@ -26,25 +25,21 @@ public class CreateAndJoinTask implements Task, Serializable {
 
    @Override
    public void run() throws Exception {
-      Lobby lobby = (Lobby) AppContext.getDataManager().getBinding(
-            DarkstrisServer.LOBBY);
-
-      long id = lobby.getNextRoomId();
+      // the creations of different players use different id allocators
+      long id = RoomIds.next(playerRef.get().getName().hashCode());
 
       System.out.println("CreateAndJoinTask.run(room" + id + ", "
             + playerRef.get().getName() + ")");
 
       // create room with user on it
       ServerRoom room = new ServerRoom(id, maxPlayers, playerRef.get());
-      Channel lobbyChannel = AppContext.getChannelManager().getChannel(
-            DarkstrisServer.LOBBY_CHANNEL);
 
       // save the room
       AppContext.getDataManager().setBinding("room" + id, room);
 
-      // broadcast room creation to lobby
-      lobbyChannel.send(null, Protocol.roomCreated(id, room.getMaxPlayers(),
-            playerRef.get().getPlayerInfo()));
+      // tell the creator, the lobby learns it from the next lobby delta
+      Protocol.send(playerRef.get().getClientSession(), Protocol.roomCreated(
+            id, room.getMaxPlayers(), playerRef.get().getPlayerInfo()));
 
       // remove user from lobby
       AppContext.getTaskManager().scheduleTask(
@@ -55,7 +50,8 @@ public class CreateAndJoinTask implements Task, Serializable {
 
       // add the room
       // mgrRef.getForUpdate().addRoom(room);
-      AppContext.getDataManager().markForUpdate(lobby);
+      Lobby lobby = (Lobby) AppContext.getDataManager().getBinding(
+            DarkstrisServer.LOBBY);
       lobby.addRoom(room);
    }
 }
\ No newline at end of file
@@ -17,6 +17,15 @@ public class DarkstrisServer implements AppListener, Serializable {
 
    public static final String USER_PREFIX = "user_";
 
+   /** application property with the number of lobby shards */
+   public static final String LOBBY_SHARDS = "darkstris.lobby.shards";
+
+   /** application property with the number of room id allocators */
+   public static final String ROOM_ID_ALLOCATORS = "darkstris.roomids.allocators";
+
+   /** application property with the lobby delta window, in milliseconds */
+   public static final String LOBBY_WINDOW = "darkstris.lobby.window";
+
    // private static Logger log = Logger.getLogger(ServerSessionHandler.class
    // .getName());
 
@@ -29,7 +38,21 @@ public class DarkstrisServer implements AppListener, Serializable {
             Delivery.RELIABLE);
 
       // Create and keep binding reference to the lobby
-      AppContext.getDataManager().setBinding(LOBBY, new Lobby());
+      int numShards = Integer.parseInt(props.getProperty(LOBBY_SHARDS, String
+            .valueOf(Lobby.DEFAULT_SHARDS)));
+      AppContext.getDataManager().setBinding(LOBBY, new Lobby(numShards));
+
+      // Create the room id allocator
+      int numAllocators = Integer.parseInt(props.getProperty(
+            ROOM_ID_ALLOCATORS, String.valueOf(RoomIds.DEFAULT_ALLOCATORS)));
+      AppContext.getDataManager().setBinding(RoomIds.BINDING,
+            new RoomIds(numAllocators));
+
+      // Publish the lobby changes once per window
+      long window = Long.parseLong(props.getProperty(LOBBY_WINDOW, String
+            .valueOf(LobbyDeltaTask.DEFAULT_WINDOW)));
+      AppContext.getTaskManager().schedulePeriodicTask(new LobbyDeltaTask(),
+            window, window);
    }
 
    @Override
@@ -3,7 +3,6 @@ package server;
 import java.io.Serializable;
 
 import com.sun.sgs.app.AppContext;
-import com.sun.sgs.app.Channel;
 import com.sun.sgs.app.DataManager;
 import com.sun.sgs.app.Task;
 
@@ -28,17 +27,15 @@ public class DropRoomTask implements Task, Serializable {
       System.out.println("DropRoomTask.run(room" + id + ")");
       DataManager dataManager = AppContext.getDataManager();
       ServerRoom room = (ServerRoom) dataManager.getBinding("room" + id);
-      Channel lobbyChannel = AppContext.getChannelManager().getChannel(
-            DarkstrisServer.LOBBY_CHANNEL);
       dataManager.markForUpdate(room);
 
-      // broadcast that the room was dropped
-      lobbyChannel.send(null, Protocol.roomDropped(room.getId()));
+      // stop the game, if any
+      room.stopGame();
 
-      // remove room from lobby
+      // remove room from lobby, the next lobby delta broadcasts it
       Lobby lobby = (Lobby) AppContext.getDataManager().getBinding(
             DarkstrisServer.LOBBY);
-      lobby.removeRoom(room);
+      lobby.removeRoom(room.getId());
 
       // remove any remaining players
       room.getChannel().leaveAll();
@@ -0,0 +1,214 @@
+package server;
+
+import java.util.Arrays;
+
+/**
+ * The precomputed, immutable shape of a figure type in one orientation. The
+ * table holds all 7 types x 4 orientations, so moving a figure never needs to
+ * rotate coordinates: collision checks are a few mask operations against the
+ * rows of a {@link SquareBoard}.
+ */
+public final class FigureShape {
+
+   /**
+    * The horizontal coordinates of the four squares in orientation 0, indexed
+    * by figure type
+    */
+   private static final int[][] BASE_X = { null, { -1, 0, -1, 0 }, // square
+         { -2, -1, 0, 1 }, // line
+         { 0, 1, -1, 0 }, // S
+         { -1, 0, 0, 1 }, // Z
+         { -1, 0, 1, 1 }, // right angle
+         { -1, 0, 1, -1 }, // left angle
+         { -1, 0, 1, 0 } // triangle
+   };
+
+   /**
+    * The vertical coordinates of the four squares in orientation 0, indexed by
+    * figure type
+    */
+   private static final int[][] BASE_Y = { null, { 0, 0, 1, 1 }, // square
+         { 0, 0, 0, 0 }, // line
+         { 0, 0, 1, 1 }, // S
+         { 0, 0, 1, 1 }, // Z
+         { 0, 0, 0, 1 }, // right angle
+         { 0, 0, 0, 1 }, // left angle
+         { 0, 0, 0, 1 } // triangle
+   };
+
+   /**
+    * The number of distinct orientations, indexed by figure type
+    */
+   private static final int[] ORIENTATIONS = { 0, 1, 2, 2, 2, 4, 4, 4 };
+
+   private static final FigureShape[][] SHAPES = new FigureShape[8][4];
+
+   static {
+      for (int type = 1; type < SHAPES.length; type++) {
+         for (int orientation = 0; orientation < 4; orientation++) {
+            SHAPES[type][orientation] = new FigureShape(BASE_X[type],
+                  BASE_Y[type], orientation);
+         }
+      }
+   }
+
+   /**
+    * Returns the shape of a figure type in the given orientation.
+    * 
+    * @param type
+    *           the figure type (one of the ServerFigure constants)
+    * @param orientation
+    *           the orientation (0-3)
+    * 
+    * @throws IllegalArgumentException
+    *            if the figure type specified is not recognized
+    */
+   public static FigureShape get(int type, int orientation) {
+      checkType(type);
+      return SHAPES[type][orientation % 4];
+   }
+
+   /**
+    * Returns the number of distinct orientations of a figure type. This is
+    * used to reduce the number of possible rotations for some figures, such as
+    * the square figure, that would otherwise rotate around one of its squares.
+    * 
+    * @throws IllegalArgumentException
+    *            if the figure type specified is not recognized
+    */
+   public static int getOrientations(int type) {
+      checkType(type);
+      return ORIENTATIONS[type];
+   }
+
+   private static void checkType(int type) {
+      if (type < 1 || type >= SHAPES.length) {
+         throw new IllegalArgumentException("No figure constant: " + type);
+      }
+   }
+
+   private final int[] x = new int[4];
+
+   private final int[] y = new int[4];
+
+   private final int minX, maxX, minY, maxY;
+
+   /**
+    * The squares of each row of the shape, from <code>minY</code> down to
+    * <code>maxY</code>. Bit <code>i</code> is set if the square at horizontal
+    * offset <code>minX + i</code> belongs to the shape.
+    */
+   private final long[] rows;
+
+   /**
+    * The relative vertical position of the lowest square of each column of the
+    * shape, from <code>minX</code> to <code>maxX</code>
+    */
+   private final int[] bottoms;
+
+   private FigureShape(int[] baseX, int[] baseY, int orientation) {
+      int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE;
+      int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+
+      for (int i = 0; i < 4; i++) {
+         switch (orientation) {
+         case 0:
+            x[i] = baseX[i];
+            y[i] = baseY[i];
+            break;
+         case 1:
+            x[i] = -baseY[i];
+            y[i] = baseX[i];
+            break;
+         case 2:
+            x[i] = -baseX[i];
+            y[i] = -baseY[i];
+            break;
+         default:
+            x[i] = baseY[i];
+            y[i] = -baseX[i];
+            break;
+         }
+
+         minX = Math.min(minX, x[i]);
+         maxX = Math.max(maxX, x[i]);
+         minY = Math.min(minY, y[i]);
+         maxY = Math.max(maxY, y[i]);
+      }
+
+      this.minX = minX;
+      this.maxX = maxX;
+      this.minY = minY;
+      this.maxY = maxY;
+
+      rows = new long[maxY - minY + 1];
+      bottoms = new int[maxX - minX + 1];
+      Arrays.fill(bottoms, Integer.MIN_VALUE);
+      for (int i = 0; i < 4; i++) {
+         rows[y[i] - minY] |= 1L << (x[i] - minX);
+         bottoms[x[i] - minX] = Math.max(bottoms[x[i] - minX], y[i]);
+      }
+   }
+
+   /**
+    * Returns the relative horizontal position of a square (0-3)
+    */
+   public int getX(int square) {
+      return x[square];
+   }
+
+   /**
+    * Returns the relative vertical position of a square (0-3)
+    */
+   public int getY(int square) {
+      return y[square];
+   }
+
+   public int getMinX() {
+      return minX;
+   }
+
+   public int getMaxX() {
+      return maxX;
+   }
+
+   public int getMinY() {
+      return minY;
+   }
+
+   public int getMaxY() {
+      return maxY;
+   }
+
+   /**
+    * Returns the relative vertical position of the lowest square on relative
+    * column <code>dx</code> (minX <= dx <= maxX).
+    */
+   public int getBottom(int dx) {
+      return bottoms[dx - minX];
+   }
+
+   /**
+    * Returns the board row mask covered by the shape on relative row
+    * <code>dy</code>, with the shape positioned at column <code>x</code>.
+    * 
+    * @return the mask, or 0 if the shape has no squares on that row
+    */
+   public long getRowMask(int dy, int x) {
+      int i = dy - minY;
+      if (i < 0 || i >= rows.length) {
+         return 0;
+      }
+
+      int shift = x + minX;
+      if (shift >= 64 || shift <= -64) {
+         return 0;
+      }
+      else if (shift >= 0) {
+         return rows[i] << shift;
+      }
+      else {
+         return rows[i] >>> -shift;
+      }
+   }
+}
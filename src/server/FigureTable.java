@@ -0,0 +1,53 @@
+package server;
+
+import java.io.Serializable;
+
+/**
+ * The figures of a game, one per player slot, kept as primitive arrays so
+ * that all of them are stored with the game, in a single object. A slot
+ * without a figure has type 0. The figures are read and moved through
+ * {@link ServerFigure} handles.
+ */
+public class FigureTable implements Serializable {
+
+   private static final long serialVersionUID = 5385104921370614527L;
+
+   /** the figure type of each slot, one of the ServerFigure constants */
+   final byte[] type;
+
+   /** the figure orientation of each slot */
+   final byte[] orientation;
+
+   /** the horizontal position of each figure on the board */
+   final int[] x;
+
+   /** the vertical position of each figure on the board */
+   final int[] y;
+
+   /** the color of each figure */
+   final int[] color;
+
+   public FigureTable(int slots) {
+      type = new byte[slots];
+      orientation = new byte[slots];
+      x = new int[slots];
+      y = new int[slots];
+      color = new int[slots];
+   }
+
+   public int size() {
+      return type.length;
+   }
+
+   public boolean hasFigure(int slot) {
+      return type[slot] != 0;
+   }
+
+   /**
+    * Forgets the figure of a slot, leaving its squares on the board as they
+    * are
+    */
+   public void remove(int slot) {
+      type[slot] = 0;
+   }
+}
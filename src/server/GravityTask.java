@@ -0,0 +1,26 @@
+package server;
+
+import java.io.Serializable;
+
+import com.sun.sgs.app.AppContext;
+import com.sun.sgs.app.ManagedReference;
+import com.sun.sgs.app.Task;
+
+/**
+ * Periodic task that moves down all the figures of a room, in a single
+ * transaction per tick
+ */
+public class GravityTask implements Task, Serializable {
+   private static final long serialVersionUID = 1L;
+
+   private ManagedReference<RoomGame> gameRef;
+
+   public GravityTask(RoomGame game) {
+      this.gameRef = AppContext.getDataManager().createReference(game);
+   }
+
+   @Override
+   public void run() throws Exception {
+      gameRef.get().gravityTick();
+   }
+}
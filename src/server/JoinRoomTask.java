@@ -37,9 +37,10 @@ public class JoinRoomTask implements Task, Serializable {
                + room.getId() + " is full");
 
          // notify room full
-         playerRef.get().getClientSession().send(Protocol.roomFull(id));
+         Protocol.send(playerRef.get().getClientSession(), Protocol
+               .roomFull(id));
       }
-      else if (room.hasPlayer(playerRef.get())) {
+      else if (room.hasPlayer(playerRef.get().getName())) {
          System.out.println(playerRef.get().getName() + " is already in room"
                + room.getId());
       }
@@ -51,22 +52,18 @@ public class JoinRoomTask implements Task, Serializable {
          // add it to the room
          room.addPlayer(playerRef.getForUpdate());
 
-         // broadcast to the lobby that the user moved to a room
-         AppContext.getChannelManager().getChannel(
-               DarkstrisServer.LOBBY_CHANNEL).send(
-               null,
-               Protocol.roomJoined(id, playerRef.get().getColor(), playerRef
-                     .get().getName()));
+         // update the lobby view of the room, the next lobby delta
+         // broadcasts that the user moved to a room
+         Lobby lobby = (Lobby) dataManager.getBinding(DarkstrisServer.LOBBY);
+         lobby.roomJoined(id, playerRef.get().getPlayerInfo());
 
          // send message to room channel about the user joining the room
-         room.getChannel().send(
-               null,
-               Protocol.roomJoined(id, playerRef.get().getColor(), playerRef
-                     .get().getName()));
+         Protocol.send(room.getChannel(), Protocol.roomJoined(id, playerRef
+               .get().getColor(), playerRef.get().getName()));
 
          // send message to user about joining the room, with room info
-         playerRef.get().getClientSession().send(
-               Protocol.roomJoined(id, playerRef.get().getColor(), room
+         Protocol.send(playerRef.get().getClientSession(), Protocol
+               .roomJoined(id, playerRef.get().getColor(), room
                      .getPlayerInfos()));
 
          // store room reference in player
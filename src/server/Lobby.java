@@ -1,85 +1,331 @@
 package server;
 
 import java.io.Serializable;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicLong;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import com.sun.sgs.app.AppContext;
 import com.sun.sgs.app.ManagedObject;
 import com.sun.sgs.app.ManagedReference;
-import common.LobbyData;
-import common.RoomInfo;
+import common.BufferPool;
+import common.Codec;
+import common.LobbyDelta;
+import common.PlayerCursor;
+import common.PlayerInfo;
+import common.RoomFilter;
 
+/**
+ * The players and rooms of the lobby, split in {@link LobbyShard}s by hash.
+ * The lobby object itself never changes after its creation: adding or
+ * removing a player or a room only writes the shard it belongs to, so those
+ * transactions only conflict when they hit the same shard.
+ * 
+ * The rooms must report their changes (players joining and leaving, game
+ * start) to keep the lobby view of them up to date. The pages of players and
+ * rooms are then built from the shards alone, see
+ * {@link #getPlayersMessage(PlayerCursor)} and
+ * {@link #getRoomsMessage(long, int, int)}.
+ * 
+ * The changes are also recorded in the shards they write, and published to the
+ * lobby channel once per window by the {@link LobbyDeltaTask}, which also
+ * encodes the lobby data message of the window in a {@link LobbySnapshot}.
+ * Entering the lobby reads that one object, see
+ * {@link #getLobbyDataMessage()}, instead of every shard.
+ */
 public class Lobby implements ManagedObject, Serializable {
 
    private static final long serialVersionUID = 4980842620473380149L;
 
-   private Set<String> players = new HashSet<String>();
+   /** shard count used when the application properties don't set one */
+   public static final int DEFAULT_SHARDS = 16;
 
-   private Set<ManagedReference<ServerRoom>> rooms = new HashSet<ManagedReference<ServerRoom>>();
+   /**
+    * Encoded size a page of players or rooms is cut at, so the lobby data
+    * message keeps under the maximum message size with one page of each
+    */
+   private static final int PAGE_BYTES = 16 * 1024;
 
-   private AtomicLong roomCounter;
+   private List<ManagedReference<LobbyShard>> shards;
 
-   public Lobby() {
-      roomCounter = new AtomicLong(0);
+   private ManagedReference<LobbySnapshot> snapshot;
+
+   public Lobby(int numShards) {
+      if (numShards < 1) {
+         throw new IllegalArgumentException("numShards must be >= 1: "
+               + numShards);
+      }
+
+      shards = new ArrayList<ManagedReference<LobbyShard>>(numShards);
+      for (int i = 0; i < numShards; i++) {
+         shards.add(AppContext.getDataManager().createReference(
+               new LobbyShard()));
+      }
+
+      snapshot = AppContext.getDataManager().createReference(
+            new LobbySnapshot(encodeLobbyData()));
    }
 
-   public long getNextRoomId() {
-      return roomCounter.getAndIncrement();
+   private ManagedReference<LobbyShard> shardOf(int hash) {
+      return shards.get((hash & Integer.MAX_VALUE) % shards.size());
    }
 
+   private ManagedReference<LobbyShard> shardOf(long roomId) {
+      return shardOf((int) (roomId ^ (roomId >>> 32)));
+   }
+
+   // /////////////////////
+   // Players
+   // /////////////////////
+   /**
+    * Adds a player to the lobby, and records its entry
+    */
    public boolean add(String player) {
-      return players.add(player);
+      LobbyShard shard = shardOf(player.hashCode()).getForUpdate();
+      shard.getDelta().enteredLobby(player);
+      return shard.add(player);
    }
 
+   /**
+    * Removes a player that moved to a room, the room records the move
+    */
    public boolean remove(String player) {
-      return players.remove(player);
+      return shardOf(player.hashCode()).getForUpdate().remove(player);
+   }
+
+   /**
+    * Removes a player that disconnected, and records its leave
+    */
+   public boolean disconnected(String player) {
+      LobbyShard shard = shardOf(player.hashCode()).getForUpdate();
+      shard.getDelta().leftLobby(player);
+      return shard.remove(player);
    }
 
    public int size() {
-      return players.size();
+      int size = 0;
+      for (ManagedReference<LobbyShard> shard : shards) {
+         size += shard.get().getPlayerCount();
+      }
+      return size;
    }
 
+   // /////////////////////
+   // Rooms
+   // /////////////////////
    public void addRoom(ServerRoom room) {
-      AppContext.getDataManager().markForUpdate(this);
-      rooms.add(AppContext.getDataManager().createReference(room));
+      long id = room.getId();
+      List<PlayerInfo> players = room.getPlayerInfos();
+
+      LobbyShard shard = shardOf(id).getForUpdate();
+      shard.addRoom(id, room.getMaxPlayers(), players);
+      shard.getDelta().roomCreated(id, room.getMaxPlayers());
+
+      // the creator moved to the room
+      for (PlayerInfo player : players) {
+         joined(id, player);
+      }
+   }
+
+   public void removeRoom(long id) {
+      LobbyShard shard = shardOf(id).getForUpdate();
+      shard.removeRoom(id);
+      shard.getDelta().roomDropped(id);
    }
 
-   public void removeRoom(ServerRoom room) {
-      AppContext.getDataManager().markForUpdate(this);
-      rooms.remove(AppContext.getDataManager().createReference(room));
+   public void roomJoined(long id, PlayerInfo player) {
+      shardOf(id).getForUpdate().roomJoined(id, player);
+      joined(id, player);
    }
 
-   // public ServerRoom getRoomWithPlayer(String player) {
-   // for (ManagedReference<ServerRoom> room : rooms) {
-   // if (room.get().hasPlayer(player)) {
-   // return room.get();
-   // }
-   // }
-   //
-   // return null;
-   // }
+   /**
+    * Records the move of a player to a room in the shard of the player, where
+    * its other moves are recorded, so the last one can be told
+    */
+   private void joined(long id, PlayerInfo player) {
+      shardOf(player.getName().hashCode()).getForUpdate().getDelta()
+            .joinedRoom(id, player);
+   }
 
-   private Set<String> getPlayers() {
-      return players;
+   public void roomLeft(long id, String player) {
+      shardOf(id).getForUpdate().roomLeft(id, player);
    }
 
-   private Set<RoomInfo> getRooms() {
-      Set<RoomInfo> ret = new HashSet<RoomInfo>();
-      for (ManagedReference<ServerRoom> room : rooms) {
-         ServerRoom sRoom = room.get();
-         RoomInfo ri = new RoomInfo(sRoom.getId(), sRoom.getMaxPlayers(), sRoom
-               .isStarted());
-         ri.setPlayers(room.get().getPlayerInfos());
+   public void roomStarted(long id) {
+      LobbyShard shard = shardOf(id).getForUpdate();
+      shard.roomStarted(id);
+      shard.getDelta().roomStarted(id);
+   }
 
-         ret.add(ri);
+   // /////////////////////
+   // Changes
+   // /////////////////////
+
+   /**
+    * Returns the changes recorded by all the shards since the last call, and
+    * starts over. Only the shards with changes are written.
+    */
+   public LobbyDelta takeDelta() {
+      LobbyDelta delta = new LobbyDelta();
+      for (ManagedReference<LobbyShard> shard : shards) {
+         if (!shard.get().getDelta().isEmpty()) {
+            delta.addAll(shard.getForUpdate().takeDelta());
+         }
       }
+      return delta;
+   }
+
+   // /////////////////////
+   // Lobby data
+   // /////////////////////
+
+   /**
+    * Returns the lobby data message of the last {@link LobbyDeltaTask} run:
+    * the first page of the players and the first page of the open rooms. It
+    * only reads the {@link LobbySnapshot}.
+    */
+   public ByteBuffer getLobbyDataMessage() {
+      return Protocol.encoded(snapshot.get().getMessage());
+   }
 
+   /**
+    * Encodes the lobby data message again, reading every shard, and updates
+    * the snapshot if it changed. An unchanged snapshot isn't written, so it
+    * doesn't conflict with the players entering the lobby.
+    */
+   public void updateSnapshot() {
+      byte[] message = encodeLobbyData();
+      if (!Arrays.equals(message, snapshot.get().getMessage())) {
+         snapshot.getForUpdate().setMessage(message);
+      }
+   }
+
+   private byte[] encodeLobbyData() {
+      List<String> players = new ArrayList<String>();
+      PlayerCursor nextPlayers = getPlayersPage(PlayerCursor.FIRST_PAGE,
+            players);
+
+      List<byte[]> rooms = new ArrayList<byte[]>();
+      long nextCursor = getPage(RoomFilter.FIRST_PAGE, RoomFilter.OPEN,
+            RoomFilter.PAGE_SIZE, rooms);
+
+      ByteBuffer message = Protocol.lobbyData(players, nextPlayers, rooms,
+            nextCursor);
+      byte[] ret = new byte[message.remaining()];
+      message.get(ret);
+      BufferPool.release(message);
       return ret;
    }
 
-   public LobbyData getLobbyData() {
-      return new LobbyData(getPlayers(), getRooms());
+   /**
+    * Returns the message with the page of the players after the cursor
+    * 
+    * @param cursor
+    *           {@link PlayerCursor#FIRST_PAGE}, or the cursor returned with
+    *           the previous page
+    */
+   public ByteBuffer getPlayersMessage(PlayerCursor cursor) {
+      List<String> players = new ArrayList<String>();
+      PlayerCursor nextCursor = getPlayersPage(cursor, players);
+
+      return Protocol.playersPage(players, nextCursor);
+   }
+
+   /**
+    * Collects a page of players, walking the shards from the one of the
+    * cursor, so a page only reads the shards it lists players of and the
+    * empty ones in between. A page is cut at {@link PlayerCursor#PAGE_SIZE}
+    * players, or when its encoded size reaches {@link #PAGE_BYTES}.
+    * 
+    * @param page
+    *           receives the players
+    * @return the cursor of the next page, or
+    *         {@link PlayerCursor#NO_MORE_PLAYERS}
+    */
+   private PlayerCursor getPlayersPage(PlayerCursor cursor, List<String> page) {
+      String after = cursor.getAfter();
+      int bytes = PAGE_BYTES;
+      for (int i = Math.max(0, cursor.getShard()); !cursor.isLast()
+            && i < shards.size(); i++) {
+         int from = page.size();
+         boolean more = shards.get(i).get().getPage(after,
+               PlayerCursor.PAGE_SIZE, bytes, page);
+         if (more) {
+            // the shard goes on after its last player in the page
+            return new PlayerCursor(i, page.size() > from ? page.get(page
+                  .size() - 1) : after);
+         }
+
+         for (String player : page.subList(from, page.size())) {
+            bytes -= Codec.sizeOf(player);
+         }
+         if (page.size() == PlayerCursor.PAGE_SIZE) {
+            return i + 1 < shards.size() ? new PlayerCursor(i + 1, "")
+                  : PlayerCursor.NO_MORE_PLAYERS;
+         }
+         after = "";
+      }
+      return PlayerCursor.NO_MORE_PLAYERS;
+   }
+
+   /**
+    * Returns the message with the page of the rooms after the cursor
+    * 
+    * @param cursor
+    *           {@link RoomFilter#FIRST_PAGE}, or the cursor returned with the
+    *           previous page
+    * @param filter
+    *           the {@link RoomFilter} flags
+    * @param pageSize
+    *           the rooms wanted, cut down to {@link RoomFilter#MAX_PAGE_SIZE}
+    */
+   public ByteBuffer getRoomsMessage(long cursor, int filter, int pageSize) {
+      List<byte[]> rooms = new ArrayList<byte[]>();
+      long nextCursor = getPage(cursor, filter, pageSize, rooms);
+
+      return Protocol.roomsPage(rooms, nextCursor);
+   }
+
+   /**
+    * Collects a page of encoded rooms. Every shard gives its first rooms
+    * after the cursor, the page is the first ones of them all, so the work
+    * doesn't depend on the number of rooms. A page is also cut when its
+    * encoded size reaches {@link #PAGE_BYTES}.
+    * 
+    * @param page
+    *           receives the encoded rooms
+    * @return the cursor of the next page, or {@link RoomFilter#NO_MORE_ROOMS}
+    */
+   private long getPage(long cursor, int filter, int pageSize,
+         List<byte[]> page) {
+      if (cursor == RoomFilter.NO_MORE_ROOMS) {
+         return RoomFilter.NO_MORE_ROOMS;
+      }
+      pageSize = Math.max(1, Math.min(pageSize, RoomFilter.MAX_PAGE_SIZE));
+
+      // one room more than the page, to know if there's a next one
+      SortedMap<Long, byte[]> candidates = new TreeMap<Long, byte[]>();
+      for (ManagedReference<LobbyShard> shard : shards) {
+         candidates.putAll(shard.get().getPage(cursor, filter, pageSize + 1));
+      }
+
+      int bytes = 0;
+      long last = cursor;
+      for (Map.Entry<Long, byte[]> candidate : candidates.entrySet()) {
+         byte[] room = candidate.getValue();
+         if (page.size() == pageSize
+               || (!page.isEmpty() && bytes + room.length > PAGE_BYTES)) {
+            return last;
+         }
+
+         page.add(room);
+         bytes += room.length;
+         last = candidate.getKey();
+      }
+      return RoomFilter.NO_MORE_ROOMS;
    }
 }
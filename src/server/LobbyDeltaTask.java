@@ -0,0 +1,47 @@
+package server;
+
+import java.io.Serializable;
+
+import com.sun.sgs.app.AppContext;
+import com.sun.sgs.app.Channel;
+import com.sun.sgs.app.Task;
+import common.LobbyDelta;
+
+/**
+ * Periodic task that publishes the lobby changes recorded since its last run
+ * as one {@link LobbyDelta} message on the lobby channel, instead of a message
+ * for every change. The period is the coalescing window. A window with more
+ * changes than fit in {@link #MAX_MESSAGE} bytes is split into several
+ * messages.
+ * 
+ * The task also updates the {@link LobbySnapshot} the players entering the
+ * lobby get, so the snapshot and the deltas that follow it meet.
+ */
+public class LobbyDeltaTask implements Task, Serializable {
+
+   private static final long serialVersionUID = 8741617305357911553L;
+
+   /** window used when the application properties don't set one */
+   public static final long DEFAULT_WINDOW = 250;
+
+   /** the maximum size of a delta message */
+   static final int MAX_MESSAGE = 16 * 1024;
+
+   @Override
+   public void run() throws Exception {
+      Lobby lobby = (Lobby) AppContext.getDataManager().getBinding(
+            DarkstrisServer.LOBBY);
+
+      LobbyDelta delta = lobby.takeDelta();
+      if (delta.hasChanges()) {
+         Channel channel = AppContext.getChannelManager().getChannel(
+               DarkstrisServer.LOBBY_CHANNEL);
+         // the command takes 4 bytes of the message
+         for (LobbyDelta part : delta.split(MAX_MESSAGE - 4)) {
+            Protocol.send(channel, Protocol.lobbyDelta(part));
+         }
+      }
+
+      lobby.updateSnapshot();
+   }
+}
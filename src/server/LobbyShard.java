@@ -0,0 +1,271 @@
+package server;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.sun.sgs.app.ManagedObject;
+import common.Codec;
+import common.LobbyDelta;
+import common.PlayerCursor;
+import common.PlayerInfo;
+import common.RoomFilter;
+import common.RoomInfo;
+
+/**
+ * One bucket of the {@link Lobby}: the players and rooms whose hash falls in
+ * this shard. Transactions that change different shards don't conflict.
+ * 
+ * The shard doesn't refer to the rooms, it keeps its own copy of what the
+ * lobby shows of them, updated by the room events. Its players are kept
+ * sorted by name, the order of the pages of {@link PlayerCursor}, and its
+ * rooms encoded one by one and sorted in the listing order of
+ * {@link RoomFilter}, so a page of rooms is a walk of a few entries that
+ * doesn't read any room or player nor encode anything.
+ * 
+ * The changes of the shard are also recorded as a {@link LobbyDelta}, for
+ * the {@link LobbyDeltaTask} to publish them.
+ */
+public class LobbyShard implements ManagedObject, Serializable {
+
+   private static final long serialVersionUID = -3148796170525327446L;
+
+   /** key bit of the started rooms, they come after the others */
+   private static final long STARTED = 1L << 62;
+
+   /** key position of the free places of a room */
+   private static final int FREE_SHIFT = 54;
+
+   /** key bits of the room id */
+   private static final long ID_MASK = (1L << FREE_SHIFT) - 1;
+
+   private SortedSet<String> players = new TreeSet<String>();
+
+   private Map<Long, RoomInfo> rooms = new HashMap<Long, RoomInfo>();
+
+   /** the rooms in listing order, by key, each encoded */
+   private TreeMap<Long, byte[]> sorted = new TreeMap<Long, byte[]>();
+
+   /** the changes not published yet */
+   private LobbyDelta delta = new LobbyDelta();
+
+   // /////////////////////
+   // Players
+   // /////////////////////
+   public boolean add(String player) {
+      return players.add(player);
+   }
+
+   public boolean remove(String player) {
+      return players.remove(player);
+   }
+
+   public int getPlayerCount() {
+      return players.size();
+   }
+
+   public Set<String> getPlayers() {
+      return players;
+   }
+
+   /**
+    * Adds the players of this shard that come after a name to a page, in
+    * order, until the page has <code>max</code> players or the next one
+    * doesn't fit in the <code>bytes</code> left. A page always gets at least
+    * one player.
+    * 
+    * @param after
+    *           the name the page starts after, empty for the first one
+    * @return true if players of this shard were left out of the page
+    */
+   public boolean getPage(String after, int max, int bytes, List<String> page) {
+      // the smallest name after the cursor
+      Iterator<String> it = players.tailSet(after + '\0').iterator();
+      while (it.hasNext()) {
+         String player = it.next();
+         int size = Codec.sizeOf(player);
+         if (page.size() == max || (!page.isEmpty() && size > bytes)) {
+            return true;
+         }
+         page.add(player);
+         bytes -= size;
+      }
+      return false;
+   }
+
+   // /////////////////////
+   // Rooms
+   // /////////////////////
+   public void addRoom(long id, int maxPlayers, Collection<PlayerInfo> players) {
+      RoomInfo room = new RoomInfo(id, maxPlayers, false);
+      room.setPlayers(new ArrayList<PlayerInfo>(players));
+      put(room);
+   }
+
+   public void removeRoom(long id) {
+      take(id);
+   }
+
+   public void roomJoined(long id, PlayerInfo player) {
+      RoomInfo room = take(id);
+      if (room != null) {
+         room.getPlayers().add(player);
+         put(room);
+      }
+   }
+
+   public void roomLeft(long id, String name) {
+      RoomInfo room = take(id);
+      if (room == null) {
+         return;
+      }
+
+      Iterator<PlayerInfo> it = room.getPlayers().iterator();
+      while (it.hasNext()) {
+         if (it.next().getName().equals(name)) {
+            it.remove();
+            break;
+         }
+      }
+      put(room);
+   }
+
+   public void roomStarted(long id) {
+      RoomInfo room = take(id);
+      if (room != null) {
+         RoomInfo started = new RoomInfo(id, room.getMaxPlayers(), true);
+         started.setPlayers(room.getPlayers());
+         put(started);
+      }
+   }
+
+   public Collection<RoomInfo> getRooms() {
+      return rooms.values();
+   }
+
+   /**
+    * Adds or replaces a room, in both the rooms and the sorted rooms
+    */
+   private void put(RoomInfo room) {
+      rooms.put(room.getId(), room);
+
+      ByteBuffer buf = ByteBuffer.allocate(Codec.sizeOf(room));
+      Codec.putRoomInfo(buf, room);
+      sorted.put(key(room), buf.array());
+   }
+
+   /**
+    * Removes a room, from both the rooms and the sorted rooms
+    * 
+    * @return the room removed, or null if there was none with that id
+    */
+   private RoomInfo take(long id) {
+      RoomInfo room = rooms.remove(id);
+      if (room != null) {
+         sorted.remove(key(room));
+      }
+      return room;
+   }
+
+   // /////////////////////
+   // Pages
+   // /////////////////////
+
+   /**
+    * Returns the key of a room in the listing order of {@link RoomFilter}
+    */
+   static long key(RoomInfo room) {
+      long free = room.getMaxPlayers() - room.getPlayers().size();
+      return (room.isStarted() ? STARTED : 0) | free << FREE_SHIFT
+            | (room.getId() & ID_MASK);
+   }
+
+   /**
+    * Returns the lowest key after <code>key</code> that the filter can
+    * accept, skipping the ranges of full and started rooms when they're
+    * filtered out
+    * 
+    * @return the key, or {@link RoomFilter#NO_MORE_ROOMS} if the filter
+    *         accepts none
+    */
+   static long nextKey(long key, int filter) {
+      long next = key + 1;
+      if ((filter & RoomFilter.NOT_FULL) != 0
+            && (next & ~STARTED) >>> FREE_SHIFT == 0) {
+         next = (next & STARTED) | 1L << FREE_SHIFT;
+      }
+      if ((filter & RoomFilter.NOT_STARTED) != 0 && (next & STARTED) != 0) {
+         return RoomFilter.NO_MORE_ROOMS;
+      }
+      return next;
+   }
+
+   private static boolean accepts(long key, int filter) {
+      if ((filter & RoomFilter.NOT_STARTED) != 0 && (key & STARTED) != 0) {
+         return false;
+      }
+      else if ((filter & RoomFilter.NOT_FULL) != 0
+            && (key & ~STARTED) >>> FREE_SHIFT == 0) {
+         return false;
+      }
+      return true;
+   }
+
+   /**
+    * Returns the encoded rooms of this shard accepted by the filter that come
+    * after the cursor, in listing order
+    * 
+    * @param max
+    *           the maximum number of rooms returned
+    * @return the rooms, by key
+    */
+   public SortedMap<Long, byte[]> getPage(long cursor, int filter, int max) {
+      SortedMap<Long, byte[]> ret = new TreeMap<Long, byte[]>();
+
+      long key = nextKey(cursor, filter);
+      while (key != RoomFilter.NO_MORE_ROOMS && ret.size() < max) {
+         SortedMap<Long, byte[]> tail = sorted.tailMap(key);
+         if (tail.isEmpty()) {
+            break;
+         }
+
+         Long first = tail.firstKey();
+         if (accepts(first, filter)) {
+            ret.put(first, tail.get(first));
+         }
+         key = nextKey(first, filter);
+      }
+
+      return ret;
+   }
+
+   // /////////////////////
+   // Changes
+   // /////////////////////
+
+   /**
+    * Returns the changes not published yet, to record a new one
+    */
+   public LobbyDelta getDelta() {
+      return delta;
+   }
+
+   /**
+    * Returns the changes not published yet and starts over
+    */
+   public LobbyDelta takeDelta() {
+      LobbyDelta ret = delta;
+      delta = new LobbyDelta();
+      return ret;
+   }
+}
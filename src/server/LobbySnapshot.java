@@ -0,0 +1,33 @@
+package server;
+
+import java.io.Serializable;
+
+import com.sun.sgs.app.ManagedObject;
+
+/**
+ * The lobby data message as of the last {@link LobbyDeltaTask} run, already
+ * encoded, so entering the lobby reads this object alone rather than every
+ * lobby shard. The changes made since then are in the next lobby delta,
+ * which a player entering the lobby gets on the lobby channel.
+ */
+public class LobbySnapshot implements ManagedObject, Serializable {
+
+   private static final long serialVersionUID = 1184263779412958607L;
+
+   private byte[] message;
+
+   public LobbySnapshot(byte[] message) {
+      this.message = message;
+   }
+
+   /**
+    * Returns the encoded message, which must not be changed
+    */
+   public byte[] getMessage() {
+      return message;
+   }
+
+   public void setMessage(byte[] message) {
+      this.message = message;
+   }
+}
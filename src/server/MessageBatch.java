@@ -0,0 +1,84 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sun.sgs.app.Channel;
+
+import common.BufferPool;
+import common.Commands;
+import common.Commands.Command;
+
+/**
+ * Collects the messages a room sends to its channel during one transaction (a
+ * move or a gravity tick), so they go out as a single BATCH message instead of
+ * one channel message each. Inside a batch every message is preceded by its
+ * length as an unsigned short. The batch owns the messages added to it: their
+ * buffers go back to the {@link BufferPool} once they are sent.
+ */
+public class MessageBatch {
+
+   /** the maximum size of a channel message */
+   private static final int MAX_MESSAGE = 65532;
+
+   /** size of the BATCH command header */
+   private static final int HEADER = 4;
+
+   private List<ByteBuffer> messages = new ArrayList<ByteBuffer>(4);
+
+   public void add(ByteBuffer message) {
+      messages.add(message);
+   }
+
+   public boolean isEmpty() {
+      return messages.isEmpty();
+   }
+
+   /**
+    * Sends the collected messages to the channel and empties the batch. A
+    * single message is sent as is. Batches that would exceed the maximum
+    * message size are split.
+    */
+   public void flush(Channel channel) {
+      int from = 0;
+      while (from < messages.size()) {
+         int size = HEADER;
+         int to = from;
+         while (to < messages.size()
+               && size + 2 + messages.get(to).remaining() <= MAX_MESSAGE) {
+            size += 2 + messages.get(to).remaining();
+            to++;
+         }
+
+         if (to - from <= 1) {
+            // alone, or too big to share a batch
+            channel.send(null, messages.get(from));
+            from++;
+         }
+         else {
+            Protocol.send(channel, encode(from, to, size));
+            from = to;
+         }
+      }
+
+      for (ByteBuffer message : messages) {
+         BufferPool.release(message);
+      }
+      messages.clear();
+   }
+
+   private ByteBuffer encode(int from, int to, int size) {
+      ByteBuffer buff = BufferPool.acquire(size);
+      buff.putInt(Commands.encode(Command.BATCH));
+      for (int i = from; i < to; i++) {
+         // the message is released after the batch, no need to rewind it
+         ByteBuffer message = messages.get(i);
+         buff.putShort((short) message.remaining());
+         buff.put(message);
+      }
+      buff.flip();
+
+      return buff;
+   }
+}
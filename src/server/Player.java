@@ -11,7 +11,10 @@ import com.sun.sgs.app.ClientSession;
 import com.sun.sgs.app.ClientSessionListener;
 import com.sun.sgs.app.ManagedObject;
 import com.sun.sgs.app.ManagedReference;
-import common.Commands;
+import common.Codec;
+import common.CommandHandler;
+import common.CommandTable;
+import common.PlayerCursor;
 import common.PlayerInfo;
 import common.Commands.Command;
 
@@ -25,14 +28,11 @@ public class Player implements ManagedObject, ClientSessionListener,
    /** the room the player is in */
    private ManagedReference<ServerRoom> roomRef;
 
-   /** the current Figure the player is handling */
-   private ManagedReference<ServerFigure> figureRef;
-
    /** the color assigned to this Player */
    private int color;
 
-   /** the position where the pieces are added for this player in the board */
-   private int x;
+   /** the slot of this player in its room, it identifies its figure */
+   private int slot;
 
    private static Logger log = Logger.getLogger(Player.class.getName());
 
@@ -62,31 +62,18 @@ public class Player implements ManagedObject, ClientSessionListener,
       this.color = color;
    }
 
-   public int getX() {
-      return x;
+   public int getSlot() {
+      return slot;
    }
 
-   public void setX(int x) {
-      this.x = x;
+   public void setSlot(int slot) {
+      this.slot = slot;
    }
 
    public String getName() {
       return name;
    }
 
-   public ServerFigure getFigure() {
-      if (figureRef != null) {
-         return figureRef.get();
-      }
-      else {
-         return null;
-      }
-   }
-
-   public void setFigure(ServerFigure figure) {
-      figureRef = AppContext.getDataManager().createReference(figure);
-   }
-
    public PlayerInfo getPlayerInfo() {
       return new PlayerInfo(name, color);
    }
@@ -117,16 +104,10 @@ public class Player implements ManagedObject, ClientSessionListener,
 
       abandonRoom();
 
-      // remove the user
+      // remove the user, the next lobby delta broadcasts it
       Lobby lobby = (Lobby) AppContext.getDataManager().getBinding(
             DarkstrisServer.LOBBY);
-      AppContext.getDataManager().markForUpdate(lobby);
-      lobby.remove(name);
-
-      // broadcast player removed to the lobby
-      Channel lobbyChannel = AppContext.getChannelManager().getChannel(
-            DarkstrisServer.LOBBY_CHANNEL);
-      lobbyChannel.send(null, Protocol.userLeftLobby(name));
+      lobby.disconnected(name);
 
       // remove binding
       AppContext.getDataManager().removeBinding(
@@ -143,91 +124,170 @@ public class Player implements ManagedObject, ClientSessionListener,
       if (roomRef != null) {
          roomRef.getForUpdate().removePlayer(this);
          roomRef = null;
-         figureRef = null;
       }
    }
 
    @Override
    public void receivedMessage(ByteBuffer buf) {
-      int encodedCmd = buf.getInt();
-      Command cmd = Commands.decode(encodedCmd);
-
-      if (cmd == Command.PING) {
-         log("ping");
-      }
-      else if (cmd == Command.CREATE_ROOM) {
-         log("create room");
-
-         int maxPlayers = buf.getInt();
-         AppContext.getTaskManager().scheduleTask(
-               new CreateAndJoinTask(this, maxPlayers));
-      }
-      else if (cmd == Command.ROOM_JOINED) {
-         // notification that a user is now inside a room
-         long roomId = buf.getLong();
-
-         log("is inside room" + roomId);
-
-         Channel roomChannel = AppContext.getChannelManager().getChannel(
-               "room" + roomId);
-
-         // add the user to the room channel
-         roomChannel.join(currentSessionRef.get());
-      }
-      else if (cmd == Command.JOIN_ROOM) {
-         // user wants to join a room
-         long roomId = buf.getLong();
-
-         log("wants to join room" + roomId);
-
-         AppContext.getTaskManager().scheduleTask(
-               new JoinRoomTask(roomId, this));
-      }
-      else if (cmd == Command.ABANDON) {
-         // remove user from the room
-         abandonRoom();
-      }
-      else if (cmd == Command.REQUEST_LOBBY_DATA) {
-         log("requests lobby data");
-         Channel lobbyChannel = AppContext.getChannelManager().getChannel(
-               DarkstrisServer.LOBBY_CHANNEL);
-         Lobby lobby = (Lobby) AppContext.getDataManager().getBinding(
-               DarkstrisServer.LOBBY);
-         AppContext.getDataManager().markForUpdate(lobby);
+      COMMANDS.dispatch(this, buf);
+   }
 
-         // user is in lobby, add him to lobby channel
-         // playerManagerRef.getForUpdate().addToLobby(currentSessionRef.get());
-         AppContext.getDataManager().markForUpdate(lobby);
-         lobby.add(name);
+   // //////////////////////
+   // Command handlers
+   // //////////////////////
+   private static final CommandTable<Player> COMMANDS = new CommandTable<Player>();
+
+   static {
+      COMMANDS.register(Command.PING, new CommandHandler<Player>() {
+         @Override
+         public void handle(Player ply, ByteBuffer buf) {
+            ply.log("ping");
+         }
+      });
+
+      COMMANDS.register(Command.CREATE_ROOM, new CommandHandler<Player>() {
+         @Override
+         public void handle(Player ply, ByteBuffer buf) {
+            ply.log("create room");
+
+            int maxPlayers = buf.getInt();
+            AppContext.getTaskManager().scheduleTask(
+                  new CreateAndJoinTask(ply, maxPlayers));
+         }
+      });
+
+      COMMANDS.register(Command.ROOM_JOINED, new CommandHandler<Player>() {
+         @Override
+         public void handle(Player ply, ByteBuffer buf) {
+            // notification that a user is now inside a room
+            long roomId = buf.getLong();
+
+            ply.log("is inside room" + roomId);
+
+            Channel roomChannel = AppContext.getChannelManager().getChannel(
+                  "room" + roomId);
+
+            // add the user to the room channel
+            roomChannel.join(ply.currentSessionRef.get());
+         }
+      });
+
+      COMMANDS.register(Command.JOIN_ROOM, new CommandHandler<Player>() {
+         @Override
+         public void handle(Player ply, ByteBuffer buf) {
+            // user wants to join a room
+            long roomId = buf.getLong();
+
+            ply.log("wants to join room" + roomId);
+
+            AppContext.getTaskManager().scheduleTask(
+                  new JoinRoomTask(roomId, ply));
+         }
+      });
+
+      COMMANDS.register(Command.ABANDON, new CommandHandler<Player>() {
+         @Override
+         public void handle(Player ply, ByteBuffer buf) {
+            // remove user from the room
+            ply.abandonRoom();
+         }
+      });
+
+      COMMANDS.register(Command.REQUEST_LOBBY_DATA,
+            new CommandHandler<Player>() {
+               @Override
+               public void handle(Player ply, ByteBuffer buf) {
+                  ply.log("requests lobby data");
+                  ply.enterLobby();
+               }
+            });
+
+      COMMANDS.register(Command.REQUEST_ROOMS, new CommandHandler<Player>() {
+         @Override
+         public void handle(Player ply, ByteBuffer buf) {
+            int filter = buf.getInt();
+            long cursor = buf.getLong();
+            int pageSize = buf.getInt();
+
+            Lobby lobby = (Lobby) AppContext.getDataManager().getBinding(
+                  DarkstrisServer.LOBBY);
+            Protocol.send(ply.getClientSession(), lobby.getRoomsMessage(
+                  cursor, filter, pageSize));
+         }
+      });
+
+      COMMANDS.register(Command.REQUEST_PLAYERS, new CommandHandler<Player>() {
+         @Override
+         public void handle(Player ply, ByteBuffer buf) {
+            PlayerCursor cursor = Codec.getPlayerCursor(buf);
+
+            Lobby lobby = (Lobby) AppContext.getDataManager().getBinding(
+                  DarkstrisServer.LOBBY);
+            Protocol.send(ply.getClientSession(), lobby
+                  .getPlayersMessage(cursor));
+         }
+      });
+
+      COMMANDS.register(Command.GAME_START, new CommandHandler<Player>() {
+         @Override
+         public void handle(Player ply, ByteBuffer buf) {
+            ply.roomRef.get().gameStart();
+         }
+      });
+
+      COMMANDS.register(Command.MOVE_LEFT, new CommandHandler<Player>() {
+         @Override
+         public void handle(Player ply, ByteBuffer buf) {
+            ply.roomRef.get().getGame().moveLeft(ply.getSlot());
+         }
+      });
+
+      COMMANDS.register(Command.MOVE_RIGHT, new CommandHandler<Player>() {
+         @Override
+         public void handle(Player ply, ByteBuffer buf) {
+            ply.roomRef.get().getGame().moveRight(ply.getSlot());
+         }
+      });
+
+      COMMANDS.register(Command.MOVE_DOWN, new CommandHandler<Player>() {
+         @Override
+         public void handle(Player ply, ByteBuffer buf) {
+            ply.roomRef.get().getGame().moveDown(ply.getSlot());
+         }
+      });
+
+      COMMANDS.register(Command.MOVE_ALL_WAY_DOWN,
+            new CommandHandler<Player>() {
+               @Override
+               public void handle(Player ply, ByteBuffer buf) {
+                  ply.roomRef.get().getGame().moveAllWayDown(ply.getSlot());
+               }
+            });
+
+      COMMANDS.register(Command.ROTATE, new CommandHandler<Player>() {
+         @Override
+         public void handle(Player ply, ByteBuffer buf) {
+            ply.roomRef.get().getGame().rotate(ply.getSlot());
+         }
+      });
+   }
 
-         // remove client from lobbyChannel
-         lobbyChannel.join(getClientSession());
+   private void enterLobby() {
+      Channel lobbyChannel = AppContext.getChannelManager().getChannel(
+            DarkstrisServer.LOBBY_CHANNEL);
+      Lobby lobby = (Lobby) AppContext.getDataManager().getBinding(
+            DarkstrisServer.LOBBY);
 
-         // broadcast lobby that this user is in lobby
+      // user is in lobby, add him to lobby channel
+      // playerManagerRef.getForUpdate().addToLobby(currentSessionRef.get());
+      // the next lobby delta broadcasts it
+      lobby.add(name);
 
-         lobbyChannel.send(null, Protocol.userJoinedLobby(name));
+      // remove client from lobbyChannel
+      lobbyChannel.join(getClientSession());
 
-         // send lobby data back to user
-         currentSessionRef.get().send(Protocol.lobbyData(lobby.getLobbyData()));
-      }
-      else if (cmd == Command.GAME_START) {
-         roomRef.get().gameStart();
-      }
-      else if (cmd == Command.MOVE_LEFT) {
-         roomRef.get().moveLeft(figureRef.get());
-      }
-      else if (cmd == Command.MOVE_RIGHT) {
-         roomRef.get().moveRight(figureRef.get());
-      }
-      else if (cmd == Command.MOVE_DOWN) {
-         roomRef.get().moveDown(figureRef.get(), this);
-      }
-      else if (cmd == Command.MOVE_ALL_WAY_DOWN) {
-         roomRef.get().moveAllWayDown(figureRef.get(), this);
-      }
-      else if (cmd == Command.ROTATE) {
-         roomRef.get().rotate(figureRef.get());
-      }
+      // send lobby data back to user
+      Protocol.send(currentSessionRef.get(), lobby.getLobbyDataMessage());
    }
 
    private void log(String msg) {
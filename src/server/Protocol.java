@@ -1,168 +1,191 @@
 package server;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.nio.ByteBuffer;
 import java.util.List;
 
+import com.sun.sgs.app.Channel;
+import com.sun.sgs.app.ClientSession;
+import common.BufferPool;
+import common.Codec;
 import common.Commands;
+import common.Delta;
 import common.FigureInfo;
-import common.LobbyData;
+import common.LobbyDelta;
+import common.PlayerCursor;
 import common.PlayerInfo;
+import common.RoomFilter;
 import common.Commands.Command;
 
+/**
+ * The messages the server sends. They are built in buffers of the
+ * {@link BufferPool}: send them with {@link #send(ClientSession, ByteBuffer)}
+ * or {@link #send(Channel, ByteBuffer)}, which give the buffer back once the
+ * message is sent.
+ */
 public class Protocol {
 
    /**
-    * @return the serialized byte array representation of the object
+    * Sends a message of this class to a client and releases its buffer
     */
-   private static byte[] encode(Object obj) {
-      try {
-         // serialize object to a stream
-         ByteArrayOutputStream bout = new ByteArrayOutputStream();
-         ObjectOutputStream oos = new ObjectOutputStream(bout);
-
-         oos.writeObject(obj);
-         oos.close();
+   public static void send(ClientSession session, ByteBuffer message) {
+      session.send(message);
+      BufferPool.release(message);
+   }
 
-         // return the bytes
-         return bout.toByteArray();
-      }
-      catch (IOException ioe) {
-         throw new IllegalArgumentException("couldn't encode object", ioe);
-      }
+   /**
+    * Sends a message of this class to the members of a channel and releases
+    * its buffer
+    */
+   public static void send(Channel channel, ByteBuffer message) {
+      channel.send(null, message);
+      BufferPool.release(message);
    }
 
    /**
-    * Encode a FigureInfo into a byte array (this method does not use
-    * Serialization)
+    * Message to the players in the room that the game has started
     * 
-    * @param fig
-    * @return
+    * @param boardWidth
+    *           the width of the board (depending of the number of players
+    *           inside it)
+    * 
+    * @param figures
+    *           the starting figures
     */
-   private static byte[] encodeFigure(FigureInfo fig) {
-      ByteBuffer buff = ByteBuffer.allocate(20);
-      buff.putInt(fig.getType());
-      buff.putInt(fig.getX());
-      buff.putInt(fig.getY());
-      buff.putInt(fig.getRotation());
-      buff.putInt(fig.getColor());
+   public static ByteBuffer gameStart(int boardWidth, List<FigureInfo> figures) {
+      ByteBuffer buff = BufferPool.acquire(8 + Codec
+            .sizeOfFigureInfos(figures));
+      buff.putInt(Commands.encode(Command.GAME_START));
+      buff.putInt(boardWidth);
+      Codec.putFigureInfos(buff, figures);
       buff.flip();
 
-      return buff.array();
+      return buff;
    }
 
    /**
-    * Message that the user <code>player</code> has joined the lobby
+    * Message to the room signaling that the <code>oldFigure</code> is now
+    * fixed into the board and <code>newFigure</code> was added to the board
+    * 
+    * @param oldFigure
+    *           the figure that was fixed
+    * @param newFigure
+    *           the new figure added to the board
     */
-   public static ByteBuffer userJoinedLobby(String player) {
-      ByteBuffer buff = ByteBuffer.allocate(4 + player.length());
-      buff.putInt(Commands.encode(Command.USER_JOINED));
-      buff.put(player.getBytes());
-      buff.rewind();
+   public static ByteBuffer newFigure(FigureInfo oldFigure, FigureInfo newFigure) {
+      ByteBuffer buff = BufferPool.acquire(4 + 2 * Codec.FIGURE_SIZE);
+      buff.putInt(Commands.encode(Command.NEW_FIGURE));
+      Codec.putFigureInfo(buff, oldFigure);
+      Codec.putFigureInfo(buff, newFigure);
+      buff.flip();
 
       return buff;
    }
 
    /**
-    * Message that the user <code>player</code> has left the lobby
+    * Lobby data message with the first page of the players, see
+    * {@link #playersPage(List, PlayerCursor)}, and the first page of rooms
+    * already encoded, see {@link #roomsPage(List, long)}
     */
-   public static ByteBuffer userLeftLobby(String player) {
-      ByteBuffer buff = ByteBuffer.allocate(4 + player.length());
-      buff.putInt(Commands.encode(Command.USER_LEFT));
-      buff.put(player.getBytes());
-      buff.rewind();
+   public static ByteBuffer lobbyData(List<String> players,
+         PlayerCursor nextPlayers, List<byte[]> rooms, long nextCursor) {
+      ByteBuffer bb = BufferPool.acquire(5 + sizeOfPlayers(players,
+            nextPlayers) + sizeOfRooms(rooms));
+      bb.putInt(Commands.encode(Command.LOBBY_DATA));
+      bb.put((byte) Codec.VERSION);
+      putPlayers(bb, players, nextPlayers);
+      putRooms(bb, rooms, nextCursor);
+      bb.flip();
 
-      return buff;
+      return bb;
    }
 
    /**
-    * Message that the room of id <code>id</code> was dropped
-    * 
-    * @param id
-    *           the id of the room
+    * Message already encoded, copied to a buffer of the pool, to be sent
+    * and released as the others
     */
-   public static ByteBuffer roomDropped(long id) {
-      ByteBuffer buff = ByteBuffer.allocate(12);
-      buff.putInt(Commands.encode(Command.ROOM_DROPPED));
-      buff.putLong(id);
-      buff.rewind();
+   public static ByteBuffer encoded(byte[] message) {
+      ByteBuffer bb = BufferPool.acquire(message.length);
+      bb.put(message);
+      bb.flip();
 
-      return buff;
+      return bb;
    }
 
    /**
-    * Message to the players in the room that the game has started
-    * 
-    * @param boardWidth
-    *           the width of the board (depending of the number of players
-    *           inside it)
-    * 
-    * @param figures
-    *           the starting figures
+    * Message to the lobby with its coalesced changes of the last window
     */
-   public static ByteBuffer gameStart(int boardWidth, List<FigureInfo> figures) {
-      byte[] data = encode(figures);
+   public static ByteBuffer lobbyDelta(LobbyDelta delta) {
+      ByteBuffer bb = BufferPool.acquire(4 + Codec.sizeOf(delta));
+      bb.putInt(Commands.encode(Command.LOBBY_DELTA));
+      Codec.putLobbyDelta(bb, delta);
+      bb.flip();
 
-      ByteBuffer buff = ByteBuffer.allocate(8 + data.length);
-      buff.putInt(Commands.encode(Command.GAME_START));
-      buff.putInt(boardWidth);
-      buff.put(data);
-      buff.rewind();
-
-      return buff;
+      return bb;
    }
 
    /**
-    * Message to the lobby that the game started in the room of id
-    * <code>id</code>, so it's closed from now
+    * Message with a page of rooms
+    * 
+    * @param rooms
+    *           the rooms of the page, each already encoded
+    * @param nextCursor
+    *           the cursor of the next page, or {@link RoomFilter#NO_MORE_ROOMS}
     */
-   public static ByteBuffer gameStarted(long id) {
-      ByteBuffer buff = ByteBuffer.allocate(12);
-      buff.putInt(Commands.encode(Command.GAME_START));
-      buff.putLong(id);
-      buff.rewind();
+   public static ByteBuffer roomsPage(List<byte[]> rooms, long nextCursor) {
+      ByteBuffer bb = BufferPool.acquire(4 + sizeOfRooms(rooms));
+      bb.putInt(Commands.encode(Command.ROOMS_PAGE));
+      putRooms(bb, rooms, nextCursor);
+      bb.flip();
 
-      return buff;
+      return bb;
    }
 
    /**
-    * Message to the room signaling that the <code>oldFigure</code> is now
-    * fixed into the board and <code>newFigure</code> was added to the board
+    * Message with a page of players
     * 
-    * @param oldFigure
-    *           the figure that was fixed
-    * @param newFigure
-    *           the new figure added to the board
+    * @param players
+    *           the players of the page
+    * @param nextCursor
+    *           the cursor of the next page, or
+    *           {@link PlayerCursor#NO_MORE_PLAYERS}
     */
-   public static ByteBuffer newFigure(FigureInfo oldFigure, FigureInfo newFigure) {
-      byte[] dataOld = encodeFigure(oldFigure);
-      byte[] dataNew = encodeFigure(newFigure);
+   public static ByteBuffer playersPage(List<String> players,
+         PlayerCursor nextCursor) {
+      ByteBuffer bb = BufferPool.acquire(4 + sizeOfPlayers(players,
+            nextCursor));
+      bb.putInt(Commands.encode(Command.PLAYERS_PAGE));
+      putPlayers(bb, players, nextCursor);
+      bb.flip();
 
-      ByteBuffer buff = ByteBuffer.allocate(12 + dataOld.length
-            + dataNew.length);
-      buff.putInt(Commands.encode(Command.NEW_FIGURE));
-      buff.put(dataOld);
-      buff.put(dataNew);
-      buff.rewind();
+      return bb;
+   }
 
-      return buff;
+   private static int sizeOfPlayers(List<String> players,
+         PlayerCursor nextCursor) {
+      return Codec.sizeOfNames(players) + Codec.sizeOf(nextCursor);
    }
 
-   /**
-    * Message to a player containing the current data of the lobby (rooms and
-    * players)
-    */
-   public static ByteBuffer lobbyData(LobbyData lobbyData) {
-      byte[] data = encode(lobbyData);
+   private static void putPlayers(ByteBuffer bb, List<String> players,
+         PlayerCursor nextCursor) {
+      Codec.putNames(bb, players);
+      Codec.putPlayerCursor(bb, nextCursor);
+   }
 
-      ByteBuffer bb = ByteBuffer.allocate(data.length + 4);
-      bb.putInt(Commands.encode(Command.LOBBY_DATA));
-      bb.put(data);
-      bb.rewind();
+   private static int sizeOfRooms(List<byte[]> rooms) {
+      int size = 4 + 8;
+      for (byte[] room : rooms) {
+         size += room.length;
+      }
+      return size;
+   }
 
-      return bb;
+   private static void putRooms(ByteBuffer bb, List<byte[]> rooms,
+         long nextCursor) {
+      bb.putInt(rooms.size());
+      for (byte[] room : rooms) {
+         bb.put(room);
+      }
+      bb.putLong(nextCursor);
    }
 
    /**
@@ -177,14 +200,14 @@ public class Protocol {
     */
    public static ByteBuffer roomCreated(long id, int maxPlayers,
          PlayerInfo player) {
-      ByteBuffer buff = ByteBuffer.allocate(20 + player.getName().length());
+      ByteBuffer buff = BufferPool.acquire(20 + player.getName().length());
       buff.putInt(Commands.encode(Command.ROOM_CREATED));
       buff.putLong(id);
       buff.putInt(maxPlayers);
       buff.putInt(player.getColor());
       buff.put(player.getName().getBytes());
 
-      buff.rewind();
+      buff.flip();
 
       return buff;
    }
@@ -200,13 +223,13 @@ public class Protocol {
     *           the player name
     */
    public static ByteBuffer roomJoined(long id, int color, String name) {
-      ByteBuffer buff = ByteBuffer.allocate(16 + name.length());
+      ByteBuffer buff = BufferPool.acquire(16 + name.length());
       buff.putInt(Commands.encode(Command.ROOM_JOINED));
       buff.putLong(id);
       buff.putInt(color);
       buff.put(name.getBytes());
 
-      buff.rewind();
+      buff.flip();
 
       return buff;
    }
@@ -223,15 +246,14 @@ public class Protocol {
     */
    public static ByteBuffer roomJoined(long id, int color,
          List<PlayerInfo> players) {
-      byte[] data = Protocol.encode(players);
-
-      ByteBuffer buff = ByteBuffer.allocate(16 + data.length);
+      ByteBuffer buff = BufferPool.acquire(16 + Codec
+            .sizeOfPlayerInfos(players));
       buff.putInt(Commands.encode(Command.ROOM_JOINED));
       buff.putLong(id);
       buff.putInt(color);
-      buff.put(data);
+      Codec.putPlayerInfos(buff, players);
 
-      buff.rewind();
+      buff.flip();
 
       return buff;
    }
@@ -243,20 +265,16 @@ public class Protocol {
     *           the player that left
     * @param figInfo
     *           the current figure the player was handling (to be removed from
-    *           the board)
+    *           the board), or null if the game hasn't started
     */
    public static ByteBuffer roomLeft(PlayerInfo playerInfo, FigureInfo figInfo) {
-      byte[] dataPlayer = encode(playerInfo);
-      byte[] dataFigure = encodeFigure(figInfo);
-
-      ByteBuffer buff = ByteBuffer.allocate(12 + dataPlayer.length
-            + dataFigure.length);
+      ByteBuffer buff = BufferPool.acquire(4 + Codec.sizeOf(playerInfo)
+            + Codec.FIGURE_SIZE);
       buff.putInt(Commands.encode(Command.ROOM_LEFT));
-      buff.putInt(dataPlayer.length);
-      buff.put(dataPlayer);
-      buff.put(dataFigure);
+      Codec.putPlayerInfo(buff, playerInfo);
+      Codec.putFigureInfo(buff, figInfo);
 
-      buff.rewind();
+      buff.flip();
 
       return buff;
    }
@@ -268,101 +286,92 @@ public class Protocol {
     *           the room id
     */
    public static ByteBuffer roomFull(long id) {
-      ByteBuffer buff = ByteBuffer.allocate(12);
+      ByteBuffer buff = BufferPool.acquire(12);
       buff.putInt(Commands.encode(Command.ROOM_FULL));
       buff.putLong(id);
-      buff.rewind();
-
-      return buff;
-   }
-
-   /**
-    * Message to a room to move a figure to the left
-    * 
-    * @param figureInfo
-    *           the figure to move
-    */
-   public static ByteBuffer moveLeft(FigureInfo figureInfo) {
-      byte[] data = encodeFigure(figureInfo);
-
-      ByteBuffer buff = ByteBuffer.allocate(4 + data.length);
-      buff.putInt(Commands.encode(Command.MOVE_LEFT));
-      buff.put(data);
-      buff.rewind();
+      buff.flip();
 
       return buff;
    }
 
    /**
-    * Message to a room to move a figure to the right
+    * Message to a room to move the figure of a slot
     * 
-    * @param figureInfo
-    *           the figure to move
+    * @param seq
+    *           the sequence number of the message
+    * @param op
+    *           the move (one of the Delta operations)
+    * @param slot
+    *           the slot of the figure
     */
-   public static ByteBuffer moveRight(FigureInfo figureInfo) {
-      byte[] data = encodeFigure(figureInfo);
-
-      ByteBuffer buff = ByteBuffer.allocate(4 + data.length);
-      buff.putInt(Commands.encode(Command.MOVE_RIGHT));
-      buff.put(data);
-      buff.rewind();
+   public static ByteBuffer delta(int seq, int op, int slot) {
+      ByteBuffer buff = BufferPool.acquire(6);
+      buff.putInt(Commands.encode(Command.DELTA));
+      buff.put((byte) seq);
+      buff.put(Delta.encode(op, slot));
+      buff.flip();
 
       return buff;
    }
 
    /**
-    * Message to a room to move a figure down
+    * Message to a room to move the figure of a slot all way down
     * 
-    * @param figureInfo
-    *           the figure to move
+    * @param seq
+    *           the sequence number of the message
+    * @param slot
+    *           the slot of the figure
+    * @param rows
+    *           the number of rows the figure fell
     */
-   public static ByteBuffer moveDown(FigureInfo figureInfo) {
-      byte[] data = encodeFigure(figureInfo);
-
-      ByteBuffer buff = ByteBuffer.allocate(4 + data.length);
-      buff.putInt(Commands.encode(Command.MOVE_DOWN));
-      buff.put(data);
-      buff.rewind();
+   public static ByteBuffer drop(int seq, int slot, int rows) {
+      ByteBuffer buff = BufferPool.acquire(7);
+      buff.putInt(Commands.encode(Command.DELTA));
+      buff.put((byte) seq);
+      buff.put(Delta.encode(Delta.DROP, slot));
+      buff.put((byte) rows);
+      buff.flip();
 
       return buff;
    }
 
    /**
-    * Message to a room to move a figure all way down
+    * Message to a room with all the figures moved down by one gravity tick
     * 
-    * @param old
-    *           the figure info to move from
-    * @param actual
-    *           the figure info to move to
+    * @param seq
+    *           the sequence number of the message
+    * @param slots
+    *           the slots of the figures to move down, in order
     */
-   public static ByteBuffer moveAllWayDown(FigureInfo old, FigureInfo actual) {
-      byte[] dataOld = encodeFigure(old);
-      byte[] dataActual = encodeFigure(actual);
-
-      ByteBuffer buff = ByteBuffer.allocate(4 + dataOld.length
-            + dataActual.length);
-      buff.putInt(Commands.encode(Command.MOVE_ALL_WAY_DOWN));
-      buff.put(dataOld);
-      buff.put(dataActual);
-
-      buff.rewind();
+   public static ByteBuffer gravity(int seq, List<Integer> slots) {
+      ByteBuffer buff = BufferPool.acquire(6 + slots.size());
+      buff.putInt(Commands.encode(Command.GRAVITY));
+      buff.put((byte) seq);
+      buff.put((byte) slots.size());
+      for (int slot : slots) {
+         buff.put((byte) slot);
+      }
+      buff.flip();
 
       return buff;
    }
 
    /**
-    * Message to a room to rotate a figure
+    * Message to a room with the full state of its figures, so clients can fix
+    * any drift of their delta-updated figures
     * 
-    * @param figureInfo
-    *           the figure to rotate
+    * @param seq
+    *           the sequence number of the message
+    * @param figures
+    *           the current figures of the room
     */
-   public static ByteBuffer rotate(FigureInfo figureInfo) {
-      byte[] data = encodeFigure(figureInfo);
-
-      ByteBuffer buff = ByteBuffer.allocate(4 + data.length);
-      buff.putInt(Commands.encode(Command.ROTATE));
-      buff.put(data);
-      buff.rewind();
+   public static ByteBuffer figureSync(int seq, List<FigureInfo> figures) {
+      ByteBuffer buff = BufferPool.acquire(5 + Codec
+            .sizeOfFigureInfos(figures));
+      buff.putInt(Commands.encode(Command.FIGURE_SYNC));
+      buff.put((byte) seq);
+      Codec.putFigureInfos(buff, figures);
+      buff.flip();
 
       return buff;
    }
@@ -371,9 +380,9 @@ public class Protocol {
     * Message to a room signaling that the game is over
     */
    public static ByteBuffer gameOver() {
-      ByteBuffer buff = ByteBuffer.allocate(4);
+      ByteBuffer buff = BufferPool.acquire(4);
       buff.putInt(Commands.encode(Command.GAME_OVER));
-      buff.rewind();
+      buff.flip();
 
       return buff;
    }
@@ -386,9 +395,9 @@ public class Protocol {
     *           the figure to move
     */
    public static ByteBuffer gameOwner() {
-      ByteBuffer buff = ByteBuffer.allocate(4);
+      ByteBuffer buff = BufferPool.acquire(4);
       buff.putInt(Commands.encode(Command.GAME_OWNER));
-      buff.rewind();
+      buff.flip();
 
       return buff;
    }
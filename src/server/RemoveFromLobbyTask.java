@@ -25,7 +25,6 @@ public class RemoveFromLobbyTask implements Task, Serializable {
             + ")");
       Lobby lobby = (Lobby) AppContext.getDataManager().getBinding(
             DarkstrisServer.LOBBY);
-      AppContext.getDataManager().markForUpdate(lobby);
       lobby.remove(sessRef.get().getName());
 
       Channel lobbyChannel = AppContext.getChannelManager().getChannel(
@@ -0,0 +1,385 @@
+package server;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.sun.sgs.app.AppContext;
+import com.sun.sgs.app.Channel;
+import com.sun.sgs.app.ManagedObject;
+import com.sun.sgs.app.ManagedReference;
+import com.sun.sgs.app.PeriodicTaskHandle;
+import common.Delta;
+import common.FigureInfo;
+
+/**
+ * The game played in a {@link ServerRoom}: the board, the figures, the score,
+ * the level, the gravity task and the sequence of the deltas. It's a managed
+ * object of its own, written on every move and gravity tick, so the room
+ * itself is only read while the game runs, and the lobby and the join and
+ * leave tasks don't conflict with the moves.
+ * 
+ * The board and the figures are stored with the game, the figures as
+ * primitive arrays in a {@link FigureTable}: a move reads and writes this
+ * object only.
+ */
+public class RoomGame implements ManagedObject, Serializable {
+
+   private static final long serialVersionUID = -3532472093458214383L;
+
+   /** the room the game is played in, only read by the game */
+   private ManagedReference<ServerRoom> roomRef;
+
+   /** the board, stored with the game */
+   private SquareBoard board;
+
+   /** the figure of each player slot, stored with the game */
+   private FigureTable figures;
+
+   /** the column where the new figures of each slot enter the board */
+   private int[] spawnX;
+
+   /** game finished in this room? */
+   private boolean gameOver;
+
+   /** the gravity task of the game, while it's running */
+   private PeriodicTaskHandle gravityHandle;
+
+   /** the room score, same as the one computed by the clients */
+   private int score;
+
+   /** the game level, it sets the gravity period */
+   private int level;
+
+   /** maximum game level */
+   private static final int MAX_LEVEL = 9;
+
+   /** score needed to advance each level */
+   private static final int LEVEL_SCORE = 150;
+
+   /** sequence number of the last delta sent to the room */
+   private int seq;
+
+   /** gravity ticks since the game started */
+   private int ticks;
+
+   /** every how many gravity ticks the full state of the figures is sent */
+   private static final int SYNC_TICKS = 10;
+
+   public RoomGame(ServerRoom room) {
+      this.roomRef = AppContext.getDataManager().createReference(room);
+      this.gameOver = false;
+      this.score = 0;
+      this.level = 1;
+   }
+
+   /**
+    * Sets up the board and a figure for each player, tells the room and
+    * starts the gravity
+    * 
+    * @param seats
+    *           the players, in the order they take the board from the left
+    * @param slots
+    *           the number of player slots of the room
+    */
+   public void start(Collection<RoomRoster.Seat> seats, int slots) {
+      AppContext.getDataManager().markForUpdate(this);
+      int numPlayers = seats.size();
+
+      board = new SquareBoard(8 + (numPlayers - 1) * 4, 20);
+      figures = new FigureTable(slots);
+      spawnX = new int[slots];
+
+      List<FigureInfo> infos = new ArrayList<FigureInfo>(numPlayers);
+
+      int x = 3;
+      // set up players
+      for (RoomRoster.Seat seat : seats) {
+         spawnX[seat.getSlot()] = x;
+         x += 4;
+
+         ServerFigure fig = newFigure(seat.getSlot(), seat.getColor());
+
+         infos.add(fig.getFigureInfo());
+      }
+
+      // broadcast game start with pieces
+      Protocol.send(getChannel(), Protocol.gameStart(board.getBoardWidth(),
+            infos));
+
+      scheduleGravity();
+   }
+
+   private Channel getChannel() {
+      return roomRef.get().getChannel();
+   }
+
+   /**
+    * Returns a handle on the figure of a slot
+    * 
+    * @return the figure, or null if the slot has none
+    */
+   private ServerFigure getFigure(int slot) {
+      if (slot < figures.size() && figures.hasFigure(slot)) {
+         return new ServerFigure(figures, slot, board);
+      }
+      else {
+         return null;
+      }
+   }
+
+   /**
+    * Takes the figure of a player that left the room off the board
+    * 
+    * @return the figure taken off, or null if the player had none
+    */
+   public FigureInfo removeFigure(int slot) {
+      ServerFigure figure = getFigure(slot);
+      if (figure == null) {
+         return null;
+      }
+
+      AppContext.getDataManager().markForUpdate(this);
+      FigureInfo info = figure.getFigureInfo();
+      figure.clear();
+      figures.remove(slot);
+      return info;
+   }
+
+   // /////////////////
+   // Piece Movements
+   // /////////////////
+   public void moveLeft(int slot) {
+      ServerFigure figure = getFigure(slot);
+      if (!gameOver && figure != null && figure.canMoveLeft()) {
+         Protocol.send(getChannel(), Protocol.delta(nextSeq(), Delta.LEFT,
+               slot));
+
+         // save current position
+         figure.moveLeft();
+      }
+      // else do nothing
+   }
+
+   public void moveRight(int slot) {
+      ServerFigure figure = getFigure(slot);
+      if (!gameOver && figure != null && figure.canMoveRight()) {
+         Protocol.send(getChannel(), Protocol.delta(nextSeq(), Delta.RIGHT,
+               slot));
+
+         // save current position
+         figure.moveRight();
+      }
+      // else do nothing
+   }
+
+   public void rotate(int slot) {
+      ServerFigure figure = getFigure(slot);
+      if (!gameOver && figure != null && figure.canRotate()) {
+         Protocol.send(getChannel(), Protocol.delta(nextSeq(), Delta.ROTATE,
+               slot));
+
+         figure.rotate();
+      }
+      // else do nothing
+   }
+
+   public void moveDown(int slot) {
+      ServerFigure figure = getFigure(slot);
+      if (!gameOver && figure != null) {
+         MessageBatch batch = new MessageBatch();
+
+         if (figure.canMoveDown()) {
+            batch.add(Protocol.delta(nextSeq(), Delta.DOWN, slot));
+
+            // save current position
+            figure.moveDown();
+         }
+         else if (figure.isAllWayDown()) {
+            handleFigureBottom(figure, batch);
+         }
+         else {
+            // the figure is pushing against another player's figure
+         }
+
+         batch.flush(getChannel());
+      }
+      // else do nothing
+   }
+
+   /**
+    * Gravity tick: moves down every figure of the room, broadcasting all the
+    * moves in a single message. Figures that can't move down and are resting
+    * on the floor are fixed afterwards, in the same order the clients apply
+    * them. Every {@link #SYNC_TICKS} ticks the full state of the figures is
+    * sent instead of the moves. Everything the tick sends goes out in one
+    * {@link MessageBatch}.
+    */
+   public void gravityTick() {
+      if (gameOver) {
+         return;
+      }
+
+      AppContext.getDataManager().markForUpdate(this);
+      ticks++;
+
+      List<Integer> moved = new ArrayList<Integer>(figures.size());
+      List<FigureInfo> infos = new ArrayList<FigureInfo>(figures.size());
+      List<ServerFigure> landed = new ArrayList<ServerFigure>(0);
+
+      for (int slot = 0; slot < figures.size(); slot++) {
+         ServerFigure figure = getFigure(slot);
+         if (figure == null) {
+            continue;
+         }
+
+         if (figure.canMoveDown()) {
+            moved.add(slot);
+            figure.moveDown();
+         }
+         else if (figure.isAllWayDown()) {
+            landed.add(figure);
+         }
+
+         infos.add(figure.getFigureInfo());
+      }
+
+      MessageBatch batch = new MessageBatch();
+
+      if (ticks % SYNC_TICKS == 0) {
+         batch.add(Protocol.figureSync(nextSeq(), infos));
+      }
+      else if (!moved.isEmpty()) {
+         batch.add(Protocol.gravity(nextSeq(), moved));
+      }
+
+      for (ServerFigure figure : landed) {
+         // a previous figure could have removed lines below this one
+         if (!gameOver && figure.isAllWayDown()) {
+            handleFigureBottom(figure, batch);
+         }
+      }
+
+      batch.flush(getChannel());
+   }
+
+   /**
+    * Stops the gravity task, if it's running
+    */
+   public void stopGravity() {
+      if (gravityHandle != null) {
+         AppContext.getDataManager().markForUpdate(this);
+         gravityHandle.cancel();
+         gravityHandle = null;
+      }
+   }
+
+   /**
+    * (Re)schedules the gravity task with the period of the current level
+    */
+   private void scheduleGravity() {
+      stopGravity();
+
+      AppContext.getDataManager().markForUpdate(this);
+      long period = getGravityPeriod(level);
+      gravityHandle = AppContext.getTaskManager().schedulePeriodicTask(
+            new GravityTask(this), period, period);
+   }
+
+   /**
+    * @return the gravity period of a level, in ms (it gets shorter on harder
+    *         levels)
+    */
+   private static long getGravityPeriod(int level) {
+      int period = 1000;
+      for (int i = 1; i < level; i++) {
+         period *= 0.8;
+      }
+      return period;
+   }
+
+   public void moveAllWayDown(int slot) {
+      ServerFigure figure = getFigure(slot);
+      if (!gameOver && figure != null) {
+         MessageBatch batch = new MessageBatch();
+
+         int rows = figure.drop();
+         if (rows > 0) {
+            batch.add(Protocol.drop(nextSeq(), slot, rows));
+         }
+
+         if (figure.isAllWayDown()) {
+            handleFigureBottom(figure, batch);
+         }
+         else {
+            // the figure is pushing against another player's figure
+         }
+
+         batch.flush(getChannel());
+      }
+      // else do nothing
+   }
+
+   /**
+    * @return the sequence number of the next delta sent to the room
+    */
+   private int nextSeq() {
+      AppContext.getDataManager().markForUpdate(this);
+      seq = Delta.next(seq);
+      return seq;
+   }
+
+   /**
+    * Puts a new random figure in a slot, replacing its previous one
+    */
+   private ServerFigure newFigure(int slot, int color) {
+      ServerFigure fig = new ServerFigure(figures, slot,
+            (int) (1 + (Math.random() * 7)));
+      fig.attach(board, spawnX[slot]);
+      fig.setColor(color);
+
+      return fig;
+   }
+
+   /**
+    * Fixes a figure that reached the bottom, removes the full lines and gives
+    * the player a new figure, or ends the game. The messages are added to
+    * <code>batch</code>, which the caller flushes.
+    */
+   private void handleFigureBottom(ServerFigure figure, MessageBatch batch) {
+      AppContext.getDataManager().markForUpdate(this);
+      figure.fix();
+
+      int removedLines = board.removeFullLines();
+
+      // 1 point for placing a figure, 10, 20, 40, 80 for the lines
+      score += 1;
+      if (removedLines > 0) {
+         score += 10 << (removedLines - 1);
+      }
+
+      if (!figure.isAllVisible()) {
+         gameOver = true;
+         stopGravity();
+
+         // send gameover
+         batch.add(Protocol.gameOver());
+         // leave room open so players can talk about the game
+      }
+      else {
+         // the new figure takes the slot of the fixed one
+         FigureInfo fixed = figure.getFigureInfo();
+         ServerFigure newFigure = newFigure(figure.getSlot(), figure
+               .getColor());
+
+         // send new piece
+         batch.add(Protocol.newFigure(fixed, newFigure.getFigureInfo()));
+
+         if (level < MAX_LEVEL && score / LEVEL_SCORE > level) {
+            level++;
+            scheduleGravity();
+         }
+      }
+   }
+}
@@ -0,0 +1,53 @@
+package server;
+
+import java.io.Serializable;
+
+import com.sun.sgs.app.ManagedObject;
+
+/**
+ * A range of room ids, from <code>next</code> (included) to
+ * <code>end</code> (excluded), that ids are taken from in order.
+ */
+public class RoomIdBlock implements ManagedObject, Serializable {
+
+   private static final long serialVersionUID = -6405036993484573312L;
+
+   private long next;
+
+   private long end;
+
+   public RoomIdBlock(long next, long end) {
+      reset(next, end);
+   }
+
+   public boolean isEmpty() {
+      return next >= end;
+   }
+
+   /**
+    * Replaces the remaining ids by the range from <code>next</code> to
+    * <code>end</code>
+    */
+   public void reset(long next, long end) {
+      this.next = next;
+      this.end = end;
+   }
+
+   /**
+    * Takes <code>count</code> ids
+    * 
+    * @return the first of the ids taken
+    * 
+    * @throws IllegalStateException
+    *            if less than <code>count</code> ids remain
+    */
+   public long take(long count) {
+      if (end - next < count) {
+         throw new IllegalStateException("only " + (end - next)
+               + " ids left, " + count + " requested");
+      }
+      long first = next;
+      next += count;
+      return first;
+   }
+}
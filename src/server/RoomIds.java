@@ -0,0 +1,73 @@
+package server;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sun.sgs.app.AppContext;
+import com.sun.sgs.app.ManagedObject;
+import com.sun.sgs.app.ManagedReference;
+
+/**
+ * The room id allocator. Ids are handed out by a number of allocators, each
+ * a small {@link RoomIdBlock} holding the rest of a block of
+ * {@link #BLOCK_SIZE} ids. A room creation only writes the allocator picked
+ * by its hash, and only takes a new block from the shared pool of free ids
+ * once every {@link #BLOCK_SIZE} creations on that allocator.
+ * 
+ * The allocator itself never changes after its creation. Ids are unique but
+ * not consecutive: every allocator counts within its own block.
+ */
+public class RoomIds implements ManagedObject, Serializable {
+
+   private static final long serialVersionUID = 2706154786120926734L;
+
+   public static final String BINDING = "roomIds";
+
+   /** allocator count used when the application properties don't set one */
+   public static final int DEFAULT_ALLOCATORS = 16;
+
+   /** ids taken from the free pool at a time */
+   public static final long BLOCK_SIZE = 256;
+
+   /** the ids not handed to any allocator yet */
+   private ManagedReference<RoomIdBlock> free;
+
+   private List<ManagedReference<RoomIdBlock>> allocators;
+
+   public RoomIds(int numAllocators) {
+      if (numAllocators < 1) {
+         throw new IllegalArgumentException("numAllocators must be >= 1: "
+               + numAllocators);
+      }
+
+      free = AppContext.getDataManager().createReference(
+            new RoomIdBlock(0, Long.MAX_VALUE));
+
+      allocators = new ArrayList<ManagedReference<RoomIdBlock>>(numAllocators);
+      for (int i = 0; i < numAllocators; i++) {
+         // empty, it takes its first block on its first id
+         allocators.add(AppContext.getDataManager().createReference(
+               new RoomIdBlock(0, 0)));
+      }
+   }
+
+   /**
+    * Returns a new room id, unique for the life of the data store
+    * 
+    * @param hash
+    *           picks the allocator, creations with different hashes usually
+    *           don't conflict
+    */
+   public static long next(int hash) {
+      RoomIds ids = (RoomIds) AppContext.getDataManager().getBinding(BINDING);
+
+      RoomIdBlock block = ids.allocators.get(
+            (hash & Integer.MAX_VALUE) % ids.allocators.size()).getForUpdate();
+      if (block.isEmpty()) {
+         long start = ids.free.getForUpdate().take(BLOCK_SIZE);
+         block.reset(start, start + BLOCK_SIZE);
+      }
+      return block.take(1);
+   }
+}
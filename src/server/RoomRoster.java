@@ -0,0 +1,125 @@
+package server;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.sgs.app.AppContext;
+import com.sun.sgs.app.ManagedReference;
+import common.PlayerInfo;
+
+/**
+ * The players of a room, embedded in the room. It keeps what the room needs
+ * to know about them without loading them: name, color and slot, in the order
+ * they joined, so that membership checks, the player list of the lobby and of
+ * the join messages only read the room itself. The {@link Player} is only
+ * loaded through {@link Seat#getPlayer()}, when it's really needed.
+ */
+public class RoomRoster implements Serializable {
+
+   private static final long serialVersionUID = -2217805546633263004L;
+
+   /**
+    * A player in the room
+    */
+   public static class Seat implements Serializable {
+
+      private static final long serialVersionUID = 4406213474466925140L;
+
+      private final PlayerInfo info;
+
+      private final int slot;
+
+      private final ManagedReference<Player> playerRef;
+
+      private Seat(Player player) {
+         this.info = player.getPlayerInfo();
+         this.slot = player.getSlot();
+         this.playerRef = AppContext.getDataManager().createReference(player);
+      }
+
+      public String getName() {
+         return info.getName();
+      }
+
+      public int getColor() {
+         return info.getColor();
+      }
+
+      public int getSlot() {
+         return slot;
+      }
+
+      public PlayerInfo getPlayerInfo() {
+         return info;
+      }
+
+      /**
+       * Loads the player
+       */
+      public Player getPlayer() {
+         return playerRef.get();
+      }
+   }
+
+   /** the seats by player name, in the order the players joined */
+   private final Map<String, Seat> seats = new LinkedHashMap<String, Seat>();
+
+   /**
+    * Adds a player, with the color and slot it has been given
+    */
+   public void add(Player player) {
+      seats.put(player.getName(), new Seat(player));
+   }
+
+   /**
+    * Removes a player
+    * 
+    * @return the seat of the player, or null if it wasn't in the room
+    */
+   public Seat remove(String name) {
+      return seats.remove(name);
+   }
+
+   public boolean contains(String name) {
+      return seats.containsKey(name);
+   }
+
+   public int size() {
+      return seats.size();
+   }
+
+   public boolean isEmpty() {
+      return seats.isEmpty();
+   }
+
+   /**
+    * Returns the seats in the order the players joined, the first one is the
+    * owner of the room
+    */
+   public Collection<Seat> getSeats() {
+      return Collections.unmodifiableCollection(seats.values());
+   }
+
+   /**
+    * Returns the seat of the player that owns the room, the first one that
+    * joined
+    * 
+    * @return the seat, or null if the room is empty
+    */
+   public Seat getOwner() {
+      return seats.isEmpty() ? null : seats.values().iterator().next();
+   }
+
+   public List<PlayerInfo> getPlayerInfos() {
+      List<PlayerInfo> ret = new ArrayList<PlayerInfo>(seats.size());
+      for (Seat seat : seats.values()) {
+         ret.add(seat.getPlayerInfo());
+      }
+      return ret;
+   }
+}
@@ -1,30 +1,25 @@
 package server;
 
-import java.io.Serializable;
-
-import com.sun.sgs.app.AppContext;
-import com.sun.sgs.app.ManagedObject;
-import com.sun.sgs.app.ManagedReference;
 import common.FigureInfo;
 
-public class ServerFigure implements Serializable, ManagedObject {
-
-   private static final long serialVersionUID = 830638301531788797L;
+/**
+ * A figure on a square board. The figure doesn't hold its state: it's a handle
+ * on one slot of a {@link FigureTable}, the arrays a {@link RoomGame} keeps the
+ * figures of its room in, so moving a figure only changes the game that holds
+ * it. Handles are cheap to create and aren't kept.
+ */
+public class ServerFigure {
 
-   private int type;
+   private final FigureTable table;
 
-   private ManagedReference<SquareBoard> board;
+   private final int slot;
 
-   public ServerFigure(FigureInfo info) {
-      this(info.getType());
-      setColor(info.getColor());
-      setRotation(info.getRotation());
-   }
+   private SquareBoard board;
 
    /**
-    * Creates a new figure of one of the seven predefined types. The figure will
-    * not be attached to any square board and default colors and orientations
-    * will be assigned.
+    * Creates a new figure of one of the seven predefined types, in a table of
+    * its own. The figure will not be attached to any square board and default
+    * colors and orientations will be assigned.
     * 
     * @param type
     *           the figure type (one of the figure constants)
@@ -41,37 +36,61 @@ public class ServerFigure implements Serializable, ManagedObject {
     *            if the figure type specified is not recognized
     */
    public ServerFigure(int type) throws IllegalArgumentException {
+      this(new FigureTable(1), 0, null);
+      initialize(type);
+   }
+
+   /**
+    * Creates a new figure of one of the seven predefined types in a slot of a
+    * table, replacing the figure of the slot, if any. The figure will not be
+    * attached to any square board.
+    * 
+    * @throws IllegalArgumentException
+    *            if the figure type specified is not recognized
+    */
+   public ServerFigure(FigureTable table, int slot, int type)
+         throws IllegalArgumentException {
+      this(table, slot, null);
       initialize(type);
-      this.type = type;
+   }
+
+   /**
+    * Returns a handle on the figure of a slot of a table, attached to
+    * <code>board</code>
+    */
+   public ServerFigure(FigureTable table, int slot, SquareBoard board) {
+      this.table = table;
+      this.slot = slot;
+      this.board = board;
+   }
+
+   public int getSlot() {
+      return slot;
    }
 
    public int getX() {
-      return xPos;
+      return table.x[slot];
    }
 
    public int getY() {
-      return yPos;
+      return table.y[slot];
    }
 
    public int getType() {
-      return type;
+      return table.type[slot];
    }
 
    public int getColor() {
-      return color;
+      return table.color[slot];
    }
 
    public SquareBoard getBoard() {
-      if (board != null) {
-         return board.get();
-      }
-      else {
-         return null;
-      }
+      return board;
    }
 
-   public void setBoard(SquareBoard board) {
-      this.board = AppContext.getDataManager().createReference(board);
+   public FigureInfo getFigureInfo() {
+      return new FigureInfo(getType(), getX(), getY(), getRotation(),
+            getColor(), slot);
    }
 
    /**
@@ -110,54 +129,8 @@ public class ServerFigure implements Serializable, ManagedObject {
    public static final int TRIANGLE_FIGURE = 7;
 
    /**
-    * The horizontal figure position on the board. This value has no meaning
-    * when the figure is not attached to a square board.
-    */
-   protected int xPos = 0;
-
-   /**
-    * The vertical figure position on the board. This value has no meaning when
-    * the figure is not attached to a square board.
-    */
-   protected int yPos = 0;
-
-   /**
-    * The figure orientation (or rotation). This value is normally between 0 and
-    * 3, but must also be less than the maxOrientation value.
-    * 
-    * @see #maxOrientation
-    */
-   private int orientation = 0;
-
-   /**
-    * The maximum allowed orientation number. This is used to reduce the number
-    * of possible rotations for some figures, such as the square figure. If this
-    * value is not used, the square figure will be possible to rotate around one
-    * of its squares, which gives an erroneous effect.
-    * 
-    * @see #orientation
-    */
-   private int maxOrientation = 4;
-
-   /**
-    * The horizontal coordinates of the figure shape. The coordinates are
-    * relative to the current figure position and orientation.
-    */
-   private int[] shapeX = new int[4];
-
-   /**
-    * The vertical coordinates of the figure shape. The coordinates are relative
-    * to the current figure position and orientation.
-    */
-   private int[] shapeY = new int[4];
-
-   /**
-    * The figure color.
-    */
-   protected int color;
-
-   /**
-    * Initializes the instance variables for a specified figure type.
+    * Initializes the instance variables for a specified figure type. The shape
+    * itself is looked up in the {@link FigureShape} table.
     * 
     * @param type
     *           the figure type (one of the figure constants)
@@ -174,97 +147,18 @@ public class ServerFigure implements Serializable, ManagedObject {
     *            if the figure type specified is not recognized
     */
    private void initialize(int type) throws IllegalArgumentException {
+      // Check figure type
+      FigureShape.getOrientations(type);
+
       // Initialize default variables
-      xPos = 0;
-      yPos = 0;
-      orientation = 0;
-
-      // Initialize figure type variables
-      switch (type) {
-      case SQUARE_FIGURE:
-         maxOrientation = 1;
-         shapeX[0] = -1;
-         shapeY[0] = 0;
-         shapeX[1] = 0;
-         shapeY[1] = 0;
-         shapeX[2] = -1;
-         shapeY[2] = 1;
-         shapeX[3] = 0;
-         shapeY[3] = 1;
-         break;
-      case LINE_FIGURE:
-         maxOrientation = 2;
-         shapeX[0] = -2;
-         shapeY[0] = 0;
-         shapeX[1] = -1;
-         shapeY[1] = 0;
-         shapeX[2] = 0;
-         shapeY[2] = 0;
-         shapeX[3] = 1;
-         shapeY[3] = 0;
-         break;
-      case S_FIGURE:
-         maxOrientation = 2;
-         shapeX[0] = 0;
-         shapeY[0] = 0;
-         shapeX[1] = 1;
-         shapeY[1] = 0;
-         shapeX[2] = -1;
-         shapeY[2] = 1;
-         shapeX[3] = 0;
-         shapeY[3] = 1;
-         break;
-      case Z_FIGURE:
-         maxOrientation = 2;
-         shapeX[0] = -1;
-         shapeY[0] = 0;
-         shapeX[1] = 0;
-         shapeY[1] = 0;
-         shapeX[2] = 0;
-         shapeY[2] = 1;
-         shapeX[3] = 1;
-         shapeY[3] = 1;
-         break;
-      case RIGHT_ANGLE_FIGURE:
-         maxOrientation = 4;
-         shapeX[0] = -1;
-         shapeY[0] = 0;
-         shapeX[1] = 0;
-         shapeY[1] = 0;
-         shapeX[2] = 1;
-         shapeY[2] = 0;
-         shapeX[3] = 1;
-         shapeY[3] = 1;
-         break;
-      case LEFT_ANGLE_FIGURE:
-         maxOrientation = 4;
-         shapeX[0] = -1;
-         shapeY[0] = 0;
-         shapeX[1] = 0;
-         shapeY[1] = 0;
-         shapeX[2] = 1;
-         shapeY[2] = 0;
-         shapeX[3] = -1;
-         shapeY[3] = 1;
-         break;
-      case TRIANGLE_FIGURE:
-         maxOrientation = 4;
-         shapeX[0] = -1;
-         shapeY[0] = 0;
-         shapeX[1] = 0;
-         shapeY[1] = 0;
-         shapeX[2] = 1;
-         shapeY[2] = 0;
-         shapeX[3] = 0;
-         shapeY[3] = 1;
-         break;
-      default:
-         throw new IllegalArgumentException("No figure constant: " + type);
-      }
+      table.type[slot] = (byte) type;
+      table.x[slot] = 0;
+      table.y[slot] = 0;
+      table.orientation[slot] = 0;
    }
 
    public void setColor(int color) {
-      this.color = color;
+      table.color[slot] = color;
    }
 
    /**
@@ -306,19 +200,20 @@ public class ServerFigure implements Serializable, ManagedObject {
       }
 
       // Reset position (for correct controls)
-      xPos = 0;
-      yPos = 0;
+      table.x[slot] = 0;
+      table.y[slot] = 0;
 
       // Calculate position
+      FigureShape shape = getShape();
       newY = 0;
-      for (int i = 0; i < shapeX.length; i++) {
-         if (getRelativeY(i, orientation) - newY > 0) {
-            newY = -getRelativeY(i, orientation);
+      for (int i = 0; i < 4; i++) {
+         if (shape.getY(i) - newY > 0) {
+            newY = -shape.getY(i);
          }
       }
 
       // Check position
-      setBoard(board);
+      this.board = board;
 
       // if the figure can't be positioned in this row, move it one up
       while (!positionAlongX(newX, newY)) {
@@ -343,11 +238,11 @@ public class ServerFigure implements Serializable, ManagedObject {
     */
    private boolean positionAlongX(final int x, final int y) {
       int newX = x;
-      int bWidth = board.get().getBoardWidth();
+      int bWidth = board.getBoardWidth();
 
       boolean goodPosition = true;
       // try to the left
-      while (!canMoveTo(newX, y, orientation)) {
+      while (!canMoveTo(newX, y, getRotation())) {
          if (newX > 0) {
             newX--;
          }
@@ -359,8 +254,8 @@ public class ServerFigure implements Serializable, ManagedObject {
 
       if (goodPosition) {
          // good position in (x, y)
-         xPos = newX;
-         yPos = y;
+         table.x[slot] = newX;
+         table.y[slot] = y;
          return true;
       }
       else {
@@ -368,7 +263,7 @@ public class ServerFigure implements Serializable, ManagedObject {
          goodPosition = true;
 
          // try to the right
-         while (!canMoveTo(newX, y, orientation)) {
+         while (!canMoveTo(newX, y, getRotation())) {
             if (newX < bWidth - 1) {
                newX++;
             }
@@ -381,8 +276,8 @@ public class ServerFigure implements Serializable, ManagedObject {
 
       if (goodPosition) {
          // good position in (newX, y)
-         xPos = newX;
-         yPos = y;
+         table.x[slot] = newX;
+         table.y[slot] = y;
          return true;
       }
       else {
@@ -396,7 +291,7 @@ public class ServerFigure implements Serializable, ManagedObject {
     * intact.
     */
    public void detach() {
-      setBoard(null);
+      board = null;
    }
 
    /**
@@ -409,24 +304,19 @@ public class ServerFigure implements Serializable, ManagedObject {
       if (!isAttached()) {
          return false;
       }
-      for (int i = 0; i < shapeX.length; i++) {
-         if (yPos + getRelativeY(i, orientation) < 0) {
-            return false;
-         }
-      }
-      return true;
+      return getY() + getShape().getMinY() >= 0;
    }
 
    public boolean canMoveLeft() {
-      return isAttached() && canMoveTo(xPos - 1, yPos, orientation);
+      return isAttached() && canMoveTo(getX() - 1, getY(), getRotation());
    }
 
    public boolean canMoveRight() {
-      return isAttached() && canMoveTo(xPos + 1, yPos, orientation);
+      return isAttached() && canMoveTo(getX() + 1, getY(), getRotation());
    }
 
    public boolean canMoveDown() {
-      return isAttached() && canMoveTo(xPos, yPos + 1, orientation);
+      return isAttached() && canMoveTo(getX(), getY() + 1, getRotation());
    }
 
    /**
@@ -434,7 +324,7 @@ public class ServerFigure implements Serializable, ManagedObject {
     */
    public void moveLeft() {
       clear();
-      xPos--;
+      table.x[slot]--;
       fill();
    }
 
@@ -443,7 +333,7 @@ public class ServerFigure implements Serializable, ManagedObject {
     */
    public void moveRight() {
       clear();
-      xPos++;
+      table.x[slot]++;
       fill();
    }
 
@@ -452,25 +342,44 @@ public class ServerFigure implements Serializable, ManagedObject {
     */
    public void moveDown() {
       clear();
-      yPos++;
+      table.y[slot]++;
       fill();
    }
 
    /**
-    * @return if this figure is on the floor or colliding with a fixed figure
+    * Returns how many rows this figure can fall before landing, i.e. the
+    * landing (ghost) position is <code>getY() + getDropDistance()</code>.
+    * 
+    * @return the drop distance, or 0 if the figure can't move down
     */
-   public boolean isAllWayDown() {
-      int newX = xPos;
-      int newY = yPos + 1;
+   public int getDropDistance() {
+      if (!isAttached()) {
+         return 0;
+      }
+      return board.getDropDistance(getShape(), getX(), getY());
+   }
 
-      for (int i = 0; i < 4; i++) {
-         int x = newX + getRelativeX(i, orientation);
-         int y = newY + getRelativeY(i, orientation);
-         if (!isInside(x, y) && getBoard().isSquareFixed(x, y)) {
-            return true;
-         }
+   /**
+    * Moves the figure all the way down with a single clear and fill of the
+    * board
+    * 
+    * @return the number of rows the figure moved
+    */
+   public int drop() {
+      int distance = getDropDistance();
+      if (distance > 0) {
+         clear();
+         table.y[slot] += distance;
+         fill();
       }
-      return false;
+      return distance;
+   }
+
+   /**
+    * @return if this figure is on the floor or colliding with a fixed figure
+    */
+   public boolean isAllWayDown() {
+      return board.isResting(getShape(), getX(), getY());
    }
 
    /**
@@ -479,7 +388,7 @@ public class ServerFigure implements Serializable, ManagedObject {
     * @return the current figure rotation
     */
    public int getRotation() {
-      return orientation;
+      return table.orientation[slot];
    }
 
    /**
@@ -493,22 +402,23 @@ public class ServerFigure implements Serializable, ManagedObject {
     */
    public void setRotation(int rotation) {
       // Set new orientation
-      int newOrientation = rotation % maxOrientation;
+      int newOrientation = rotation % FigureShape.getOrientations(getType());
 
       // Check new position
       if (!isAttached()) {
-         orientation = newOrientation;
+         table.orientation[slot] = (byte) newOrientation;
       }
-      else if (canMoveTo(xPos, yPos, newOrientation)) {
+      else if (canMoveTo(getX(), getY(), newOrientation)) {
          clear();
-         orientation = newOrientation;
+         table.orientation[slot] = (byte) newOrientation;
          fill();
       }
    }
 
    public boolean canRotate() {
-      int newOrientation = (orientation + 1) % maxOrientation;
-      return canMoveTo(xPos, yPos, newOrientation);
+      int newOrientation = (getRotation() + 1)
+            % FigureShape.getOrientations(getType());
+      return canMoveTo(getX(), getY(), newOrientation);
    }
 
    /**
@@ -518,35 +428,15 @@ public class ServerFigure implements Serializable, ManagedObject {
     * board is attached, the rotation is performed directly.
     */
    public void rotate() {
+      int maxOrientation = FigureShape.getOrientations(getType());
       if (maxOrientation == 1) {
          return;
       }
       else {
-         setRotation((orientation + 1) % maxOrientation);
+         setRotation((getRotation() + 1) % maxOrientation);
       }
    }
 
-   /**
-    * Checks if a specified pair of (square) coordinates are inside the figure,
-    * or not.
-    * 
-    * @param x
-    *           the horizontal position
-    * @param y
-    *           the vertical position
-    * 
-    * @return true if the coordinates are inside the figure, or false otherwise
-    */
-   private boolean isInside(int x, int y) {
-      for (int i = 0; i < shapeX.length; i++) {
-         if (x == xPos + getRelativeX(i, orientation)
-               && y == yPos + getRelativeY(i, orientation)) {
-            return true;
-         }
-      }
-      return false;
-   }
-
    /**
     * Checks if the figure can move to a new position. The current figure
     * position is taken into account when checking for collisions. If a
@@ -562,68 +452,15 @@ public class ServerFigure implements Serializable, ManagedObject {
     * @return true if the figure can be moved, or false otherwise
     */
    private boolean canMoveTo(int newX, int newY, int newOrientation) {
-      SquareBoard board = getBoard();
-      for (int i = 0; i < 4; i++) {
-         int x = newX + getRelativeX(i, newOrientation);
-         int y = newY + getRelativeY(i, newOrientation);
-         if (x < 0 || x >= board.getBoardWidth() || y >= board.getBoardHeight()
-               || (!isInside(x, y) && !board.isSquareEmpty(x, y))) {
-            return false;
-         }
-      }
-      return true;
+      return board.canPlace(FigureShape.get(getType(), newOrientation), newX,
+            newY, getShape(), getX(), getY());
    }
 
    /**
-    * Returns the relative horizontal position of a specified square. The square
-    * will be rotated according to the specified orientation.
-    * 
-    * @param square
-    *           the square to rotate (0-3)
-    * @param orientation
-    *           the orientation to use (0-3)
-    * 
-    * @return the rotated relative horizontal position
+    * Returns the shape of this figure in its current orientation.
     */
-   private int getRelativeX(int square, int orientation) {
-      switch (orientation % 4) {
-      case 0:
-         return shapeX[square];
-      case 1:
-         return -shapeY[square];
-      case 2:
-         return -shapeX[square];
-      case 3:
-         return shapeY[square];
-      default:
-         return 0; // Should never occur
-      }
-   }
-
-   /**
-    * Rotates the relative vertical position of a specified square. The square
-    * will be rotated according to the specified orientation.
-    * 
-    * @param square
-    *           the square to rotate (0-3)
-    * @param orientation
-    *           the orientation to use (0-3)
-    * 
-    * @return the rotated relative vertical position
-    */
-   private int getRelativeY(int square, int orientation) {
-      switch (orientation % 4) {
-      case 0:
-         return shapeY[square];
-      case 1:
-         return shapeX[square];
-      case 2:
-         return -shapeY[square];
-      case 3:
-         return -shapeX[square];
-      default:
-         return 0; // Should never occur
-      }
+   private FigureShape getShape() {
+      return FigureShape.get(getType(), getRotation());
    }
 
    /**
@@ -633,13 +470,7 @@ public class ServerFigure implements Serializable, ManagedObject {
     *           the color to paint with, or null for clearing
     */
    private void paint(byte state) {
-      int x, y;
-
-      for (int i = 0; i < shapeX.length; i++) {
-         x = xPos + getRelativeX(i, orientation);
-         y = yPos + getRelativeY(i, orientation);
-         getBoard().setSquareColor(x, y, state);
-      }
+      board.paint(getShape(), getX(), getY(), state);
    }
 
    public void clear() {
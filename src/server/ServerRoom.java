@@ -2,9 +2,7 @@ package server;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 
 import com.sun.sgs.app.AppContext;
@@ -12,8 +10,8 @@ import com.sun.sgs.app.Channel;
 import com.sun.sgs.app.Delivery;
 import com.sun.sgs.app.ManagedObject;
 import com.sun.sgs.app.ManagedReference;
-import com.sun.sgs.app.ObjectNotFoundException;
 import common.FigureInfo;
+import common.Palette;
 import common.PlayerInfo;
 
 public class ServerRoom implements ManagedObject, Serializable {
@@ -26,41 +24,34 @@ public class ServerRoom implements ManagedObject, Serializable {
 
    private ManagedReference<Channel> roomChannelRef;
 
-   private List<ManagedReference<Player>> players;
-
-   private ManagedReference<SquareBoard> boardRef;
+   /** the players, readable without loading them */
+   private RoomRoster roster;
 
    // private static Logger log = Logger.getLogger(ServerRoom.class.getName());
 
-   /** Available colors */
-   private static final List<Integer> COLORS = new ArrayList<Integer>(Arrays
-         .asList(0xFFFF0000, // Colors.RED
-               0xFF00FF00, // Colors.GREEN
-               0xFFFFC800, // Colors.ORANGE
-               0xFF0000FF,// Colors.BLUE
-               0xFFFFFF00,// Colors.YELLOW
-               0xFFA200FF,// Colors.PURPLE
-               0xFFFFFFFF,// Colors.WHITE
-               0xFFFF00FF// Colors.MAGENTA
-         ));
-
    /** game started in this room? */
    private boolean started;
 
-   /** game finished in this room? */
-   private boolean gameOver;
+   /** the game, once started */
+   private ManagedReference<RoomGame> gameRef;
+
+   /** the slots taken by the players, one bit per slot */
+   private int usedSlots;
 
    private List<Integer> availableColors;
 
    public ServerRoom(long id, int maxPlayers, Player player) {
       this.id = id;
-      this.maxPlayers = maxPlayers;
+      // every player needs a color of the palette
+      this.maxPlayers = Math.max(1, Math.min(maxPlayers, Palette.size()));
       this.started = false;
-      this.players = new ArrayList<ManagedReference<Player>>();
+      this.roster = new RoomRoster();
       this.started = false;
-      this.gameOver = false;
 
-      availableColors = new ArrayList<Integer>(COLORS);
+      availableColors = new ArrayList<Integer>(Palette.size());
+      for (int i = 0; i < Palette.size(); i++) {
+         availableColors.add(Palette.getColor(i));
+      }
       Collections.shuffle(availableColors);
 
       Channel roomChannel = AppContext.getChannelManager().createChannel(
@@ -84,7 +75,10 @@ public class ServerRoom implements ManagedObject, Serializable {
    }
 
    public void addPlayer(Player player) {
-      players.add(AppContext.getDataManager().createReference(player));
+      // take the first free slot
+      int slot = Integer.numberOfTrailingZeros(~usedSlots);
+      usedSlots |= 1 << slot;
+      player.setSlot(slot);
 
       System.out.println(player.getName() + " joined room" + id
             + ", availableColors: " + availableColors.size());
@@ -94,37 +88,41 @@ public class ServerRoom implements ManagedObject, Serializable {
          player.setColor(availableColors.remove(0));
       }
 
+      roster.add(player);
       player.joinedRoom(this);
    }
 
    public void removePlayer(Player player) {
-      ManagedReference<Player> playerRef = AppContext.getDataManager()
-            .createReference(player);
+      RoomRoster.Seat owner = roster.getOwner();
+
+      // remove player from room
+      roster.remove(player.getName());
+      usedSlots &= ~(1 << player.getSlot());
 
       // if game hasn't started yet and the room creator left, then transfer
       // the ownership to the next player, so he can signal "start"
-      if (!started && playerRef.equals(players.get(0)) && players.size() > 1) {
+      if (!started && owner != null && owner.getName().equals(player.getName())
+            && !roster.isEmpty()) {
          // room owner left the room, transfer ownership to another one
-         players.get(1).get().getClientSession().send(Protocol.gameOwner());
+         Protocol.send(roster.getOwner().getPlayer().getClientSession(),
+               Protocol.gameOwner());
       }
 
-      // remove player from room
-      players.remove(playerRef);
-
       System.out.println("removePlayer " + player.getName() + " from room" + id
-            + ", remaining: " + players.size());
+            + ", remaining: " + roster.size());
 
-      if (players.size() == 0) {
+      if (roster.isEmpty()) {
          // last one went away
          AppContext.getTaskManager().scheduleTask(new DropRoomTask(id));
       }
       else {
+         // update the lobby view of the room
+         getLobby().roomLeft(id, player.getName());
+
          // remove figure, if any, from board
-         ServerFigure figure = player.getFigure();
          FigureInfo figInfo = null;
-         if (figure != null) {
-            figInfo = getFigureInfo(figure);
-            figure.clear();
+         if (gameRef != null) {
+            figInfo = gameRef.getForUpdate().removeFigure(player.getSlot());
          }
 
          // make board smaller
@@ -132,8 +130,8 @@ public class ServerRoom implements ManagedObject, Serializable {
          // boardRef.getForUpdate().removePlayer();
 
          // broadcast player left to players
-         getChannel().send(null,
-               Protocol.roomLeft(player.getPlayerInfo(), figInfo));
+         Protocol.send(getChannel(), Protocol.roomLeft(player.getPlayerInfo(),
+               figInfo));
 
          // leave the room channel
          getChannel().leave(player.getClientSession());
@@ -143,36 +141,16 @@ public class ServerRoom implements ManagedObject, Serializable {
       }
    }
 
-   public List<Player> getPlayers() {
-      List<Player> ret = new ArrayList<Player>();
-      Iterator<ManagedReference<Player>> playerIt = players.iterator();
-      while (playerIt.hasNext()) {
-         ManagedReference<Player> playerRef = playerIt.next();
-         try {
-            ret.add(playerRef.get());
-         }
-         catch (ObjectNotFoundException onfe) {
-            // user disconnected
-            playerIt.remove();
-         }
-      }
-      return ret;
-   }
-
-   public boolean hasPlayer(Player player) {
-      return getPlayers().contains(player);
+   public boolean hasPlayer(String name) {
+      return roster.contains(name);
    }
 
    public List<PlayerInfo> getPlayerInfos() {
-      List<PlayerInfo> ret = new ArrayList<PlayerInfo>(players.size());
-      for (Player player : getPlayers()) {
-         ret.add(player.getPlayerInfo());
-      }
-      return ret;
+      return roster.getPlayerInfos();
    }
 
    public boolean isFull() {
-      return players.size() == maxPlayers;
+      return roster.size() == maxPlayers;
    }
 
    public boolean isStarted() {
@@ -183,143 +161,40 @@ public class ServerRoom implements ManagedObject, Serializable {
       AppContext.getDataManager().markForUpdate(this);
       started = true;
 
-      int numPlayers = players.size();
-
-      SquareBoard board = new SquareBoard(8 + (numPlayers - 1) * 4, 20);
-      boardRef = AppContext.getDataManager().createReference(board);
-
-      List<FigureInfo> figures = new ArrayList<FigureInfo>(numPlayers);
-
-      int x = 3;
-      // set up players
-      for (Player ply : getPlayers()) {
-         ply.setX(x);
-         x += 4;
-
-         ServerFigure fig = newFigure(ply);
-
-         figures.add(new FigureInfo(fig.getType(), fig.getX(), fig.getY(), fig
-               .getRotation(), fig.getColor()));
-      }
-
-      // broadcast game start with pieces
-      getChannel().send(null,
-            Protocol.gameStart(board.getBoardWidth(), figures));
-
-      // broadcast to lobby that this game has started
-      AppContext.getChannelManager().getChannel(DarkstrisServer.LOBBY_CHANNEL)
-            .send(null, Protocol.gameStarted(id));
-   }
-
-   // /////////////////
-   // Piece Movements
-   // /////////////////
-   public void moveLeft(ServerFigure figure) {
-      if (!gameOver && figure.canMoveLeft()) {
-         getChannel().send(null, Protocol.moveLeft(getFigureInfo(figure)));
-
-         // save current position
-         figure.moveLeft();
-      }
-      // else do nothing
-   }
-
-   public void moveRight(ServerFigure figure) {
-      if (!gameOver && figure.canMoveRight()) {
-         getChannel().send(null, Protocol.moveRight(getFigureInfo(figure)));
-
-         // save current position
-         figure.moveRight();
+      // a new game replaces the previous one
+      stopGame();
+      RoomGame game = new RoomGame(this);
+      gameRef = AppContext.getDataManager().createReference(game);
+      game.start(roster.getSeats(), maxPlayers);
+
+      // the next lobby delta broadcasts that this game has started
+      getLobby().roomStarted(id);
+   }
+
+   /**
+    * Returns the game of the room, or null if it hasn't started. The game
+    * marks itself for update when a move changes it.
+    */
+   public RoomGame getGame() {
+      return gameRef != null ? gameRef.get() : null;
+   }
+
+   /**
+    * Stops the game, if any, and removes it
+    */
+   public void stopGame() {
+      if (gameRef != null) {
+         AppContext.getDataManager().markForUpdate(this);
+         RoomGame game = gameRef.getForUpdate();
+         game.stopGravity();
+         AppContext.getDataManager().removeObject(game);
+         gameRef = null;
       }
-      // else do nothing
    }
 
-   public void rotate(ServerFigure figure) {
-      if (!gameOver && figure.canRotate()) {
-         getChannel().send(null, Protocol.rotate(getFigureInfo(figure)));
-
-         figure.rotate();
-      }
-      // else do nothing
-   }
-
-   public void moveDown(ServerFigure figure, Player ply) {
-      if (!gameOver) {
-         if (figure.canMoveDown()) {
-            getChannel().send(null, Protocol.moveDown(getFigureInfo(figure)));
-
-            // save current position
-            figure.moveDown();
-         }
-         else if (figure.isAllWayDown()) {
-            handleFigureBottom(figure, ply);
-         }
-         else {
-            // the figure is pushing against another player's figure
-         }
-      }
-      // else do nothing
-   }
-
-   public void moveAllWayDown(ServerFigure figure, Player ply) {
-      if (!gameOver) {
-         if (figure.canMoveDown()) {
-            FigureInfo old = getFigureInfo(figure);
-
-            while (figure.canMoveDown()) {
-               figure.moveDown();
-            }
-
-            FigureInfo actual = getFigureInfo(figure);
-
-            getChannel().send(null, Protocol.moveAllWayDown(old, actual));
-         }
-
-         if (figure.isAllWayDown()) {
-            handleFigureBottom(figure, ply);
-         }
-         else {
-            // the figure is pushing against another player's figure
-         }
-      }
-      // else do nothing
-   }
-
-   private static FigureInfo getFigureInfo(ServerFigure fig) {
-      return new FigureInfo(fig.getType(), fig.getX(), fig.getY(), fig
-            .getRotation(), fig.getColor());
-   }
-
-   private ServerFigure newFigure(Player ply) {
-      ServerFigure fig = new ServerFigure((int) (1 + (Math.random() * 7)));
-      fig.attach(boardRef.getForUpdate(), ply.getX());
-      fig.setColor(ply.getColor());
-      ply.setFigure(fig);
-
-      return fig;
-   }
-
-   private void handleFigureBottom(ServerFigure figure, Player ply) {
-      figure.fix();
-
-      boardRef.getForUpdate().removeFullLines();
-
-      if (!figure.isAllVisible()) {
-         gameOver = true;
-
-         // send gameover
-         getChannel().send(null, Protocol.gameOver());
-         // leave room open so players can talk about the game
-      }
-      else {
-         ServerFigure newFigure = newFigure(ply);
-
-         // send new piece
-         getChannel().send(
-               null,
-               Protocol.newFigure(getFigureInfo(figure),
-                     getFigureInfo(newFigure)));
-      }
+   private Lobby getLobby() {
+      return (Lobby) AppContext.getDataManager().getBinding(
+            DarkstrisServer.LOBBY);
    }
 
    @Override
@@ -17,8 +17,7 @@
 package server;
 
 import java.io.Serializable;
-
-import com.sun.sgs.app.ManagedObject;
+import java.util.Arrays;
 
 /**
  * A Tetris square board. The board is rectangular and contains a grid of
@@ -29,9 +28,19 @@ import com.sun.sgs.app.ManagedObject;
  * @author Per Cederberg, per@percederberg.net
  * @author Andres Quijano
  */
-public class SquareBoard implements Serializable, ManagedObject {
+public class SquareBoard implements Serializable {
+
+   private static final long serialVersionUID = -2687350815329745513L;
+
+   /**
+    * The maximum board width (in squares), one bit per column of a row mask.
+    */
+   public static final int MAX_WIDTH = 64;
 
-   private static final long serialVersionUID = 4150832498873567493L;
+   /**
+    * The maximum board height (in squares), one bit per row of a column mask.
+    */
+   public static final int MAX_HEIGHT = 64;
 
    /**
     * The board width (in squares)
@@ -44,11 +53,29 @@ public class SquareBoard implements Serializable, ManagedObject {
    private int bHeight = 0;
 
    /**
-    * The square board color matrix. This matrix (or grid) contains a color
-    * entry for each square in the board. The matrix is indexed by the vertical,
-    * and then the horizontal coordinate.
+    * The FIXED squares of the board, one mask per row. Bit <code>x</code> of
+    * <code>fixed[y]</code> is set if the square (x, y) is fixed.
     */
-   private byte[][] matrix = null;
+   private long[] fixed = null;
+
+   /**
+    * The OCCUPIED squares of the board (squares covered by a moving figure),
+    * one mask per row, indexed like {@link #fixed}. A square is never both
+    * fixed and occupied.
+    */
+   private long[] occupied = null;
+
+   /**
+    * The non-empty squares of each column (the column height map). Bit
+    * <code>y</code> of <code>columns[x]</code> is set if the square (x, y) is
+    * either fixed or occupied.
+    */
+   private long[] columns = null;
+
+   /**
+    * A row mask with the <code>bWidth</code> lowest bits set
+    */
+   private long fullRow;
 
    /*
     * matrix possible states
@@ -64,44 +91,41 @@ public class SquareBoard implements Serializable, ManagedObject {
     * initially be empty.
     * 
     * @param width
-    *           the width of the board (in squares)
+    *           the width of the board (in squares), at most {@link #MAX_WIDTH}
     * @param height
-    *           the height of the board (in squares)
+    *           the height of the board (in squares), at most
+    *           {@link #MAX_HEIGHT}
+    * 
+    * @throws IllegalArgumentException
+    *            if the width doesn't fit in a row mask or the height doesn't
+    *            fit in a column mask
     */
    public SquareBoard(int width, int height) {
+      if (width <= 0 || width > MAX_WIDTH) {
+         throw new IllegalArgumentException("Invalid board width: " + width);
+      }
+      if (height <= 0 || height > MAX_HEIGHT) {
+         throw new IllegalArgumentException("Invalid board height: " + height);
+      }
       this.bWidth = width;
       this.bHeight = height;
-      this.matrix = new byte[height][width];
-      clear();
-   }
-
-   // public void removePlayer() {
-   // bWidth -= 4;
-   //
-   // // update matrix
-   // for (int i = 0; i < bHeight; i++) {
-   // byte[] oldRow = matrix[i];
-   // byte[] newRow = new byte[bWidth];
-   //         
-   // TODO need to push figures that are on the columns we are removing
-   //
-   // System.arraycopy(oldRow, 0, newRow, 0, bWidth);
-   //
-   // matrix[i] = newRow;
-   // }
-   // }
+      this.fixed = new long[height];
+      this.occupied = new long[height];
+      this.columns = new long[width];
+      this.fullRow = width == MAX_WIDTH ? -1L : (1L << width) - 1;
+   }
 
    public boolean isSquareEmpty(int x, int y) {
       if (isOutOfBounds(x, y)) {
          return x >= 0 && x < bWidth && y < 0;
       }
       else {
-         return matrix[y][x] == EMPTY;
+         return ((fixed[y] | occupied[y]) & (1L << x)) == 0;
       }
    }
 
    public boolean isSquareFixed(int x, int y) {
-      return y >= bHeight || matrix[y][x] == FIXED;
+      return y >= bHeight || (y >= 0 && (fixed[y] & (1L << x)) != 0);
    }
 
    /**
@@ -117,12 +141,7 @@ public class SquareBoard implements Serializable, ManagedObject {
       if (y < 0 || y >= bHeight) {
          return false;
       }
-      for (int x = 0; x < bWidth; x++) {
-         if (matrix[y][x] != EMPTY) {
-            return false;
-         }
-      }
-      return true;
+      return (fixed[y] | occupied[y]) == 0;
    }
 
    public int getBoardHeight() {
@@ -137,8 +156,16 @@ public class SquareBoard implements Serializable, ManagedObject {
       if (isOutOfBounds(x, y)) {
          return EMPTY;
       }
+
+      long bit = 1L << x;
+      if ((fixed[y] & bit) != 0) {
+         return FIXED;
+      }
+      else if ((occupied[y] & bit) != 0) {
+         return OCCUPIED;
+      }
       else {
-         return matrix[y][x];
+         return EMPTY;
       }
    }
 
@@ -146,7 +173,161 @@ public class SquareBoard implements Serializable, ManagedObject {
       if (isOutOfBounds(x, y)) {
          return;
       }
-      matrix[y][x] = state;
+
+      long bit = 1L << x;
+      fixed[y] &= ~bit;
+      occupied[y] &= ~bit;
+
+      if (state == FIXED) {
+         fixed[y] |= bit;
+      }
+      else if (state == OCCUPIED) {
+         occupied[y] |= bit;
+      }
+
+      if (state == EMPTY) {
+         columns[x] &= ~(1L << y);
+      }
+      else {
+         columns[x] |= 1L << y;
+      }
+   }
+
+   /**
+    * Checks if a figure shape fits on the board at the given position, i.e.
+    * all its squares are inside the board (or above it) and empty. The squares
+    * covered by the figure's own current position are considered empty.
+    * 
+    * @param shape
+    *           the shape to place
+    * @param x
+    *           the horizontal position
+    * @param y
+    *           the vertical position
+    * @param own
+    *           the shape currently painted by the figure, or null
+    * @param ownX
+    *           the current horizontal position of the figure
+    * @param ownY
+    *           the current vertical position of the figure
+    * 
+    * @return true if the shape fits, or false otherwise
+    */
+   public boolean canPlace(FigureShape shape, int x, int y, FigureShape own,
+         int ownX, int ownY) {
+      if (x + shape.getMinX() < 0 || x + shape.getMaxX() >= bWidth
+            || y + shape.getMaxY() >= bHeight) {
+         return false;
+      }
+
+      for (int dy = shape.getMinY(); dy <= shape.getMaxY(); dy++) {
+         int row = y + dy;
+         if (row < 0) {
+            continue;
+         }
+
+         long taken = fixed[row] | occupied[row];
+         if (own != null) {
+            taken &= ~own.getRowMask(row - ownY, ownX);
+         }
+
+         if ((taken & shape.getRowMask(dy, x)) != 0) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Checks if a figure shape at the given position rests on the floor or on a
+    * fixed square, i.e. if any square right below it is fixed.
+    */
+   public boolean isResting(FigureShape shape, int x, int y) {
+      for (int dy = shape.getMinY(); dy <= shape.getMaxY(); dy++) {
+         int row = y + dy + 1;
+         if (row >= bHeight) {
+            return true;
+         }
+         else if (row >= 0 && (fixed[row] & shape.getRowMask(dy, x)) != 0) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Paints the squares of a figure shape with the given state. Squares
+    * outside of the board are ignored.
+    */
+   public void paint(FigureShape shape, int x, int y, byte state) {
+      for (int dy = shape.getMinY(); dy <= shape.getMaxY(); dy++) {
+         int row = y + dy;
+         if (row < 0 || row >= bHeight) {
+            continue;
+         }
+
+         long mask = shape.getRowMask(dy, x) & fullRow;
+         fixed[row] &= ~mask;
+         occupied[row] &= ~mask;
+
+         if (state == FIXED) {
+            fixed[row] |= mask;
+         }
+         else if (state == OCCUPIED) {
+            occupied[row] |= mask;
+         }
+
+         // update the height map of the painted columns
+         long rowBit = 1L << row;
+         while (mask != 0) {
+            int col = Long.numberOfTrailingZeros(mask);
+            if (state == EMPTY) {
+               columns[col] &= ~rowBit;
+            }
+            else {
+               columns[col] |= rowBit;
+            }
+            mask &= mask - 1;
+         }
+      }
+   }
+
+   /**
+    * Returns how many rows a figure shape at the given position can fall
+    * before landing on the floor or on another square. Only the lowest square
+    * of each column of the shape is checked against the column height map, so
+    * this is one pass over at most four columns.
+    * 
+    * @param shape
+    *           the shape of the falling figure, painted at (x, y)
+    * @param x
+    *           the horizontal position
+    * @param y
+    *           the vertical position
+    * 
+    * @return the number of rows the figure can move down (0 if it can't move)
+    */
+   public int getDropDistance(FigureShape shape, int x, int y) {
+      int distance = bHeight;
+
+      for (int dx = shape.getMinX(); dx <= shape.getMaxX(); dx++) {
+         int bottom = y + shape.getBottom(dx);
+
+         // squares below the lowest square of the figure in this column
+         long below = columns[x + dx];
+         if (bottom + 1 >= MAX_HEIGHT) {
+            below = 0;
+         }
+         else if (bottom + 1 > 0) {
+            below &= -1L << (bottom + 1);
+         }
+
+         int landing = below == 0 ? bHeight : Long
+               .numberOfTrailingZeros(below);
+         distance = Math.min(distance, landing - bottom - 1);
+      }
+
+      return Math.max(distance, 0);
    }
 
    private boolean isOutOfBounds(int x, int y) {
@@ -159,11 +340,9 @@ public class SquareBoard implements Serializable, ManagedObject {
     * be repainted immediately.
     */
    public void clear() {
-      for (int y = 0; y < bHeight; y++) {
-         for (int x = 0; x < bWidth; x++) {
-            this.matrix[y][x] = EMPTY;
-         }
-      }
+      Arrays.fill(fixed, 0L);
+      Arrays.fill(occupied, 0L);
+      Arrays.fill(columns, 0L);
    }
 
    /**
@@ -179,34 +358,55 @@ public class SquareBoard implements Serializable, ManagedObject {
       if (y < 0 || y >= bHeight) {
          return true;
       }
-
-      for (int x = 0; x < bWidth; x++) {
-         if (matrix[y][x] != FIXED) {
-            return false;
-         }
-      }
-      return true;
+      return fixed[y] == fullRow;
    }
 
    /**
     * Removes all full lines. All lines above a removed line will be moved
     * downward one step, and a new empty line will be added at the top.
     * 
+    * @return the number of removed lines
+    * 
     * @see #hasFullLines
     */
-   public void removeFullLines() {
+   public int removeFullLines() {
+      int removedLines = 0;
+
       // Remove full lines
       for (int y = bHeight - 1; y >= 0; y--) {
          if (isLineFull(y)) {
             removeLine(y);
+            removedLines++;
             y++;
          }
       }
+
+      if (removedLines > 0) {
+         updateColumns();
+      }
+
+      return removedLines;
+   }
+
+   /**
+    * Rebuilds the column height map from the row masks
+    */
+   private void updateColumns() {
+      Arrays.fill(columns, 0L);
+      for (int y = 0; y < bHeight; y++) {
+         long row = fixed[y] | occupied[y];
+         while (row != 0) {
+            int x = Long.numberOfTrailingZeros(row);
+            columns[x] |= 1L << y;
+            row &= row - 1;
+         }
+      }
    }
 
    /**
     * Removes a single line. All fixed squares are moved down one step, and a
-    * new empty line is added at the top.
+    * new empty line is added at the top. OCCUPIED squares stay where they are,
+    * and fixed squares are not moved into or out of them.
     * 
     * @param y
     *           the vertical position (0 <= y < height)
@@ -216,20 +416,24 @@ public class SquareBoard implements Serializable, ManagedObject {
          return;
       }
 
-      for (; y > 0; y--) {
-         for (int x = 0; x < bWidth; x++) {
-            // push down except OCCUPIED
-            if (matrix[y - 1][x] != OCCUPIED && matrix[y][x] != OCCUPIED) {
-               matrix[y][x] = matrix[y - 1][x];
-            }
-         }
+      long anyOccupied = 0;
+      for (int i = 0; i <= y; i++) {
+         anyOccupied |= occupied[i];
       }
 
-      // empty first row
-      for (int x = 0; x < bWidth; x++) {
-         if (matrix[0][x] != OCCUPIED) {
-            matrix[0][x] = EMPTY;
+      if (anyOccupied == 0) {
+         // nothing to preserve, shift the rows down
+         System.arraycopy(fixed, 0, fixed, 1, y);
+      }
+      else {
+         for (; y > 0; y--) {
+            // push down except OCCUPIED
+            long movable = ~(occupied[y - 1] | occupied[y]);
+            fixed[y] = (fixed[y] & ~movable) | (fixed[y - 1] & movable);
          }
       }
+
+      // empty first row (no square can be both fixed and occupied)
+      fixed[0] = 0;
    }
 }
\ No newline at end of file
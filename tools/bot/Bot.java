@@ -0,0 +1,589 @@
+package bot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import client.ClientRoom;
+import client.ConnectionHandler;
+import client.GameHandler;
+import client.LobbyHandler;
+import client.LoginHandler;
+
+import com.sun.sgs.client.ClientChannel;
+
+import common.FigureInfo;
+import common.LobbyDelta;
+import common.PlayerCursor;
+import common.PlayerInfo;
+import common.RoomFilter;
+import common.RoomInfo;
+
+/**
+ * A headless player. It drives the same {@link ConnectionHandler} as the real
+ * client, playing the role of the three scenes: it logs in, enters the lobby,
+ * meets the other bots of its group in a room and plays random moves until
+ * the game is over, then goes back to the lobby and does it again.
+ * 
+ * The first bot of a group creates the room and starts the game once the
+ * whole group is inside, the others look for the room of the first one in the
+ * pages of open rooms of the lobby, or in the lobby deltas if it's created
+ * later.
+ * 
+ * A move is timed from the moment it's sent until the room channel echoes it
+ * (or the new figure, if it dropped the figure to the bottom). Only one move
+ * is timed at a time: a move still unanswered when the next one is due was
+ * refused by the server (the figure was blocked), and is counted apart.
+ */
+public class Bot implements LoginHandler, LobbyHandler, GameHandler {
+
+   private static final int LOBBY = 0;
+
+   private static final int JOINING = 1;
+
+   private static final int WAITING = 2;
+
+   private static final int PLAYING = 3;
+
+   private static final int MOVE_LEFT = 0;
+
+   private static final int MOVE_RIGHT = 1;
+
+   private static final int ROTATE = 2;
+
+   private static final int MOVE_DOWN = 3;
+
+   private static final int MOVE_ALL_WAY_DOWN = 4;
+
+   /** delay between the room getting full and the game start */
+   private static final long START_DELAY = 1000;
+
+   private final String name;
+
+   private final String leader;
+
+   private final int roomSize;
+
+   private final long movePeriod;
+
+   private final long startTimeout;
+
+   private final LoadStats stats;
+
+   private final ScheduledExecutorService executor;
+
+   private final Random random;
+
+   private final Connection connection = new Connection();
+
+   private boolean connected;
+
+   private boolean stopped;
+
+   private int state;
+
+   private long roomId;
+
+   private int color;
+
+   private int slot;
+
+   private int playersInRoom;
+
+   private ScheduledFuture<?> moveTask;
+
+   private ScheduledFuture<?> startTask;
+
+   // the move waiting for its echo, -1 if none
+   private int pendingMove = -1;
+
+   private long pendingSince;
+
+   /**
+    * Creates a bot
+    * 
+    * @param group
+    *           the group (room) of the bot
+    * @param index
+    *           the position of the bot in its group, the bot 0 is the leader
+    * @param roomSize
+    *           the number of bots in a group
+    * @param apm
+    *           the actions (moves) per minute
+    * @param startTimeout
+    *           the milliseconds the leader waits for its group before it
+    *           starts the game anyway
+    */
+   public Bot(int group, int index, int roomSize, int apm, long startTimeout,
+         LoadStats stats, ScheduledExecutorService executor) {
+      this.name = "bot" + group + "-" + index;
+      this.leader = "bot" + group + "-0";
+      this.roomSize = roomSize;
+      this.movePeriod = Math.max(1, 60000 / apm);
+      this.startTimeout = startTimeout;
+      this.stats = stats;
+      this.executor = executor;
+      this.random = new Random(name.hashCode());
+
+      connection.setUserName(name);
+      connection.setPassword(new char[0]);
+      connection.setLoginHandler(this);
+   }
+
+   public String getName() {
+      return name;
+   }
+
+   private boolean isLeader() {
+      return name.equals(leader);
+   }
+
+   /**
+    * Starts the login. The outcome arrives to {@link #loggedIn()} or
+    * {@link #loginFailed(String)}.
+    */
+   public void login(Properties props) {
+      try {
+         connection.login(props);
+      }
+      catch (IOException e) {
+         stats.loginFailures.incrementAndGet();
+      }
+   }
+
+   /**
+    * Stops playing and disconnects from the server
+    */
+   public synchronized void stop() {
+      stopped = true;
+      cancelTasks();
+      if (connected) {
+         connection.disconnect();
+      }
+   }
+
+   // /////////////////////
+   // LoginHandler
+   // /////////////////////
+   @Override
+   public synchronized void loggedIn() {
+      connected = true;
+      stats.logins.incrementAndGet();
+      stats.connected.incrementAndGet();
+      enterLobby();
+   }
+
+   @Override
+   public void loginFailed(String reason) {
+      stats.loginFailures.incrementAndGet();
+   }
+
+   // /////////////////////
+   // LobbyHandler
+   // /////////////////////
+   private void enterLobby() {
+      state = LOBBY;
+      roomId = -1;
+      connection.setLobbyHandler(this);
+      send();
+      connection.sendRequestLobbyData();
+   }
+
+   @Override
+   public synchronized void setLobbyData(Set<String> players,
+         PlayerCursor nextCursor) {
+      if (state == LOBBY && !stopped && isLeader()) {
+         state = JOINING;
+         send();
+         connection.sendCreateRoom(roomSize);
+      }
+   }
+
+   @Override
+   public void playersPage(Set<String> players, PlayerCursor nextCursor) {
+   }
+
+   @Override
+   public synchronized void roomsPage(List<RoomInfo> rooms, long nextCursor) {
+      if (state != LOBBY || stopped || isLeader()) {
+         return;
+      }
+
+      for (RoomInfo room : rooms) {
+         if (hasLeader(room.getPlayers())) {
+            joinRoom(room.getId());
+            return;
+         }
+      }
+
+      // look further, or wait for the leader's room to be created
+      if (nextCursor != RoomFilter.NO_MORE_ROOMS) {
+         send();
+         connection.sendRequestRooms(RoomFilter.OPEN, nextCursor,
+               RoomFilter.PAGE_SIZE);
+      }
+   }
+
+   private boolean hasLeader(Collection<PlayerInfo> players) {
+      for (PlayerInfo player : players) {
+         if (player.getName().equals(leader)) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   @Override
+   public synchronized void roomCreated(long id, int maxPlayers,
+         PlayerInfo player) {
+      if (stopped) {
+         return;
+      }
+
+      if (player.getName().equals(name)) {
+         // our own room, the server already put us inside
+         enterRoom(id, player.getColor(), 1);
+      }
+      else if (state == LOBBY && player.getName().equals(leader)) {
+         joinRoom(id);
+      }
+   }
+
+   private void joinRoom(long id) {
+      state = JOINING;
+      send();
+      connection.sendJoinRoom(new ClientRoom(id));
+   }
+
+   @Override
+   public synchronized void roomJoined(long id, int color,
+         Collection<PlayerInfo> currentPlayers) {
+      if (!stopped) {
+         enterRoom(id, color, currentPlayers.size());
+      }
+   }
+
+   @Override
+   public synchronized void roomFull(long id) {
+      // somebody else took the place, wait for the next room of the leader
+      if (state == JOINING) {
+         state = LOBBY;
+      }
+   }
+
+   private void enterRoom(long id, int color, int players) {
+      state = WAITING;
+      roomId = id;
+      this.color = color;
+      playersInRoom = players;
+      connection.setGameHandler(this);
+      send();
+      connection.sendRoomJoined(id);
+
+      if (isLeader()) {
+         scheduleStart(playersInRoom >= roomSize ? START_DELAY : startTimeout);
+      }
+   }
+
+   @Override
+   public void addPlayer(String str) {
+   }
+
+   @Override
+   public void removePlayer(String name) {
+   }
+
+   @Override
+   public void roomJoined(long id, PlayerInfo player) {
+   }
+
+   @Override
+   public void gameStarted(long id) {
+   }
+
+   @Override
+   public void joinRoomRequest(ClientRoom room) {
+   }
+
+   @Override
+   public void roomDropped(long id) {
+   }
+
+   @Override
+   public synchronized void lobbyDelta(LobbyDelta delta) {
+      if (state != LOBBY || stopped || isLeader()) {
+         return;
+      }
+
+      for (LobbyDelta.RoomChange room : delta.getRooms()) {
+         if (!room.is(LobbyDelta.DROPPED) && !room.is(LobbyDelta.STARTED)
+               && hasLeader(room.getJoined())) {
+            joinRoom(room.getId());
+            return;
+         }
+      }
+   }
+
+   // /////////////////////
+   // GameHandler
+   // /////////////////////
+   private void scheduleStart(long delay) {
+      if (startTask != null) {
+         startTask.cancel(false);
+      }
+      startTask = executor.schedule(new Runnable() {
+         public void run() {
+            startGame();
+         }
+      }, delay, TimeUnit.MILLISECONDS);
+   }
+
+   private synchronized void startGame() {
+      if (state == WAITING && !stopped) {
+         send();
+         connection.sendGameStart();
+      }
+   }
+
+   @Override
+   public synchronized void roomJoined(PlayerInfo player) {
+      playersInRoom++;
+      if (isLeader() && state == WAITING && playersInRoom >= roomSize) {
+         scheduleStart(START_DELAY);
+      }
+   }
+
+   @Override
+   public synchronized void roomLeft(PlayerInfo player, FigureInfo figure) {
+      playersInRoom--;
+   }
+
+   @Override
+   public synchronized void setGameOwner() {
+      // the leader left, nobody else starts games
+   }
+
+   @Override
+   public synchronized void gameStart(int boardWidth,
+         Collection<FigureInfo> figures) {
+      if (state != WAITING || stopped) {
+         return;
+      }
+
+      slot = -1;
+      for (FigureInfo figure : figures) {
+         if (figure.getColor() == color) {
+            slot = figure.getSlot();
+         }
+      }
+
+      state = PLAYING;
+      if (isLeader()) {
+         stats.games.incrementAndGet();
+      }
+
+      moveTask = executor.scheduleAtFixedRate(new Runnable() {
+         public void run() {
+            move();
+         }
+      }, random.nextInt((int) movePeriod) + 1, movePeriod,
+            TimeUnit.MILLISECONDS);
+   }
+
+   private synchronized void move() {
+      if (state != PLAYING || stopped) {
+         return;
+      }
+
+      if (pendingMove >= 0) {
+         stats.unanswered.incrementAndGet();
+      }
+
+      // the round trip includes the encoding and the send of the move
+      pendingSince = System.nanoTime();
+
+      // mostly sideways moves and rotations, few drops
+      int n = random.nextInt(20);
+      if (n < 6) {
+         pendingMove = MOVE_LEFT;
+         send();
+         connection.sendMoveLeft();
+      }
+      else if (n < 12) {
+         pendingMove = MOVE_RIGHT;
+         send();
+         connection.sendMoveRight();
+      }
+      else if (n < 16) {
+         pendingMove = ROTATE;
+         send();
+         connection.sendRotate();
+      }
+      else if (n < 19) {
+         pendingMove = MOVE_DOWN;
+         send();
+         connection.sendMoveDown();
+      }
+      else {
+         pendingMove = MOVE_ALL_WAY_DOWN;
+         send();
+         connection.sendMoveAllWayDown();
+      }
+      stats.moves.incrementAndGet();
+   }
+
+   /**
+    * Ends the timing of the pending move, if it's the one echoed
+    */
+   private void answered(int move) {
+      if (pendingMove == move) {
+         stats.roundTrip(System.nanoTime() - pendingSince);
+         pendingMove = -1;
+      }
+   }
+
+   @Override
+   public synchronized void moveLeft(int slot) {
+      if (slot == this.slot) {
+         answered(MOVE_LEFT);
+      }
+   }
+
+   @Override
+   public synchronized void moveRight(int slot) {
+      if (slot == this.slot) {
+         answered(MOVE_RIGHT);
+      }
+   }
+
+   @Override
+   public synchronized void rotate(int slot) {
+      if (slot == this.slot) {
+         answered(ROTATE);
+      }
+   }
+
+   @Override
+   public synchronized void moveDown(int slot) {
+      if (slot == this.slot) {
+         answered(MOVE_DOWN);
+      }
+   }
+
+   @Override
+   public synchronized void moveAllWayDown(int slot, int rows) {
+      if (slot == this.slot) {
+         answered(MOVE_ALL_WAY_DOWN);
+      }
+   }
+
+   @Override
+   public void gravity(int[] slots) {
+   }
+
+   @Override
+   public void syncFigures(Collection<FigureInfo> figures) {
+   }
+
+   @Override
+   public synchronized void newFigure(FigureInfo oldFigure,
+         FigureInfo newFigure) {
+      if (oldFigure != null && oldFigure.getSlot() == slot) {
+         // the figure reached the bottom, by our move or by gravity
+         if (pendingMove == MOVE_DOWN || pendingMove == MOVE_ALL_WAY_DOWN) {
+            answered(pendingMove);
+         }
+      }
+   }
+
+   @Override
+   public synchronized void gameOver() {
+      if (state != PLAYING) {
+         return;
+      }
+
+      cancelTasks();
+      if (isLeader()) {
+         stats.gamesOver.incrementAndGet();
+      }
+
+      send();
+      connection.sendAbandon();
+      if (!stopped) {
+         enterLobby();
+      }
+   }
+
+   private void cancelTasks() {
+      if (moveTask != null) {
+         moveTask.cancel(false);
+         moveTask = null;
+      }
+      if (startTask != null) {
+         startTask.cancel(false);
+         startTask = null;
+      }
+      pendingMove = -1;
+   }
+
+   // /////////////////////
+   // BaseHandler
+   // /////////////////////
+   @Override
+   public void log(String str) {
+   }
+
+   @Override
+   public void incomingChat(String str) {
+   }
+
+   // /////////////////////
+   // Connection
+   // /////////////////////
+   private void send() {
+      stats.sent.incrementAndGet();
+   }
+
+   private synchronized void connectionLost() {
+      if (connected) {
+         connected = false;
+         stats.connected.decrementAndGet();
+         if (!stopped) {
+            stats.disconnects.incrementAndGet();
+         }
+      }
+      stopped = true;
+      cancelTasks();
+   }
+
+   /**
+    * The connection of the bot, counting the messages received and the
+    * disconnections
+    */
+   private class Connection extends ConnectionHandler {
+
+      @Override
+      public void receivedMessage(ByteBuffer buf) {
+         stats.received.incrementAndGet();
+         super.receivedMessage(buf);
+      }
+
+      @Override
+      public void receivedMessage(ClientChannel ch, ByteBuffer buf) {
+         stats.received.incrementAndGet();
+         super.receivedMessage(ch, buf);
+      }
+
+      @Override
+      public void disconnected(boolean forced, String reason) {
+         connectionLost();
+      }
+   }
+}
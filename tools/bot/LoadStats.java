@@ -0,0 +1,117 @@
+package bot;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters shared by all the bots of a load test. The counters only grow,
+ * every report shows the difference with the previous one. Move round trips
+ * are kept per report interval, to compute their percentiles.
+ */
+public class LoadStats {
+
+   final AtomicInteger connected = new AtomicInteger();
+
+   final AtomicLong logins = new AtomicLong();
+
+   final AtomicLong loginFailures = new AtomicLong();
+
+   /** disconnections the bot didn't ask for */
+   final AtomicLong disconnects = new AtomicLong();
+
+   final AtomicLong sent = new AtomicLong();
+
+   final AtomicLong received = new AtomicLong();
+
+   /** games started and over, counted once per room */
+   final AtomicLong games = new AtomicLong();
+
+   final AtomicLong gamesOver = new AtomicLong();
+
+   final AtomicLong moves = new AtomicLong();
+
+   /** moves without an answer before the next one, most likely refused */
+   final AtomicLong unanswered = new AtomicLong();
+
+   /** round trips of the current interval, in microseconds */
+   private long[] roundTrips = new long[1024];
+
+   private int count;
+
+   private long lastTime = System.currentTimeMillis();
+
+   private long lastSent, lastReceived, lastMoves, lastDisconnects;
+
+   synchronized void roundTrip(long nanos) {
+      if (count == roundTrips.length) {
+         long[] grown = new long[count * 2];
+         System.arraycopy(roundTrips, 0, grown, 0, count);
+         roundTrips = grown;
+      }
+      roundTrips[count++] = nanos / 1000;
+   }
+
+   /**
+    * Returns the report line of the interval since the previous report, and
+    * starts a new interval
+    */
+   synchronized String report() {
+      long now = System.currentTimeMillis();
+      double seconds = Math.max(1, now - lastTime) / 1000.0;
+
+      long[] sorted = new long[count];
+      System.arraycopy(roundTrips, 0, sorted, 0, count);
+      Arrays.sort(sorted);
+      count = 0;
+
+      long sentNow = sent.get();
+      long receivedNow = received.get();
+      long movesNow = moves.get();
+      long disconnectsNow = disconnects.get();
+
+      int bots = connected.get();
+      long newDisconnects = disconnectsNow - lastDisconnects;
+      double disconnectRate = bots + newDisconnects == 0 ? 0 : 100.0
+            * newDisconnects / (bots + newDisconnects);
+
+      String line = String.format("bots %5d | msg/s out %8.1f in %9.1f | "
+            + "moves/s %7.1f | rtt ms p50 %6.1f p99 %6.1f (%d) | "
+            + "disconnects %d (%.2f%%) | login failures %d | games %d/%d",
+            bots, (sentNow - lastSent) / seconds, (receivedNow - lastReceived)
+                  / seconds, (movesNow - lastMoves) / seconds, percentile(
+                  sorted, 50) / 1000.0, percentile(sorted, 99) / 1000.0,
+            sorted.length, newDisconnects, disconnectRate, loginFailures
+                  .get(), gamesOver.get(), games.get());
+
+      lastTime = now;
+      lastSent = sentNow;
+      lastReceived = receivedNow;
+      lastMoves = movesNow;
+      lastDisconnects = disconnectsNow;
+
+      return line;
+   }
+
+   /**
+    * Returns the totals of the whole run
+    */
+   String summary() {
+      return String.format("logins %d, login failures %d, disconnects %d, "
+            + "messages out %d in %d, moves %d (%d unanswered), "
+            + "games %d started %d over", logins.get(), loginFailures.get(),
+            disconnects.get(), sent.get(), received.get(), moves.get(),
+            unanswered.get(), games.get(), gamesOver.get());
+   }
+
+   /**
+    * @return the percentile of sorted values, or 0 if there are none
+    */
+   static long percentile(long[] sorted, int percentile) {
+      if (sorted.length == 0) {
+         return 0;
+      }
+      int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+      return sorted[Math.max(0, index)];
+   }
+}
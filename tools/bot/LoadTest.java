@@ -0,0 +1,125 @@
+package bot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Load generator for a Darkstris server: logs in a number of {@link Bot}s,
+ * which play against each other in rooms, and prints a report line every few
+ * seconds with the message rates, the move round trip percentiles and the
+ * disconnections.
+ * 
+ * The arguments are <code>key=value</code> pairs:
+ * <ul>
+ * <li>host, port: the server (localhost, 4458)</li>
+ * <li>bots: the number of bots (100)</li>
+ * <li>roomSize: the number of bots in a room (4)</li>
+ * <li>apm: the moves per minute of every bot (120)</li>
+ * <li>rampUp: the milliseconds between two logins (50)</li>
+ * <li>duration: the seconds of the test, after the ramp up (60)</li>
+ * <li>report: the seconds between two reports (5)</li>
+ * <li>startTimeout: the seconds a room waits for its bots before its game
+ * starts anyway (30)</li>
+ * <li>threads: the threads playing the moves (2)</li>
+ * </ul>
+ */
+public class LoadTest {
+
+   private final Properties config = new Properties();
+
+   private final LoadStats stats = new LoadStats();
+
+   private final List<Bot> bots = new ArrayList<Bot>();
+
+   public LoadTest(String[] args) {
+      config.setProperty("host", "localhost");
+      config.setProperty("port", "4458");
+      config.setProperty("bots", "100");
+      config.setProperty("roomSize", "4");
+      config.setProperty("apm", "120");
+      config.setProperty("rampUp", "50");
+      config.setProperty("duration", "60");
+      config.setProperty("report", "5");
+      config.setProperty("startTimeout", "30");
+      config.setProperty("threads", "2");
+
+      for (String arg : args) {
+         int i = arg.indexOf('=');
+         if (i < 0 || config.getProperty(arg.substring(0, i)) == null) {
+            throw new IllegalArgumentException("unknown argument: " + arg);
+         }
+         config.setProperty(arg.substring(0, i), arg.substring(i + 1));
+      }
+   }
+
+   private int getInt(String key) {
+      int value = Integer.parseInt(config.getProperty(key));
+      if (value < 0) {
+         throw new IllegalArgumentException(key + " must be >= 0: " + value);
+      }
+      return value;
+   }
+
+   public void run() throws InterruptedException {
+      int numBots = getInt("bots");
+      int roomSize = Math.max(1, getInt("roomSize"));
+      int apm = Math.max(1, getInt("apm"));
+      long rampUp = getInt("rampUp");
+      long duration = getInt("duration") * 1000L;
+      long report = Math.max(1, getInt("report")) * 1000L;
+      long startTimeout = getInt("startTimeout") * 1000L;
+
+      Properties props = new Properties();
+      props.setProperty("host", config.getProperty("host"));
+      props.setProperty("port", config.getProperty("port"));
+
+      ScheduledExecutorService executor = Executors
+            .newScheduledThreadPool(Math.max(1, getInt("threads")));
+
+      System.out.println("load test: " + config);
+
+      // log the bots in, one at a time
+      long nextReport = System.currentTimeMillis() + report;
+      for (int i = 0; i < numBots; i++) {
+         Bot bot = new Bot(i / roomSize, i % roomSize, roomSize, apm,
+               startTimeout, stats, executor);
+         bots.add(bot);
+         bot.login(props);
+
+         if (rampUp > 0) {
+            Thread.sleep(rampUp);
+         }
+         if (System.currentTimeMillis() >= nextReport) {
+            System.out.println(stats.report());
+            nextReport += report;
+         }
+      }
+
+      long end = System.currentTimeMillis() + duration;
+      while (System.currentTimeMillis() < end) {
+         Thread.sleep(Math.max(0, Math.min(nextReport, end)
+               - System.currentTimeMillis()));
+         if (System.currentTimeMillis() >= nextReport) {
+            System.out.println(stats.report());
+            nextReport += report;
+         }
+      }
+
+      for (Bot bot : bots) {
+         bot.stop();
+      }
+      executor.shutdown();
+
+      System.out.println(stats.summary());
+   }
+
+   public static void main(String[] args) throws InterruptedException {
+      new LoadTest(args).run();
+
+      // the connections of the SimpleClients have non-daemon threads
+      System.exit(0);
+   }
+}
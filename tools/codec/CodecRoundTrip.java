@@ -0,0 +1,365 @@
+package codec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import common.Codec;
+import common.LobbyDelta;
+import common.Palette;
+import common.PlayerCursor;
+import common.PlayerInfo;
+import common.RoomInfo;
+
+/**
+ * Checks the round trip of every other type of {@link Codec} than the
+ * figures, which {@link FigureRoundTrip} checks: strings, players, rooms,
+ * player names, player cursors and lobby deltas, alone and in their
+ * collections. Each value is written in a buffer of the size given by its
+ * <code>sizeOf</code> method, which it has to fill exactly, and has to be
+ * read back equal to it, leaving nothing unread.
+ *
+ * The values include the edges of the encoding: empty strings and strings of
+ * the maximum length, non-ASCII names, empty collections, a room without
+ * players, the cursors of the first and the last page and a delta with every
+ * room flag. A string too long for its length, or null, has to be refused
+ * rather than written.
+ *
+ * It prints the number of values checked and exits with 1 on the first
+ * mismatch.
+ */
+public class CodecRoundTrip {
+
+   private static final String[] NAMES = { "", "a", "player42",
+         "Spieler M\u00fcller", "\u540d\u524d", "smile \ud83d\ude00" };
+
+   private long checked;
+
+   public void run() {
+      for (String name : NAMES) {
+         checkString(name);
+      }
+      checkString(repeat('a', 0xFFFF));
+      checkString(repeat('\u540d', 0xFFFF / 3));
+      checkRefused(repeat('a', 0x10000));
+      checkRefused(repeat('\u540d', 0xFFFF / 3 + 1));
+      checkRefused(null);
+
+      List<PlayerInfo> players = new ArrayList<PlayerInfo>();
+      for (int i = 0; i < NAMES.length; i++) {
+         PlayerInfo player = new PlayerInfo(NAMES[i], Palette.getColor(i
+               % Palette.size()));
+         checkPlayer(player);
+         players.add(player);
+      }
+      checkPlayer(new PlayerInfo("black", 0));
+      checkPlayer(new PlayerInfo("white", 0xFFFFFFFF));
+      checkPlayers(new ArrayList<PlayerInfo>());
+      checkPlayers(players);
+
+      List<RoomInfo> rooms = new ArrayList<RoomInfo>();
+      rooms.add(room(0, 2, false, new ArrayList<PlayerInfo>()));
+      rooms.add(room(1, 4, true, players.subList(0, 1)));
+      rooms.add(room(Long.MAX_VALUE, Integer.MAX_VALUE, false, players));
+      rooms.add(room(-1, 0, true, players.subList(2, 4)));
+      for (RoomInfo room : rooms) {
+         checkRoom(room);
+      }
+      checkRooms(new ArrayList<RoomInfo>());
+      checkRooms(rooms);
+
+      checkNames(new ArrayList<String>());
+      checkNames(Arrays.asList(NAMES));
+
+      checkCursor(PlayerCursor.FIRST_PAGE);
+      checkCursor(PlayerCursor.NO_MORE_PLAYERS);
+      for (String name : NAMES) {
+         checkCursor(new PlayerCursor(7, name));
+      }
+
+      checkDelta(new LobbyDelta());
+      LobbyDelta delta = new LobbyDelta();
+      for (String name : NAMES) {
+         delta.enteredLobby(name + " in");
+         delta.leftLobby(name + " out");
+      }
+      delta.roomCreated(1, 4);
+      delta.joinedRoom(1, players.get(1));
+      delta.joinedRoom(1, players.get(3));
+      delta.roomStarted(2);
+      delta.roomCreated(3, 2);
+      delta.roomStarted(3);
+      delta.roomDropped(4);
+      delta.joinedRoom(5, players.get(0));
+      checkDelta(delta);
+
+      System.out.println("codec round trip: " + checked + " values ok");
+   }
+
+   private void checkString(String str) {
+      ByteBuffer buf = ByteBuffer.allocate(Codec.sizeOf(str));
+      Codec.putString(buf, str);
+      written(buf, "string");
+      String read = Codec.getString(buf);
+      read(buf, "string");
+      if (!str.equals(read)) {
+         fail("string " + quote(str) + " read back as " + quote(read));
+      }
+      checked++;
+   }
+
+   private void checkRefused(String str) {
+      ByteBuffer buf = ByteBuffer.allocate(0x30000);
+      try {
+         Codec.putString(buf, str);
+      }
+      catch (IllegalArgumentException e) {
+         checked++;
+         return;
+      }
+      catch (NullPointerException e) {
+         checked++;
+         return;
+      }
+      fail("string of " + str.length() + " chars written in "
+            + buf.position() + " bytes");
+   }
+
+   private void checkPlayer(PlayerInfo player) {
+      ByteBuffer buf = ByteBuffer.allocate(Codec.sizeOf(player));
+      Codec.putPlayerInfo(buf, player);
+      written(buf, "player");
+      PlayerInfo read = Codec.getPlayerInfo(buf);
+      read(buf, "player");
+      if (!equal(player, read)) {
+         fail("player " + toString(player) + " read back as "
+               + toString(read));
+      }
+      checked++;
+   }
+
+   private void checkPlayers(List<PlayerInfo> players) {
+      ByteBuffer buf = ByteBuffer.allocate(Codec.sizeOfPlayerInfos(players));
+      Codec.putPlayerInfos(buf, players);
+      written(buf, "players");
+      List<PlayerInfo> read = Codec.getPlayerInfos(buf);
+      read(buf, "players");
+      if (!equalPlayers(players, read)) {
+         fail("players " + players + " read back as " + read);
+      }
+      checked++;
+   }
+
+   private void checkRoom(RoomInfo room) {
+      ByteBuffer buf = ByteBuffer.allocate(Codec.sizeOf(room));
+      Codec.putRoomInfo(buf, room);
+      written(buf, "room");
+      RoomInfo read = Codec.getRoomInfo(buf);
+      read(buf, "room");
+      if (!equal(room, read)) {
+         fail("room " + toString(room) + " read back as " + toString(read));
+      }
+      checked++;
+   }
+
+   /**
+    * Checks a list of rooms as the room pages write it: the count, then the
+    * rooms
+    */
+   private void checkRooms(List<RoomInfo> rooms) {
+      int size = 4;
+      for (RoomInfo room : rooms) {
+         size += Codec.sizeOf(room);
+      }
+      ByteBuffer buf = ByteBuffer.allocate(size);
+      buf.putInt(rooms.size());
+      for (RoomInfo room : rooms) {
+         Codec.putRoomInfo(buf, room);
+      }
+      written(buf, "rooms");
+      List<RoomInfo> read = Codec.getRoomInfos(buf);
+      read(buf, "rooms");
+      if (read.size() != rooms.size()) {
+         fail(rooms.size() + " rooms read back as " + read.size());
+      }
+      for (int i = 0; i < rooms.size(); i++) {
+         if (!equal(rooms.get(i), read.get(i))) {
+            fail("room " + toString(rooms.get(i))
+                  + " read back from the list as " + toString(read.get(i)));
+         }
+      }
+      checked++;
+   }
+
+   private void checkNames(Collection<String> names) {
+      ByteBuffer buf = ByteBuffer.allocate(Codec.sizeOfNames(names));
+      Codec.putNames(buf, names);
+      written(buf, "names");
+      Set<String> read = Codec.getPlayerNames(buf);
+      read(buf, "names");
+      if (!equalNames(names, read)) {
+         fail("names " + names + " read back as " + read);
+      }
+      checked++;
+   }
+
+   private void checkCursor(PlayerCursor cursor) {
+      ByteBuffer buf = ByteBuffer.allocate(Codec.sizeOf(cursor));
+      Codec.putPlayerCursor(buf, cursor);
+      written(buf, "cursor");
+      PlayerCursor read = Codec.getPlayerCursor(buf);
+      read(buf, "cursor");
+      boolean same;
+      if (cursor.isLast()) {
+         same = read == PlayerCursor.NO_MORE_PLAYERS;
+      }
+      else {
+         same = read.getShard() == cursor.getShard()
+               && read.getAfter().equals(cursor.getAfter());
+      }
+      if (!same) {
+         fail("cursor " + toString(cursor) + " read back as "
+               + toString(read));
+      }
+      checked++;
+   }
+
+   private void checkDelta(LobbyDelta delta) {
+      ByteBuffer buf = ByteBuffer.allocate(Codec.sizeOf(delta));
+      Codec.putLobbyDelta(buf, delta);
+      written(buf, "delta");
+      LobbyDelta read = Codec.getLobbyDelta(buf);
+      read(buf, "delta");
+      if (!equalNames(delta.getEntered(), read.getEntered())) {
+         fail("entered " + delta.getEntered() + " read back as "
+               + read.getEntered());
+      }
+      if (!equalNames(delta.getLeft(), read.getLeft())) {
+         fail("left " + delta.getLeft() + " read back as " + read.getLeft());
+      }
+      List<LobbyDelta.RoomChange> rooms = delta.getRooms();
+      List<LobbyDelta.RoomChange> readRooms = read.getRooms();
+      if (readRooms.size() != rooms.size()) {
+         fail(rooms.size() + " room changes read back as "
+               + readRooms.size());
+      }
+      for (int i = 0; i < rooms.size(); i++) {
+         LobbyDelta.RoomChange room = rooms.get(i);
+         LobbyDelta.RoomChange readRoom = readRooms.get(i);
+         if (room.getId() != readRoom.getId()
+               || room.getFlags() != readRoom.getFlags()
+               || (room.is(LobbyDelta.CREATED) && room.getMaxPlayers() != readRoom
+                     .getMaxPlayers())
+               || !equalPlayers(room.getJoined(), readRoom.getJoined())) {
+            fail("room change " + room.getId() + " read back as "
+                  + readRoom.getId() + ", flags " + readRoom.getFlags()
+                  + ", max " + readRoom.getMaxPlayers() + ", joined "
+                  + readRoom.getJoined());
+         }
+      }
+      checked++;
+   }
+
+   /**
+    * Checks that a value filled its buffer, and flips it for reading
+    */
+   private static void written(ByteBuffer buf, String what) {
+      if (buf.hasRemaining()) {
+         fail(what + " written in " + buf.position() + " of "
+               + buf.capacity() + " bytes");
+      }
+      buf.flip();
+   }
+
+   private static void read(ByteBuffer buf, String what) {
+      if (buf.hasRemaining()) {
+         fail(what + " read with " + buf.remaining() + " bytes left unread");
+      }
+   }
+
+   private static RoomInfo room(long id, int maxPlayers, boolean started,
+         List<PlayerInfo> players) {
+      RoomInfo room = new RoomInfo(id, maxPlayers, started);
+      room.setPlayers(new ArrayList<PlayerInfo>(players));
+      return room;
+   }
+
+   private static String repeat(char c, int count) {
+      char[] chars = new char[count];
+      Arrays.fill(chars, c);
+      return new String(chars);
+   }
+
+   private static boolean equal(PlayerInfo a, PlayerInfo b) {
+      return a.getName().equals(b.getName()) && a.getColor() == b.getColor();
+   }
+
+   private static boolean equalPlayers(List<PlayerInfo> a, List<PlayerInfo> b) {
+      if (a.size() != b.size()) {
+         return false;
+      }
+      for (int i = 0; i < a.size(); i++) {
+         if (!equal(a.get(i), b.get(i))) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private static boolean equal(RoomInfo a, RoomInfo b) {
+      return a.getId() == b.getId() && a.getMaxPlayers() == b.getMaxPlayers()
+            && a.isStarted() == b.isStarted()
+            && equalPlayers(a.getPlayers(), b.getPlayers());
+   }
+
+   /**
+    * Compares the names in order, the order of a page has to be kept
+    */
+   private static boolean equalNames(Collection<String> a, Collection<String> b) {
+      if (a.size() != b.size()) {
+         return false;
+      }
+      Iterator<String> it = b.iterator();
+      for (String name : a) {
+         if (!name.equals(it.next())) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private static String quote(String str) {
+      if (str.length() > 20) {
+         return "of " + str.length() + " chars";
+      }
+      return "\"" + str + "\"";
+   }
+
+   private static String toString(PlayerInfo player) {
+      return quote(player.getName()) + " color "
+            + Integer.toHexString(player.getColor());
+   }
+
+   private static String toString(RoomInfo room) {
+      return room.getId() + " of " + room.getMaxPlayers()
+            + (room.isStarted() ? ", started, " : ", ") + room.getPlayers();
+   }
+
+   private static String toString(PlayerCursor cursor) {
+      return "shard " + cursor.getShard() + " after "
+            + quote(cursor.getAfter());
+   }
+
+   private static void fail(String message) {
+      System.err.println("codec round trip failed: " + message);
+      System.exit(1);
+   }
+
+   public static void main(String[] args) {
+      new CodecRoundTrip().run();
+   }
+}
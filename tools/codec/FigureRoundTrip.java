@@ -0,0 +1,150 @@
+package codec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import common.Codec;
+import common.FigureInfo;
+import common.Palette;
+
+/**
+ * Checks the round trip of the figures through {@link Codec}: every type,
+ * rotation, color and slot at every position of the packed range, including
+ * its edges, is written and read back, and has to take {@link Codec#FIGURE_SIZE}
+ * bytes. An empty figure has to come back as null, also in a list of figures,
+ * and a figure with a field out of range has to be refused rather than
+ * written as another one.
+ *
+ * It prints the number of figures checked and exits with 1 on the first
+ * mismatch.
+ */
+public class FigureRoundTrip {
+
+   private final ByteBuffer buf = ByteBuffer.allocate(Codec.FIGURE_SIZE);
+
+   private long checked;
+
+   public void run() {
+      for (int type = 1; type <= 7; type++) {
+         for (int rotation = 0; rotation <= 3; rotation++) {
+            for (int color = 0; color < Palette.size(); color++) {
+               for (int slot = 0; slot <= 7; slot++) {
+                  for (int x = 0; x <= 63; x++) {
+                     for (int y = -32; y <= 31; y++) {
+                        check(new FigureInfo(type, x, y, rotation, Palette
+                              .getColor(color), slot));
+                     }
+                  }
+               }
+            }
+         }
+      }
+
+      check(null);
+      checkList();
+
+      int color = Palette.getColor(0);
+      checkRefused(new FigureInfo(0, 0, 0, 0, color));
+      checkRefused(new FigureInfo(8, 0, 0, 0, color));
+      checkRefused(new FigureInfo(1, 0, 0, -1, color));
+      checkRefused(new FigureInfo(1, 0, 0, 4, color));
+      checkRefused(new FigureInfo(1, -1, 0, 0, color));
+      checkRefused(new FigureInfo(1, 64, 0, 0, color));
+      checkRefused(new FigureInfo(1, 0, -33, 0, color));
+      checkRefused(new FigureInfo(1, 0, 32, 0, color));
+      checkRefused(new FigureInfo(1, 0, 0, 0, color, -1));
+      checkRefused(new FigureInfo(1, 0, 0, 0, color, 8));
+      checkRefused(new FigureInfo(1, 0, 0, 0, 0xFF123456));
+
+      System.out.println("figure round trip: " + checked + " figures ok, "
+            + Codec.FIGURE_SIZE + " bytes each");
+   }
+
+   private void check(FigureInfo figure) {
+      buf.clear();
+      Codec.putFigureInfo(buf, figure);
+      if (buf.position() != Codec.FIGURE_SIZE) {
+         fail(figure, "written in " + buf.position() + " bytes");
+      }
+      buf.flip();
+      FigureInfo read = Codec.getFigureInfo(buf);
+      if (buf.hasRemaining()) {
+         fail(figure, buf.remaining() + " bytes left unread");
+      }
+      if (!equal(figure, read)) {
+         fail(figure, "read back as " + toString(read));
+      }
+      checked++;
+   }
+
+   private void checkList() {
+      List<FigureInfo> figures = new ArrayList<FigureInfo>();
+      figures.add(new FigureInfo(1, 0, -32, 0, Palette.getColor(0), 0));
+      figures.add(null);
+      figures.add(new FigureInfo(7, 63, 31, 3, Palette
+            .getColor(Palette.size() - 1), 7));
+
+      ByteBuffer list = ByteBuffer.allocate(Codec.sizeOfFigureInfos(figures));
+      Codec.putFigureInfos(list, figures);
+      if (list.hasRemaining()) {
+         fail(null, "list written in " + list.position() + " of "
+               + list.capacity() + " bytes");
+      }
+      list.flip();
+      List<FigureInfo> read = Codec.getFigureInfos(list);
+      if (read.size() != figures.size()) {
+         fail(null, "list of " + figures.size() + " read back with "
+               + read.size());
+      }
+      for (int i = 0; i < figures.size(); i++) {
+         if (!equal(figures.get(i), read.get(i))) {
+            fail(figures.get(i), "read back from the list as "
+                  + toString(read.get(i)));
+         }
+      }
+      checked += figures.size();
+   }
+
+   private void checkRefused(FigureInfo figure) {
+      buf.clear();
+      try {
+         Codec.putFigureInfo(buf, figure);
+      }
+      catch (IllegalArgumentException e) {
+         checked++;
+         return;
+      }
+      fail(figure, "written although out of range");
+   }
+
+   private static boolean equal(FigureInfo a, FigureInfo b) {
+      if (a == null || b == null) {
+         return a == b;
+      }
+      return a.getType() == b.getType() && a.getX() == b.getX()
+            && a.getY() == b.getY() && a.getRotation() == b.getRotation()
+            && a.getColor() == b.getColor() && a.getSlot() == b.getSlot();
+   }
+
+   private static String toString(FigureInfo figure) {
+      if (figure == null) {
+         return "no figure";
+      }
+      return "type " + figure.getType() + ", rotation "
+            + figure.getRotation() + ", (" + figure.getX() + ", "
+            + figure.getY() + "), color "
+            + Integer.toHexString(figure.getColor()) + ", slot "
+            + figure.getSlot();
+   }
+
+   private static void fail(FigureInfo figure, String message) {
+      System.err.println("figure round trip failed: " + toString(figure)
+            + " " + message);
+      System.exit(1);
+   }
+
+   public static void main(String[] args) {
+      new FigureRoundTrip().run();
+   }
+}
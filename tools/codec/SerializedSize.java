@@ -0,0 +1,89 @@
+package codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import common.Codec;
+import common.FigureInfo;
+import common.LobbyDelta;
+import common.Palette;
+import common.PlayerCursor;
+import common.PlayerInfo;
+import common.RoomInfo;
+
+/**
+ * Prints the encoded size of the values the protocol sends with
+ * {@link Codec} against their size with Java serialization, which the
+ * messages used before the codec: each value is written alone in a new
+ * <code>ObjectOutputStream</code>, as a message was. The values are those of
+ * a full room of 4 players and of a busy lobby: a figure, the figures of a
+ * game start, a player, the players of a room, a room, a page of player
+ * names, a player cursor and a lobby delta.
+ */
+public class SerializedSize {
+
+   private static final int ROOM_SIZE = 4;
+
+   public void run() throws IOException {
+      List<FigureInfo> figures = new ArrayList<FigureInfo>();
+      List<PlayerInfo> players = new ArrayList<PlayerInfo>();
+      for (int i = 0; i < ROOM_SIZE; i++) {
+         figures.add(new FigureInfo(1 + i, 4, 0, i % 4, Palette.getColor(i),
+               i));
+         players.add(new PlayerInfo("player" + i, Palette.getColor(i)));
+      }
+
+      RoomInfo room = new RoomInfo(42, ROOM_SIZE, false);
+      room.setPlayers(players);
+
+      Set<String> names = new LinkedHashSet<String>();
+      for (int i = 0; i < PlayerCursor.PAGE_SIZE; i++) {
+         names.add("player" + i);
+      }
+      PlayerCursor cursor = new PlayerCursor(3, "player49");
+
+      LobbyDelta delta = new LobbyDelta();
+      for (int i = 0; i < 8; i++) {
+         delta.enteredLobby("player" + (100 + i));
+         delta.leftLobby("player" + (200 + i));
+      }
+      delta.roomCreated(43, ROOM_SIZE);
+      delta.joinedRoom(43, new PlayerInfo("player300", Palette.getColor(0)));
+      delta.joinedRoom(42, new PlayerInfo("player301", Palette.getColor(1)));
+      delta.roomStarted(41);
+
+      System.out.println(String.format("%-28s %6s %14s", "", "codec",
+            "serialization"));
+      print("figure", Codec.FIGURE_SIZE, figures.get(0));
+      print(ROOM_SIZE + " figures", Codec.sizeOfFigureInfos(figures), figures);
+      print("player", Codec.sizeOf(players.get(0)), players.get(0));
+      print(ROOM_SIZE + " players", Codec.sizeOfPlayerInfos(players), players);
+      print("room of " + ROOM_SIZE + " players", Codec.sizeOf(room), room);
+      print(names.size() + " player names", Codec.sizeOfNames(names), names);
+      print("player cursor", Codec.sizeOf(cursor), cursor);
+      print("lobby delta", Codec.sizeOf(delta), delta);
+   }
+
+   private static void print(String what, int size, Object value)
+         throws IOException {
+      System.out.println(String.format("%-28s %6d %14d", what, size,
+            serializedSize(value)));
+   }
+
+   private static int serializedSize(Object value) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(value);
+      out.close();
+      return bytes.size();
+   }
+
+   public static void main(String[] args) throws IOException {
+      new SerializedSize().run();
+   }
+}
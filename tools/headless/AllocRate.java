@@ -0,0 +1,250 @@
+package headless;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import server.DarkstrisServer;
+
+import common.Commands;
+import common.Commands.Command;
+
+/**
+ * Measures the heap allocation rate of the server under the load of the bots
+ * of <code>bot.LoadTest</code>, on a {@link LocalContext}: the bots fill
+ * rooms of <code>roomSize</code> players, start their games and send a move
+ * every <code>60000 / apm</code> ms of simulated time, with the same mix of
+ * moves as the bots, while the gravity and the lobby deltas run on the
+ * simulated clock. A game that ends is started again by the owner of the
+ * room.
+ * 
+ * All the transactions run on the calling thread, so the bytes it allocates
+ * are those of the server plus those of the local context itself. Most of
+ * them are the copies of the data store objects every transaction reads and
+ * writes through serialization, as the data store of a Darkstar node does.
+ * Those are counted apart by {@link LocalStats#getCopyAllocated()}, the rest
+ * is printed as the allocations of the server code.
+ * 
+ * The arguments are <code>key=value</code> pairs:
+ * <ul>
+ * <li>bots: the number of bots (100)</li>
+ * <li>roomSize: the players of a room (4)</li>
+ * <li>apm: the moves of a bot per minute (120)</li>
+ * <li>warmup: the simulated seconds run before measuring (20)</li>
+ * <li>duration: the simulated seconds measured (60)</li>
+ * <li>seed: the seed of the random moves (1)</li>
+ * </ul>
+ */
+public class AllocRate {
+
+   private final Properties config = new Properties();
+
+   private final LocalContext context = new LocalContext();
+
+   private final List<LocalSession> sessions = new ArrayList<LocalSession>();
+
+   /** the room created by the owner of each room */
+   private final List<Long> roomIds = new ArrayList<Long>();
+
+   private boolean[] gameOver;
+
+   private long moves;
+
+   public AllocRate(String[] args) {
+      config.setProperty("bots", "100");
+      config.setProperty("roomSize", "4");
+      config.setProperty("apm", "120");
+      config.setProperty("warmup", "20");
+      config.setProperty("duration", "60");
+      config.setProperty("seed", "1");
+
+      for (String arg : args) {
+         int i = arg.indexOf('=');
+         if (i < 0 || config.getProperty(arg.substring(0, i)) == null) {
+            throw new IllegalArgumentException("unknown argument: " + arg);
+         }
+         config.setProperty(arg.substring(0, i), arg.substring(i + 1));
+      }
+   }
+
+   private int getInt(String key) {
+      int value = Integer.parseInt(config.getProperty(key));
+      if (value < 1) {
+         throw new IllegalArgumentException(key + " must be > 0: " + value);
+      }
+      return value;
+   }
+
+   private static ByteBuffer message(Command command, long... args) {
+      ByteBuffer buf = ByteBuffer.allocate(4 + 8 * args.length);
+      buf.putInt(Commands.encode(command));
+      for (long arg : args) {
+         buf.putLong(arg);
+      }
+      buf.flip();
+      return buf;
+   }
+
+   private static ByteBuffer message(Command command, int arg) {
+      ByteBuffer buf = ByteBuffer.allocate(8);
+      buf.putInt(Commands.encode(command)).putInt(arg);
+      buf.flip();
+      return buf;
+   }
+
+   private LocalClient newClient(final int room) {
+      return new LocalClient() {
+         public void receivedMessage(ByteBuffer message) {
+            Command command = Commands.decode(message.getInt(0));
+            if (command == Command.ROOM_CREATED) {
+               roomIds.set(room, message.getLong(4));
+            }
+         }
+
+         public void receivedChannelMessage(String channel, ByteBuffer message) {
+            Command command = Commands.decode(message.getInt(0));
+            if (command == Command.GAME_OVER) {
+               gameOver[room] = true;
+            }
+            else if (command == Command.BATCH) {
+               // the game over comes in the batch of the move that lost
+               ByteBuffer buf = message.duplicate();
+               buf.position(4);
+               while (buf.hasRemaining()) {
+                  int length = buf.getShort() & 0xffff;
+                  int inner = buf.getInt(buf.position());
+                  if (Commands.decode(inner) == Command.GAME_OVER) {
+                     gameOver[room] = true;
+                  }
+                  buf.position(buf.position() + length);
+               }
+            }
+         }
+
+         public void joinedChannel(String channel) {
+         }
+
+         public void leftChannel(String channel) {
+         }
+
+         public void disconnected() {
+         }
+      };
+   }
+
+   public void run() throws Exception {
+      int bots = getInt("bots");
+      int roomSize = getInt("roomSize");
+      long period = 60000 / getInt("apm");
+      Random random = new Random(getInt("seed"));
+
+      context.install();
+      context.start(new DarkstrisServer(), new Properties());
+
+      // as the bots: the first of every room creates it, the others join it
+      int rooms = (bots + roomSize - 1) / roomSize;
+      gameOver = new boolean[rooms];
+      for (int i = 0; i < bots; i++) {
+         int room = i / roomSize;
+         LocalSession session = context.login("bot" + i, newClient(room));
+         sessions.add(session);
+         context.send(session, message(Command.REQUEST_LOBBY_DATA));
+         if (i % roomSize == 0) {
+            roomIds.add(-1L);
+            context.send(session, message(Command.CREATE_ROOM, roomSize));
+         }
+         else {
+            context.send(session, message(Command.JOIN_ROOM, roomIds
+                  .get(room)));
+         }
+         context.runPendingTasks();
+         context.send(session, message(Command.ROOM_JOINED, roomIds.get(room)));
+      }
+      for (int room = 0; room < rooms; room++) {
+         startGame(room, roomSize);
+      }
+
+      play(getInt("warmup") * 1000L, period, roomSize, random);
+
+      LocalStats stats = context.getStats();
+      stats.reset();
+      moves = 0;
+      long allocated = LocalStats.allocatedBytes();
+      long millis = getInt("duration") * 1000L;
+      play(millis, period, roomSize, random);
+      allocated = LocalStats.allocatedBytes() - allocated;
+      if (allocated == 0) {
+         throw new UnsupportedOperationException(
+               "this VM doesn't count the bytes allocated by a thread");
+      }
+
+      double seconds = millis / 1000.0;
+      long copies = stats.getCopyAllocated();
+      System.out.println("alloc rate: " + config);
+      System.out.println(String.format("%d moves, %d messages of %.0f "
+            + "bytes, %d transactions", moves, stats.getMessages(), stats
+            .getMessageBytes()
+            / (double) Math.max(1, stats.getMessages()), stats.getCommits()));
+      System.out.println("all:         " + report(allocated, seconds, stats));
+      System.out.println("copies:      " + report(copies, seconds, stats));
+      System.out.println("server code: "
+            + report(allocated - copies, seconds, stats));
+   }
+
+   private String report(long allocated, double seconds, LocalStats stats) {
+      return String.format("%7.2f MB per simulated second, %7.0f bytes per "
+            + "move, %6.0f bytes per message", allocated / seconds
+            / (1024 * 1024), allocated / (double) Math.max(1, moves),
+            allocated / (double) Math.max(1, stats.getMessages()));
+   }
+
+   /**
+    * Runs the bots for <code>millis</code> ms of simulated time
+    */
+   private void play(long millis, long period, int roomSize, Random random)
+         throws Exception {
+      for (long t = 0; t < millis; t += period) {
+         for (int i = 0; i < sessions.size(); i++) {
+            int room = i / roomSize;
+            if (gameOver[room]) {
+               startGame(room, roomSize);
+            }
+            context.send(sessions.get(i), message(nextMove(random)));
+            moves++;
+         }
+         context.advance(period);
+      }
+   }
+
+   /**
+    * Returns a move, with the mix of moves of the bots: mostly sideways moves
+    * and rotations, few drops
+    */
+   private static Command nextMove(Random random) {
+      int n = random.nextInt(20);
+      if (n < 6) {
+         return Command.MOVE_LEFT;
+      }
+      else if (n < 12) {
+         return Command.MOVE_RIGHT;
+      }
+      else if (n < 16) {
+         return Command.ROTATE;
+      }
+      else if (n < 19) {
+         return Command.MOVE_DOWN;
+      }
+      return Command.MOVE_ALL_WAY_DOWN;
+   }
+
+   private void startGame(int room, int roomSize) throws Exception {
+      gameOver[room] = false;
+      context.send(sessions.get(room * roomSize), message(Command.GAME_START));
+   }
+
+   public static void main(String[] args) throws Exception {
+      new AllocRate(args).run();
+   }
+}
@@ -0,0 +1,40 @@
+package headless;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.math.BigInteger;
+
+import com.sun.sgs.app.ManagedObject;
+
+/**
+ * A managed object backed by live state outside of the data store, like a
+ * session or a channel. Only its name is serialized: reading it back resolves
+ * to the live instance, so every reference to it sees the same object.
+ */
+abstract class LiveObject implements ManagedObject, Serializable {
+
+   private static final long serialVersionUID = 1L;
+
+   /** the id of the object in the data store, once it's managed */
+   private transient BigInteger managedId;
+
+   BigInteger getManagedId() {
+      return managedId;
+   }
+
+   void setManagedId(BigInteger managedId) {
+      this.managedId = managedId;
+   }
+
+   /**
+    * Called on commit of the transaction that removed the object from the
+    * data store
+    */
+   void removed() {
+   }
+
+   /**
+    * @return the live instance with the name of the object read
+    */
+   protected abstract Object readResolve() throws ObjectStreamException;
+}
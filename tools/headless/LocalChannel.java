@@ -0,0 +1,173 @@
+package headless;
+
+import java.io.ObjectStreamException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.sun.sgs.app.Channel;
+import com.sun.sgs.app.ClientSession;
+import com.sun.sgs.app.Delivery;
+import com.sun.sgs.app.ManagedReference;
+
+/**
+ * A channel of a {@link LocalChannelManager}. Joins, leaves and sends take
+ * effect when the transaction commits, in the order they were made, so a
+ * message sent right after a join reaches the new member.
+ */
+final class LocalChannel extends LiveObject implements Channel {
+
+   private static final long serialVersionUID = 1L;
+
+   private final String name;
+
+   private final Delivery delivery;
+
+   /** the listener given at creation, null to forward client messages */
+   private final transient ManagedReference<Object> listenerRef;
+
+   private final transient Set<LocalSession> members = new LinkedHashSet<LocalSession>();
+
+   private transient boolean closed;
+
+   LocalChannel(String name, Delivery delivery,
+         ManagedReference<Object> listenerRef) {
+      this.name = name;
+      this.delivery = delivery;
+      this.listenerRef = listenerRef;
+   }
+
+   public String getName() {
+      return name;
+   }
+
+   public Delivery getDeliveryRequirement() {
+      return delivery;
+   }
+
+   ManagedReference<Object> getListenerRef() {
+      return listenerRef;
+   }
+
+   boolean isMember(LocalSession session) {
+      return members.contains(session);
+   }
+
+   public boolean hasSessions() {
+      return !members.isEmpty();
+   }
+
+   public Iterator<ClientSession> getSessions() {
+      List<ClientSession> sessions = new ArrayList<ClientSession>(members);
+      return Collections.unmodifiableList(sessions).iterator();
+   }
+
+   public Channel join(final ClientSession session) {
+      final LocalContext context = LocalContext.get();
+      final LocalSession local = checkSession(session);
+      context.getTransaction().actions.add(new Runnable() {
+         public void run() {
+            if (!closed && local.isConnected() && members.add(local)) {
+               context.joined(local, name);
+            }
+         }
+      });
+      return this;
+   }
+
+   public Channel join(Set<ClientSession> sessions) {
+      for (ClientSession session : sessions) {
+         join(session);
+      }
+      return this;
+   }
+
+   public Channel leave(final ClientSession session) {
+      final LocalContext context = LocalContext.get();
+      final LocalSession local = checkSession(session);
+      context.getTransaction().actions.add(new Runnable() {
+         public void run() {
+            if (members.remove(local)) {
+               context.left(local, name);
+            }
+         }
+      });
+      return this;
+   }
+
+   public Channel leave(Set<ClientSession> sessions) {
+      for (ClientSession session : sessions) {
+         leave(session);
+      }
+      return this;
+   }
+
+   public Channel leaveAll() {
+      final LocalContext context = LocalContext.get();
+      context.getTransaction().actions.add(new Runnable() {
+         public void run() {
+            removeAll(context);
+         }
+      });
+      return this;
+   }
+
+   /**
+    * Sends a message to every member when the transaction commits, the
+    * sender included
+    */
+   public Channel send(ClientSession sender, ByteBuffer message) {
+      final LocalContext context = LocalContext.get();
+      final byte[] bytes = LocalContext.copy(message);
+      context.getTransaction().actions.add(new Runnable() {
+         public void run() {
+            for (LocalSession member : members) {
+               context.deliver(member, name, bytes);
+            }
+         }
+      });
+      return this;
+   }
+
+   /**
+    * Removes a session that logged out, on commit
+    */
+   void disconnected(LocalSession session) {
+      members.remove(session);
+   }
+
+   @Override
+   void removed() {
+      closed = true;
+      removeAll(LocalContext.get());
+      LocalContext.get().getLocalChannelManager().closed(this);
+   }
+
+   private void removeAll(LocalContext context) {
+      for (LocalSession member : members) {
+         context.left(member, name);
+      }
+      members.clear();
+   }
+
+   private static LocalSession checkSession(ClientSession session) {
+      if (!(session instanceof LocalSession)) {
+         throw new IllegalArgumentException("not a local session: " + session);
+      }
+      return (LocalSession) session;
+   }
+
+   @Override
+   protected Object readResolve() throws ObjectStreamException {
+      return LocalContext.get().getLocalChannelManager().getChannel(name);
+   }
+
+   @Override
+   public String toString() {
+      return "LocalChannel[" + name + "]";
+   }
+}
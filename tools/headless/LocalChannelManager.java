@@ -0,0 +1,107 @@
+package headless;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sun.sgs.app.Channel;
+import com.sun.sgs.app.ChannelListener;
+import com.sun.sgs.app.ChannelManager;
+import com.sun.sgs.app.Delivery;
+import com.sun.sgs.app.ManagedReference;
+import com.sun.sgs.app.NameExistsException;
+import com.sun.sgs.app.NameNotBoundException;
+
+/**
+ * The channels of a {@link LocalContext}. A channel created in a transaction
+ * becomes visible to other transactions when it commits.
+ */
+final class LocalChannelManager implements ChannelManager {
+
+   private final LocalContext context;
+
+   private final Map<String, LocalChannel> channels = new HashMap<String, LocalChannel>();
+
+   LocalChannelManager(LocalContext context) {
+      this.context = context;
+   }
+
+   public Channel createChannel(String name, ChannelListener listener,
+         Delivery delivery) {
+      final Transaction txn = context.getTransaction();
+      if (channels.containsKey(name) || txn.channels.containsKey(name)) {
+         throw new NameExistsException("channel already exists: " + name);
+      }
+
+      ManagedReference<Object> listenerRef = null;
+      if (listener != null) {
+         listenerRef = context.getLocalDataManager().createReference(
+               ManagedWrapper.wrap(listener));
+      }
+
+      final LocalChannel channel = new LocalChannel(name, delivery,
+            listenerRef);
+      txn.channels.put(name, channel);
+      txn.actions.add(new Runnable() {
+         public void run() {
+            channels.put(channel.getName(), channel);
+         }
+      });
+      return channel;
+   }
+
+   public Channel getChannel(String name) {
+      LocalChannel channel = context.getTransaction().channels.get(name);
+      if (channel == null) {
+         channel = channels.get(name);
+      }
+      if (channel == null) {
+         throw new NameNotBoundException("channel not found: " + name);
+      }
+      return channel;
+   }
+
+   /**
+    * A message sent by a client to a channel: given to the channel listener,
+    * or forwarded to every member if the channel has none. Messages from
+    * sessions that aren't members are dropped.
+    */
+   void receivedMessage(LocalSession session, String name, ByteBuffer message) {
+      LocalChannel channel = (LocalChannel) getChannel(name);
+      if (!channel.isMember(session)) {
+         return;
+      }
+
+      if (channel.getListenerRef() == null) {
+         channel.send(session, message);
+      }
+      else {
+         ChannelListener listener = ManagedWrapper.unwrap(channel
+               .getListenerRef().get());
+         listener.receivedMessage(channel, session, message);
+      }
+   }
+
+   /**
+    * Removes a session that logged out from every channel
+    */
+   void disconnected(LocalSession session) {
+      for (LocalChannel channel : channels.values()) {
+         channel.disconnected(session);
+      }
+   }
+
+   /**
+    * Forgets a channel removed from the data store
+    */
+   void closed(LocalChannel channel) {
+      channels.remove(channel.getName());
+   }
+
+   /**
+    * @return the number of open channels
+    */
+   int size() {
+      return channels.size();
+   }
+}
@@ -0,0 +1,30 @@
+package headless;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The client end of a {@link LocalSession}: receives what the server sends to
+ * the session. Messages are delivered after the transaction that sent them
+ * commits, outside of any transaction, so a client can answer right away.
+ */
+public interface LocalClient {
+
+   /**
+    * A message sent to the session
+    */
+   void receivedMessage(ByteBuffer message);
+
+   void joinedChannel(String channel);
+
+   /**
+    * A message sent to a channel the session is a member of
+    */
+   void receivedChannelMessage(String channel, ByteBuffer message);
+
+   void leftChannel(String channel);
+
+   /**
+    * The session logged out
+    */
+   void disconnected();
+}
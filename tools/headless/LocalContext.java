@@ -0,0 +1,455 @@
+package headless;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Properties;
+
+import com.sun.sgs.app.AppListener;
+import com.sun.sgs.app.ChannelManager;
+import com.sun.sgs.app.ClientSessionListener;
+import com.sun.sgs.app.DataManager;
+import com.sun.sgs.app.ManagedReference;
+import com.sun.sgs.app.Task;
+import com.sun.sgs.app.TaskManager;
+import com.sun.sgs.app.TransactionNotActiveException;
+import com.sun.sgs.internal.InternalContext;
+import com.sun.sgs.internal.ManagerLocator;
+
+/**
+ * An in-process stand-in for a Darkstar node, so the server can run in a
+ * single JVM for benchmarks, fuzzing and load tests. Once installed,
+ * <code>AppContext</code> returns its managers:
+ * <ul>
+ * <li>a data manager storing serialized objects, with per-transaction copies
+ * that are written back on commit and discarded on abort</li>
+ * <li>a channel manager whose joins, leaves and sends apply on commit</li>
+ * <li>a task manager running tasks on a virtual clock, each in its own
+ * transaction</li>
+ * </ul>
+ * 
+ * Everything runs on the calling thread: logins, client messages and tasks
+ * are run one at a time, and the messages to the clients are delivered after
+ * each commit. Time only moves with {@link #advance(long)}.
+ * 
+ * <pre>
+ * LocalContext context = new LocalContext();
+ * context.install();
+ * context.start(new DarkstrisServer(), new Properties());
+ * LocalSession session = context.login(&quot;bob&quot;, client);
+ * context.send(session, message);
+ * context.advance(1000);
+ * </pre>
+ */
+public final class LocalContext implements ManagerLocator {
+
+   private final LocalDataManager dataManager = new LocalDataManager(this);
+
+   private final LocalChannelManager channelManager = new LocalChannelManager(
+         this);
+
+   private final LocalTaskManager taskManager = new LocalTaskManager(this);
+
+   private final LocalStats stats = new LocalStats();
+
+   private final Map<String, LocalSession> sessions = new HashMap<String, LocalSession>();
+
+   /** client callbacks waiting for the end of the transaction */
+   private final LinkedList<Runnable> deliveries = new LinkedList<Runnable>();
+
+   private boolean delivering;
+
+   private Transaction txn;
+
+   private AppListener listener;
+
+   /** the virtual time, in milliseconds */
+   private long time;
+
+   /**
+    * Makes <code>AppContext</code> use this context
+    */
+   public void install() {
+      InternalContext.setManagerLocator(this);
+   }
+
+   /**
+    * Returns the installed context
+    * 
+    * @throws IllegalStateException
+    *            if no LocalContext is installed
+    */
+   static LocalContext get() {
+      ManagerLocator locator = InternalContext.getManagerLocator();
+      if (!(locator instanceof LocalContext)) {
+         throw new IllegalStateException("no LocalContext installed");
+      }
+      return (LocalContext) locator;
+   }
+
+   // /////////////////////
+   // ManagerLocator
+   // /////////////////////
+   public DataManager getDataManager() {
+      return dataManager;
+   }
+
+   public ChannelManager getChannelManager() {
+      return channelManager;
+   }
+
+   public TaskManager getTaskManager() {
+      return taskManager;
+   }
+
+   public <T> T getManager(Class<T> type) {
+      throw new IllegalArgumentException("no manager of type "
+            + type.getName());
+   }
+
+   LocalDataManager getLocalDataManager() {
+      return dataManager;
+   }
+
+   LocalChannelManager getLocalChannelManager() {
+      return channelManager;
+   }
+
+   LocalTaskManager getLocalTaskManager() {
+      return taskManager;
+   }
+
+   // /////////////////////
+   // Settings and stats
+   // /////////////////////
+
+   /**
+    * Sets whether objects modified without being marked for update are
+    * written back, as Darkstar does by default. Turn it off to find missing
+    * <code>markForUpdate</code> calls.
+    */
+   public void setDetectModifications(boolean detectModifications) {
+      dataManager.setDetectModifications(detectModifications);
+   }
+
+   public LocalStats getStats() {
+      return stats;
+   }
+
+   /**
+    * @return the number of objects in the data store
+    */
+   public int getObjectCount() {
+      return dataManager.size();
+   }
+
+   /**
+    * @return the number of queued tasks, periodic ones included
+    */
+   public int getTaskCount() {
+      return taskManager.size();
+   }
+
+   public long getTime() {
+      return time;
+   }
+
+   void setTime(long time) {
+      this.time = time;
+   }
+
+   // /////////////////////
+   // Server lifecycle
+   // /////////////////////
+
+   /**
+    * Starts the application: initializes the listener in a transaction
+    */
+   public void start(final AppListener listener, final Properties props)
+         throws Exception {
+      this.listener = listener;
+      runTransaction(new Task() {
+         public void run() {
+            listener.initialize(props);
+         }
+      });
+   }
+
+   /**
+    * Logs a client in
+    * 
+    * @return the session, or null if the application refused the login
+    */
+   public LocalSession login(String name, LocalClient client) throws Exception {
+      if (listener == null) {
+         throw new IllegalStateException("application not started");
+      }
+      if (sessions.containsKey(name)) {
+         // Darkstar refuses a second login with the same name by default
+         return null;
+      }
+
+      final LocalSession session = new LocalSession(name, client);
+      session.setConnected(true);
+      sessions.put(name, session);
+
+      try {
+         runTransaction(new Task() {
+            public void run() {
+               ClientSessionListener sessionListener = listener
+                     .loggedIn(session);
+               if (sessionListener != null) {
+                  session.setListener(dataManager
+                        .createReference(ManagedWrapper.wrap(sessionListener)));
+               }
+            }
+         });
+      }
+      finally {
+         if (session.getListenerRef() == null) {
+            session.setConnected(false);
+            sessions.remove(name);
+         }
+      }
+
+      return session.getListenerRef() == null ? null : session;
+   }
+
+   /**
+    * A message from a client to the server
+    */
+   public void send(final LocalSession session, ByteBuffer message)
+         throws Exception {
+      checkConnected(session);
+      final ByteBuffer copy = ByteBuffer.wrap(copy(message));
+      runTransaction(new Task() {
+         public void run() {
+            session.getListener().receivedMessage(copy);
+         }
+      });
+   }
+
+   /**
+    * A message from a client to a channel
+    */
+   public void channelSend(final LocalSession session, final String channel,
+         ByteBuffer message) throws Exception {
+      checkConnected(session);
+      final ByteBuffer copy = ByteBuffer.wrap(copy(message));
+      runTransaction(new Task() {
+         public void run() {
+            channelManager.receivedMessage(session, channel, copy);
+         }
+      });
+   }
+
+   /**
+    * Logs a client out: notifies its listener and removes the session from
+    * the data store and its channels
+    */
+   public void logout(final LocalSession session) throws Exception {
+      checkConnected(session);
+      runTransaction(new Task() {
+         public void run() {
+            ManagedReference<Object> listenerRef = session.getListenerRef();
+            Object sessionListener = listenerRef.get();
+            ManagedWrapper.<ClientSessionListener> unwrap(sessionListener)
+                  .disconnected(true);
+
+            if (sessionListener instanceof ManagedWrapper) {
+               dataManager.removeObject(sessionListener);
+            }
+            dataManager.removeObject(session);
+
+            txn.actions.add(new Runnable() {
+               public void run() {
+                  session.setConnected(false);
+                  sessions.remove(session.getName());
+                  channelManager.disconnected(session);
+                  deliveries.add(new Runnable() {
+                     public void run() {
+                        session.getClient().disconnected();
+                     }
+                  });
+               }
+            });
+         }
+      });
+   }
+
+   private void checkConnected(LocalSession session) {
+      if (!session.isConnected()) {
+         throw new IllegalStateException("session not connected: "
+               + session.getName());
+      }
+   }
+
+   LocalSession getSession(String name) {
+      return sessions.get(name);
+   }
+
+   // /////////////////////
+   // Clock
+   // /////////////////////
+
+   /**
+    * Runs the tasks that are due now, the ones they schedule included
+    */
+   public void runPendingTasks() {
+      taskManager.runUntil(time);
+   }
+
+   /**
+    * Moves the clock forward, running the tasks due in the meantime in order
+    */
+   public void advance(long millis) {
+      long until = time + millis;
+      taskManager.runUntil(until);
+      time = until;
+   }
+
+   // /////////////////////
+   // Transactions
+   // /////////////////////
+
+   /**
+    * Runs a task in a transaction, then delivers the messages it sent. The
+    * transaction commits if the task returns normally and aborts otherwise,
+    * throwing the exception of the task.
+    * 
+    * @throws IllegalStateException
+    *            if called from inside a transaction
+    */
+   public void runTransaction(Task task) throws Exception {
+      if (txn != null) {
+         throw new IllegalStateException("already in a transaction");
+      }
+
+      Transaction current = new Transaction();
+      txn = current;
+      boolean committed = false;
+      try {
+         task.run();
+         dataManager.commit(current);
+         for (Runnable action : current.actions) {
+            action.run();
+         }
+         committed = true;
+      }
+      finally {
+         txn = null;
+         if (committed) {
+            stats.committed();
+         }
+         else {
+            stats.aborted();
+         }
+      }
+
+      deliverAll();
+   }
+
+   /**
+    * Runs a scheduled task. A failed task is reported and dropped, as Darkstar
+    * does with tasks that don't ask to be retried.
+    */
+   void runTask(Task task) {
+      boolean failed = true;
+      try {
+         runTransaction(task);
+         failed = false;
+      }
+      catch (Exception e) {
+         System.out.println(time + " - task failed: " + e);
+         e.printStackTrace(System.out);
+      }
+      finally {
+         stats.taskRun(failed);
+      }
+   }
+
+   /**
+    * @throws TransactionNotActiveException
+    *            if there's no transaction
+    */
+   Transaction getTransaction() {
+      if (txn == null) {
+         throw new TransactionNotActiveException("no transaction is active");
+      }
+      return txn;
+   }
+
+   // /////////////////////
+   // Delivery to the clients
+   // /////////////////////
+
+   /**
+    * Queues a message to a client, <code>channel</code> is null for session
+    * messages
+    */
+   void deliver(final LocalSession session, final String channel,
+         final byte[] message) {
+      if (!session.isConnected()) {
+         return;
+      }
+      stats.delivered(message.length);
+      deliveries.add(new Runnable() {
+         public void run() {
+            ByteBuffer buf = ByteBuffer.wrap(message.clone());
+            if (channel == null) {
+               session.getClient().receivedMessage(buf);
+            }
+            else {
+               session.getClient().receivedChannelMessage(channel, buf);
+            }
+         }
+      });
+   }
+
+   void joined(final LocalSession session, final String channel) {
+      deliveries.add(new Runnable() {
+         public void run() {
+            session.getClient().joinedChannel(channel);
+         }
+      });
+   }
+
+   void left(final LocalSession session, final String channel) {
+      deliveries.add(new Runnable() {
+         public void run() {
+            session.getClient().leftChannel(channel);
+         }
+      });
+   }
+
+   /**
+    * Runs the client callbacks. The callbacks can send messages, the
+    * transactions they run queue more callbacks, run by the outer loop so
+    * they keep their order.
+    */
+   private void deliverAll() {
+      if (delivering) {
+         return;
+      }
+      delivering = true;
+      try {
+         while (!deliveries.isEmpty()) {
+            deliveries.removeFirst().run();
+         }
+      }
+      finally {
+         delivering = false;
+      }
+   }
+
+   /**
+    * Returns the remaining bytes of a message, leaving its position untouched
+    */
+   static byte[] copy(ByteBuffer message) {
+      ByteBuffer buf = message.duplicate();
+      byte[] bytes = new byte[buf.remaining()];
+      buf.get(bytes);
+      return bytes;
+   }
+}
@@ -0,0 +1,317 @@
+package headless;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import com.sun.sgs.app.DataManager;
+import com.sun.sgs.app.ManagedObject;
+import com.sun.sgs.app.ManagedReference;
+import com.sun.sgs.app.NameNotBoundException;
+import com.sun.sgs.app.ObjectNotFoundException;
+
+/**
+ * An in-memory data store with the semantics of the Darkstar data service:
+ * objects are stored serialized, every transaction works on its own copies
+ * (one per object, so identity holds inside a transaction) and the copies are
+ * written back only when the transaction commits.
+ * 
+ * Like Darkstar, modified objects are written even if they weren't marked for
+ * update, unless modification detection is turned off. With detection off,
+ * changes to objects that weren't marked are lost, which finds missing
+ * <code>markForUpdate</code> calls.
+ */
+final class LocalDataManager implements DataManager {
+
+   private final LocalContext context;
+
+   private final Map<BigInteger, byte[]> objects = new HashMap<BigInteger, byte[]>();
+
+   private final Map<String, BigInteger> bindings = new HashMap<String, BigInteger>();
+
+   private long nextId = 1;
+
+   private boolean detectModifications = true;
+
+   LocalDataManager(LocalContext context) {
+      this.context = context;
+   }
+
+   void setDetectModifications(boolean detectModifications) {
+      this.detectModifications = detectModifications;
+   }
+
+   /**
+    * @return the number of objects in the store
+    */
+   int size() {
+      return objects.size();
+   }
+
+   // /////////////////////
+   // DataManager
+   // /////////////////////
+   public ManagedObject getBinding(String name) {
+      BigInteger id = lookup(name);
+      if (id == null) {
+         throw new NameNotBoundException("name not bound: " + name);
+      }
+      return (ManagedObject) load(id);
+   }
+
+   public void setBinding(String name, Object object) {
+      Transaction txn = context.getTransaction();
+      txn.bindings.put(name, getId(txn, object));
+   }
+
+   public void removeBinding(String name) {
+      if (lookup(name) == null) {
+         throw new NameNotBoundException("name not bound: " + name);
+      }
+      context.getTransaction().bindings.put(name, null);
+   }
+
+   public String nextBoundName(String name) {
+      Transaction txn = context.getTransaction();
+
+      TreeSet<String> names = new TreeSet<String>(bindings.keySet());
+      for (Map.Entry<String, BigInteger> binding : txn.bindings.entrySet()) {
+         if (binding.getValue() == null) {
+            names.remove(binding.getKey());
+         }
+         else {
+            names.add(binding.getKey());
+         }
+      }
+
+      if (name == null) {
+         return names.isEmpty() ? null : names.first();
+      }
+      return names.higher(name);
+   }
+
+   public void removeObject(Object object) {
+      final Transaction txn = context.getTransaction();
+      BigInteger id = getId(txn, object);
+
+      txn.loaded.remove(id);
+      txn.ids.remove(object);
+      txn.removed.add(id);
+      txn.removedObjects.put(object, id);
+
+      if (object instanceof LiveObject) {
+         final LiveObject live = (LiveObject) object;
+         txn.actions.add(new Runnable() {
+            public void run() {
+               live.removed();
+            }
+         });
+      }
+   }
+
+   public void markForUpdate(Object object) {
+      Transaction txn = context.getTransaction();
+      txn.updated.add(getId(txn, object));
+   }
+
+   public <T> ManagedReference<T> createReference(T object) {
+      Transaction txn = context.getTransaction();
+      return new LocalReference<T>(getId(txn, object));
+   }
+
+   // /////////////////////
+   // Transaction support
+   // /////////////////////
+
+   /**
+    * Returns the copy of an object in the current transaction, reading it from
+    * the store the first time
+    * 
+    * @throws ObjectNotFoundException
+    *            if the object was removed
+    */
+   Object load(BigInteger id) {
+      Transaction txn = context.getTransaction();
+      Object object = txn.loaded.get(id);
+      if (object != null) {
+         return object;
+      }
+
+      byte[] bytes = objects.get(id);
+      if (bytes == null || txn.removed.contains(id)) {
+         throw new ObjectNotFoundException("object not found: " + id);
+      }
+
+      object = deserialize(bytes);
+      txn.loaded.put(id, object);
+      txn.ids.put(object, id);
+      context.getStats().read(bytes.length);
+      return object;
+   }
+
+   /**
+    * Returns the id of a managed object, making it managed if it's new
+    */
+   private BigInteger getId(Transaction txn, Object object) {
+      if (!(object instanceof ManagedObject)) {
+         throw new IllegalArgumentException("not a ManagedObject: "
+               + (object == null ? null : object.getClass().getName()));
+      }
+      if (!(object instanceof Serializable)) {
+         throw new IllegalArgumentException("not serializable: "
+               + object.getClass().getName());
+      }
+
+      BigInteger id = txn.ids.get(object);
+      if (id != null) {
+         return id;
+      }
+      if (txn.removedObjects.containsKey(object)) {
+         throw new ObjectNotFoundException("object was removed: "
+               + txn.removedObjects.get(object));
+      }
+
+      if (object instanceof LiveObject
+            && ((LiveObject) object).getManagedId() != null) {
+         id = ((LiveObject) object).getManagedId();
+         if (txn.removed.contains(id)) {
+            throw new ObjectNotFoundException("object was removed: " + id);
+         }
+         if (!objects.containsKey(id)) {
+            txn.created.add(id);
+         }
+      }
+      else {
+         id = BigInteger.valueOf(nextId++);
+         txn.created.add(id);
+         if (object instanceof LiveObject) {
+            ((LiveObject) object).setManagedId(id);
+         }
+      }
+
+      txn.loaded.put(id, object);
+      txn.ids.put(object, id);
+      return id;
+   }
+
+   /**
+    * Writes the objects of a transaction back to the store. Everything is
+    * serialized before the store changes, so a failure leaves it untouched.
+    */
+   void commit(Transaction txn) {
+      Map<BigInteger, byte[]> writes = new HashMap<BigInteger, byte[]>();
+      for (Map.Entry<BigInteger, Object> entry : txn.loaded.entrySet()) {
+         BigInteger id = entry.getKey();
+         boolean marked = txn.created.contains(id) || txn.updated.contains(id);
+         if (!marked && !detectModifications) {
+            continue;
+         }
+
+         byte[] bytes = serialize(entry.getValue());
+         if (marked || !Arrays.equals(bytes, objects.get(id))) {
+            writes.put(id, bytes);
+         }
+      }
+
+      for (Map.Entry<BigInteger, byte[]> write : writes.entrySet()) {
+         objects.put(write.getKey(), write.getValue());
+         context.getStats().written(write.getValue().length);
+      }
+      for (BigInteger id : txn.removed) {
+         objects.remove(id);
+      }
+      for (Map.Entry<String, BigInteger> binding : txn.bindings.entrySet()) {
+         if (binding.getValue() == null) {
+            bindings.remove(binding.getKey());
+         }
+         else {
+            bindings.put(binding.getKey(), binding.getValue());
+         }
+      }
+   }
+
+   private BigInteger lookup(String name) {
+      Transaction txn = context.getTransaction();
+      if (txn.bindings.containsKey(name)) {
+         return txn.bindings.get(name);
+      }
+      return bindings.get(name);
+   }
+
+   // /////////////////////
+   // Serialization
+   // /////////////////////
+
+   /**
+    * Serializes an object on its own: managed objects must refer to each
+    * other through references, as in Darkstar
+    * 
+    * @throws IllegalStateException
+    *            if the object can't be serialized
+    */
+   byte[] serialize(Object object) {
+      long allocated = LocalStats.allocatedBytes();
+      try {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         ObjectOutputStream out = new ManagedOutputStream(bytes, object);
+         out.writeObject(object);
+         out.close();
+         return bytes.toByteArray();
+      }
+      catch (IOException e) {
+         throw new IllegalStateException("can't serialize "
+               + object.getClass().getName(), e);
+      }
+      finally {
+         context.getStats().copied(LocalStats.allocatedBytes() - allocated);
+      }
+   }
+
+   Object deserialize(byte[] bytes) {
+      long allocated = LocalStats.allocatedBytes();
+      try {
+         ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+               bytes));
+         return in.readObject();
+      }
+      catch (IOException e) {
+         throw new IllegalStateException("can't deserialize object", e);
+      }
+      catch (ClassNotFoundException e) {
+         throw new IllegalStateException("can't deserialize object", e);
+      }
+      finally {
+         context.getStats().copied(LocalStats.allocatedBytes() - allocated);
+      }
+   }
+
+   private static class ManagedOutputStream extends ObjectOutputStream {
+
+      private final Object root;
+
+      ManagedOutputStream(OutputStream out, Object root) throws IOException {
+         super(out);
+         this.root = root;
+         enableReplaceObject(true);
+      }
+
+      @Override
+      protected Object replaceObject(Object obj) throws IOException {
+         if (obj != root && obj instanceof ManagedObject) {
+            throw new IllegalStateException("managed object "
+                  + obj.getClass().getName() + " referenced directly by "
+                  + root.getClass().getName() + ", use a ManagedReference");
+         }
+         return obj;
+      }
+   }
+}
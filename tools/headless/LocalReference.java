@@ -0,0 +1,52 @@
+package headless;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+
+import com.sun.sgs.app.ManagedReference;
+
+/**
+ * A reference to an object of the {@link LocalDataManager}. It only holds the
+ * id: the object is loaded in the transaction that follows the reference.
+ */
+final class LocalReference<T> implements ManagedReference<T>, Serializable {
+
+   private static final long serialVersionUID = 1L;
+
+   private final BigInteger id;
+
+   LocalReference(BigInteger id) {
+      this.id = id;
+   }
+
+   @SuppressWarnings("unchecked")
+   public T get() {
+      return (T) LocalContext.get().getLocalDataManager().load(id);
+   }
+
+   public T getForUpdate() {
+      T object = get();
+      LocalContext.get().getLocalDataManager().markForUpdate(object);
+      return object;
+   }
+
+   public BigInteger getId() {
+      return id;
+   }
+
+   @Override
+   public boolean equals(Object obj) {
+      return obj instanceof LocalReference
+            && id.equals(((LocalReference<?>) obj).id);
+   }
+
+   @Override
+   public int hashCode() {
+      return id.hashCode();
+   }
+
+   @Override
+   public String toString() {
+      return "LocalReference[" + id + "]";
+   }
+}
@@ -0,0 +1,92 @@
+package headless;
+
+import java.io.ObjectStreamException;
+import java.nio.ByteBuffer;
+
+import com.sun.sgs.app.ClientSession;
+import com.sun.sgs.app.ClientSessionListener;
+import com.sun.sgs.app.ManagedReference;
+import com.sun.sgs.app.ObjectNotFoundException;
+
+/**
+ * A client session logged in to a {@link LocalContext}. The server sees it as
+ * a ClientSession, the messages it sends go to the {@link LocalClient} given
+ * at login.
+ */
+public final class LocalSession extends LiveObject implements ClientSession {
+
+   private static final long serialVersionUID = 1L;
+
+   private final String name;
+
+   private final transient LocalClient client;
+
+   /** the listener returned by the AppListener at login */
+   private transient ManagedReference<Object> listenerRef;
+
+   private transient boolean connected;
+
+   LocalSession(String name, LocalClient client) {
+      this.name = name;
+      this.client = client;
+   }
+
+   public String getName() {
+      return name;
+   }
+
+   public boolean isConnected() {
+      return connected;
+   }
+
+   void setConnected(boolean connected) {
+      this.connected = connected;
+   }
+
+   LocalClient getClient() {
+      return client;
+   }
+
+   void setListener(ManagedReference<Object> listenerRef) {
+      this.listenerRef = listenerRef;
+   }
+
+   ManagedReference<Object> getListenerRef() {
+      return listenerRef;
+   }
+
+   /**
+    * Must be called inside a transaction
+    */
+   ClientSessionListener getListener() {
+      return ManagedWrapper.unwrap(listenerRef.get());
+   }
+
+   /**
+    * Sends a message to the client when the transaction commits
+    */
+   public ClientSession send(ByteBuffer message) {
+      final LocalContext context = LocalContext.get();
+      final byte[] bytes = LocalContext.copy(message);
+      context.getTransaction().actions.add(new Runnable() {
+         public void run() {
+            context.deliver(LocalSession.this, null, bytes);
+         }
+      });
+      return this;
+   }
+
+   @Override
+   protected Object readResolve() throws ObjectStreamException {
+      LocalSession session = LocalContext.get().getSession(name);
+      if (session == null) {
+         throw new ObjectNotFoundException("session not found: " + name);
+      }
+      return session;
+   }
+
+   @Override
+   public String toString() {
+      return "LocalSession[" + name + "]";
+   }
+}
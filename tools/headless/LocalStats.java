@@ -0,0 +1,156 @@
+package headless;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counters of a {@link LocalContext}: transactions, data store traffic and
+ * messages delivered to the clients
+ */
+public final class LocalStats {
+
+   private long commits;
+
+   private long aborts;
+
+   private long objectsRead;
+
+   private long bytesRead;
+
+   private long objectsWritten;
+
+   private long bytesWritten;
+
+   private long messages;
+
+   private long messageBytes;
+
+   private long tasks;
+
+   private long failedTasks;
+
+   private long copyAllocated;
+
+   private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+         .getThreadMXBean();
+
+   /**
+    * Returns the bytes the calling thread has allocated so far, or 0 if the
+    * VM doesn't count them
+    */
+   static long allocatedBytes() {
+      if (!THREADS.isThreadAllocatedMemorySupported()) {
+         return 0;
+      }
+      return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+   }
+
+   void committed() {
+      commits++;
+   }
+
+   void aborted() {
+      aborts++;
+   }
+
+   void read(int bytes) {
+      objectsRead++;
+      bytesRead += bytes;
+   }
+
+   void written(int bytes) {
+      objectsWritten++;
+      bytesWritten += bytes;
+   }
+
+   void delivered(int bytes) {
+      messages++;
+      messageBytes += bytes;
+   }
+
+   void copied(long allocated) {
+      copyAllocated += allocated;
+   }
+
+   void taskRun(boolean failed) {
+      tasks++;
+      if (failed) {
+         failedTasks++;
+      }
+   }
+
+   public long getCommits() {
+      return commits;
+   }
+
+   public long getAborts() {
+      return aborts;
+   }
+
+   public long getObjectsRead() {
+      return objectsRead;
+   }
+
+   public long getBytesRead() {
+      return bytesRead;
+   }
+
+   public long getObjectsWritten() {
+      return objectsWritten;
+   }
+
+   public long getBytesWritten() {
+      return bytesWritten;
+   }
+
+   /**
+    * @return the number of messages delivered to clients, a channel message
+    *         counts once per member
+    */
+   public long getMessages() {
+      return messages;
+   }
+
+   public long getMessageBytes() {
+      return messageBytes;
+   }
+
+   /**
+    * @return the bytes allocated to serialize and deserialize the objects of
+    *         the data store, the part of the allocations of the server that
+    *         is the copies of the local context
+    */
+   public long getCopyAllocated() {
+      return copyAllocated;
+   }
+
+   public long getTasks() {
+      return tasks;
+   }
+
+   public long getFailedTasks() {
+      return failedTasks;
+   }
+
+   public void reset() {
+      commits = 0;
+      aborts = 0;
+      objectsRead = 0;
+      bytesRead = 0;
+      objectsWritten = 0;
+      bytesWritten = 0;
+      messages = 0;
+      messageBytes = 0;
+      tasks = 0;
+      failedTasks = 0;
+      copyAllocated = 0;
+   }
+
+   @Override
+   public String toString() {
+      return "commits: " + commits + ", aborts: " + aborts + ", read: "
+            + objectsRead + " objects / " + bytesRead + " bytes, written: "
+            + objectsWritten + " objects / " + bytesWritten
+            + " bytes, messages: " + messages + " / " + messageBytes
+            + " bytes, tasks: " + tasks + " (" + failedTasks + " failed)";
+   }
+}
@@ -0,0 +1,24 @@
+package headless;
+
+import java.io.Serializable;
+
+import com.sun.sgs.app.PeriodicTaskHandle;
+
+/**
+ * The handle of a periodic task of a {@link LocalTaskManager}. It's stored in
+ * managed objects, so it only keeps the id of the task.
+ */
+final class LocalTaskHandle implements PeriodicTaskHandle, Serializable {
+
+   private static final long serialVersionUID = 1L;
+
+   private final long id;
+
+   LocalTaskHandle(long id) {
+      this.id = id;
+   }
+
+   public void cancel() {
+      LocalContext.get().getLocalTaskManager().cancel(id);
+   }
+}
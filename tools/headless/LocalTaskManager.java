@@ -0,0 +1,164 @@
+package headless;
+
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+import com.sun.sgs.app.ManagedObject;
+import com.sun.sgs.app.PeriodicTaskHandle;
+import com.sun.sgs.app.Task;
+import com.sun.sgs.app.TaskManager;
+
+/**
+ * Runs tasks on the virtual clock of a {@link LocalContext}, each one in its
+ * own transaction. Tasks are queued when the transaction that scheduled them
+ * commits, tasks due at the same time run in the order they were scheduled.
+ * 
+ * As in Darkstar, a task that is a managed object is run from the data store,
+ * any other one is serialized when scheduled.
+ */
+final class LocalTaskManager implements TaskManager {
+
+   private final LocalContext context;
+
+   private final PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+
+   private long nextId = 1;
+
+   private long nextSeq;
+
+   LocalTaskManager(LocalContext context) {
+      this.context = context;
+   }
+
+   public void scheduleTask(Task task) {
+      schedule(task, 0, -1);
+   }
+
+   public void scheduleTask(Task task, long delay) {
+      schedule(task, delay, -1);
+   }
+
+   public PeriodicTaskHandle schedulePeriodicTask(Task task, long delay,
+         long period) {
+      // a period of 0 would never let the virtual clock move
+      if (period < 1) {
+         throw new IllegalArgumentException("period must be positive: "
+               + period);
+      }
+      return new LocalTaskHandle(schedule(task, delay, period));
+   }
+
+   private long schedule(Task task, final long delay, final long period) {
+      if (task == null) {
+         throw new NullPointerException("null task");
+      }
+      if (delay < 0) {
+         throw new IllegalArgumentException("negative delay: " + delay);
+      }
+
+      Transaction txn = context.getTransaction();
+      LocalDataManager dataManager = context.getLocalDataManager();
+
+      final Entry entry = new Entry(nextId++, period);
+      if (task instanceof ManagedObject) {
+         entry.taskId = dataManager.createReference(task).getId();
+      }
+      else {
+         entry.bytes = dataManager.serialize(task);
+      }
+
+      txn.actions.add(new Runnable() {
+         public void run() {
+            entry.time = context.getTime() + delay;
+            entry.seq = nextSeq++;
+            queue.add(entry);
+         }
+      });
+      return entry.id;
+   }
+
+   /**
+    * Cancels a periodic task when the transaction commits
+    */
+   void cancel(final long id) {
+      context.getTransaction().actions.add(new Runnable() {
+         public void run() {
+            for (Iterator<Entry> it = queue.iterator(); it.hasNext();) {
+               if (it.next().id == id) {
+                  it.remove();
+               }
+            }
+         }
+      });
+   }
+
+   /**
+    * Runs every task due up to <code>time</code>, the ones they schedule
+    * included, moving the clock to the time of each one
+    */
+   void runUntil(long time) {
+      while (!queue.isEmpty() && queue.peek().time <= time) {
+         final Entry entry = queue.poll();
+         context.setTime(Math.max(context.getTime(), entry.time));
+
+         if (entry.period >= 0) {
+            // queued again before running, so the task can cancel itself
+            entry.time += entry.period;
+            entry.seq = nextSeq++;
+            queue.add(entry);
+         }
+
+         context.runTask(new Task() {
+            public void run() throws Exception {
+               Task task;
+               if (entry.taskId != null) {
+                  task = (Task) context.getLocalDataManager().load(
+                        entry.taskId);
+               }
+               else {
+                  task = (Task) context.getLocalDataManager().deserialize(
+                        entry.bytes);
+               }
+               task.run();
+            }
+         });
+      }
+   }
+
+   /**
+    * @return the number of queued tasks
+    */
+   int size() {
+      return queue.size();
+   }
+
+   private static class Entry implements Comparable<Entry> {
+
+      final long id;
+
+      final long period;
+
+      /** the task, if it's a managed object */
+      BigInteger taskId;
+
+      /** the serialized task otherwise */
+      byte[] bytes;
+
+      long time;
+
+      long seq;
+
+      Entry(long id, long period) {
+         this.id = id;
+         this.period = period;
+      }
+
+      public int compareTo(Entry other) {
+         if (time != other.time) {
+            return time < other.time ? -1 : 1;
+         }
+         return seq < other.seq ? -1 : (seq == other.seq ? 0 : 1);
+      }
+   }
+}
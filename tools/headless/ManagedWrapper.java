@@ -0,0 +1,48 @@
+package headless;
+
+import java.io.Serializable;
+
+import com.sun.sgs.app.ManagedObject;
+
+/**
+ * Stores a listener that isn't a managed object, as Darkstar does for the
+ * session and channel listeners
+ */
+final class ManagedWrapper<T> implements ManagedObject, Serializable {
+
+   private static final long serialVersionUID = 1L;
+
+   private final T object;
+
+   ManagedWrapper(T object) {
+      this.object = object;
+   }
+
+   /**
+    * Returns <code>object</code>, unwrapped if it's a wrapper
+    */
+   @SuppressWarnings("unchecked")
+   static <T> T unwrap(Object object) {
+      if (object instanceof ManagedWrapper) {
+         return ((ManagedWrapper<T>) object).object;
+      }
+      return (T) object;
+   }
+
+   /**
+    * Returns <code>object</code> if it's managed, or a wrapper for it
+    * 
+    * @throws IllegalArgumentException
+    *            if the object isn't serializable
+    */
+   static Object wrap(Object object) {
+      if (object instanceof ManagedObject) {
+         return object;
+      }
+      if (!(object instanceof Serializable)) {
+         throw new IllegalArgumentException("not serializable: "
+               + object.getClass().getName());
+      }
+      return new ManagedWrapper<Object>(object);
+   }
+}
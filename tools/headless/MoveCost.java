@@ -0,0 +1,231 @@
+package headless;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import server.DarkstrisServer;
+
+import common.Commands;
+import common.Commands.Command;
+
+/**
+ * Measures the data store traffic of a game on a {@link LocalContext}: fills a
+ * room with players, starts the game and sends random moves, then lets the
+ * gravity run alone. It prints how many objects and bytes each move and each
+ * gravity tick writes back to the data store, and how many it reads.
+ * 
+ * The arguments are <code>key=value</code> pairs:
+ * <ul>
+ * <li>players: the number of players in the room (4)</li>
+ * <li>moves: the number of moves sent (5000)</li>
+ * <li>ticks: the number of gravity ticks run after the moves (500)</li>
+ * <li>seed: the seed of the random moves (1)</li>
+ * </ul>
+ * 
+ * A game that ends is started again by the owner of the room. The moves the
+ * server refuses (a blocked figure, a finished game) write nothing and are
+ * counted apart.
+ */
+public class MoveCost {
+
+   private static final Command[] MOVES = { Command.MOVE_LEFT,
+         Command.MOVE_RIGHT, Command.ROTATE, Command.MOVE_DOWN,
+         Command.MOVE_ALL_WAY_DOWN };
+
+   private final Properties config = new Properties();
+
+   private final LocalContext context = new LocalContext();
+
+   private final List<LocalSession> sessions = new ArrayList<LocalSession>();
+
+   private long roomId = -1;
+
+   private boolean gameOver;
+
+   public MoveCost(String[] args) {
+      config.setProperty("players", "4");
+      config.setProperty("moves", "5000");
+      config.setProperty("ticks", "500");
+      config.setProperty("seed", "1");
+
+      for (String arg : args) {
+         int i = arg.indexOf('=');
+         if (i < 0 || config.getProperty(arg.substring(0, i)) == null) {
+            throw new IllegalArgumentException("unknown argument: " + arg);
+         }
+         config.setProperty(arg.substring(0, i), arg.substring(i + 1));
+      }
+   }
+
+   private int getInt(String key) {
+      int value = Integer.parseInt(config.getProperty(key));
+      if (value < 1) {
+         throw new IllegalArgumentException(key + " must be > 0: " + value);
+      }
+      return value;
+   }
+
+   private static ByteBuffer message(Command command, long... args) {
+      ByteBuffer buf = ByteBuffer.allocate(4 + 8 * args.length);
+      buf.putInt(Commands.encode(command));
+      for (long arg : args) {
+         buf.putLong(arg);
+      }
+      buf.flip();
+      return buf;
+   }
+
+   private static ByteBuffer message(Command command, int arg) {
+      ByteBuffer buf = ByteBuffer.allocate(8);
+      buf.putInt(Commands.encode(command)).putInt(arg);
+      buf.flip();
+      return buf;
+   }
+
+   private LocalClient newClient() {
+      return new LocalClient() {
+         public void receivedMessage(ByteBuffer message) {
+            Command command = Commands.decode(message.getInt(0));
+            if (command == Command.ROOM_CREATED) {
+               roomId = message.getLong(4);
+            }
+         }
+
+         public void receivedChannelMessage(String channel, ByteBuffer message) {
+            Command command = Commands.decode(message.getInt(0));
+            if (command == Command.GAME_OVER) {
+               gameOver = true;
+            }
+            else if (command == Command.BATCH) {
+               // the game over comes in the batch of the move that lost
+               ByteBuffer buf = message.duplicate();
+               buf.position(4);
+               while (buf.hasRemaining()) {
+                  int length = buf.getShort() & 0xffff;
+                  int inner = buf.getInt(buf.position());
+                  if (Commands.decode(inner) == Command.GAME_OVER) {
+                     gameOver = true;
+                  }
+                  buf.position(buf.position() + length);
+               }
+            }
+         }
+
+         public void joinedChannel(String channel) {
+         }
+
+         public void leftChannel(String channel) {
+         }
+
+         public void disconnected() {
+         }
+      };
+   }
+
+   public void run() throws Exception {
+      int players = getInt("players");
+      int moves = getInt("moves");
+      int ticks = getInt("ticks");
+      Random random = new Random(getInt("seed"));
+
+      // keep the lobby deltas out of the gravity transactions
+      Properties props = new Properties();
+      props.setProperty(DarkstrisServer.LOBBY_WINDOW, String
+            .valueOf(Integer.MAX_VALUE));
+
+      context.install();
+      context.start(new DarkstrisServer(), props);
+
+      // the first player creates the room, the others join it
+      for (int i = 0; i < players; i++) {
+         LocalSession session = context.login("player" + i, newClient());
+         sessions.add(session);
+         context.send(session, message(Command.REQUEST_LOBBY_DATA));
+         if (i == 0) {
+            context.send(session, message(Command.CREATE_ROOM, players));
+         }
+         else {
+            context.send(session, message(Command.JOIN_ROOM, roomId));
+         }
+         context.runPendingTasks();
+         context.send(session, message(Command.ROOM_JOINED, roomId));
+      }
+      startGame();
+
+      // moves, without gravity
+      LocalStats stats = context.getStats();
+      Cost applied = new Cost();
+      int refused = 0;
+      for (int i = 0; i < moves; i++) {
+         if (gameOver) {
+            startGame();
+         }
+
+         LocalSession session = sessions.get(i % players);
+         stats.reset();
+         context.send(session, message(MOVES[random.nextInt(MOVES.length)]));
+         if (stats.getObjectsWritten() > 0) {
+            applied.add(stats);
+         }
+         else {
+            refused++;
+         }
+      }
+
+      // gravity, without moves
+      Cost gravity = new Cost();
+      for (int i = 0; i < ticks; i++) {
+         if (gameOver) {
+            startGame();
+         }
+
+         stats.reset();
+         context.advance(1000);
+         gravity.add(stats);
+      }
+
+      System.out.println("move cost: " + config);
+      System.out.println("moves:   " + applied.report() + ", " + refused
+            + " refused");
+      System.out.println("gravity: " + gravity.report());
+      System.out.println("store:   " + context.getObjectCount() + " objects");
+   }
+
+   private void startGame() throws Exception {
+      gameOver = false;
+      context.send(sessions.get(0), message(Command.GAME_START));
+   }
+
+   /**
+    * The data store traffic of a kind of transaction
+    */
+   private static class Cost {
+
+      private long count;
+
+      private long objectsRead, bytesRead, objectsWritten, bytesWritten;
+
+      void add(LocalStats stats) {
+         count += stats.getCommits();
+         objectsRead += stats.getObjectsRead();
+         bytesRead += stats.getBytesRead();
+         objectsWritten += stats.getObjectsWritten();
+         bytesWritten += stats.getBytesWritten();
+      }
+
+      String report() {
+         double n = Math.max(1, count);
+         return String.format("%d transactions, read %.2f objects / %.0f "
+               + "bytes, written %.2f objects / %.0f bytes each", count,
+               objectsRead / n, bytesRead / n, objectsWritten / n,
+               bytesWritten / n);
+      }
+   }
+
+   public static void main(String[] args) throws Exception {
+      new MoveCost(args).run();
+   }
+}
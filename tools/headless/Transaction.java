@@ -0,0 +1,45 @@
+package headless;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The state of the running transaction: the objects it loaded or created, the
+ * changes to the bindings and the actions (channel operations, messages,
+ * scheduled tasks) applied only if it commits.
+ */
+final class Transaction {
+
+   /** the objects used by the transaction, by id */
+   final Map<BigInteger, Object> loaded = new HashMap<BigInteger, Object>();
+
+   /** the ids of the objects used by the transaction */
+   final Map<Object, BigInteger> ids = new IdentityHashMap<Object, BigInteger>();
+
+   /** objects that became managed in this transaction */
+   final Set<BigInteger> created = new HashSet<BigInteger>();
+
+   /** objects marked for update */
+   final Set<BigInteger> updated = new HashSet<BigInteger>();
+
+   /** objects removed from the store */
+   final Set<BigInteger> removed = new HashSet<BigInteger>();
+
+   /** the removed objects themselves, they can't be managed again */
+   final Map<Object, BigInteger> removedObjects = new IdentityHashMap<Object, BigInteger>();
+
+   /** new bindings, a null id means the binding was removed */
+   final Map<String, BigInteger> bindings = new HashMap<String, BigInteger>();
+
+   /** channels created in this transaction, by name */
+   final Map<String, LocalChannel> channels = new HashMap<String, LocalChannel>();
+
+   /** what to do on commit, in the order it was requested */
+   final List<Runnable> actions = new ArrayList<Runnable>();
+}
@@ -0,0 +1,276 @@
+package loopback;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.sgs.impl.io.ServerSocketEndpoint;
+import com.sun.sgs.impl.io.SocketEndpoint;
+import com.sun.sgs.impl.io.TransportType;
+import com.sun.sgs.io.Acceptor;
+import com.sun.sgs.io.AcceptorListener;
+import com.sun.sgs.io.Connection;
+import com.sun.sgs.io.ConnectionListener;
+import com.sun.sgs.io.Connector;
+
+/**
+ * Measures the message throughput of the socket endpoints over the loopback
+ * interface: an acceptor and a number of connections in the same VM, each
+ * connection sending its messages as fast as it can from a thread of its own,
+ * and waiting whenever its send queue is full. It prints, for every number of
+ * processors and of connections, the time until the acceptor has received all
+ * the messages, and the messages and megabytes per second.
+ * 
+ * The arguments are <code>key=value</code> pairs:
+ * <ul>
+ * <li>connections: the numbers of connections, comma separated
+ * (1,4,16,64)</li>
+ * <li>processors: the numbers of processors of the endpoints, comma
+ * separated (1 and the available cores)</li>
+ * <li>executor: the executor of the endpoints, cached, fixed or dedicated
+ * (cached)</li>
+ * <li>threadModel: the thread model of the endpoints, manual or pooled, or
+ * default to keep the one of each endpoint (default)</li>
+ * <li>messages: the messages sent by each connection (100000)</li>
+ * <li>size: the size of a message, in bytes (16)</li>
+ * <li>rounds: the runs of each combination, the first ones warm up and only
+ * the last one is printed (2)</li>
+ * </ul>
+ */
+public class LoopbackThroughput {
+
+   private final Properties config = new Properties();
+
+   public LoopbackThroughput(String[] args) {
+      config.setProperty("connections", "1,4,16,64");
+      int cores = Runtime.getRuntime().availableProcessors();
+      config.setProperty("processors", cores > 1 ? "1," + cores : "1");
+      config.setProperty("executor", "cached");
+      config.setProperty("threadModel", "default");
+      config.setProperty("messages", "100000");
+      config.setProperty("size", "16");
+      config.setProperty("rounds", "2");
+
+      for (String arg : args) {
+         int i = arg.indexOf('=');
+         if (i < 0 || config.getProperty(arg.substring(0, i)) == null) {
+            throw new IllegalArgumentException("unknown argument: " + arg);
+         }
+         config.setProperty(arg.substring(0, i), arg.substring(i + 1));
+      }
+   }
+
+   private int getInt(String key) {
+      int value = Integer.parseInt(config.getProperty(key));
+      if (value < 1) {
+         throw new IllegalArgumentException(key + " must be > 0: " + value);
+      }
+      return value;
+   }
+
+   private List<Integer> getInts(String key) {
+      List<Integer> values = new ArrayList<Integer>();
+      for (String value : config.getProperty(key).split(",")) {
+         int v = Integer.parseInt(value.trim());
+         if (v < 1) {
+            throw new IllegalArgumentException(key + " must be > 0: " + v);
+         }
+         values.add(v);
+      }
+      return values;
+   }
+
+   public void run() throws Exception {
+      System.setProperty(SocketEndpoint.EXECUTOR_PROPERTY, config
+            .getProperty("executor"));
+      if (!config.getProperty("threadModel").equals("default")) {
+         System.setProperty(SocketEndpoint.THREAD_MODEL_PROPERTY, config
+               .getProperty("threadModel"));
+      }
+
+      System.out.println("loopback throughput: " + config);
+      for (int processors : getInts("processors")) {
+         System.setProperty(SocketEndpoint.PROCESSORS_PROPERTY, String
+               .valueOf(processors));
+         for (int connections : getInts("connections")) {
+            Round round = null;
+            for (int i = getInt("rounds"); i > 0; i--) {
+               round = new Round(connections, getInt("messages"),
+                     getInt("size"));
+               round.run();
+            }
+            System.out.println(round.report(processors));
+         }
+      }
+   }
+
+   /**
+    * A run with a number of connections
+    */
+   private static class Round {
+
+      private final int connections;
+
+      private final int messages;
+
+      private final int size;
+
+      private final AtomicLong received = new AtomicLong();
+
+      private final CountDownLatch connected;
+
+      private final CountDownLatch done = new CountDownLatch(1);
+
+      private final List<Connection> senders = new ArrayList<Connection>();
+
+      private long nanos;
+
+      Round(int connections, int messages, int size) {
+         this.connections = connections;
+         this.messages = messages;
+         this.size = size;
+         connected = new CountDownLatch(connections);
+      }
+
+      void run() throws Exception {
+         final long total = (long) connections * messages;
+         Acceptor<SocketAddress> acceptor = new ServerSocketEndpoint(
+               new InetSocketAddress("127.0.0.1", 0), TransportType.RELIABLE)
+               .createAcceptor();
+         acceptor.listen(new AcceptorListener() {
+            public ConnectionListener newConnection() {
+               return new Listener() {
+                  @Override
+                  public void bytesReceived(Connection conn, ByteBuffer message) {
+                     if (received.incrementAndGet() == total) {
+                        done.countDown();
+                     }
+                  }
+               };
+            }
+
+            public void disconnected() {
+            }
+         });
+         SocketAddress address = acceptor.getBoundEndpoint().getAddress();
+
+         for (int i = 0; i < connections; i++) {
+            Connector<SocketAddress> connector = new SocketEndpoint(address,
+                  TransportType.RELIABLE).createConnector();
+            connector.connect(new Listener() {
+               @Override
+               public void connected(Connection conn) {
+                  synchronized (senders) {
+                     senders.add(conn);
+                  }
+                  connected.countDown();
+               }
+            });
+         }
+         if (!connected.await(30, TimeUnit.SECONDS)) {
+            throw new IOException("connections timed out: "
+                  + connected.getCount() + " missing");
+         }
+
+         final CountDownLatch start = new CountDownLatch(1);
+         List<Thread> threads = new ArrayList<Thread>();
+         for (final Connection conn : senders) {
+            Thread thread = new Thread() {
+               @Override
+               public void run() {
+                  ByteBuffer message = ByteBuffer.allocate(size);
+                  try {
+                     start.await();
+                     for (int i = 0; i < messages; i++) {
+                        message.clear();
+                        send(conn, message);
+                     }
+                  }
+                  catch (Exception e) {
+                     e.printStackTrace();
+                  }
+               }
+            };
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+         }
+
+         long t = System.nanoTime();
+         start.countDown();
+         if (!done.await(5, TimeUnit.MINUTES)) {
+            throw new IOException("timed out: " + received + " of " + total
+                  + " messages received");
+         }
+         nanos = System.nanoTime() - t;
+
+         for (Thread thread : threads) {
+            thread.join();
+         }
+         for (Connection conn : senders) {
+            conn.close();
+         }
+         acceptor.shutdown();
+      }
+
+      String report(int processors) {
+         double seconds = nanos / 1e9;
+         long total = (long) connections * messages;
+         return String.format("processors %3d, connections %4d: %6d ms, "
+               + "%9.0f messages/s, %7.1f MB/s", processors, connections,
+               nanos / 1000000, total / seconds, total * (size + 2)
+                     / seconds / (1024 * 1024));
+      }
+   }
+
+   /**
+    * Sends a message, waiting for the writes in progress to catch up while
+    * the send queue of the connection is full
+    */
+   static void send(Connection conn, ByteBuffer message) throws IOException,
+         InterruptedException {
+      for (int retries = 0;; retries++) {
+         try {
+            conn.sendBytes(message);
+            return;
+         }
+         catch (IOException e) {
+            if (retries == 10000) {
+               throw e;
+            }
+            Thread.sleep(1);
+         }
+      }
+   }
+
+   /**
+    * A connection listener ignoring the events
+    */
+   private static class Listener implements ConnectionListener {
+
+      public void connected(Connection conn) {
+      }
+
+      public void bytesReceived(Connection conn, ByteBuffer message) {
+      }
+
+      public void exceptionThrown(Connection conn, Throwable exception) {
+         exception.printStackTrace();
+      }
+
+      public void disconnected(Connection conn) {
+      }
+   }
+
+   public static void main(String[] args) throws Exception {
+      new LoopbackThroughput(args).run();
+      System.exit(0);
+   }
+}